@@ -25,7 +25,11 @@ package
 internal class UtilitiesClasses
 {
         import coverage; coverage(null);
+        import coverageHit; coverageHit;
+        import coverageSeen; coverageSeen;
+        import com.allurent.coverage.runtime.BatchedCoverageAgent; BatchedCoverageAgent;
         import com.allurent.coverage.runtime.CoverageManager; CoverageManager;
+        import com.allurent.coverage.runtime.SocketCoverageAgent; SocketCoverageAgent;
         import com.allurent.coverage.runtime.TraceCoverageAgent; TraceCoverageAgent;
 	import com.adobe.viewsource.ViewSource; ViewSource;
 
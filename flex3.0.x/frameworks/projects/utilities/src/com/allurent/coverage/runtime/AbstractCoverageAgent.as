@@ -4,6 +4,7 @@ package com.allurent.coverage.runtime
     import flash.system.fscommand;
     import flash.utils.Timer;
     import flash.utils.getDefinitionByName;
+    import flash.utils.getTimer;
     
     /**
      * This class provides overall coverage recording support for an instrumented application.
@@ -17,6 +18,16 @@ package com.allurent.coverage.runtime
          */
         public var flushDelay:uint = 1000;
 
+        /**
+         * Time in milliseconds between re-arming first-hit probes (see -compiler.coverage-first-hit),
+         * checked after each flush.  Zero, the default, never re-arms them, so each key is reported
+         * at most once; otherwise the counts sent for a key tell in how many intervals it was hit.
+         */
+        public var rearmDelay:uint = 0;
+
+        // time of the last re-arming of first-hit probes
+        private var lastRearm:int = getTimer();
+
         // flag indicating that connection is known to be non-functioning,
         // should fall back to trace logging or nothing at all.
         public var broken:Boolean = false;
@@ -66,6 +77,14 @@ package com.allurent.coverage.runtime
                 initializeAgent();
                 initialized = true;
             }
+
+            // If the agent can't take more data right now, leave it accumulating in coverageMap
+            // and CoverageManager, where further hits only increase the counts.
+            //
+            if (!broken && !readyToSend)
+            {
+                return;
+            }
             
             try
             {
@@ -77,6 +96,15 @@ package com.allurent.coverage.runtime
                 {
                     sendCoverageMap(coverageMap);
                 }
+
+                // Indexed instrumentation accumulates its counts in CoverageManager rather than
+                // in coverageMap; send them along too if anything was hit.
+                //
+                var counts:Array = CoverageManager.takeHitCounts();
+                if (counts != null && !broken)
+                {
+                    sendCoverageCounts(counts);
+                }
             }
             catch (e:Error)
             {
@@ -154,6 +182,15 @@ package com.allurent.coverage.runtime
         public function sendCoverageMap(map:Object):void
         {
         }
+
+        /**
+         * Send a vector of execution counts to this agent's destination.
+         * @param counts an Array whose indices are integer coverage key ids and values are execution counts.
+         * Keys that were not executed have undefined entries.
+         */
+        public function sendCoverageCounts(counts:Array):void
+        {
+        }
         
         /**
          * Request the destination of this agent to terminate its execution. 
@@ -170,6 +207,14 @@ package com.allurent.coverage.runtime
             return false;
         }
 
+        /**
+         * Obtain a flag indicating whether this agent can take more coverage data at the moment.
+         */
+        public function get readyToSend():Boolean
+        {
+            return true;
+        }
+
         ////////////////////
         // PRIVATE METHODS
         ////////////////////
@@ -177,6 +222,12 @@ package com.allurent.coverage.runtime
         private function handleFlushTimer(e:TimerEvent):void
         {
             flushCoverageData();
+
+            if (rearmDelay > 0 && getTimer() - lastRearm >= rearmDelay)
+            {
+                CoverageManager.rearmProbes();
+                lastRearm = getTimer();
+            }
         }
         
         private function createFlushTimer():Timer
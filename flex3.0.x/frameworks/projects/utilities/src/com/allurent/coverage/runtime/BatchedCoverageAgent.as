@@ -0,0 +1,408 @@
+package com.allurent.coverage.runtime
+{
+    import flash.events.AsyncErrorEvent;
+    import flash.events.ErrorEvent;
+    import flash.events.SecurityErrorEvent;
+    import flash.events.StatusEvent;
+    import flash.net.LocalConnection;
+    import flash.utils.ByteArray;
+    import flash.utils.getTimer;
+    
+    /**
+     * This class provides overall coverage recording support for an instrumented application
+     * by packing coverage keys and execution counts into binary batches sent over a LocalConnection
+     * (or, in subclasses such as SocketCoverageAgent, some other transport).
+     * Unlike LocalConnectionCoverageAgent, no temporary objects are built for each flush, and a
+     * batch is only sent once it is large enough or old enough.
+     *
+     * <p>Each batch is a ByteArray holding a header of BATCH_VERSION, flags and a sequence number
+     * (one byte, one byte, one unsigned int) followed by records of unsigned LEB128 varints:</p>
+     * <pre>
+     *   id &lt;&lt; 1, count                                  for an integer coverage key id
+     *   length &lt;&lt; 1 | 1, length bytes of UTF-8, count   for a coverage key string
+     * </pre>
+     * <p>The records are zlib-compressed when FLAG_COMPRESSED is set.  A batch can be decoded
+     * against the coverage metadata with flex2.linker.CoverageBatchDecoder.</p>
+     *
+     * <p>At most maxPendingBatches batches are kept waiting for acknowledgment.  A batch that fills up
+     * while they are all outstanding is held back until a slot is acknowledged, and the flush carries on
+     * with a new batch, so no batch outgrows maxBatchSize.  While batches are held back, flushes leave
+     * the data accumulating in the agent and CoverageManager, where further hits only increase existing
+     * counts.</p>
+     */
+    public class BatchedCoverageAgent extends AbstractCoverageAgent
+    {
+        /**
+         * LocalConnection name to be used by coverage recording.  Must be modified
+         * prior to first coverage output.
+         */
+        public var connectionName:String;
+
+        /**
+         * Size in bytes of the uncompressed records at which a batch is closed.  A batch holds at
+         * most this plus one record, which should stay below the 40K LocalConnection limit even
+         * if the records don't compress.
+         */
+        public var maxBatchSize:uint = 32000;
+
+        /**
+         * Time in milliseconds after which a batch is sent even if it is not full.
+         */
+        public var maxBatchDelay:uint = 5000;
+
+        /**
+         * Size in bytes of the records above which a batch is compressed.
+         */
+        public var compressThreshold:uint = 1024;
+
+        /**
+         * Maximum number of batches sent but not yet acknowledged.  Must be modified
+         * prior to first coverage output.
+         */
+        public var maxPendingBatches:uint = 8;
+
+        // default connection name
+        public static const DEFAULT_CONNECTION_NAME:String = "_flexcover";
+
+        // batch header
+        public static const BATCH_VERSION:uint = 1;
+        public static const FLAG_COMPRESSED:uint = 1;
+
+        // handler function names on client end of LocalConnection
+        private static const BATCH_HANDLER:String = "coverageBatch";
+        private static const EXIT_HANDLER:String = "coverageEnd";
+
+        // LocalConnection used for writing coverage data
+        private var connection:LocalConnection;
+
+        // records of the batch being filled, reused from one batch to the next
+        private var records:ByteArray = new ByteArray();
+
+        // records of full batches waiting for a slot in the ring, oldest first
+        private var heldBatches:Array = [];
+
+        // getTimer() value when the first record of the current batch was written
+        private var batchStart:int;
+
+        // scratch buffer for the UTF-8 bytes of a key
+        private var keyBytes:ByteArray = new ByteArray();
+
+        // ring of batches sent but not yet acknowledged, indexed by sequence number
+        private var ring:Array;
+        private var oldestSequence:uint = 0;
+        private var nextSequence:uint = 0;
+
+        // exit handshake state
+        private var exitRequested:Boolean = false;
+        private var exitSent:Boolean = false;
+        private var exitAcknowledged:Boolean = false;
+
+        // true while coverage data is being appended to the batch; a transport that acknowledges
+        // synchronously must not start another flush of the same map then, so drain() waits
+        private var flushing:Boolean = false;
+        private var drainDeferred:Boolean = false;
+
+        /**
+         * Create a BatchedCoverageAgent.
+         * 
+         * @param connectionName the name of the LocalConnection to be used.
+         * 
+         */
+        public function BatchedCoverageAgent(connectionName:String = null)
+        {
+            this.connectionName = (connectionName != null)
+                ? connectionName
+                : DEFAULT_CONNECTION_NAME;
+        }
+
+        /**
+         * Set up the LocalConnection used to send batches.
+         */
+        override public function initializeAgent():void
+        {
+            connection = new LocalConnection();
+            connection.addEventListener(AsyncErrorEvent.ASYNC_ERROR, handleConnectionError);
+            connection.addEventListener(SecurityErrorEvent.SECURITY_ERROR, handleConnectionError);
+            connection.addEventListener(StatusEvent.STATUS, handleConnectionStatus);
+        }
+
+        /**
+         * Flush all outstanding coverage data into the current batch, and send the batch
+         * if it has been open for longer than maxBatchDelay and the ring has a free slot.
+         */
+        override public function flushCoverageData():void
+        {
+            // batches held back from an earlier flush go first; until they are all sent,
+            // new data keeps accumulating
+            sendHeldBatches();
+            if (heldBatches.length > 0)
+            {
+                return;
+            }
+
+            flushing = true;
+            try
+            {
+                super.flushCoverageData();
+            }
+            finally
+            {
+                flushing = false;
+            }
+
+            if (!broken && records.length > 0 && heldBatches.length == 0 && readyToSend
+                && (exitRequested || getTimer() - batchStart >= maxBatchDelay))
+            {
+                sendBatch(records);
+            }
+            if (drainDeferred)
+            {
+                drainDeferred = false;
+                drain();
+            }
+        }
+
+        /**
+         * Append a map of coverage keys and execution counts to the current batch.
+         * @param map an Object whose keys are coverage elements and values are execution counts.
+         */
+        override public function sendCoverageMap(map:Object):void
+        {
+            for (var key:String in map)
+            {
+                keyBytes.length = 0;
+                keyBytes.writeUTFBytes(key);
+                startRecord();
+                writeVarint(records, (keyBytes.length << 1) | 1);
+                records.writeBytes(keyBytes);
+                writeVarint(records, map[key]);
+                endRecord();
+            }
+
+            // the unacknowledged batches take the place of the escrow list
+            escrow.length = 0;
+        }
+
+        /**
+         * Append a vector of execution counts to the current batch.
+         * @param counts an Array whose indices are integer coverage key ids and values are execution counts.
+         */
+        override public function sendCoverageCounts(counts:Array):void
+        {
+            for (var id:uint = 0; id < counts.length; id++)
+            {
+                if (counts[id] > 0)
+                {
+                    startRecord();
+                    writeVarint(records, id << 1);
+                    writeVarint(records, counts[id]);
+                    endRecord();
+                }
+            }
+        }
+
+        /**
+         * Send whatever is left in the current batch, followed by a request for the destination
+         * of this agent to terminate its execution once every batch is acknowledged.
+         */
+        override public function requestExit():void
+        {
+            exitRequested = true;
+            drain();
+        }
+
+        /**
+         * Obtain a flag indicating whether there are any outstanding send or exit operations. 
+         */
+        override public function get operationsPending():Boolean
+        {
+            return records.length > 0 || heldBatches.length > 0 || nextSequence != oldestSequence
+                || (exitRequested && !exitAcknowledged);
+        }
+
+        /**
+         * Obtain a flag indicating whether another batch may be sent.
+         */
+        override public function get readyToSend():Boolean
+        {
+            return ring == null || nextSequence - oldestSequence < maxPendingBatches;
+        }
+
+        /**
+         * The batches sent but not yet acknowledged, oldest first.
+         */
+        public function get unacknowledgedBatches():Array
+        {
+            var batches:Array = [];
+            for (var sequence:uint = oldestSequence; sequence != nextSequence; sequence++)
+            {
+                batches.push(ring[sequence % maxPendingBatches]);
+            }
+            return batches;
+        }
+
+        ////////////////////
+        // PRIVATE METHODS
+        ////////////////////
+
+        private function startRecord():void
+        {
+            if (records.length == 0)
+            {
+                batchStart = getTimer();
+            }
+        }
+
+        private function endRecord():void
+        {
+            if (records.length >= maxBatchSize)
+            {
+                if (heldBatches.length == 0 && readyToSend)
+                {
+                    sendBatch(records);
+                }
+                else
+                {
+                    // Every slot of the ring is taken, so hold the batch back until one is
+                    // acknowledged and carry on with a new one.
+                    //
+                    heldBatches.push(records);
+                    records = new ByteArray();
+                    batchStart = getTimer();
+                }
+            }
+        }
+
+        private function sendHeldBatches():void
+        {
+            while (!broken && heldBatches.length > 0 && readyToSend)
+            {
+                sendBatch(heldBatches.shift());
+            }
+        }
+
+        private function sendBatch(data:ByteArray):void
+        {
+            var flags:uint = 0;
+            if (data.length >= compressThreshold)
+            {
+                data.compress();
+                flags |= FLAG_COMPRESSED;
+            }
+
+            var batch:ByteArray = new ByteArray();
+            batch.writeByte(BATCH_VERSION);
+            batch.writeByte(flags);
+            batch.writeUnsignedInt(nextSequence);
+            batch.writeBytes(data);
+            data.length = 0;
+
+            if (ring == null)
+            {
+                ring = new Array(maxPendingBatches);
+            }
+            ring[nextSequence % maxPendingBatches] = batch;
+            nextSequence++;
+            transmitBatch(batch);
+        }
+
+        /**
+         * Send the rest of the coverage data and then the exit request, as far as the ring allows.
+         */
+        private function drain():void
+        {
+            if (broken || exitSent)
+            {
+                return;
+            }
+            if (flushing)
+            {
+                // acknowledged from within a flush; the flush drains when it is done
+                drainDeferred = true;
+                return;
+            }
+
+            if (readyToSend)
+            {
+                flushCoverageData();
+            }
+            // flushing may have led to acknowledgments that already sent the exit request
+            if (!exitSent && records.length == 0 && heldBatches.length == 0 && nextSequence == oldestSequence)
+            {
+                exitSent = true;
+                transmitExit();
+            }
+        }
+
+        ////////////////////
+        // TRANSPORT
+        ////////////////////
+
+        /**
+         * Send a batch to this agent's destination.  Subclasses using another transport
+         * override this and call acknowledge() once the batch has been delivered.
+         */
+        protected function transmitBatch(batch:ByteArray):void
+        {
+            connection.send(connectionName, BATCH_HANDLER, batch);
+        }
+
+        /**
+         * Send the exit request to this agent's destination, and call acknowledge() once delivered.
+         */
+        protected function transmitExit():void
+        {
+            connection.send(connectionName, EXIT_HANDLER);
+        }
+
+        /**
+         * Record the delivery of the oldest batch outstanding, or else of the exit request,
+         * and send whatever was waiting on it.
+         */
+        protected function acknowledge():void
+        {
+            if (nextSequence != oldestSequence)
+            {
+                ring[oldestSequence % maxPendingBatches] = null;
+                oldestSequence++;
+            }
+            else if (exitSent)
+            {
+                exitAcknowledged = true;
+            }
+
+            sendHeldBatches();
+            if (exitRequested)
+            {
+                drain();
+            }
+            checkForExit();
+        }
+
+        private function handleConnectionError(e:ErrorEvent):void
+        {
+            trace(e.text);
+        }
+        
+        private function handleConnectionStatus(e:StatusEvent):void
+        {
+            if (e.level == "error")
+            {
+                // As in LocalConnectionCoverageAgent, assume the LC either works all the
+                // time or fails all the time.  The batches that were not delivered remain
+                // available from unacknowledgedBatches.
+                //
+                broken = true;
+            }
+            else if (e.level == "status")
+            {
+                // LocalConnection reports on its sends in order, so this acknowledges
+                // the oldest outstanding batch, or else the exit request.
+                //
+                acknowledge();
+                return;
+            }
+            checkForExit();
+        }
+    }
+}
@@ -8,6 +8,36 @@ package com.allurent.coverage.runtime
     {
         public static var agent:ICoverageAgent = new LocalConnectionCoverageAgent();
 
+        /**
+         * Execution counts accumulated by coverageHit() since the last flush, indexed
+         * by the integer coverage key ids recorded in the coverage metadata.
+         */
+        public static var hitCounts:Array = [];
+
+        /**
+         * Detach the execution counts accumulated so far, leaving an empty array in place.
+         * @return the detached counts, or null if no key has been hit since the last call.
+         */
+        public static function takeHitCounts():Array
+        {
+            if (hitCounts.length == 0)
+            {
+                return null;
+            }
+            var counts:Array = hitCounts;
+            hitCounts = [];
+            return counts;
+        }
+
+        /**
+         * Clear the flags tested by first-hit probes, so that each of them reports its key
+         * again the next time it is executed.
+         */
+        public static function rearmProbes():void
+        {
+            coverageSeen.length = 0;
+        }
+
         /**
          * Exit the application after all data has been flushed out of the agent.
          */
@@ -30,10 +30,14 @@ package com.allurent.coverage.runtime
         
         // handler function names on client end of LocalConnection
         private static const DATA_HANDLER:String = "coverageData";
+        private static const COUNTS_HANDLER:String = "coverageCounts";
         private static const EXIT_HANDLER:String = "coverageEnd";
 
         // Maximum total key length allowed before forced LC send packet
         private static const MAX_SEND_LENGTH:uint = 10000;
+
+        // Maximum number of execution counts sent in a single LC send packet
+        private static const MAX_SEND_COUNTS:uint = 4000;
         
         /**
          * Create a LocalConnectionCoverageAgent.
@@ -90,6 +94,29 @@ package com.allurent.coverage.runtime
             pendingWrites++;
         }
         
+        /**
+         * Send a vector of execution counts to this agent's destination.  The counts are sent in slices
+         * of MAX_SEND_COUNTS entries, each preceded by the id of its first entry; slices in which
+         * no key was executed are skipped.
+         * @param counts an Array whose indices are integer coverage key ids and values are execution counts.
+         */
+        override public function sendCoverageCounts(counts:Array):void
+        {
+            for (var start:uint = 0; start < counts.length; start += MAX_SEND_COUNTS)
+            {
+                var slice:Array = counts.slice(start, start + MAX_SEND_COUNTS);
+                for (var i:uint = 0; i < slice.length; i++)
+                {
+                    if (slice[i] > 0)
+                    {
+                        connection.send(connectionName, COUNTS_HANDLER, start, slice);
+                        pendingWrites++;
+                        break;
+                    }
+                }
+            }
+        }
+        
         /**
          * Request the destination of this agent to terminate its execution. 
          */
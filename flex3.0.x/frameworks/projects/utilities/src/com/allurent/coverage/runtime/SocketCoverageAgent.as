@@ -0,0 +1,127 @@
+package com.allurent.coverage.runtime
+{
+    import flash.events.ErrorEvent;
+    import flash.events.Event;
+    import flash.events.IOErrorEvent;
+    import flash.events.SecurityErrorEvent;
+    import flash.net.Socket;
+    import flash.utils.ByteArray;
+    
+    /**
+     * This class sends the batches of a BatchedCoverageAgent over a TCP socket, typically to the
+     * flex2.tools.CoverageCollector listening on the local machine.  Each batch is written as its
+     * length (an unsigned int) followed by its bytes; a length of zero ends the run.
+     *
+     * <p>Batches are considered delivered once written to the socket.  Batches produced before the
+     * connection is established wait in the ring of unacknowledged batches.</p>
+     */
+    public class SocketCoverageAgent extends BatchedCoverageAgent
+    {
+        /**
+         * Host and port of the collector.  Must be modified prior to first coverage output.
+         */
+        public var host:String;
+        public var port:int;
+
+        // default collector address
+        public static const DEFAULT_HOST:String = "127.0.0.1";
+        public static const DEFAULT_PORT:int = 9912;
+
+        // socket used for writing coverage data
+        private var socket:Socket;
+
+        // flag indicating that the exit request was made before the connection was established
+        private var exitPending:Boolean = false;
+
+        /**
+         * Create a SocketCoverageAgent.
+         * 
+         * @param host the host name of the collector.
+         * @param port the port of the collector.
+         * 
+         */
+        public function SocketCoverageAgent(host:String = null, port:int = 0)
+        {
+            this.host = (host != null) ? host : DEFAULT_HOST;
+            this.port = (port != 0) ? port : DEFAULT_PORT;
+        }
+
+        /**
+         * Connect to the collector.
+         */
+        override public function initializeAgent():void
+        {
+            socket = new Socket();
+            socket.addEventListener(Event.CONNECT, handleConnect);
+            socket.addEventListener(Event.CLOSE, handleClose);
+            socket.addEventListener(IOErrorEvent.IO_ERROR, handleSocketError);
+            socket.addEventListener(SecurityErrorEvent.SECURITY_ERROR, handleSocketError);
+            socket.connect(host, port);
+        }
+
+        override protected function transmitBatch(batch:ByteArray):void
+        {
+            if (socket.connected)
+            {
+                socket.writeUnsignedInt(batch.length);
+                socket.writeBytes(batch);
+                socket.flush();
+                acknowledge();
+            }
+        }
+
+        override protected function transmitExit():void
+        {
+            if (socket.connected)
+            {
+                socket.writeUnsignedInt(0);
+                socket.flush();
+                acknowledge();
+            }
+            else
+            {
+                exitPending = true;
+            }
+        }
+
+        private function handleConnect(e:Event):void
+        {
+            // Deliver what was produced while connecting, then acknowledge it all at once;
+            // acknowledging may send further batches.
+            //
+            var batches:Array = unacknowledgedBatches;
+            for (var i:uint = 0; i < batches.length; i++)
+            {
+                var batch:ByteArray = batches[i];
+                socket.writeUnsignedInt(batch.length);
+                socket.writeBytes(batch);
+            }
+            socket.flush();
+            for (i = 0; i < batches.length; i++)
+            {
+                acknowledge();
+            }
+
+            if (exitPending)
+            {
+                exitPending = false;
+                transmitExit();
+            }
+        }
+
+        private function handleClose(e:Event):void
+        {
+            broken = true;
+            checkForExit();
+        }
+
+        private function handleSocketError(e:ErrorEvent):void
+        {
+            // As with a LocalConnection, assume the collector is either there or not.
+            //
+            trace(e.text);
+            broken = true;
+            checkForExit();
+        }
+    }
+}
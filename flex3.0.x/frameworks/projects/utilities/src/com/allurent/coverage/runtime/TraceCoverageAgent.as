@@ -19,5 +19,20 @@ package com.allurent.coverage.runtime
                 trace(COVERAGE_TRACE_PREFIX, key, map[key]);
             }
         }
+
+        /**
+         * Send a vector of execution counts to this agent's destination.
+         * @param counts an Array whose indices are integer coverage key ids and values are execution counts.
+         */
+        override public function sendCoverageCounts(counts:Array):void
+        {
+            for (var id:int = 0; id < counts.length; id++)
+            {
+                if (counts[id] > 0)
+                {
+                    trace(COVERAGE_TRACE_PREFIX, "#" + id, counts[id]);
+                }
+            }
+        }
     }
 }
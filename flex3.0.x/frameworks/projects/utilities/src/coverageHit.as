@@ -0,0 +1,15 @@
+package
+{
+    import com.allurent.coverage.runtime.CoverageManager;
+    
+    /**
+     * Record the execution of the coverage key with the given integer id.  Instrumentation
+     * compiled with -compiler.coverage-indexed calls this function instead of coverage(),
+     * so that the only work done per hit is an increment in an Array of counts.
+     */
+    public function coverageHit(id:int):void
+    {
+        var counts:Array = CoverageManager.hitCounts;
+        counts[id] = uint(counts[id]) + 1;
+    }
+}
@@ -0,0 +1,11 @@
+package
+{
+    import flash.utils.ByteArray;
+
+    /**
+     * First-hit flags for instrumentation compiled with -compiler.coverage-first-hit, indexed by
+     * integer coverage key id.  A probe only calls coverageHit() while its flag is clear, and sets
+     * it when it does.  CoverageManager.rearmProbes() clears all of the flags.
+     */
+    public var coverageSeen:ByteArray = new ByteArray();
+}
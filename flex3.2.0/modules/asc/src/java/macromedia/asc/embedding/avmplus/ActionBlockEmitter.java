@@ -898,6 +898,7 @@ public class ActionBlockEmitter extends Emitter
         //
         debug_info.debug_function = debug_name;
         debug_info.debug_function_dirty = true;
+        coverageBlockBoundary();
         
         sets_dxns = false;
     }
@@ -3804,6 +3805,7 @@ public class ActionBlockEmitter extends Emitter
 
     protected void CatchClausesEnd()
     {
+        coverageBlockBoundary();
         showLineNumber();
         if (show_instructions)
         {
@@ -3896,6 +3898,8 @@ public class ActionBlockEmitter extends Emitter
 
     protected void FinallyClauseBegin()
     {
+        coverageBlockBoundary();
+
         // reset the cur_locals count - this is because the cur_locals coming from a catch block
         // may be greater than the cur_locals at this point, and we don't want to tromp on any of the catch
         // blocks locals
@@ -4140,6 +4144,8 @@ public class ActionBlockEmitter extends Emitter
         {
             code_out.write(" [" + cur_stack + "]");
         }
+
+        coverageBlockBoundary();
         
         // FLEXCOVER: record branch coverage for If conditional 
         if (!alwaysBranch)
@@ -5005,6 +5011,8 @@ public class ActionBlockEmitter extends Emitter
                 break;
         }
 
+        coverageBlockBoundary();
+
         // FLEXCOVER: record branch coverage for LoopEnd conditional 
         if (!alwaysBranch)
         {
@@ -5191,6 +5199,7 @@ public class ActionBlockEmitter extends Emitter
 
     protected void PatchBreak(int loop_index)
     {
+        coverageBlockBoundary();
         showLineNumber();
         if (show_instructions)
         {
@@ -5234,6 +5243,7 @@ public class ActionBlockEmitter extends Emitter
 
     protected void PatchContinue(int loop_index)
     {
+        coverageBlockBoundary();
         showLineNumber();
         if (show_instructions)
         {
@@ -5276,6 +5286,7 @@ public class ActionBlockEmitter extends Emitter
 
     protected void PatchElse(int target)
     {
+        coverageBlockBoundary();
         showLineNumber();
         if (show_instructions)
         {
@@ -5306,6 +5317,7 @@ public class ActionBlockEmitter extends Emitter
 
     protected void PatchIf(int target)
     {
+        coverageBlockBoundary();
         showLineNumber();
         if (show_instructions)
         {
@@ -5343,6 +5355,7 @@ public class ActionBlockEmitter extends Emitter
 
     protected void PatchLoopBegin(int target)
     {
+        coverageBlockBoundary();
         showLineNumber();
         if (show_instructions)
         {
@@ -5377,6 +5390,7 @@ public class ActionBlockEmitter extends Emitter
 
     protected void PatchSwitchBegin(int addr)
     {
+        coverageBlockBoundary();
         showLineNumber();
         if (show_instructions)
         {
@@ -6474,6 +6488,7 @@ protected void Setsuper(ByteList code,int index)
         }
 
         Byte(code, OP_throw);
+        coverageBlockBoundary();
     }
 
     protected void Jump(ByteList code)
@@ -6486,6 +6501,7 @@ protected void Setsuper(ByteList code,int index)
 
         Byte(code, OP_jump);
         Int24(code, 0);
+        coverageBlockBoundary();
     }
     
     protected void Label(ByteList code)
@@ -6497,6 +6513,7 @@ protected void Setsuper(ByteList code,int index)
         }
 
         Byte(code, OP_label);
+        coverageBlockBoundary();
     }
 
     protected void Iftrue(ByteList code)
@@ -6746,6 +6763,7 @@ protected void Setsuper(ByteList code,int index)
         }
 
         Byte(code, OP_lookupswitch);
+        coverageBlockBoundary();
     }
 
 
@@ -7090,6 +7108,7 @@ protected void Setsuper(ByteList code,int index)
         }
 
         Byte(code,OP_returnvoid);
+        coverageBlockBoundary();
     }
 
     protected void Returnvalue(ByteList code)
@@ -7101,6 +7120,7 @@ protected void Setsuper(ByteList code,int index)
         }
 
         Byte(code,OP_returnvalue);
+        coverageBlockBoundary();
     }
 
     protected void Newactivation(ByteList code)
@@ -8487,6 +8507,7 @@ protected void Setsuper(ByteList code,int index)
         // record the true arm of the branch and insert a jump over the recording of the false arm
         // that we'll patch later.
         recordBranch(true);
+        int true_block_probe = coverage_block_probe;
         Jump(ab.code);
         int true_addr = getIP() - 3;
 
@@ -8509,6 +8530,48 @@ protected void Setsuper(ByteList code,int index)
         ab.code.set(true_addr, (byte) offset);
         ab.code.set(true_addr + 1, (byte) (offset >> 8));
         ab.code.set(true_addr + 2, (byte) (offset >> 16));
+
+        // The if clause is only reachable through the jump above, so the + arm's probe dominates it.
+        coverage_block_probe = true_block_probe;
+    }
+
+    /**
+     * FLEXCOVER: note that the next instruction starts a new basic block, either because control may arrive
+     * there from a branch or because the instruction just emitted transfers control elsewhere.  A probe emitted
+     * after this point no longer runs whenever the previous one did.
+     */
+    protected void coverageBlockBoundary()
+    {
+        coverage_block_probe = -1;
+    }
+
+    /**
+     * FLEXCOVER: start a guard that skips over the probe emitted next when the value on top of the stack
+     * is true.  The skip stays inside the probe, so it doesn't end the current block.
+     * @return the address of the jump, to be passed to EndCoverageGuard() once the probe is emitted
+     */
+    protected int BeginCoverageGuard()
+    {
+        if (show_instructions)
+        {
+            code_out.println();
+            code_out.print("BeginCoverageGuard");
+        }
+
+        Iftrue(ab.code);
+        last_in = IKIND_other;
+        return getIP() - 3;
+    }
+
+    /**
+     * FLEXCOVER: patch the jump emitted by BeginCoverageGuard() to come here.
+     */
+    protected void EndCoverageGuard(int guard_addr)
+    {
+        int offset = getIP() - guard_addr + 1 - 4;
+        ab.code.set(guard_addr, (byte) offset);
+        ab.code.set(guard_addr + 1, (byte) (offset >> 8));
+        ab.code.set(guard_addr + 2, (byte) (offset >> 16));
     }
     
     /**
@@ -8653,6 +8716,11 @@ protected void Setsuper(ByteList code,int index)
     // hack to temporarily prevent branch coverage
     private boolean branch_coverage = true;
 
+    // FLEXCOVER: subclass-defined index of the coverage key whose probe is known to have executed whenever
+    //     control reaches the current emission point, or -1 at the start of a basic block.  Subclasses use it
+    //     to elide probes.
+    protected int coverage_block_probe = -1;
+
     private DebugInfo debug_info = new DebugInfo();
 
     private PrintWriter code_out;
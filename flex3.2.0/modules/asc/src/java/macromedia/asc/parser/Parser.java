@@ -5884,7 +5884,7 @@ XMLElementContent
         }
 
         // make sure that we check the include path trail. This is to stop infinite recursion.
-        if (ctx.statics.includePaths.contains(fixed_filespec))
+        if (ctx.statics.getIncludePaths().contains(fixed_filespec))
         {
             error(syntax_error, kError_Parser_FileIncludesItself, fixed_filespec);
             try { in.close(); } catch (IOException ex) {}
@@ -5893,7 +5893,7 @@ XMLElementContent
         else
         {
             // add the file name to the include path trail.
-            ctx.statics.includePaths.push_back(fixed_filespec);
+            ctx.statics.getIncludePaths().push_back(fixed_filespec);
         }
 
         // To get proper path resolution for included files inside of include directives,
@@ -5932,7 +5932,7 @@ XMLElementContent
 	        {
 	            ctx.setPath(oldCtxPathSpec);
 	            // now we can remove the filename...
-	            ctx.statics.includePaths.removeLast();
+	            ctx.statics.getIncludePaths().removeLast();
 	            if (in != null)
 		        {
 			        try { in.close(); } catch (IOException ex) {}
@@ -3041,14 +3041,14 @@ public final class CodeGenerator extends Emitter implements Evaluator, ErrorCons
             boolean saved_in_with = in_with;
             in_with = true;
 
-            int saveWithDepth = cx.statics.withDepth;
-            cx.statics.withDepth = cx.getScopes().size()-1;
+            int saveWithDepth = cx.getWithDepth();
+            cx.setWithDepth(cx.getScopes().size()-1);
 
             node.statement.evaluate(cx, this);
 
             in_with = saved_in_with;
 
-            cx.statics.withDepth = saveWithDepth;
+            cx.setWithDepth(saveWithDepth);
         }
 
         PopWith();
@@ -3586,11 +3586,11 @@ public final class CodeGenerator extends Emitter implements Evaluator, ErrorCons
             return null;  // defer until the current method is done.
         }
 
-        int savedWithDepth = cx.statics.withDepth;
+        int savedWithDepth = cx.getWithDepth();
         if( node.with_depth != -1)
         {
             // FCN was hoisted by an earlier pass
-            cx.statics.withDepth = node.with_depth;
+            cx.setWithDepth(node.with_depth);
         }
 
         ObjectList<ObjectValue>saved_scopes = null;
@@ -3834,7 +3834,7 @@ public final class CodeGenerator extends Emitter implements Evaluator, ErrorCons
         {
             cx.swapScopeChain(saved_scopes);
         }
-        cx.statics.withDepth = savedWithDepth;
+        cx.setWithDepth(savedWithDepth);
 
         // Call code is compiled as though register 0 is the scope
         // stack, register 1 is the current object, register 2 is the
@@ -522,7 +522,7 @@ public final class ConstantEvaluator extends Emitter implements Evaluator, Error
                         ObjectValue base = node.ref.getBase();
                         if( base == null )
                         {
-                            if( cx.statics.withDepth == -1 ) cx.error(node.pos()-1, kError_Strict_PlainUndefinedMethod,node.ref.name);
+                            if( cx.getWithDepth() == -1 ) cx.error(node.pos()-1, kError_Strict_PlainUndefinedMethod,node.ref.name);
                         }
                         //  Note: Function is dynamic, but methods of a class are MethodClosures, a non-dynamic subclass of Function.
                         //  The compiler doesn't have an internal representation of MethodClosure, though the only reason it would
@@ -2417,14 +2417,14 @@ public final class ConstantEvaluator extends Emitter implements Evaluator, Error
             boolean saved_in_with = in_with;
             in_with = true;
 
-            int saveWithDepth = cx.statics.withDepth;
-            cx.statics.withDepth = cx.getScopes().size()-1;
+            int saveWithDepth = cx.getWithDepth();
+            cx.setWithDepth(cx.getScopes().size()-1);
 
             node.statement.evaluate(cx, this);
 
             in_with = saved_in_with;
 
-            cx.statics.withDepth = saveWithDepth;
+            cx.setWithDepth(saveWithDepth);
 
             cx.popScope();
         }
@@ -2723,10 +2723,10 @@ public final class ConstantEvaluator extends Emitter implements Evaluator, Error
 
         }
 
-        int savedWithDepth = cx.statics.withDepth;
+        int savedWithDepth = cx.getWithDepth();
         if( node.with_depth != -1)
         {
-            cx.statics.withDepth = node.with_depth;
+            cx.setWithDepth(node.with_depth);
         }
 
         ObjectList<ObjectValue>saved_scopes = null;
@@ -2833,7 +2833,7 @@ public final class ConstantEvaluator extends Emitter implements Evaluator, Error
         {
             cx.swapScopeChain(saved_scopes);
         }
-        cx.statics.withDepth = savedWithDepth;
+        cx.setWithDepth(savedWithDepth);
 
         return node.fun;
     }
@@ -1840,15 +1840,15 @@ public final class FlowAnalyzer extends Emitter implements Evaluator, ErrorConst
             with_used_stack.add(1);
         }
 
-        int saveWithDepth = cx.statics.withDepth;
-        cx.statics.withDepth = cx.getScopes().size()-1;
+        int saveWithDepth = cx.getWithDepth();
+        cx.setWithDepth(cx.getScopes().size()-1);
 
         if (node.statement != null)
         {
             node.statement.evaluate(cx, this);
         }
 
-        cx.statics.withDepth = saveWithDepth;
+        cx.setWithDepth(saveWithDepth);
 
         PopScope();
 
@@ -2187,11 +2187,11 @@ public final class FlowAnalyzer extends Emitter implements Evaluator, ErrorConst
             importednames_sets.push_back(pkgdef.imported_names);
         }
 
-        int savedWithDepth = cx.statics.withDepth;
+        int savedWithDepth = cx.getWithDepth();
         if( node.with_depth != -1)
         {
             // FCN was hoisted by an earlier pass
-            cx.statics.withDepth = node.with_depth;
+            cx.setWithDepth(node.with_depth);
         }
 
         ObjectList<ObjectValue>saved_scopes = null;
@@ -2230,8 +2230,8 @@ public final class FlowAnalyzer extends Emitter implements Evaluator, ErrorConst
 
             // Save the with depth, if there is one, since the FunctionCommonNode is going to get hoisted
             // and there won't be a WithStatementNode above it anymore after hoisting.
-            if( cx.statics.withDepth != -1 )
-                node.with_depth = cx.statics.withDepth;
+            if( cx.getWithDepth() != -1 )
+                node.with_depth = cx.getWithDepth();
 
             ObjectList<ObjectValue> scope_chain = cx.getScopes();
             for(int s = scope_chain.size(); s > 0; --s  )
@@ -2482,7 +2482,7 @@ public final class FlowAnalyzer extends Emitter implements Evaluator, ErrorConst
             cx.swapScopeChain(saved_scopes);
         }
         // Reset the withDepth to whatever it was
-        cx.statics.withDepth = savedWithDepth;
+        cx.setWithDepth(savedWithDepth);
 
         if( pkgdef != null && cx.getScopes().size() == 1 )
         {
@@ -309,7 +309,7 @@ public final class ReferenceValue extends Value implements ErrorConstants
             // and recurse.
 
             ObjectList<ObjectValue> scopes = cx.getScopes();
-            int lowestScope = isTypeAnnotation() ? 0 : (cx.statics.withDepth+1);
+            int lowestScope = isTypeAnnotation() ? 0 : (cx.getWithDepth()+1);
             for(int i=scopes.size() - 1; i >= lowestScope; i--)
             {
                 this.base = scopes.at(i); // Set the base value
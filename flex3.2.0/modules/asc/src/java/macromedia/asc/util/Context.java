@@ -96,7 +96,7 @@ public final class Context implements ErrorConstants
         this.handler = null;
 	this.qualified_origin = "";
         err = null;
-        contextId = contextIds++;
+        contextId = nextContextId();
         if (statics != null)
         {
             if (statics.nodeFactory == null)
@@ -118,6 +118,12 @@ public final class Context implements ErrorConstants
         }
     }
 
+    // Contexts are also created on the threads that parse sources in parallel
+    private static synchronized int nextContextId()
+    {
+        return contextIds++;
+    }
+
     private Context(Context origCtx)
     {
         this.statics = origCtx.statics;
@@ -828,66 +834,120 @@ public final class Context implements ErrorConstants
 
     public void pushScope(ObjectValue scope)
     {
-        if (statics.scopes.isEmpty())
+        ContextStatics.ThreadState state = statics.getThreadState();
+        ObjectList<ObjectValue> scopes = state != null ? state.scopes : statics.scopes;
+        if (scopes.isEmpty())
         {
-            statics.global = scope;
+            if (state != null)
+            {
+                state.global = scope;
+            }
+            else
+            {
+                statics.global = scope;
+            }
         }
-        statics.scopes.add(scope);
+        scopes.add(scope);
     }
 
     public void popScope()
     {
-        statics.scopes.removeLast();
-        if (statics.scopes.isEmpty())
+        ContextStatics.ThreadState state = statics.getThreadState();
+        ObjectList<ObjectValue> scopes = state != null ? state.scopes : statics.scopes;
+        scopes.removeLast();
+        if (scopes.isEmpty())
         {
-            statics.global = null;
+            if (state != null)
+            {
+                state.global = null;
+            }
+            else
+            {
+                statics.global = null;
+            }
         }
     }
 
     public ObjectList<ObjectValue> getScopes()
     {
-        return statics.scopes;
+        ContextStatics.ThreadState state = statics.getThreadState();
+        return state != null ? state.scopes : statics.scopes;
     }
 
     public ObjectList<ObjectValue> swapScopeChain(ObjectList<ObjectValue> new_scopes )
     {
-        ObjectList<ObjectValue> old_scopes = statics.scopes;
-        statics.scopes = new_scopes;
+        ContextStatics.ThreadState state = statics.getThreadState();
+        ObjectList<ObjectValue> old_scopes;
+        if (state != null)
+        {
+            old_scopes = state.scopes;
+            state.scopes = new_scopes;
+        }
+        else
+        {
+            old_scopes = statics.scopes;
+            statics.scopes = new_scopes;
+        }
         return old_scopes;
     }
 
     public ObjectValue scope()
     {
-        if( statics.scopes.size() > 0 )
+        ObjectList<ObjectValue> scopes = getScopes();
+        if( scopes.size() > 0 )
         {
-            return statics.scopes.back();
+            return scopes.back();
         }
         else
         {
-            return statics.global;   // this is an error case. return global for graceful failure
+            return globalScope();   // this is an error case. return global for graceful failure
         }
     }
 
     public int getScopeDepth()
     {
-        return statics.scopes.size();
+        return getScopes().size();
     }
 
     public ObjectValue scope(int n)
     {
-        if( n >= 0 && n < statics.scopes.size() )
+        ObjectList<ObjectValue> scopes = getScopes();
+        if( n >= 0 && n < scopes.size() )
         {
-            return statics.scopes.get(n);
+            return scopes.get(n);
         }
         else
         {
-            return statics.global; // for graceful error handling
+            return globalScope(); // for graceful error handling
         }
     }
 
     public ObjectValue globalScope()
     {
-        return statics.global;
+        ContextStatics.ThreadState state = statics.getThreadState();
+        return state != null ? state.global : statics.global;
+    }
+
+    /**
+     * @return the scope depth of the innermost with statement being evaluated, or -1 outside of with statements
+     */
+    public int getWithDepth()
+    {
+        ContextStatics.ThreadState state = statics.getThreadState();
+        return state != null ? state.withDepth : statics.withDepth;
+    }
+
+    public void setWithDepth(int withDepth)
+    {
+        ContextStatics.ThreadState state = statics.getThreadState();
+        if (state != null)
+        {
+            state.withDepth = withDepth;
+        }
+        else
+        {
+            statics.withDepth = withDepth;
+        }
     }
 
     public ObjectValue builtinScope()
@@ -910,26 +970,112 @@ public final class Context implements ErrorConstants
 
     public void setPath(String pathspec)
     {
-        statics.pathspec = pathspec;
+        ContextStatics.ThreadState state = statics.getThreadState();
+        if (state != null)
+        {
+            state.pathspec = pathspec;
+        }
+        else
+        {
+            statics.pathspec = pathspec;
+        }
     }
 
     public String path()
     {
-        return statics.pathspec;
+        ContextStatics.ThreadState state = statics.getThreadState();
+        return state != null ? state.pathspec : statics.pathspec;
     }
 
     public void setScriptName(String scriptname)
     {
-        statics.scriptname = scriptname;
+        ContextStatics.ThreadState state = statics.getThreadState();
+        if (state != null)
+        {
+            state.scriptname = scriptname;
+        }
+        else
+        {
+            statics.scriptname = scriptname;
+        }
     }
 
     public String scriptName()
     {
-        return statics.scriptname;
+        ContextStatics.ThreadState state = statics.getThreadState();
+        return state != null ? state.scriptname : statics.scriptname;
+    }
+
+    /**
+     * Get the statics ready for several threads parsing at once, each through Contexts of its own, or
+     * back to parsing on one thread.  While parallel, the node factory, path, script name and include
+     * stack used by the parser are kept per thread, and the types and error strings the parser would
+     * otherwise create lazily are created up front.
+     */
+    public void setParallelParsing(boolean parallel)
+    {
+        if (parallel)
+        {
+            noType();
+            intType();
+            errorString(allErrorConstants[statics.languageID][0].code);
+        }
+        statics.setPerThread(parallel);
+    }
+
+    /**
+     * Get the statics ready for several threads generating code at once, each for units of its own, or
+     * back to generating on one thread.  While parallel, the scope chain, with depth and bytecode
+     * factory are kept per thread, and the builtin types, namespaces and error strings that would
+     * otherwise be created lazily are created up front.
+     */
+    public void setParallelGeneration(boolean parallel)
+    {
+        if (parallel)
+        {
+            publicNamespace();
+            anyNamespace();
+            noType();
+            objectType();
+            arrayType();
+            voidType();
+            nullType();
+            booleanType();
+            stringType();
+            typeType();
+            functionType();
+            intType();
+            uintType();
+            numberType();
+            doubleType();
+            decimalType();
+            xmlType();
+            regExpType();
+            xmlListType();
+            vectorType();
+            vectorObjType();
+            errorString(allErrorConstants[statics.languageID][0].code);
+        }
+        statics.setPerThread(parallel);
     }
 
     public NodeFactory getNodeFactory()
     {
+        ContextStatics.ThreadState state = statics.getThreadState();
+        if (state != null)
+        {
+            if (state.nodeFactory == null)
+            {
+                state.nodeFactory = new NodeFactory(this);
+            }
+            else
+            {
+                state.nodeFactory.setContext(this);
+            }
+
+            return state.nodeFactory;
+        }
+
         if (statics.nodeFactory == null)
         {
             statics.nodeFactory = new NodeFactory(this);
@@ -944,6 +1090,17 @@ public final class Context implements ErrorConstants
 
     public ByteCodeFactory getByteCodeFactory()
     {
+        ContextStatics.ThreadState state = statics.getThreadState();
+        if (state != null)
+        {
+            if (state.bytecodeFactory == null)
+            {
+                state.bytecodeFactory = new ByteCodeFactory();
+            }
+
+            return state.bytecodeFactory;
+        }
+
         if (statics.bytecodeFactory == null)
         {
             statics.bytecodeFactory = new ByteCodeFactory();
@@ -1368,15 +1525,18 @@ public final class Context implements ErrorConstants
                 namespace_map = statics.namespaces;
                 break;
         }
-        ObjectValue val = namespace_map.get(name);
-        if (val == null)
+        synchronized (namespace_map)
         {
-            val = new NamespaceValue(ns_kind);
-            val.setValue(name);     // to indicate that this is a ct const value
-            val.name = name;
-            namespace_map.put(name,val);
+            ObjectValue val = namespace_map.get(name);
+            if (val == null)
+            {
+                val = new NamespaceValue(ns_kind);
+                val.setValue(name);     // to indicate that this is a ct const value
+                val.name = name;
+                namespace_map.put(name,val);
+            }
+            return val;
         }
-        return val;
     }
 
     public ObjectValue getOpaqueNamespace(String name)
@@ -1510,7 +1670,7 @@ public final class Context implements ErrorConstants
 
         UnresolvedNamespace ns = new UnresolvedNamespace(cx, node, ref);
         ns.name = ("__unresolved__ns__" + statics.unresolved_ns_count++).intern();
-        ObjectList<ObjectValue> scopes = new ObjectList<ObjectValue>(statics.scopes);
+        ObjectList<ObjectValue> scopes = new ObjectList<ObjectValue>(getScopes());
         unresolved_namespaces.put(ns, scopes);
         return ns;
     }
@@ -1525,10 +1685,9 @@ public final class Context implements ErrorConstants
             {
                 UnresolvedNamespace ns = nsList.get(i);
                 ObjectList<ObjectValue> scopes = unresolved_namespaces.get(ns);
-                ObjectList<ObjectValue> temp = statics.scopes;
-                statics.scopes = scopes;
+                ObjectList<ObjectValue> temp = swapScopeChain(scopes);
                 Value val = ns.ref.getValue(this);
-                statics.scopes = temp;
+                swapScopeChain(temp);
                 ObjectValue realNamespace = (val instanceof ObjectValue) ? (ObjectValue) val : null;
                 if (realNamespace != null)
                 {
@@ -1647,14 +1806,4 @@ public final class Context implements ErrorConstants
         }
         return code;
     }
-
-    // FLEXCOVER: get all accumulated coverage keys so far 
-    public Set getCoverageKeys() {
-        return statics.coverageKeys;
-    }
-    
-    // FLEXCOVER: clear all accumulated coverage keys
-    public void clearCoverageKeys() {
-        statics.coverageKeys = new LinkedHashSet<String>();
-    }
 }
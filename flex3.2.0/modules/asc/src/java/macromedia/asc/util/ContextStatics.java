@@ -55,9 +55,10 @@ public class ContextStatics
 	String pathspec;
 	String scriptname;
 	
-	// FLEXCOVER: this list accumulates all coverage keys recorded by the instrumentation code, to be
-	//   emitted later in a .cvm file.
-	Set<String> coverageKeys = new LinkedHashSet<String>();
+	// FLEXCOVER: next of the dense integer ids handed out to coverage keys for indexed instrumentation.
+	//   The keys themselves are collected per unit by the emitter.  The counter lives as long as the
+	//   statics do, so ids are unique across all the units of a compilation.
+	int nextCoverageKeyId = 0;
 
 	public static final int LANG_EN		= 0;
     public static final int LANG_CN		= 1;
@@ -97,7 +98,7 @@ public class ContextStatics
     private int nextSlotID = 1;
     private int expectedSlotID = -1;
 
-    public int getNextSlotID()
+    public synchronized int getNextSlotID()
     {
 	    if (expectedSlotID != -1)
 	    {
@@ -110,7 +111,7 @@ public class ContextStatics
 		    return nextSlotID++;
 	    }
     }
-    public void pushExpectedSlotID(int id)
+    public synchronized void pushExpectedSlotID(int id)
     {
 	    expectedSlotID = id;
     }
@@ -219,6 +220,26 @@ public class ContextStatics
 	// C: This is for tracking recursive include path.
 	public ObjectList<String> includePaths = new ObjectList<String>();
 
+	// What the parser and code generator keep in here for the unit at hand, kept per thread instead
+	// while several threads parse or generate at once.  null when everything happens on one thread.
+	// See setPerThread().
+	private ThreadLocal<ThreadState> threadStates;
+
+	static final class ThreadState
+	{
+		// parser
+		NodeFactory nodeFactory;
+		String pathspec;
+		String scriptname;
+		ObjectList<String> includePaths = new ObjectList<String>();
+
+		// code generator
+		ObjectList<ObjectValue> scopes = new ObjectList<ObjectValue>();
+		ObjectValue global;
+		int withDepth = -1;
+		ByteCodeFactory bytecodeFactory;
+	}
+
 	public void clear()
 	{
 		if (builtins != null)
@@ -400,10 +421,60 @@ public class ContextStatics
     	namespaces.remove(name);
     }
     
-    // FLEXCOVER: add a coverage key for later reporting
+    /**
+     * Keep the parser and code generator state per thread, or stop doing so.  Use
+     * Context.setParallelParsing() or Context.setParallelGeneration(), which also create what would
+     * otherwise be created lazily in here.
+     */
+    void setPerThread(boolean perThread)
+    {
+        threadStates = perThread ? new ThreadLocal<ThreadState>() : null;
+    }
+
+    /**
+     * @return the calling thread's state, or null when parsing and generation aren't done on several threads
+     */
+    ThreadState getThreadState()
+    {
+        ThreadLocal<ThreadState> states = threadStates;
+        if (states == null)
+        {
+            return null;
+        }
+
+        ThreadState state = states.get();
+        if (state == null)
+        {
+            state = new ThreadState();
+            states.set(state);
+        }
+        return state;
+    }
+
+    /**
+     * @return the stack of files being included by the calling thread's parser
+     */
+    public ObjectList<String> getIncludePaths()
+    {
+        ThreadState state = getThreadState();
+        return state == null ? includePaths : state.includePaths;
+    }
+
+    // FLEXCOVER: keep the ids up to maxId from being handed out again, because they are already baked
+    //    into bytecode that is being reused, e.g. from an incremental compilation cache.
+    //
+    public void reserveCoverageKeyIds(int maxId)
+    {
+        if (maxId >= nextCoverageKeyId)
+        {
+            nextCoverageKeyId = maxId + 1;
+        }
+    }
+
+    // FLEXCOVER: allocate the next free integer id for a coverage key.
     //
-    public void addCoverageKey(String key)
+    public int nextCoverageKeyId()
     {
-        coverageKeys.add(key);
+        return nextCoverageKeyId++;
     }
 }
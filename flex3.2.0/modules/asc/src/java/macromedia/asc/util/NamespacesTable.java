@@ -28,7 +28,7 @@ public class NamespacesTable extends HashMap<Namespaces,Namespaces>
 	 * @param ns
 	 * @return
 	 */
-	public Namespaces intern(ObjectValue ns)
+	public synchronized Namespaces intern(ObjectValue ns)
 	{
 		list.set(0, ns);
 		Namespaces n = this.get(list);
@@ -44,7 +44,7 @@ public class NamespacesTable extends HashMap<Namespaces,Namespaces>
 	 * @param ns
 	 * @return
 	 */
-	public Namespaces intern(Namespaces ns)
+	public synchronized Namespaces intern(Namespaces ns)
 	{		
 		Namespaces n = get(ns);
 		if(n == null) {
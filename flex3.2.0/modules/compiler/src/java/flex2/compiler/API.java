@@ -17,7 +17,7 @@ import flash.fonts.FontManager;
 import flash.localization.LocalizationManager;
 import flash.swf.Movie;
 import flash.swf.MovieEncoder;
-import flash.swf.TagEncoder;
+import flash.swf.StreamingTagEncoder;
 import flash.util.FileUtils;
 
 import flex.messaging.config.ServicesDependencies;
@@ -31,6 +31,7 @@ import flex2.compiler.common.LocalFilePathResolver;
 import flex2.compiler.common.PathResolver;
 import flex2.compiler.common.SinglePathResolver;
 import flex2.compiler.i18n.I18nUtils;
+import flex2.compiler.io.FileChangeTracker;
 import flex2.compiler.io.FileUtil;
 import flex2.compiler.io.InMemoryFile;
 import flex2.compiler.io.LocalFile;
@@ -40,6 +41,7 @@ import flex2.compiler.util.*;
 import flex2.linker.ConsoleApplication;
 import flex2.tools.oem.ProgressMeter;
 
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.io.RandomAccessFile;
@@ -188,6 +190,45 @@ public final class API
 	private static final int adjustQNames               = (1 << 15);
 	private static final int extraSources               = (1 << 16);
 
+	/**
+	 * FLEXCOVER: units reused from an earlier compilation, possibly loaded from a PersistenceStore, keep the
+	 * coverage key ids compiled into their bytecode.  Reserve those ids before anything is generated, so that
+	 * newly compiled units don't reuse them.
+	 */
+	private static void reserveCoverageKeyIds(FileSpec fileSpec, SourceList sourceList, SourcePath sourcePath,
+	                                          ResourceContainer resources, SymbolTable symbolTable)
+	{
+		List collections = new ArrayList(4);
+		if (fileSpec != null)
+		{
+			collections.add(fileSpec.sources());
+		}
+		if (sourceList != null)
+		{
+			collections.add(sourceList.sources());
+		}
+		if (sourcePath != null)
+		{
+			collections.add(sourcePath.sources().values());
+		}
+		if (resources != null)
+		{
+			collections.add(resources.sources());
+		}
+
+		for (Iterator i = collections.iterator(); i.hasNext();)
+		{
+			for (Iterator j = ((Collection) i.next()).iterator(); j.hasNext();)
+			{
+				CompilationUnit u = ((Source) j.next()).getCompilationUnit();
+				if (u != null && u.coverageKeys != null && u.isBytecodeAvailable())
+				{
+					symbolTable.perCompileData.reserveCoverageKeyIds(u.coverageKeys.getMaxId());
+				}
+			}
+		}
+	}
+
 	private static void batch1(List sources, List units, DependencyGraph igraph, DependencyGraph dgraph,
 	                           SymbolTable symbolTable, flex2.compiler.Compiler[] compilers, SourceList sourceList,
 	                           SourcePath sourcePath, ResourceContainer resources, CompilerSwcContext swcContext,
@@ -204,7 +245,8 @@ public final class API
 
 			if (tooManyErrors() || forcedToStop()) break;
 			
-			if (!parse1(sources, units, igraph, dgraph, compilers, symbolTable, start, end))
+			if (!parse1(sources, units, igraph, dgraph, compilers, symbolTable, start, end,
+			            configuration.getCompilerConfiguration().getThreads()))
 			{
 				break;
 			}
@@ -297,7 +339,10 @@ public final class API
 
 			if (tooManyErrors() || forcedToStop()) break;
 
-			if (!generate(sources, units, compilers, symbolTable))
+			CompilerConfiguration compilerConfig = configuration.getCompilerConfiguration();
+			// FLEXCOVER: indexed coverage hands out key ids in generation order, so it stays on one thread.
+			if (!generate(sources, units, compilers, symbolTable,
+			              compilerConfig.coverageIndexed() ? 1 : compilerConfig.getThreads()))
 			{
 				break;
 			}
@@ -366,7 +411,7 @@ public final class API
 				}
 				else if ((w & parse1) == 0)
 				{
-					parse1(sources, units, igraph, dgraph, compilers, symbolTable, i, i + 1);
+					parse1(sources, units, igraph, dgraph, compilers, symbolTable, i, i + 1, 1);
 					resolveInheritance(sources, igraph, dgraph, symbolTable, sourceList, sourcePath, resources, swcContext, i, i + 1);
 					addGeneratedSources(sources, igraph, dgraph, resources, symbolTable, configuration, i, i + 1);
 				}
@@ -1282,6 +1327,8 @@ public final class API
 		// add the sources to the dependency graphs as vertices.
 		addVerticesToGraphs(sources, igraph, dgraph);
 
+		reserveCoverageKeyIds(fileSpec, sourceList, sourcePath, resources, symbolTable);
+
 		try
 		{
 			getCommonBuiltinClasses(sources, igraph, dgraph, symbolTable, sourceList, sourcePath, resources, swcContext);
@@ -1501,6 +1548,9 @@ public final class API
                 sources.addAll(bundlePath.sources().values());
         }
 
+        // with a file change tracker, only these Source objects need checking for changed files
+        final Set changed = getChangedSources(sources, resources); // Source, or null to check all of them
+
 		// if any of the Source objects in ResourceContainer is bad, obsolete the originating Source.
 		for (Iterator i = resources.sources().iterator(); i.hasNext(); )
 		{
@@ -1509,10 +1559,11 @@ public final class API
 			if (s != null)
 			{
 			    CompilationUnit u = (s != null) ? s.getCompilationUnit() : null;
+			    boolean check = changed == null || changed.contains(s);
 				if (s.hasError()
                         || (u != null && !u.isDone())
-                        || s.isUpdated()
-                        || (u != null && u.getAssets().isUpdated()))
+                        || (check && s.isUpdated())
+                        || (check && u != null && u.getAssets().isUpdated()))
 				{
 					resourceDelegates.add(s.getNameForReporting());
 					s.removeCompilationUnit();
@@ -1524,6 +1575,8 @@ public final class API
 		for (int i = 0, size = sources.size(); i < size; i++)
 		{
 			Source s = (Source) sources.get(i);
+			if (changed != null && !changed.contains(s)) continue;
+
 			for (Iterator j = s.getUpdatedFileIncludes(); j != null && j.hasNext();)
 			{
 				VirtualFile f = (VirtualFile) j.next();
@@ -1625,6 +1678,10 @@ public final class API
 				reasons.put(s.getName(), l10n.getLocalizedTextString(new NotFullyCompiled()));
 				sources.set(i, null);
 			}
+            else if (changed != null && !changed.contains(s))
+            {
+                // none of its files changed
+            }
             else if (!s.exists())
             {
                 updated.put(s.getName(), s);
@@ -1995,6 +2052,10 @@ public final class API
 			}
 		}
 
+		// read the bytecode of the compilation units that were loaded from a cache file and are still good
+		readPayloads(sources);
+		readPayloads(resources.sources());
+
 		// refresh the state of ResourceContainer
 		resources.refresh();
 
@@ -2016,6 +2077,96 @@ public final class API
         return (updateCount + affectedCount);
 	}
 
+    /**
+     * Helper for validateCompilationUnits(). Reads the payloads of the CompilationUnits loaded by
+     * loadCompilationUnits(), and removes the ones that can't be read so that they're recompiled.
+     */
+    private static void readPayloads(Collection sources)
+    {
+        for (Iterator i = sources.iterator(); i.hasNext();)
+        {
+            Source s = (Source) i.next();
+            CompilationUnit u = (s != null) ? s.getCompilationUnit() : null;
+            if (u != null && !u.readPayload())
+            {
+                s.removeCompilationUnit();
+            }
+        }
+    }
+
+    /**
+     * Helper for validateCompilationUnits(). With a file change tracker, returns the Source objects that own
+     * a local file that changed, and those that own other files, which the tracker doesn't see. Without one,
+     * returns null.
+     */
+    private static Set getChangedSources(final List sources, final ResourceContainer resources)
+    {
+        FileChangeTracker tracker = ThreadLocalToolkit.getFileChangeTracker();
+        if (tracker == null)
+        {
+            return null;
+        }
+
+        Map owners = new HashMap(); // Map<String, List<Source>>, LocalFile.getName()
+        Set changed = new HashSet(); // Set<Source>
+        addFileOwners(sources.iterator(), owners, changed);
+        addFileOwners(resources.sources().iterator(), owners, changed);
+
+        for (Iterator i = tracker.drainChanged(owners.keySet()).iterator(); i.hasNext();)
+        {
+            changed.addAll((List) owners.get(i.next()));
+        }
+
+        return changed;
+    }
+
+    private static void addFileOwners(final Iterator sources, final Map owners, final Set changed)
+    {
+        while (sources.hasNext())
+        {
+            Source s = (Source) sources.next();
+            if (s == null) continue;
+
+            addFileOwner(s.getBackingFile(), s, owners, changed);
+            for (Iterator j = s.getFileIncludes(); j.hasNext();)
+            {
+                addFileOwner((VirtualFile) j.next(), s, owners, changed);
+            }
+
+            CompilationUnit u = s.getCompilationUnit();
+            if (u != null)
+            {
+                for (Iterator j = u.getAssets().iterator(); j.hasNext();)
+                {
+                    AssetInfo assetInfo = (AssetInfo) ((Map.Entry) j.next()).getValue();
+                    // a null path is a system font, which isn't checked
+                    if (assetInfo.getPath() != null)
+                    {
+                        addFileOwner(assetInfo.getPath(), s, owners, changed);
+                    }
+                }
+            }
+        }
+    }
+
+    private static void addFileOwner(final VirtualFile f, final Source s, final Map owners, final Set changed)
+    {
+        if (f instanceof LocalFile)
+        {
+            List list = (List) owners.get(f.getName());
+            if (list == null)
+            {
+                list = new ArrayList(1);
+                owners.put(f.getName(), list);
+            }
+            list.add(s);
+        }
+        else
+        {
+            changed.add(s);
+        }
+    }
+
     /**
      * Helper for validateCompilationUnits(). Removes the CompilationUnit for sources in map,
      * and logs the reasons. 
@@ -2256,10 +2407,12 @@ public final class API
 
 	private static boolean parse1(List sources, List units, DependencyGraph igraph, DependencyGraph dgraph,
 								 flex2.compiler.Compiler[] compilers, SymbolTable symbolTable,
-								 int start, int end)
+								 int start, int end, int threads)
 	{
 		boolean result = true;
 
+		boolean parallel = threads > 1 && preparse(sources, compilers, symbolTable, start, end, threads);
+
 		for (int i = start; i < end; i++)
 		{
 			Source s = (Source) sources.get(i);
@@ -2295,9 +2448,83 @@ public final class API
 			}
 		}
 
+		if (parallel)
+		{
+			clearPreparsed(compilers);
+		}
+
 		return result;
 	}
 
+	private static void clearPreparsed(flex2.compiler.Compiler[] compilers)
+	{
+		for (int i = 0, length = compilers.length; i < length; i++)
+		{
+			if (compilers[i] instanceof Preparser)
+			{
+				((Preparser) compilers[i]).clearPreparsed();
+			}
+		}
+	}
+
+	/**
+	 * Run the context-free part of parse1(), i.e. Preparser.preparse(), for sources[start..end) on
+	 * worker threads.  parse1() then does the rest in order.  The messages of each source are passed
+	 * on in source order once all workers are done, so that the output is the same as when parsing
+	 * on one thread.
+	 *
+	 * @return false if there was nothing to do in parallel
+	 */
+	private static boolean preparse(List sources, final flex2.compiler.Compiler[] compilers, final SymbolTable symbolTable,
+	                                int start, int end, int threads)
+	{
+		List work = new ArrayList(end - start); // List<Source>
+		for (int i = start; i < end; i++)
+		{
+			Source s = (Source) sources.get(i);
+			LocalLogger local = s.getLogger();
+			if (!s.isCompiled() && getCompiler(s, compilers) instanceof Preparser &&
+			    local != null && local.isConnected())
+			{
+				work.add(s);
+			}
+		}
+
+		if (work.size() < 2)
+		{
+			return false;
+		}
+
+		macromedia.asc.util.Context cx = new macromedia.asc.util.Context(symbolTable.perCompileData);
+		cx.setParallelParsing(true);
+		try
+		{
+			new SourceWorkers("preparse", work)
+			{
+				void work(int index, Source s)
+				{
+					((Preparser) getCompiler(s, compilers)).preparse(s, symbolTable);
+				}
+			}.run(threads);
+		}
+		catch (RuntimeException ex)
+		{
+			clearPreparsed(compilers);
+			throw ex;
+		}
+		catch (Error ex)
+		{
+			clearPreparsed(compilers);
+			throw ex;
+		}
+		finally
+		{
+			cx.setParallelParsing(false);
+		}
+
+		return true;
+	}
+
 	static CompilationUnit parse1(Source s, flex2.compiler.Compiler[] compilers, SymbolTable symbolTable)
 	{
 		if (s.isCompiled())
@@ -3450,16 +3677,27 @@ public final class API
 		return qNames;
 	}
 		
-	private static boolean generate(List sources, List units, flex2.compiler.Compiler[] compilers, SymbolTable symbolTable)
+	private static boolean generate(List sources, List units, flex2.compiler.Compiler[] compilers, SymbolTable symbolTable,
+	                                int threads)
 	{
-		return generate(sources, units, compilers, symbolTable, 0, units.size());
+		return generate(sources, units, compilers, symbolTable, 0, units.size(), threads);
 	}
 
 	private static boolean generate(List sources, List units, flex2.compiler.Compiler[] compilers, SymbolTable symbolTable,
 									int start, int end)
+	{
+		return generate(sources, units, compilers, symbolTable, start, end, 1);
+	}
+
+	private static boolean generate(List sources, List units, flex2.compiler.Compiler[] compilers, SymbolTable symbolTable,
+									int start, int end, int threads)
 	{
 		boolean result = true;
 
+		// Map<CompilationUnit, Boolean>, the units already generated on worker threads and whether that worked
+		Map generated = (threads > 1) ? generateInParallel(sources, units, compilers, symbolTable, start, end, threads) :
+		                                Collections.EMPTY_MAP;
+
 		for (int i = start; i < end; i++)
 		{
 			Source s = (Source) sources.get(i);
@@ -3474,7 +3712,8 @@ public final class API
 				u.setWorkflow(generate);
 			}
 
-			if (!u.isBytecodeAvailable() && !generate(u, compilers, symbolTable))
+			Boolean ok = (Boolean) generated.get(u);
+			if (ok != null ? !ok.booleanValue() : !u.isBytecodeAvailable() && !generate(u, compilers, symbolTable))
 			{
 				result = false;
 				u.getSource().disconnectLogger();
@@ -3498,6 +3737,69 @@ public final class API
 		return result;
 	}
 
+	/**
+	 * Generate the units in units[start..end) that need it on worker threads.  The units only read the
+	 * type information shared with other units by now, and each has its own asc Context and emitter.
+	 * The messages of each unit are passed on in order once all workers are done, so that the output
+	 * is the same as when generating on one thread.
+	 *
+	 * @return Map<CompilationUnit, Boolean>, the units generated and whether that worked
+	 */
+	private static Map generateInParallel(List sources, List units, final flex2.compiler.Compiler[] compilers,
+	                                      final SymbolTable symbolTable, int start, int end, int threads)
+	{
+		final List work = new ArrayList(end - start); // List<CompilationUnit>
+		List workSources = new ArrayList(end - start); // List<Source>
+		for (int i = start; i < end; i++)
+		{
+			Source s = (Source) sources.get(i);
+			CompilationUnit u = (s != null) ? s.getCompilationUnit() : (CompilationUnit) units.get(i);
+			LocalLogger local = u.getSource().getLogger();
+
+			if ((u.getWorkflow() & generate) == 0 && !u.isBytecodeAvailable() && !u.getSource().isCompiled() &&
+			    getCompiler(u.getSource(), compilers) != null && local != null && local.isConnected())
+			{
+				work.add(u);
+				workSources.add(u.getSource());
+			}
+		}
+
+		if (work.size() < 2)
+		{
+			return Collections.EMPTY_MAP;
+		}
+
+		final Boolean[] results = new Boolean[work.size()];
+
+		macromedia.asc.util.Context cx = new macromedia.asc.util.Context(symbolTable.perCompileData);
+		cx.setParallelGeneration(true);
+		try
+		{
+			new SourceWorkers("generate", workSources)
+			{
+				void work(int index, Source s)
+				{
+					results[index] = generate((CompilationUnit) work.get(index), compilers, symbolTable) ? Boolean.TRUE : Boolean.FALSE;
+				}
+			}.run(threads);
+		}
+		finally
+		{
+			cx.setParallelGeneration(false);
+		}
+
+		Map generated = new HashMap();
+		for (int i = 0, size = work.size(); i < size; i++)
+		{
+			// no result if the workers stopped early, e.g. because the compilation is being stopped
+			if (results[i] != null)
+			{
+				generated.put(work.get(i), results[i]);
+			}
+		}
+		return generated;
+	}
+
 	private static boolean generate(CompilationUnit u, flex2.compiler.Compiler[] compilers, SymbolTable symbolTable)
 	{
 		Source s = u.getSource();
@@ -4065,17 +4367,11 @@ public final class API
 	 */
 	public static void encode(Movie movie, OutputStream out) throws IOException
 	{
-        // TODO PERFORMANCE:
-        // We create a TagEncoder, writes everything to the TagEncoder, and then copy the
-        // result to the intended output stream. There is no reason for the copy. TagEncoder
-        // contains a "protected SwfEncoder writer", and SwfEncoder extends RandomAccessBuffer,
-        // which extends ByteArrayOutputStream -- this writer would need to be replaced with
-        // some other object that can accept an OutputStream in its constructor. The point is
-        // to eliminate the extra buffers, and just always write directly to the intended target.
-        // - mikemo 
-		TagEncoder encoder = new TagEncoder();
+		// C: the movie goes to out as it is encoded.  Given a FileOutputStream, the SWF length is written
+		//    in place at the end, otherwise the compressed movie is held until then.
+		StreamingTagEncoder encoder = new StreamingTagEncoder(out);
 		new MovieEncoder(encoder).export(movie);
-		encoder.writeTo(out);
+		encoder.close();
 
 		if (ThreadLocalToolkit.getBenchmark() != null)
 		{
@@ -4165,6 +4461,41 @@ public final class API
 		}
 	}
 
+	/**
+	 * Like persistCompilationUnits(), but only the encoding is done on this thread.  The cache is written to
+	 * the file and/or the output stream on a background thread, and the compilation units may be changed as
+	 * soon as this returns.  Call join() on the result before reading the file, or closing the output stream.
+	 *
+	 * @param file the cache file, replaced once the cache has been written in full; may be null
+	 * @param out where the cache is written after the file; may be null
+	 */
+	public static PendingCacheWrite persistCompilationUnitsInBackground(Configuration configuration, FileSpec fileSpec,
+																		SourceList sourceList, SourcePath sourcePath,
+																		ResourceContainer resources, ResourceBundlePath bundlePath,
+																		List sources, List units,
+																		int checksum, int cmd_checksum, int linker_checksum, int swc_checksum,
+																		Map swcDefSignatureChecksums, Map swcFileChecksums,
+																		Map archiveFiles,
+																		String description, File file, OutputStream out)
+		throws IOException
+	{
+		PersistenceStore store = new PersistenceStore(configuration);
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		int count = store.encode(fileSpec, sourceList, sourcePath, resources, bundlePath, sources, units,
+								 checksum, cmd_checksum, linker_checksum, swc_checksum,
+								 swcDefSignatureChecksums, swcFileChecksums, description, archiveFiles, bytes);
+
+		if (ThreadLocalToolkit.getBenchmark() != null)
+		{
+			LocalizationManager l10n = ThreadLocalToolkit.getLocalizationManager();
+			ThreadLocalToolkit.getBenchmark().benchmark(l10n.getLocalizedTextString(new PersistingCompilationUnits(count)));
+		}
+
+		PendingCacheWrite write = new PendingCacheWrite(bytes.toByteArray(), file, out);
+		write.start();
+		return write;
+	}
+
     public static void loadCompilationUnits(Configuration configuration, FileSpec fileSpec, SourceList sourceList, SourcePath sourcePath,
                 ResourceContainer resources, ResourceBundlePath bundlePath,
                 List sources, List units,
@@ -4206,6 +4537,13 @@ public final class API
 	{
 		LocalizationManager l10n = ThreadLocalToolkit.getLocalizationManager();
 		PersistenceStore store = new PersistenceStore(configuration, f, fontManager);		
+
+		// the loaded units were compiled against files that the tracker may have seen change since
+		FileChangeTracker tracker = ThreadLocalToolkit.getFileChangeTracker();
+		if (tracker != null)
+		{
+			tracker.clear();
+		}
 		int count = -1;
 		try
 		{
@@ -4224,6 +4562,38 @@ public final class API
 		}
 	}
 
+	/**
+	 * Drops the compilation units of the sources in the given containers, so that they can be loaded again
+	 * with loadCompilationUnits().  The ResourceContainer has no sources to keep; callers replace it.
+	 */
+	public static void unloadCompilationUnits(FileSpec fileSpec, SourceList sourceList, SourcePath sourcePath,
+											  ResourceBundlePath bundlePath)
+	{
+		Collection c = (fileSpec == null) ? Collections.EMPTY_LIST : fileSpec.sources();
+		for (Iterator i = c.iterator(); i.hasNext();)
+		{
+			((Source) i.next()).removeCompilationUnit();
+		}
+
+		c = (sourceList == null) ? Collections.EMPTY_LIST : sourceList.sources();
+		for (Iterator i = c.iterator(); i.hasNext();)
+		{
+			((Source) i.next()).removeCompilationUnit();
+		}
+
+		if (sourcePath != null)
+		{
+			sourcePath.sources().clear();
+			sourcePath.clearCache();
+		}
+
+		if (bundlePath != null)
+		{
+			bundlePath.sources().clear();
+			bundlePath.clearCache();
+		}
+	}
+
 	private static boolean tooManyErrors()
 	{
 		return ThreadLocalToolkit.errorCount() > 100;
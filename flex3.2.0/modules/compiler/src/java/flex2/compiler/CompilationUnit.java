@@ -74,6 +74,11 @@ public final class CompilationUnit
 	 */
 	public ByteList bytes;
 
+	/**
+	 * The bytecode and asset tags of a unit loaded from an incremental cache file, until they are read.
+	 */
+	private PersistenceStore.Payload payload;
+
 	/**
 	 * Compiler.parse(), AS3 metadata only
 	 */
@@ -160,8 +165,8 @@ public final class CompilationUnit
 
 	public Styles styles;
 
-	// Set of coverage keys collected during this unit's compilation
-	public Set coverageKeys;
+	// Coverage keys collected during this unit's compilation, or null if it isn't instrumented
+	public CoverageKeys coverageKeys;
 	
 	/**
 	 * only MXML components set StylesContainer
@@ -233,6 +238,7 @@ public final class CompilationUnit
 		swfMetaData = null;
 		iconFile = null;
 		loaderClass = null;
+		payload = null;
 
 		if (extraClasses == null)
 		{
@@ -245,6 +251,7 @@ public final class CompilationUnit
 
 		generatedSources = null;
 		auxGenerateInfo = null;
+		coverageKeys = null;
 		accessibilityClasses = null;
 
 		if (remoteClassAliases == null)
@@ -501,9 +508,33 @@ public final class CompilationUnit
 
 	public byte[] getByteCodes()
 	{
+		readPayload();
 		return bytes.toByteArray(false);
 	}
 
+	void setPayload(PersistenceStore.Payload payload)
+	{
+		this.payload = payload;
+	}
+
+	/**
+	 * Reads the bytecode and asset tags of a unit loaded from an incremental cache file, if they
+	 * haven't been read yet.
+	 *
+	 * @return false if they couldn't be read, in which case the unit must be compiled again
+	 */
+	boolean readPayload()
+	{
+		if (payload == null)
+		{
+			return true;
+		}
+
+		PersistenceStore.Payload p = payload;
+		payload = null;
+		return p.read(this);
+	}
+
 	public StylesContainer getStylesContainer()
 	{
 		return stylesContainer;
@@ -0,0 +1,324 @@
+////////////////////////////////////////////////////////////////////////////////
+//
+//  ADOBE SYSTEMS INCORPORATED
+//  Copyright 2005-2007 Adobe Systems Incorporated
+//  All Rights Reserved.
+//
+//  NOTICE: Adobe permits you to use, modify, and distribute this file
+//  in accordance with the terms of the license agreement accompanying it.
+//
+////////////////////////////////////////////////////////////////////////////////
+
+package flex2.compiler;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * FLEXCOVER: the coverage keys recorded while generating one compilation unit, in emission order.
+ *
+ * A key names an executable element of a function: a line, written function@line, or one arm of
+ * a branch, written function@+line.column or function@-line.column.  Inside MXML documents the
+ * line of a branch is the MXML line, followed by '#' and the line in the generated ActionScript.
+ *
+ * Keys are kept as interned function and file names plus primitive fields, so that generating a
+ * unit doesn't allocate a string per key.  Key strings are only built by getKey() and
+ * getFileName(), i.e. when a probe passes the key string to coverage() and when the coverage
+ * metadata is written.
+ *
+ * @see flex2.linker.CoverageMetadataWriter
+ */
+public class CoverageKeys
+{
+	public static final byte LINE = 0;
+	public static final byte BRANCH_TAKEN = 1;
+	public static final byte BRANCH_NOT_TAKEN = 2;
+
+	public CoverageKeys()
+	{
+		this(64);
+	}
+
+	public CoverageKeys(int capacity)
+	{
+		capacity = Math.max(capacity, 4);
+		functions = new int[capacity];
+		kinds = new byte[capacity];
+		lines = new int[capacity];
+		auxLines = new int[capacity];
+		columns = new int[capacity];
+		files = new int[capacity];
+		ids = new int[capacity];
+		coverings = new int[capacity];
+
+		names = new ArrayList();
+		nameIndexes = new HashMap();
+
+		int tableSize = 8;
+		while (tableSize < capacity * 2)
+		{
+			tableSize <<= 1;
+		}
+		table = new int[tableSize];
+	}
+
+	private int size;
+	private int[] functions;
+	private byte[] kinds;
+	private int[] lines;
+	private int[] auxLines;
+	private int[] columns;
+	private int[] files;
+	private int[] ids;
+	private int[] coverings;
+
+	// function and debug file names, referred to by index from functions and files
+	private List names; // List<String>
+	private Map nameIndexes; // Map<String, Integer>
+
+	// open addressing hash table of key index + 1, on function, kind, line, aux line and column
+	private int[] table;
+
+	public int size()
+	{
+		return size;
+	}
+
+	/**
+	 * Add a key, unless it is there already.  A new key has no file name, no id and no covering key.
+	 *
+	 * @param auxLine the line in the generated ActionScript for branches in MXML documents, -1 otherwise
+	 * @param column the column of a branch, -1 for lines
+	 * @return the index of the key
+	 */
+	public int add(String function, byte kind, int line, int auxLine, int column)
+	{
+		int name = intern(function);
+		int mask = table.length - 1;
+		int slot = hash(name, kind, line, auxLine, column) & mask;
+		for (int k; (k = table[slot]) != 0; slot = (slot + 1) & mask)
+		{
+			k--;
+			if (functions[k] == name && kinds[k] == kind && lines[k] == line &&
+				auxLines[k] == auxLine && columns[k] == column)
+			{
+				return k;
+			}
+		}
+
+		if (size == functions.length)
+		{
+			grow();
+			return add(function, kind, line, auxLine, column);
+		}
+
+		int k = size++;
+		functions[k] = name;
+		kinds[k] = kind;
+		lines[k] = line;
+		auxLines[k] = auxLine;
+		columns[k] = column;
+		files[k] = -1;
+		ids[k] = -1;
+		coverings[k] = -1;
+		table[slot] = k + 1;
+		return k;
+	}
+
+	public String getFunction(int key)
+	{
+		return (String) names.get(functions[key]);
+	}
+
+	/**
+	 * @return LINE, BRANCH_TAKEN or BRANCH_NOT_TAKEN
+	 */
+	public byte getKind(int key)
+	{
+		return kinds[key];
+	}
+
+	public int getLine(int key)
+	{
+		return lines[key];
+	}
+
+	public int getAuxLine(int key)
+	{
+		return auxLines[key];
+	}
+
+	public int getColumn(int key)
+	{
+		return columns[key];
+	}
+
+	/**
+	 * Attach a debug file name, as emitted into the bytecode, to a key.  It is usually only attached to
+	 * the first key of a function; the keys that follow are in the same file.
+	 */
+	public void setDebugFileName(int key, String debugFileName)
+	{
+		files[key] = intern(debugFileName);
+	}
+
+	/**
+	 * @return the debug file name attached to the key, or null
+	 */
+	public String getDebugFileName(int key)
+	{
+		return files[key] == -1 ? null : (String) names.get(files[key]);
+	}
+
+	/**
+	 * @return the path of the file attached to the key, or null.  The ';' separating the source path
+	 *         directory from the package directory in debug file names is turned into a file separator.
+	 */
+	public String getFileName(int key)
+	{
+		String debugFileName = getDebugFileName(key);
+		if (debugFileName == null)
+		{
+			return null;
+		}
+
+		int idx = debugFileName.indexOf(";;");
+		if (idx >= 0)
+		{
+			return debugFileName.substring(0, idx) + File.separator + debugFileName.substring(idx + 2);
+		}
+		return debugFileName.replace(';', File.separatorChar);
+	}
+
+	/**
+	 * Set the integer id passed to coverageHit() by the key's probe.
+	 */
+	public void setId(int key, int id)
+	{
+		ids[key] = id;
+	}
+
+	/**
+	 * @return the id passed to coverageHit() by the key's own probe, or -1
+	 */
+	public int getId(int key)
+	{
+		return ids[key];
+	}
+
+	/**
+	 * @return the largest id of any key, or -1
+	 */
+	public int getMaxId()
+	{
+		int max = -1;
+		for (int k = 0; k < size; k++)
+		{
+			max = Math.max(max, ids[k]);
+		}
+		return max;
+	}
+
+	/**
+	 * Record that the key has no probe of its own, because the probe of an earlier key in the same
+	 * basic block always runs when it would.  -1 means it has a probe of its own.
+	 */
+	public void setCovering(int key, int coveringKey)
+	{
+		coverings[key] = coveringKey;
+	}
+
+	/**
+	 * @return the index of the key whose probe stands in for this one, or -1
+	 */
+	public int getCovering(int key)
+	{
+		return coverings[key];
+	}
+
+	/**
+	 * @return the key string, as passed to the coverage() function
+	 */
+	public String getKey(int key)
+	{
+		StringBuffer b = new StringBuffer(getFunction(key)).append('@');
+		if (kinds[key] == LINE)
+		{
+			b.append(lines[key]);
+		}
+		else
+		{
+			b.append(kinds[key] == BRANCH_TAKEN ? '+' : '-').append(lines[key]);
+			if (auxLines[key] != -1)
+			{
+				b.append('#').append(auxLines[key]);
+			}
+			b.append('.').append(columns[key]);
+		}
+		return b.toString();
+	}
+
+	private int intern(String name)
+	{
+		Integer index = (Integer) nameIndexes.get(name);
+		if (index == null)
+		{
+			index = new Integer(names.size());
+			nameIndexes.put(name, index);
+			names.add(name);
+		}
+		return index.intValue();
+	}
+
+	private static int hash(int name, byte kind, int line, int auxLine, int column)
+	{
+		int h = name;
+		h = h * 31 + kind;
+		h = h * 31 + line;
+		h = h * 31 + auxLine;
+		h = h * 31 + column;
+		return h ^ (h >>> 16);
+	}
+
+	private void grow()
+	{
+		int capacity = functions.length * 2;
+		functions = copy(functions, capacity);
+		kinds = copy(kinds, capacity);
+		lines = copy(lines, capacity);
+		auxLines = copy(auxLines, capacity);
+		columns = copy(columns, capacity);
+		files = copy(files, capacity);
+		ids = copy(ids, capacity);
+		coverings = copy(coverings, capacity);
+
+		table = new int[table.length * 2];
+		int mask = table.length - 1;
+		for (int k = 0; k < size; k++)
+		{
+			int slot = hash(functions[k], kinds[k], lines[k], auxLines[k], columns[k]) & mask;
+			while (table[slot] != 0)
+			{
+				slot = (slot + 1) & mask;
+			}
+			table[slot] = k + 1;
+		}
+	}
+
+	private static int[] copy(int[] a, int length)
+	{
+		int[] b = new int[length];
+		System.arraycopy(a, 0, b, 0, a.length);
+		return b;
+	}
+
+	private static byte[] copy(byte[] a, int length)
+	{
+		byte[] b = new byte[length];
+		System.arraycopy(a, 0, b, 0, a.length);
+		return b;
+	}
+}
@@ -0,0 +1,149 @@
+////////////////////////////////////////////////////////////////////////////////
+//
+//  ADOBE SYSTEMS INCORPORATED
+//  Copyright 2005-2007 Adobe Systems Incorporated
+//  All Rights Reserved.
+//
+//  NOTICE: Adobe permits you to use, modify, and distribute this file
+//  in accordance with the terms of the license agreement accompanying it.
+//
+////////////////////////////////////////////////////////////////////////////////
+
+package flex2.compiler;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * An incremental compilation cache being written on a background thread.  The compilation units
+ * are encoded on the calling thread, so the compiler is free to change them as soon as this is
+ * returned; only the writing is left.  The file is written next to the target and renamed over it,
+ * so a reader never sees a partly written cache.
+ *
+ * @see API#persistCompilationUnitsInBackground
+ */
+public final class PendingCacheWrite
+{
+	PendingCacheWrite(byte[] bytes, File file, OutputStream out)
+	{
+		this.bytes = bytes;
+		this.file = file;
+		this.out = out;
+
+		thread = new Thread("cache-write")
+		{
+			public void run()
+			{
+				try
+				{
+					write();
+				}
+				catch (IOException ex)
+				{
+					failure = ex;
+				}
+				catch (RuntimeException ex)
+				{
+					failure = ex;
+				}
+			}
+		};
+	}
+
+	private final byte[] bytes;
+	private final File file;
+	private final OutputStream out;
+	private final Thread thread;
+	private Exception failure;
+
+	void start()
+	{
+		thread.start();
+	}
+
+	/**
+	 * @return the size of the cache
+	 */
+	public long getLength()
+	{
+		return bytes.length;
+	}
+
+	public boolean isDone()
+	{
+		return !thread.isAlive();
+	}
+
+	/**
+	 * Waits for the write to finish.
+	 *
+	 * @throws IOException if the cache couldn't be written
+	 */
+	public void join() throws IOException
+	{
+		boolean interrupted = false;
+		while (thread.isAlive())
+		{
+			try
+			{
+				thread.join();
+			}
+			catch (InterruptedException ex)
+			{
+				interrupted = true;
+			}
+		}
+		if (interrupted)
+		{
+			Thread.currentThread().interrupt();
+		}
+
+		if (failure instanceof IOException)
+		{
+			throw (IOException) failure;
+		}
+		else if (failure != null)
+		{
+			throw (RuntimeException) failure;
+		}
+	}
+
+	private void write() throws IOException
+	{
+		if (file != null)
+		{
+			File dir = file.getAbsoluteFile().getParentFile();
+			File tmpFile = File.createTempFile(file.getName(), ".tmp", dir);
+			try
+			{
+				FileOutputStream fos = new FileOutputStream(tmpFile);
+				try
+				{
+					fos.write(bytes);
+				}
+				finally
+				{
+					fos.close();
+				}
+
+				// File.renameTo() won't replace an existing file on every platform
+				if (!tmpFile.renameTo(file) && !(file.delete() && tmpFile.renameTo(file)))
+				{
+					throw new IOException("could not rename " + tmpFile + " to " + file);
+				}
+			}
+			finally
+			{
+				tmpFile.delete();
+			}
+		}
+
+		if (out != null)
+		{
+			out.write(bytes);
+			out.flush();
+		}
+	}
+}
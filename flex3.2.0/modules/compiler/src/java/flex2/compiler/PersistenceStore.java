@@ -27,27 +27,47 @@ import flex2.compiler.util.*;
 import flex2.compiler.ResourceBundlePath;
 
 import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.util.*;
 import java.util.Map.Entry;
 
 /**
+ * Writes and reads the compilation units of an incremental compilation.
+ * <p>
+ * After the header there is a table of contents with the offset of each section, and the file is read
+ * into memory in one go.  The bytecode and the encoded asset tags of the units are in a section of their
+ * own, which the units refer to by offset, so they are only read for the units that are kept.
+ *
+ * @see CompilationUnit#readPayload()
  * @author Clement Wong
  */
 final class PersistenceStore
 {
 	// C: If you update the encoding/decoding algorithm, please increment the minor version by 1. Thanks.
-	private static final int major_version = 3;
-	private static final int minor_version = 15;
+	private static final int major_version = 4;
+	private static final int minor_version = 0;
+
+	// the sections in the table of contents, in file order
+	private static final int CONSTANT_POOL = 0, FILE_SPEC = 1, SOURCE_LIST = 2, SOURCE_PATH = 3, BUNDLE_PATH = 4,
+		SOURCE_NAMES = 5, SWC_DEF_SIGNATURE_CHECKSUMS = 6, SWC_FILE_CHECKSUMS = 7, ARCHIVE_FILES = 8, SOURCES = 9,
+		UNITS = 10, PAYLOADS = 11, SECTION_COUNT = 12;
 
 	PersistenceStore(Configuration configuration, RandomAccessFile file)
 	{
         this(configuration, file, null);
 	}
 
+	/**
+	 * A store that can only encode().
+	 */
+	PersistenceStore(Configuration configuration)
+	{
+		this(configuration, null, null);
+	}
+
     PersistenceStore(Configuration configuration, RandomAccessFile file, FontManager fontManager)
     {
-        assert file != null;
-
         this.file = file;
         key = new ArrayKey();
 
@@ -60,6 +80,10 @@ final class PersistenceStore
 	private final ArrayKey key;
     private final FontManager fontManager;
 
+	// the file's bytes and the section offsets, while reading
+	private ByteBuffer in;
+	private int[] sections;
+
 	int write(FileSpec fileSpec,
 			  SourceList sourceList,
 			  SourcePath sourcePath,
@@ -75,6 +99,36 @@ final class PersistenceStore
 	          Map swcFileChecksums,
 	          String description,
 	          Map archiveFiles) throws IOException
+	{
+		assert file != null;
+
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		int count = encode(fileSpec, sourceList, sourcePath, resources, bundlePath, sources, units,
+						   checksum, cmd_checksum, linker_checksum, swc_checksum,
+						   swcDefSignatureChecksums, swcFileChecksums, description, archiveFiles, out);
+		file.write(out.toByteArray());
+		return count;
+	}
+
+	/**
+	 * Encodes the compilation units the same way write() writes them, for writing elsewhere.
+	 */
+	int encode(FileSpec fileSpec,
+			   SourceList sourceList,
+			   SourcePath sourcePath,
+			   ResourceContainer resources,
+			   ResourceBundlePath bundlePath,
+			   List sources,
+			   List units,
+			   int checksum,
+			   int cmd_checksum,
+			   int linker_checksum,
+			   int swc_checksum,
+			   Map swcDefSignatureChecksums,
+			   Map swcFileChecksums,
+			   String description,
+			   Map archiveFiles,
+			   ByteArrayOutputStream out) throws IOException
 	{
 		Map pool = new HashMap();
 
@@ -90,6 +144,7 @@ final class PersistenceStore
 		ByteArrayOutputStream cs1 = new ByteArrayOutputStream();
         ByteArrayOutputStream cs2 = new ByteArrayOutputStream();
         ByteArrayOutputStream af = new ByteArrayOutputStream();
+		ByteArrayOutputStream pl = new ByteArrayOutputStream();
 
 		writeHeader(checksum, cmd_checksum, linker_checksum, swc_checksum, description, h);
 		if (fileSpec != null)
@@ -125,11 +180,11 @@ final class PersistenceStore
 
 		int totalCount = c1.size() + c2.size() + c3.size() + c4.size() + c5.size();
 
-		writeCompilationUnits(c1, pool, src, cu);
-		writeCompilationUnits(c2, pool, src, cu);
-		writeCompilationUnits(c3.values(), pool, src, cu);
-		writeCompilationUnits(c5.values(), pool, src, cu);
-		writeCompilationUnits(c4, pool, src, cu);
+		writeCompilationUnits(c1, pool, src, cu, pl);
+		writeCompilationUnits(c2, pool, src, cu, pl);
+		writeCompilationUnits(c3.values(), pool, src, cu, pl);
+		writeCompilationUnits(c5.values(), pool, src, cu, pl);
+		writeCompilationUnits(c4, pool, src, cu, pl);
 
 		if (swcDefSignatureChecksums != null)
 		{
@@ -148,41 +203,29 @@ final class PersistenceStore
 				
 		writeConstantPool(pool, cp);
 
-		file.write(h.toByteArray());
-
-		file.writeInt(cp.size());
-		file.write(cp.toByteArray());
-		
-		file.writeInt(fs.size());
-		file.write(fs.toByteArray());
-
-		file.writeInt(sl.size());
-		file.write(sl.toByteArray());
-
-		file.writeInt(sp.size());
-		file.write(sp.toByteArray());
-
-		file.writeInt(rbp.size());
-		file.write(rbp.toByteArray());
-
-		file.writeInt(count);
-		file.write(s.toByteArray());
-
-		file.writeInt(swcDefSignatureChecksums == null ? 0 : swcDefSignatureChecksums.size());
-		file.write(cs1.toByteArray());
+		// each section starts with its size or count
+		ByteArrayOutputStream[] contents = new ByteArrayOutputStream[] { cp, fs, sl, sp, rbp, s, cs1, cs2, af, src, cu, pl };
+		int[] counts = new int[] { cp.size(), fs.size(), sl.size(), sp.size(), rbp.size(), count,
+								   swcDefSignatureChecksums == null ? 0 : swcDefSignatureChecksums.size(),
+								   swcFileChecksums == null ? 0 : swcFileChecksums.size(),
+								   archiveFiles == null ? 0 : archiveFiles.size(),
+								   totalCount, cu.size(), pl.size() };
 
-		file.writeInt(swcFileChecksums == null ? 0 : swcFileChecksums.size());
-		file.write(cs2.toByteArray());
-
-        file.writeInt(archiveFiles == null ? 0 : archiveFiles.size());
-        file.write(af.toByteArray());
-
-		file.writeInt(totalCount);
-		file.writeInt(src.size());
-		file.writeInt(cu.size());
+		ByteArrayOutputStream toc = new ByteArrayOutputStream(SECTION_COUNT * 4);
+		int offset = h.size() + SECTION_COUNT * 4;
+		for (int i = 0; i < SECTION_COUNT; i++)
+		{
+			writeU32(toc, offset);
+			offset += 4 + contents[i].size();
+		}
 
-		file.write(src.toByteArray());
-		file.write(cu.toByteArray());
+		h.writeTo(out);
+		toc.writeTo(out);
+		for (int i = 0; i < SECTION_COUNT; i++)
+		{
+			writeU32(out, counts[i]);
+			contents[i].writeTo(out);
+		}
 
 		return totalCount;
 	}
@@ -493,7 +536,8 @@ final class PersistenceStore
 		}
 	}
 
-	private void writeCompilationUnits(Collection sources, Map pool, OutputStream src, OutputStream cu) throws IOException
+	private void writeCompilationUnits(Collection sources, Map pool, OutputStream src, OutputStream cu,
+									   ByteArrayOutputStream pl) throws IOException
 	{
 		for (Iterator i = sources.iterator(); i.hasNext();)
         {
@@ -503,7 +547,7 @@ final class PersistenceStore
 			CompilationUnit u = s.getCompilationUnit();
 			if (u != null)
 			{
-				writeCompilationUnit(u, pool, cu);
+				writeCompilationUnit(u, pool, cu, pl);
 			}
 		}
 	}
@@ -589,9 +633,17 @@ final class PersistenceStore
 		}
 	}
 
-	private void writeCompilationUnit(CompilationUnit u, Map pool, OutputStream cu) throws IOException
+	private void writeCompilationUnit(CompilationUnit u, Map pool, OutputStream cu, ByteArrayOutputStream pl)
+		throws IOException
 	{
-		writeU32(cu, addBytes(pool, u.bytes.toByteArray()));
+		// a unit kept from the last compilation may not have been used since
+		u.readPayload();
+
+		byte[] abc = u.bytes.toByteArray();
+		writeU32(cu, pl.size());
+		writeU32(cu, abc.length);
+		writeBytes(pl, abc);
+
 		writeU32(cu, u.getWorkflow());
 		writeU32(cu, u.getState());
 
@@ -689,10 +741,32 @@ final class PersistenceStore
 			writeU8(cu, 0);
 		}
 
-		writeAssets(u, pool, cu);
+		writeAssets(u, pool, cu, pl);
+		writeCoverageKeys(u, pool, cu);
+	}
+
+	private void writeCoverageKeys(CompilationUnit u, Map pool, OutputStream cu) throws IOException
+	{
+		CoverageKeys keys = u.coverageKeys;
+		int size = keys == null ? 0 : keys.size();
+		writeU32(cu, size);
+
+		for (int i = 0; i < size; i++)
+		{
+			String debugFileName = keys.getDebugFileName(i);
+
+			writeU32(cu, addString(pool, keys.getFunction(i)));
+			writeU8(cu, keys.getKind(i));
+			writeU32(cu, keys.getLine(i));
+			writeU32(cu, keys.getAuxLine(i));
+			writeU32(cu, keys.getColumn(i));
+			writeU32(cu, debugFileName == null ? -1 : addString(pool, debugFileName));
+			writeU32(cu, keys.getId(i));
+			writeU32(cu, keys.getCovering(i));
+		}
 	}
 
-	private void writeAssets(CompilationUnit u, Map pool, OutputStream cu) throws IOException
+	private void writeAssets(CompilationUnit u, Map pool, OutputStream cu, ByteArrayOutputStream pl) throws IOException
 	{
 		int size = u.getAssets().count();
 		writeU32(cu, size);
@@ -742,11 +816,11 @@ final class PersistenceStore
 
 			encoder.export(movie);
 
-			ByteArrayOutputStream baos = new ByteArrayOutputStream();
-			handler.writeTo(baos);
+			int start = pl.size();
+			handler.writeTo(pl);
 
-			writeU32(cu, baos.size());
-			writeBytes(cu, baos.toByteArray());
+			writeU32(cu, start);
+			writeU32(cu, pl.size() - start);
 		}
 	}
 	
@@ -762,7 +836,22 @@ final class PersistenceStore
 	         Map swcFileChecksums,
 	         Map archiveFileChecksums) throws IOException
 	{
-		if (!readVersion())
+		assert file != null;
+
+		// copied rather than mapped, so the caller can rewrite or replace the file as soon as this returns
+		FileChannel channel = file.getChannel();
+		in = ByteBuffer.allocate((int) channel.size());
+		channel.position(0);
+		while (in.hasRemaining())
+		{
+			if (channel.read(in) == -1)
+			{
+				throw new EOFException();
+			}
+		}
+		in.flip();
+
+		if (in.remaining() < 8 || !readVersion())
 		{
 			LocalizationManager l10n = ThreadLocalToolkit.getLocalizationManager();
 			throw new IOException(l10n.getLocalizedTextString(new ObsoleteCacheFileFormat()));
@@ -773,44 +862,59 @@ final class PersistenceStore
 			return -1;
 		}
 
+		sections = new int[SECTION_COUNT];
+		for (int i = 0; i < SECTION_COUNT; i++)
+		{
+			sections[i] = readU32();
+		}
+
+		seek(CONSTANT_POOL);
 		Object[] pool = readConstantPool();
 
+		seek(FILE_SPEC);
 		if (!readFileSpec(pool, fileSpec))
 		{
 			return -2;
 		}
 
+		seek(SOURCE_LIST);
 		if (!readSourceList(pool, sourceList))
 		{
 			return -3;
 		}
 
+		seek(SOURCE_PATH);
 		if (!readSourcePath(pool, sourcePath))
 		{
 			return -4;
 		}
 
+		seek(BUNDLE_PATH);
 		if (!readResourceBundlePath(pool, bundlePath))
 		{
 			return -5;
 		}
 		
 		Map owners = new HashMap();
+		seek(SOURCE_NAMES);
 		if (!readSourceNames(pool, sources, units, owners))
 		{
 			return -6;
 		}
 		
+		seek(SWC_DEF_SIGNATURE_CHECKSUMS);
 		if (!readSwcDefSignatureChecksums(pool, swcDefSignatureChecksums))
 		{
 			return -7;
 		}
 
+		seek(SWC_FILE_CHECKSUMS);
 		if (!readFileChecksums(pool, swcFileChecksums))
 		{
 			return -8;
 		}
 
+		seek(ARCHIVE_FILES);
         if (!readFileChecksums(pool, archiveFileChecksums))
         {
             return -9;
@@ -1352,10 +1456,15 @@ final class PersistenceStore
 	                                 ResourceContainer resources, ResourceBundlePath bundlePath,
 	                                 List sources, List units, Map owners) throws IOException
 	{
-		int src_count = readU32(), src_size = readU32(), cu_size = readU32();
+		seek(SOURCES);
+		int src_count = readU32();
+		InputStream src_in = new BufferInputStream(section(SOURCES, sections[UNITS] - sections[SOURCES] - 4));
 
-		ByteArrayInputStream src_in = new ByteArrayInputStream(readBytes(src_size));
-		ByteArrayInputStream cu_in = new ByteArrayInputStream(readBytes(cu_size));
+		seek(UNITS);
+		InputStream cu_in = new BufferInputStream(section(UNITS, readU32()));
+
+		seek(PAYLOADS);
+		ByteBuffer payloads = section(PAYLOADS, readU32());
 
 		Map m = sourcePath.sources(), mappings = new HashMap(), rbMappings = new HashMap();
 		
@@ -1385,7 +1494,7 @@ final class PersistenceStore
 
 		for (int i = 0; i < src_count; i++)
 		{
-			readCompilationUnit(pool, mappings, rbMappings, src_in, cu_in, fileSpec, sourceList, sourcePath, resources, bundlePath, owners);
+			readCompilationUnit(pool, mappings, rbMappings, src_in, cu_in, payloads, fileSpec, sourceList, sourcePath, resources, bundlePath, owners);
 		}
 		
 		for (int i = 0, len = sources == null ? 0 : sources.size(); i < len; i++)
@@ -1404,7 +1513,7 @@ final class PersistenceStore
 	}
 
 	private void readCompilationUnit(Object[] pool, Map mappings, Map rbMappings, InputStream src_in, InputStream cu_in,
-	                                 FileSpec fileSpec, SourceList sourceList, SourcePath sourcePath,
+	                                 ByteBuffer payloads, FileSpec fileSpec, SourceList sourceList, SourcePath sourcePath,
 	                                 ResourceContainer resources, ResourceBundlePath bundlePath, Map owners)
 	    throws IOException
 	{
@@ -1495,7 +1604,10 @@ final class PersistenceStore
 		}
 
 
-		byte[] abc = (hasUnit) ? (byte[]) pool[readU32(cu_in)] : null;
+		int abcOffset = (hasUnit) ? readU32(cu_in) : 0;
+		int abcLength = (hasUnit) ? readU32(cu_in) : 0;
+		// ResourceContainer sources are made from their bytecode, so it can't wait
+		byte[] abc = (hasUnit && owner == 3) ? readPayload(payloads, abcOffset, abcLength) : null;
 		Source s = null;
 
 		if (owner == 0) // FileSpec
@@ -1621,7 +1733,6 @@ final class PersistenceStore
             
             u.setSignatureChecksum(signatureChecksum);
 
-			u.bytes.addAll(abc);
 			u.setWorkflow(readU32(cu_in));
 			u.setState(readU32(cu_in));
 
@@ -1700,7 +1811,16 @@ final class PersistenceStore
 				}
 			}
 
-			readAssets(pool, u, cu_in);
+			Map assets = readAssets(pool, u, cu_in);
+			int swfOffset = (assets != null) ? readU32(cu_in) : 0;
+			int swfLength = (assets != null) ? readU32(cu_in) : 0;
+			readCoverageKeys(pool, u, cu_in);
+
+			u.setPayload(new Payload(payloads, abcOffset, abcLength, swfOffset, swfLength, assets));
+			if (abc != null && !u.readPayload())
+			{
+				throw new IOException(name);
+			}
 		}
 		
 		if (s != null)
@@ -1724,79 +1844,124 @@ final class PersistenceStore
 		}
 	}
 
-	private void readAssets(final Object[] pool, final CompilationUnit u, final InputStream cu_in) throws IOException
+	private void readCoverageKeys(Object[] pool, CompilationUnit u, InputStream cu_in) throws IOException
 	{
 		int size = readU32(cu_in);
 		if (size > 0)
 		{
-			int assetCount = readU32(cu_in);
-			final Map assets = new HashMap();
+			CoverageKeys keys = new CoverageKeys(size);
+			for (int i = 0; i < size; i++)
+			{
+				String function = (String) pool[readU32(cu_in)];
+				byte kind = (byte) readU8(cu_in);
+				int line = readU32(cu_in);
+				int auxLine = readU32(cu_in);
+				int column = readU32(cu_in);
+				int key = keys.add(function, kind, line, auxLine, column);
+
+				int debugFileName = readU32(cu_in);
+				if (debugFileName != -1)
+				{
+					keys.setDebugFileName(key, (String) pool[debugFileName]);
+				}
+				keys.setId(key, readU32(cu_in));
+				keys.setCovering(key, readU32(cu_in));
+			}
+			u.coverageKeys = keys;
+		}
+	}
 
-			PathResolver resolver = ThreadLocalToolkit.getPathResolver();
+	/**
+	 * Adds the unit's AssetInfos, without their tags.  The tags are read with the rest of the payload.
+	 *
+	 * @return the AssetInfos by class name, or null if the unit has no assets
+	 */
+	private Map readAssets(Object[] pool, CompilationUnit u, InputStream cu_in) throws IOException
+	{
+		int size = readU32(cu_in);
+		if (size == 0)
+		{
+			return null;
+		}
 
-			for (int i = 0; i < assetCount; i++)
-			{
-				String className = (String) pool[readU32(cu_in)];
-				String pathName = (String) pool[readU32(cu_in)];
+		int assetCount = readU32(cu_in);
+		Map assets = new HashMap();
 
-				VirtualFile f = null;
-				if (pathName.length() == 0)
+		PathResolver resolver = ThreadLocalToolkit.getPathResolver();
+
+		for (int i = 0; i < assetCount; i++)
+		{
+			String className = (String) pool[readU32(cu_in)];
+			String pathName = (String) pool[readU32(cu_in)];
+
+			VirtualFile f = null;
+			if (pathName.length() == 0)
+			{
+				f = null;
+			}
+			else
+			{
+				f = resolver.resolve(pathName);
+				if (f == null)
 				{
-					f = null;
+					f = new DeletedFile(pathName);
 				}
-				else
+			}
+
+			AssetInfo assetInfo = new AssetInfo(null, f, readLong(cu_in), null);
+			assets.put(className, assetInfo);
+			u.getAssets().add(className, assetInfo);
+		}
+
+		return assets;
+	}
+
+	private void readAssetTags(Map assets, byte[] swf) throws IOException
+	{
+		Movie movie = new Movie();
+		MovieDecoder movieDecoder = new MovieDecoder(movie);
+		TagDecoder tagDecoder = new TagDecoder(new ByteArrayInputStream(swf));
+		tagDecoder.parse(movieDecoder);
+
+		for (Iterator frames = movie.frames.iterator(); frames.hasNext(); )
+		{
+			Frame frame = (Frame) frames.next();
+
+			for (Iterator it = frame.symbolClass.class2tag.entrySet().iterator(); it.hasNext();)
+			{
+				Map.Entry e = (Map.Entry) it.next();
+				String className = (String) e.getKey();
+				DefineTag tag = (DefineTag) e.getValue();
+				AssetInfo assetInfo = (AssetInfo) assets.get(className);
+				assetInfo.setDefineTag(tag);
+
+				// We special case DefineFont tags so that the FontManager
+				// can cache them and avoid re-creating them on subsequent
+				// compiles.
+				if (fontManager != null && tag instanceof DefineFont)
 				{
-					f = resolver.resolve(pathName);
-					if (f == null)
+					VirtualFile f = assetInfo.getPath();
+					String path = null;
+					if (f != null)
 					{
-						f = new DeletedFile(pathName);
+						path = f.getURL();
 					}
-				}
 
-				assets.put(className, new AssetInfo(null, f, readLong(cu_in), null));
-			}
-
-			int swfSize = readU32(cu_in);
-			ByteArrayInputStream in = new ByteArrayInputStream(readBytes(cu_in, swfSize));
-
-			Movie movie = new Movie();
-			MovieDecoder movieDecoder = new MovieDecoder(movie);
-			TagDecoder tagDecoder = new TagDecoder(in);
-			tagDecoder.parse(movieDecoder);
-
-            for (Iterator frames = movie.frames.iterator(); frames.hasNext(); )
-			{
-			    Frame frame = (Frame) frames.next();
-
-			    for (Iterator it = frame.symbolClass.class2tag.entrySet().iterator(); it.hasNext();)
-			    {
-					Map.Entry e = (Map.Entry) it.next();
-					String className = (String) e.getKey();
-					DefineTag tag = (DefineTag) e.getValue();
-					AssetInfo assetInfo = (AssetInfo) assets.get(className);
-					assetInfo.setDefineTag(tag);
-
-					u.getAssets().add(className, assetInfo);
-
-                    // We special case DefineFont tags so that the FontManager 
-					// can cache them and avoid re-creating them on subsequent
-                    // compiles.
-                    if (fontManager != null && tag instanceof DefineFont)
-                    {
-                        VirtualFile f = assetInfo.getPath();
-                        String path = null;
-                        if (f != null)
-                        {
-                            path = f.getURL();
-                        }
-
-                        fontManager.loadDefineFont((DefineFont)tag, path);
-                    }
+					fontManager.loadDefineFont((DefineFont)tag, path);
 				}
 			}
 		}
 	}
 
+	private static byte[] readPayload(ByteBuffer payloads, int offset, int length)
+	{
+		byte[] b = new byte[length];
+		ByteBuffer view = payloads.duplicate();
+		view.position(offset);
+		view.get(b);
+		return b;
+	}
+
 	// Methods for adding constant pool entries
 
 	private int addObject(Map pool, Object obj)
@@ -1814,11 +1979,6 @@ final class PersistenceStore
 		return index.intValue();
 	}
 
-	private int addBytes(Map pool, byte[] b)
-	{
-		return addObject(pool, b);
-	}
-
 	private int addString(Map pool, String s)
 	{
 		return addObject(pool, s);
@@ -1943,18 +2103,44 @@ final class PersistenceStore
 	private byte[] readBytes(int length) throws IOException
 	{
 		byte[] b = new byte[length];
-		file.readFully(b);
+		in.get(b);
 		return b;
 	}
 
 	private int readU32() throws IOException
 	{
-		return file.readInt();
+		return in.getInt();
 	}
 
 	private int readU8() throws IOException
 	{
-		return file.read();
+		return in.get() & 0xFF;
+	}
+
+	private void seek(int section) throws IOException
+	{
+		int offset = sections[section];
+		if (offset < 0 || offset + 4 > in.limit())
+		{
+			throw new IOException("bad section offset: " + offset);
+		}
+		in.position(offset);
+	}
+
+	/**
+	 * @return the length bytes of a section after its size or count
+	 */
+	private ByteBuffer section(int section, int length) throws IOException
+	{
+		int start = sections[section] + 4;
+		if (length < 0 || start + length > in.limit())
+		{
+			throw new IOException("bad section size: " + length);
+		}
+		ByteBuffer view = in.duplicate();
+		view.position(start);
+		view.limit(start + length);
+		return view.slice();
 	}
 
 	private byte[] readBytes(InputStream in, int length) throws IOException
@@ -1992,6 +2178,77 @@ final class PersistenceStore
 
 	// Helper classes
 
+	private static class BufferInputStream extends InputStream
+	{
+		BufferInputStream(ByteBuffer buffer)
+		{
+			this.buffer = buffer;
+		}
+
+		private final ByteBuffer buffer;
+
+		public int read()
+		{
+			return buffer.hasRemaining() ? buffer.get() & 0xFF : -1;
+		}
+
+		public int read(byte[] b, int off, int len)
+		{
+			if (!buffer.hasRemaining())
+			{
+				return -1;
+			}
+			len = Math.min(len, buffer.remaining());
+			buffer.get(b, off, len);
+			return len;
+		}
+	}
+
+	/**
+	 * The bytecode and the encoded asset tags of a unit, left in the file's bytes until the unit is used.
+	 */
+	final class Payload
+	{
+		Payload(ByteBuffer payloads, int abcOffset, int abcLength, int swfOffset, int swfLength, Map assets)
+		{
+			this.payloads = payloads;
+			this.abcOffset = abcOffset;
+			this.abcLength = abcLength;
+			this.swfOffset = swfOffset;
+			this.swfLength = swfLength;
+			this.assets = assets;
+		}
+
+		private final ByteBuffer payloads;
+		private final int abcOffset, abcLength, swfOffset, swfLength;
+		private final Map assets; // Map<String, AssetInfo>
+
+		/**
+		 * @return false if the payload couldn't be read
+		 */
+		boolean read(CompilationUnit u)
+		{
+			try
+			{
+				u.bytes.addAll(readPayload(payloads, abcOffset, abcLength));
+				if (assets != null)
+				{
+					readAssetTags(assets, readPayload(payloads, swfOffset, swfLength));
+				}
+				return true;
+			}
+			catch (IOException ex)
+			{
+				return false;
+			}
+			catch (RuntimeException ex)
+			{
+				// e.g. an offset past the end of the file
+				return false;
+			}
+		}
+	}
+
 	private class ArrayKey
 	{
 		ArrayKey()
@@ -0,0 +1,33 @@
+////////////////////////////////////////////////////////////////////////////////
+//
+//  ADOBE SYSTEMS INCORPORATED
+//  Copyright 2005-2007 Adobe Systems Incorporated
+//  All Rights Reserved.
+//
+//  NOTICE: Adobe permits you to use, modify, and distribute this file
+//  in accordance with the terms of the license agreement accompanying it.
+//
+////////////////////////////////////////////////////////////////////////////////
+
+package flex2.compiler;
+
+/**
+ * Implemented by compilers whose parse1() starts with work that only depends on the source itself,
+ * i.e. scanning and parsing.  When API parses on several threads, it calls preparse() for a number
+ * of sources at once on worker threads, and then parse1() for each of them in order, which picks
+ * up the result.
+ *
+ * preparse() must not touch anything shared by sources other than through the SymbolTable's
+ * perCompileData, which is set up for parallel parsing.  ThreadLocalToolkit.getLogger() is the
+ * source's logger.
+ */
+public interface Preparser
+{
+	void preparse(Source source, SymbolTable symbolTable);
+
+	/**
+	 * Forget what preparse() kept for sources that parse1() wasn't called for, e.g. because there were
+	 * too many errors.
+	 */
+	void clearPreparsed();
+}
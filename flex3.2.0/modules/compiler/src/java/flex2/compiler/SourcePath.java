@@ -11,6 +11,7 @@
 
 package flex2.compiler;
 
+import flex2.compiler.io.DirectoryIndex;
 import flex2.compiler.io.FileUtil;
 import flex2.compiler.io.LocalFile;
 import flex2.compiler.io.VirtualFile;
@@ -177,18 +178,7 @@ public class SourcePath extends SourcePathBase
 			return true;
 		}
 
-		String relativePath = packageName.replace('.', File.separatorChar);
-		String fullPath = dir.getPath() + File.separator + relativePath;
-
-		if (dirs.get(fullPath) == NO_DIR)
-		{
-			return false;
-		}
-
-		boolean result = new File(dir, relativePath).isDirectory();
-		dirs.put(fullPath, result ? fullPath : NO_DIR);
-
-		return result;
+		return index.isDirectory(dir, packageName.replace('.', File.separatorChar));
 	}
 	
 	public List getPaths()
@@ -202,8 +192,6 @@ public class SourcePath extends SourcePathBase
  */
 abstract class SourcePathBase
 {
-	protected final static Object NO_DIR = new Object();
-
 	static void addApplicationParentToSourcePath(VirtualFile appPath, VirtualFile[] classPath, List directories)
 	{
 		if (appPath != null)
@@ -277,7 +265,7 @@ abstract class SourcePathBase
 
 		hits = new HashSet();
 		misses = new HashSet(1024);
-		dirs = new HashMap();
+		index = new DirectoryIndex();
 		warnings = new ArrayList(5);
 	}
 
@@ -286,7 +274,7 @@ abstract class SourcePathBase
 	protected boolean allowSourcePathOverlap;
 
 	protected final Set hits, misses;
-	protected final HashMap dirs;
+	protected final DirectoryIndex index;
 	protected final List warnings;
 
 	protected String constructClassName(String namespaceURI, String localPart)
@@ -401,30 +389,20 @@ abstract class SourcePathBase
 
 	protected File findFile(File directory, String relativePath, String mimeType)
 	{
-		String fullPath = directory.getPath() + File.separator + relativePath;
-		int lastSlash = fullPath.lastIndexOf(File.separator);
-		String dir = null;
-		if (lastSlash != -1)
+		String path = relativePath + MimeMappings.getExtension(mimeType);
+
+		// most lookups are misses, answer those from the directory listings
+		if (!index.exists(directory, path))
 		{
-			dir = fullPath.substring(0, lastSlash);
-			if (dirs.get(dir) == NO_DIR)
-			{
-				return null;
-			}
+			return null;
 		}
 
-		String path = relativePath + MimeMappings.getExtension(mimeType);
 		File f = FileUtil.openFile(directory, path);
 
 		if ((f != null) && f.isFile() && FileUtil.getCanonicalPath(f).endsWith(path))
 		{
 			return f;
 		}
-		else if (f != null && dir != null && !dirs.containsKey(dir))
-		{
-			File p = f.getParentFile();
-			dirs.put(dir, p != null && p.isDirectory() ? dir : NO_DIR);
-		}
 
 		return null;
 	}
@@ -505,7 +483,7 @@ abstract class SourcePathBase
 	{
 		hits.clear();
 		misses.clear();
-		dirs.clear();
+		index.refresh();
 	}
 
 	String[] getMimeTypes()
@@ -0,0 +1,158 @@
+////////////////////////////////////////////////////////////////////////////////
+//
+//  ADOBE SYSTEMS INCORPORATED
+//  Copyright 2005-2007 Adobe Systems Incorporated
+//  All Rights Reserved.
+//
+//  NOTICE: Adobe permits you to use, modify, and distribute this file
+//  in accordance with the terms of the license agreement accompanying it.
+//
+////////////////////////////////////////////////////////////////////////////////
+
+package flex2.compiler;
+
+import flex2.compiler.util.BufferedLogger;
+import flex2.compiler.util.LocalLogger;
+import flex2.compiler.util.ThreadLocalToolkit;
+
+import java.util.List;
+
+/**
+ * Does the same piece of work for a number of sources on worker threads.  While the workers run,
+ * the messages logged for each source are buffered, and afterwards they are passed on in the order
+ * of the sources, so the output is the same as when the sources are done one by one.  Each source
+ * must have a connected LocalLogger.
+ *
+ * @see API#preparse
+ * @see API#generate
+ */
+abstract class SourceWorkers
+{
+	SourceWorkers(String name, List sources)
+	{
+		this.name = name;
+		this.sources = sources;
+	}
+
+	private final String name;
+	private final List sources; // List<Source>
+
+	// the index of the next source to work on and what the first failed worker threw
+	private int next;
+	private Throwable failure;
+
+	/**
+	 * Called on a worker thread, with the ThreadLocalToolkit set up like the calling thread's and
+	 * the source's logger in place.
+	 */
+	abstract void work(int index, Source s);
+
+	/**
+	 * Work on all the sources with at most the given number of threads and wait for them to finish.
+	 * Rethrows what a worker threw, if any, once the messages have been passed on.
+	 */
+	void run(int threads)
+	{
+		int size = sources.size();
+		Logger[] originals = new Logger[size];
+		BufferedLogger[] buffers = new BufferedLogger[size];
+		for (int i = 0; i < size; i++)
+		{
+			LocalLogger local = ((Source) sources.get(i)).getLogger();
+			originals[i] = local.getOriginal();
+			buffers[i] = new BufferedLogger();
+			local.setOriginal(buffers[i]);
+		}
+
+		final ThreadLocalToolkit.Settings settings = ThreadLocalToolkit.getSettings();
+		try
+		{
+			Thread[] workers = new Thread[Math.min(threads, size)];
+			for (int i = 0; i < workers.length; i++)
+			{
+				workers[i] = new Thread(name + "-" + i)
+				{
+					public void run()
+					{
+						settings.apply();
+						for (int k = claim(); k != -1; k = claim())
+						{
+							Source s = (Source) sources.get(k);
+							ThreadLocalToolkit.setLogger(s.getLogger());
+							try
+							{
+								work(k, s);
+							}
+							catch (Throwable t)
+							{
+								fail(t);
+							}
+							finally
+							{
+								ThreadLocalToolkit.setLogger(null);
+							}
+						}
+					}
+				};
+				workers[i].start();
+			}
+
+			for (int i = 0; i < workers.length; i++)
+			{
+				while (workers[i].isAlive())
+				{
+					try
+					{
+						workers[i].join();
+					}
+					catch (InterruptedException ex)
+					{
+					}
+				}
+			}
+		}
+		finally
+		{
+			for (int i = 0; i < size; i++)
+			{
+				LocalLogger local = ((Source) sources.get(i)).getLogger();
+				local.setOriginal(originals[i]);
+				buffers[i].replay(originals[i]);
+			}
+		}
+
+		if (failure instanceof RuntimeException)
+		{
+			throw (RuntimeException) failure;
+		}
+		else if (failure instanceof Error)
+		{
+			throw (Error) failure;
+		}
+		else if (failure != null)
+		{
+			throw new RuntimeException(failure);
+		}
+	}
+
+	/**
+	 * @return the index of the next source to work on, or -1 when there is none left or the compilation is stopping
+	 */
+	private synchronized int claim()
+	{
+		if (next >= sources.size() || failure != null || API.forcedToStop())
+		{
+			return -1;
+		}
+
+		return next++;
+	}
+
+	private synchronized void fail(Throwable t)
+	{
+		if (failure == null)
+		{
+			failure = t;
+		}
+	}
+}
@@ -11,6 +11,7 @@
 
 package flex2.compiler.as3;
 
+import flex2.compiler.CoverageKeys;
 import flex2.compiler.Source;
 import flex2.compiler.util.LineNumberMap;
 import macromedia.asc.embedding.avmplus.ActionBlockEmitter;
@@ -18,6 +19,7 @@ import macromedia.asc.embedding.avmplus.RuntimeConstants;
 import macromedia.asc.semantics.ObjectValue;
 import macromedia.asc.util.ByteList;
 import macromedia.asc.util.Context;
+import macromedia.asc.util.IntNumberConstant;
 import macromedia.asc.util.Namespaces;
 import macromedia.asc.util.StringPrintWriter;
 
@@ -54,11 +56,62 @@ public final class BytecodeEmitter extends ActionBlockEmitter
 	private Source source;
 	private String currentFileName;
 	private Context cx;
+
+	// FLEXCOVER: when true, probes pass an integer key id to coverageHit() instead of the key string
+	private boolean coverageIndexed;
+
+	// FLEXCOVER: when true, a key whose code is dominated by an earlier probe in the same block gets no probe of its own
+	private boolean coverageBlockProbes;
+
+	// FLEXCOVER: when true, indexed probes check and set a flag in coverageSeen so that they only call coverageHit() once
+	private boolean coverageFirstHit;
+
+	// FLEXCOVER: the coverage keys recorded so far, created with the first one
+	private CoverageKeys coverageKeys;
 	
 	// C: not used when debug is false...
 	private Set lines;
 	private Line key;
 
+	/**
+	 * FLEXCOVER: switch the instrumentation to integer key ids.  The first probe of a coverage key takes the
+	 * next free id from ContextStatics.nextCoverageKeyId() and records it with the key in the unit's
+	 * CoverageKeys, so probing the key again reuses it.  The coverage metadata is written from those
+	 * CoverageKeys, and the emitted probe calls coverageHit(id) so that the runtime just bumps a counter.
+	 */
+	public void setCoverageIndexed(boolean coverageIndexed)
+	{
+		this.coverageIndexed = coverageIndexed;
+	}
+
+	/**
+	 * FLEXCOVER: only emit one probe per basic block.  Further keys recorded before control can leave or
+	 * re-enter the block are mapped onto the block's probe in the coverage metadata instead of being
+	 * instrumented, since their code runs exactly when the probe does (barring an exception partway through).
+	 */
+	public void setCoverageBlockProbes(boolean coverageBlockProbes)
+	{
+		this.coverageBlockProbes = coverageBlockProbes;
+	}
+
+	/**
+	 * FLEXCOVER: guard each indexed probe with a flag in the top-level coverageSeen ByteArray, so that once a
+	 * key has been hit its probe costs a lookup and a branch.  The runtime can clear the flags to re-arm
+	 * the probes for sampling.  Only applies together with setCoverageIndexed(true).
+	 */
+	public void setCoverageFirstHit(boolean coverageFirstHit)
+	{
+		this.coverageFirstHit = coverageFirstHit;
+	}
+
+	/**
+	 * FLEXCOVER: the coverage keys recorded by the instrumentation emitted so far, or null if there are none.
+	 */
+	public CoverageKeys getCoverageKeys()
+	{
+		return coverageKeys;
+	}
+
 	protected void DebugSlot(String name, int slot, int line)
 	{
         // Short circuit if the line is beyond the end of the file.
@@ -178,8 +231,7 @@ public final class BytecodeEmitter extends ActionBlockEmitter
             return false;
         }
         
-        String coverageKey = functionName + "@" + newLine;
-        instrumentCoverage(coverageKey, debugFileName);
+        instrumentCoverage(functionName, CoverageKeys.LINE, newLine, -1, -1, debugFileName);
         return true;
     }
 
@@ -212,21 +264,19 @@ public final class BytecodeEmitter extends ActionBlockEmitter
         boolean saved_emit_debug_info = emit_debug_info;
         emit_debug_info = false;
         
-        String branchLocation = linenum + "." + colnum;
+        byte kind = isBranch ? CoverageKeys.BRANCH_TAKEN : CoverageKeys.BRANCH_NOT_TAKEN;
         if (map != null)
         {
         	// If there is a map, then this indicates that actually we're in an MXML source file,
-        	// and the line number and column might be meaningless, so emit the MXML line number
-        	// followed by a "#" and the AS3 source's line and column.
+        	// and the line number and column might be meaningless, so record the MXML line number
+        	// along with the AS3 source's line and column.
         	//
-            branchLocation = newLine + "#" + branchLocation;
+            instrumentCoverage(functionName, kind, newLine, linenum, colnum, null);
+        }
+        else
+        {
+            instrumentCoverage(functionName, kind, linenum, -1, colnum, null);
         }
-        
-        String coverageKey = functionName + '@'
-            + (isBranch ? '+' : '-') 
-            + branchLocation;
-
-        instrumentCoverage(coverageKey, null);
         
         emit_debug_info = saved_emit_debug_info;
         
@@ -235,15 +285,42 @@ public final class BytecodeEmitter extends ActionBlockEmitter
 
     /**
      * Emit an instrumentation call to the top-level coverage() function containing the coverage key and,
-     * optionally, the source file name.
+     * optionally, the source file name.  In indexed mode the call goes to coverageHit() and passes the
+     * key's integer id instead.
      * 
-     * @param coverageKey a coverage key describing some executable coverage element in the program
+     * The key describing the executable element is recorded in coverageKeys; its string is only built here
+     * when it has to be passed to coverage().
+     *
+     * @see CoverageKeys#add(String, byte, int, int, int)
      * @param debugFileName an optional name to be recorded along with the key as part of the coverage metadata,
      * as an aid to finding the source later.  This name is not passed in the coverage() call.
      */
-    private void instrumentCoverage(String coverageKey, String debugFileName)
+    private void instrumentCoverage(String functionName, byte kind, int line, int auxLine, int column, String debugFileName)
     {
+        if (coverageKeys == null)
+        {
+            coverageKeys = new CoverageKeys();
+        }
+        int size = coverageKeys.size();
+        int key = coverageKeys.add(functionName, kind, line, auxLine, column);
+        if (debugFileName != null && coverageKeys.getDebugFileName(key) == null)
+        {
+            coverageKeys.setDebugFileName(key, debugFileName);
+        }
+
+        if (coverageBlockProbes && coverage_block_probe != -1)
+        {
+            // an earlier probe in this block already accounts for this key
+            if (key == size)
+            {
+                coverageKeys.setCovering(key, coverage_block_probe);
+            }
+            return;
+        }
+
         final String COVERAGE = "coverage";
+        final String COVERAGE_HIT = "coverageHit";
+        final String COVERAGE_SEEN = "coverageSeen";
         ObjectValue n = cx.publicNamespace();
         Namespaces ns = cx.statics.internNamespaces.intern(n);
         
@@ -254,31 +331,63 @@ public final class BytecodeEmitter extends ActionBlockEmitter
 	        PushScope();   // Need to push scope to keep verifier happy if scope stack is empty
         }
         
-        FindProperty(COVERAGE, ns, true, true, false);
-        PushString(coverageKey);
-        CallProperty(COVERAGE, ns, 1, true, false, false, false);
-        Pop();
+        if (coverageIndexed)
+        {
+            // the same key probed again counts towards the same id
+            int id = coverageKeys.getId(key);
+            if (id == -1)
+            {
+                id = cx.statics.nextCoverageKeyId();
+                coverageKeys.setId(key, id);
+            }
+
+            // if (!coverageSeen[id]) { coverageSeen[id] = true; coverageHit(id); }
+            int guard_addr = -1;
+            if (coverageFirstHit)
+            {
+                FindProperty(COVERAGE_SEEN, ns, true, true, false);
+                GetProperty(COVERAGE_SEEN, ns, true, false, false);
+                PushNumber(new IntNumberConstant(id), RuntimeConstants.TYPE_int);
+                GetProperty(false, false, false, ns);
+                guard_addr = BeginCoverageGuard();
+
+                FindProperty(COVERAGE_SEEN, ns, true, true, false);
+                GetProperty(COVERAGE_SEEN, ns, true, false, false);
+                PushNumber(new IntNumberConstant(id), RuntimeConstants.TYPE_int);
+                PushBoolean(true);
+                SetProperty(false, false, false, ns, false);
+            }
+
+            FindProperty(COVERAGE_HIT, ns, true, true, false);
+            PushNumber(new IntNumberConstant(id), RuntimeConstants.TYPE_int);
+            CallProperty(COVERAGE_HIT, ns, 1, true, false, false, false);
+            Pop();
+
+            if (guard_addr != -1)
+            {
+                EndCoverageGuard(guard_addr);
+            }
+        }
+        else
+        {
+            FindProperty(COVERAGE, ns, true, true, false);
+            PushString(coverageKeys.getKey(key));
+            CallProperty(COVERAGE, ns, 1, true, false, false, false);
+            Pop();
+        }
         
         if (scopeStackEmpty)
         {
         	PopScope();    // Pop the extra scope
         }
         
-        if (debugFileName != null)
+        // the key may have been elided before, but now it has a probe of its own
+        coverageKeys.setCovering(key, -1);
+
+        if (coverageBlockProbes)
         {
-            String fileName;
-            int idx = debugFileName.indexOf(";;");
-            if (idx >= 0)
-            {
-                fileName = debugFileName.substring(0, idx) + File.separator + debugFileName.substring(idx+2);
-            }
-            else
-            {
-                fileName = debugFileName.replace(';', File.separatorChar);
-            }
-            coverageKey += ";" + fileName;
+            coverage_block_probe = key;
         }
-        cx.statics.addCoverageKey(coverageKey);
     }
 
 	private int calculateLineNumber(int line)
@@ -38,7 +38,7 @@ import java.util.*;
 /**
  * @author Clement Wong
  */
-public class Compiler implements flex2.compiler.Compiler
+public class Compiler implements flex2.compiler.Compiler, flex2.compiler.Preparser
 {
 	static
 	{
@@ -48,6 +48,8 @@ public class Compiler implements flex2.compiler.Compiler
 	}
 
 	static final String AttrTypeTable = flex2.compiler.as3.reflect.TypeTable.class.getName();
+	static final String AttrCoverage = "coverage";
+	private static final String AttrPreparsedSyntaxTree = "PreparsedSyntaxTree";
 
 	public static class CompilerHandler extends macromedia.asc.embedding.CompilerHandler
 	{
@@ -182,6 +184,8 @@ public class Compiler implements flex2.compiler.Compiler
 	private List compilerExtensions; // List<Extension>
 	private flex2.compiler.as3.Configuration configuration;
     private boolean coachWarningsAsErrors = false;
+	// contexts of the sources preparsed on worker threads, holding the syntax tree until parse1()
+	private Map preparsed = Collections.synchronizedMap(new HashMap()); // Map<Source, flex2.compiler.Context>
 
 	public boolean isSupported(String mimeType)
 	{
@@ -203,6 +207,28 @@ public class Compiler implements flex2.compiler.Compiler
 		return source;
 	}
 
+	/**
+	 * Scan and parse the source on a worker thread, leaving the rest of parse1() for later.
+	 */
+	public void preparse(Source source, SymbolTable symbolTable)
+	{
+		CompilationUnit unit = source.getCompilationUnit();
+
+		if ((unit != null) && (unit.getSyntaxTree() != null))
+		{
+			return;
+		}
+
+		flex2.compiler.Context context = new flex2.compiler.Context();
+		context.setAttribute(AttrPreparsedSyntaxTree, parse(source, symbolTable, context));
+		preparsed.put(source, context);
+	}
+
+	public void clearPreparsed()
+	{
+		preparsed.clear();
+	}
+
 	public CompilationUnit parse1(Source source, SymbolTable symbolTable)
 	{
 		CompilationUnit unit = source.getCompilationUnit();
@@ -212,19 +238,113 @@ public class Compiler implements flex2.compiler.Compiler
 			return unit;
 		}
 
+		flex2.compiler.Context context = (flex2.compiler.Context) preparsed.remove(source);
+		ProgramNode node;
+		if (context != null)
+		{
+			node = (ProgramNode) context.removeAttribute(AttrPreparsedSyntaxTree);
+		}
+		else
+		{
+			context = new flex2.compiler.Context();
+			node = parse(source, symbolTable, context);
+		}
+
+		macromedia.asc.util.Context cx = (macromedia.asc.util.Context) context.getAttribute("cx");
+		symbolTable.perCompileData.handler = cx.getHandler();
+
+		if (ThreadLocalToolkit.errorCount() > 0)
+		{
+			return null;
+		}
+        
+		// conditional compilation: run the AS Configurator over the syntax tree
+		// (this must be done before transferDefinitions(), as early as possible after parsing)
+		node.evaluate(cx, new ConfigurationEvaluator());
+
+        if (ThreadLocalToolkit.errorCount() > 0)
+        {
+            return null;
+        }
+        
+		unit = source.newCompilationUnit(node, context);
+
+		SyntaxTreeEvaluator treeEvaluator = new SyntaxTreeEvaluator(unit);
+		treeEvaluator.setLocalizationManager(ThreadLocalToolkit.getLocalizationManager());
+		node.evaluate(cx, treeEvaluator);
+
+		if (ThreadLocalToolkit.errorCount() > 0)
+		{
+			return null;
+		}
+
+		int size = (node.statements != null) ? node.statements.items.size() : 0;
+		List definitions = new ArrayList((source.isSourcePathOwner() || source.isSourceListOwner() ||
+				                          source.isResourceBundlePathOwner()) ? 1 : size);
+		boolean inPackage = false;
+
+		for (int i = 0; i < size; i++)
+		{
+			Node n = (Node) node.statements.items.get(i);
+			if (n instanceof PackageDefinitionNode)
+			{
+				inPackage = !inPackage;
+			}
+			else if (n.isDefinition() && inPackage)
+			{
+				definitions.add(n);
+			}
+		}
+		// context.setAttribute("definitions", definitions);
+		transferDefinitions(unit.topLevelDefinitions, definitions);
+
+		InheritanceEvaluator inheritanceEvaluator = new InheritanceEvaluator();
+		node.evaluate(cx, inheritanceEvaluator);
+		unit.inheritance.addAll( inheritanceEvaluator.getInheritance() );	
+	
+		TypeTable typeTable = null;
+		if (symbolTable != null)
+		{
+			typeTable = (TypeTable) symbolTable.getContext().getAttribute(AttrTypeTable);
+			if (typeTable == null)
+			{
+				typeTable = new TypeTable(symbolTable);
+				symbolTable.getContext().setAttribute(AttrTypeTable, typeTable);
+			}
+		}
+
+		for (int i = 0, length = compilerExtensions.size(); i < length; i++)
+		{
+			((Extension) compilerExtensions.get(i)).parse1(unit, typeTable);
+
+			if (ThreadLocalToolkit.errorCount() > 0)
+			{
+				return null;
+			}
+		}
+
+		return unit;
+	}
+
+	/**
+	 * Scan and parse the source, and add the coverage references.  Doesn't touch anything shared with
+	 * other sources, except through symbolTable.perCompileData, so that it can run on worker threads.
+	 * The asc Context is put in the given context as "cx".
+	 *
+	 * @return the syntax tree, or null
+	 */
+	private ProgramNode parse(Source source, SymbolTable symbolTable, flex2.compiler.Context context)
+	{
 		String path = source.getName();
 		BufferedInputStream in = null;
 		ProgramNode node = null;
 
-		flex2.compiler.Context context = new flex2.compiler.Context();
-
 		macromedia.asc.util.Context cx = new macromedia.asc.util.Context(symbolTable.perCompileData);
 		cx.setScriptName(source.getName());
 		cx.setPath(source.getParent());
 
 		cx.setEmitter(symbolTable.emitter);
 		cx.setHandler(new CompilerHandler(source));
-		symbolTable.perCompileData.handler = cx.getHandler();
 
 		context.setAttribute("cx", cx);
         
@@ -307,20 +427,26 @@ public class Compiler implements flex2.compiler.Compiler
 		//			import coverage;
 		//			coverage;
 		//
-	    if (configuration.coverage())
+		//     Indexed instrumentation calls coverageHit() instead, so that function gets the same treatment,
+		//     as does the coverageSeen flag array tested by first-hit probes.
+		//
+		//     Sources filtered out by the coverage include and exclude patterns get neither the references nor
+		//     any instrumentation; the decision is made here, once, and kept for generate().
+		//
+	    boolean coverage = configuration.coverage() && configuration.coverageIncluded(source);
+	    context.setAttribute(AttrCoverage, coverage ? Boolean.TRUE : Boolean.FALSE);
+	    if (coverage)
 	    {
 	        NodeFactory nodeFactory = cx.getNodeFactory();
-	        IdentifierNode coverageId = nodeFactory.identifier("coverage");
-	        PackageIdentifiersNode coveragePkgId = nodeFactory.packageIdentifiers(null, coverageId, true);
-	        PackageNameNode coveragePkg = nodeFactory.packageName(coveragePkgId);
-	        ImportDirectiveNode coverageImport = nodeFactory.importDirective(null, coveragePkg, null, cx);
-	        node.statements.items.add(coverageImport);
-	        
-	        GetExpressionNode coverageGet = nodeFactory.getExpression(coverageId);
-	        MemberExpressionNode coverageMember = nodeFactory.memberExpression(null, coverageGet);
-	        ListNode coverageList = nodeFactory.list(null, coverageMember);
-	        ExpressionStatementNode coverageExpr = nodeFactory.expressionStatement(coverageList);
-	        node.statements.items.add(coverageExpr);
+	        addCoverageReference(nodeFactory, node, "coverage", cx);
+	        if (configuration.coverageIndexed())
+	        {
+	            addCoverageReference(nodeFactory, node, "coverageHit", cx);
+	        }
+	        if (configuration.coverageFirstHit())
+	        {
+	            addCoverageReference(nodeFactory, node, "coverageSeen", cx);
+	        }
 	    }
 	    
 	    // FLEXCOVER: This was moved down here because the node factory needs to still be alive for the above
@@ -328,77 +454,7 @@ public class Compiler implements flex2.compiler.Compiler
 	    //
         cleanNodeFactory(cx.getNodeFactory());
 
-		if (ThreadLocalToolkit.errorCount() > 0)
-		{
-			return null;
-		}
-        
-		// conditional compilation: run the AS Configurator over the syntax tree
-		// (this must be done before transferDefinitions(), as early as possible after parsing)
-		node.evaluate(cx, new ConfigurationEvaluator());
-
-        if (ThreadLocalToolkit.errorCount() > 0)
-        {
-            return null;
-        }
-        
-		unit = source.newCompilationUnit(node, context);
-
-		SyntaxTreeEvaluator treeEvaluator = new SyntaxTreeEvaluator(unit);
-		treeEvaluator.setLocalizationManager(ThreadLocalToolkit.getLocalizationManager());
-		node.evaluate(cx, treeEvaluator);
-
-		if (ThreadLocalToolkit.errorCount() > 0)
-		{
-			return null;
-		}
-
-		int size = (node.statements != null) ? node.statements.items.size() : 0;
-		List definitions = new ArrayList((source.isSourcePathOwner() || source.isSourceListOwner() ||
-				                          source.isResourceBundlePathOwner()) ? 1 : size);
-		boolean inPackage = false;
-
-		for (int i = 0; i < size; i++)
-		{
-			Node n = (Node) node.statements.items.get(i);
-			if (n instanceof PackageDefinitionNode)
-			{
-				inPackage = !inPackage;
-			}
-			else if (n.isDefinition() && inPackage)
-			{
-				definitions.add(n);
-			}
-		}
-		// context.setAttribute("definitions", definitions);
-		transferDefinitions(unit.topLevelDefinitions, definitions);
-
-		InheritanceEvaluator inheritanceEvaluator = new InheritanceEvaluator();
-		node.evaluate(cx, inheritanceEvaluator);
-		unit.inheritance.addAll( inheritanceEvaluator.getInheritance() );	
-	
-		TypeTable typeTable = null;
-		if (symbolTable != null)
-		{
-			typeTable = (TypeTable) symbolTable.getContext().getAttribute(AttrTypeTable);
-			if (typeTable == null)
-			{
-				typeTable = new TypeTable(symbolTable);
-				symbolTable.getContext().setAttribute(AttrTypeTable, typeTable);
-			}
-		}
-
-		for (int i = 0, length = compilerExtensions.size(); i < length; i++)
-		{
-			((Extension) compilerExtensions.get(i)).parse1(unit, typeTable);
-
-			if (ThreadLocalToolkit.errorCount() > 0)
-			{
-				return null;
-			}
-		}
-
-		return unit;
+		return node;
 	}
 
 	public void parse2(CompilationUnit unit, SymbolTable symbolTable)
@@ -684,6 +740,25 @@ public class Compiler implements flex2.compiler.Compiler
 	}
 
 
+	/**
+	 * FLEXCOVER: append the equivalent of "import name; name;" to the program, so that the named
+	 * top-level coverage function is linked in along with the unit.
+	 */
+	private static void addCoverageReference(NodeFactory nodeFactory, ProgramNode node, String name, Context cx)
+	{
+	    IdentifierNode coverageId = nodeFactory.identifier(name);
+	    PackageIdentifiersNode coveragePkgId = nodeFactory.packageIdentifiers(null, coverageId, true);
+	    PackageNameNode coveragePkg = nodeFactory.packageName(coveragePkgId);
+	    ImportDirectiveNode coverageImport = nodeFactory.importDirective(null, coveragePkg, null, cx);
+	    node.statements.items.add(coverageImport);
+
+	    GetExpressionNode coverageGet = nodeFactory.getExpression(coverageId);
+	    MemberExpressionNode coverageMember = nodeFactory.memberExpression(null, coverageGet);
+	    ListNode coverageList = nodeFactory.list(null, coverageMember);
+	    ExpressionStatementNode coverageExpr = nodeFactory.expressionStatement(coverageList);
+	    node.statements.items.add(coverageExpr);
+	}
+
 	public void generate(CompilationUnit unit, SymbolTable symbolTable)
 	{
 		TypeTable typeTable = (symbolTable != null) ? (TypeTable) symbolTable.getContext().getAttribute(AttrTypeTable) : null;
@@ -695,10 +770,13 @@ public class Compiler implements flex2.compiler.Compiler
 		ProgramNode node = (ProgramNode) unit.getSyntaxTree();
 
 		LineNumberMap map = (LineNumberMap) context.getAttribute("LineNumberMap");
-		Emitter emitter = new BytecodeEmitter(cx, unit.getSource(),
-		                                      configuration != null && configuration.debug(),
-		                                      configuration != null && configuration.coverage(),
-		                                      (configuration != null && configuration.adjustOpDebugLine()) ? map : null);
+		BytecodeEmitter emitter = new BytecodeEmitter(cx, unit.getSource(),
+		                                              configuration != null && configuration.debug(),
+		                                              context.getAttribute(AttrCoverage) == Boolean.TRUE,
+		                                              (configuration != null && configuration.adjustOpDebugLine()) ? map : null);
+		emitter.setCoverageIndexed(configuration != null && configuration.coverageIndexed());
+		emitter.setCoverageBlockProbes(configuration != null && configuration.coverageBlockProbes());
+		emitter.setCoverageFirstHit(configuration != null && configuration.coverageFirstHit());
 
 		cx.pushScope(node.frame);
 		CodeGenerator generator = new CodeGenerator(emitter);
@@ -726,11 +804,10 @@ public class Compiler implements flex2.compiler.Compiler
 			}
 		}
 
-		// FLEXCOVER: Copy the generated coverage keys from the Context into the top-level CompilationUnit
+		// FLEXCOVER: Hand the coverage keys recorded by the emitter to the top-level CompilationUnit
 		// that caused this one to be generated.
 		CompilationUnit originalUnit = unit.getSource().getCanonicalSource().getCompilationUnit();
-        originalUnit.coverageKeys = cx.getCoverageKeys();
-        cx.clearCoverageKeys();
+        originalUnit.coverageKeys = emitter.getCoverageKeys();
 
 		cleanSlots((ObjectValue) unit.typeInfo, cx, unit.topLevelDefinitions);
 		unit.getContext().removeAttribute("cx");
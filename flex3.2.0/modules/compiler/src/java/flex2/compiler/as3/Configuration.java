@@ -11,6 +11,7 @@
 
 package flex2.compiler.as3;
 
+import flex2.compiler.Source;
 import macromedia.asc.util.ObjectList;
 
 /**
@@ -25,6 +26,26 @@ public interface Configuration
 	
 	boolean coverage();
 
+	/**
+	 * Instrument coverage with integer key ids instead of key strings
+	 */
+	boolean coverageIndexed();
+
+	/**
+	 * Emit at most one coverage probe per basic block
+	 */
+	boolean coverageBlockProbes();
+
+	/**
+	 * Guard indexed coverage probes so that they only report a key the first time it is hit
+	 */
+	boolean coverageFirstHit();
+
+	/**
+	 * Whether the given source passes the coverage include and exclude patterns
+	 */
+	boolean coverageIncluded(Source source);
+
 	int dialect();
 	boolean adjustOpDebugLine();
 
@@ -0,0 +1,151 @@
+////////////////////////////////////////////////////////////////////////////////
+//
+//  ADOBE SYSTEMS INCORPORATED
+//  Copyright 2005-2007 Adobe Systems Incorporated
+//  All Rights Reserved.
+//
+//  NOTICE: Adobe permits you to use, modify, and distribute this file
+//  in accordance with the terms of the license agreement accompanying it.
+//
+////////////////////////////////////////////////////////////////////////////////
+
+package flex2.compiler.as3;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.regex.Pattern;
+
+import flex2.compiler.Source;
+
+/**
+ * FLEXCOVER: decides which sources get coverage instrumentation, based on the
+ * -compiler.coverage-include and -compiler.coverage-exclude patterns.
+ *
+ * A pattern containing a '/' or '\' is matched against the path of the source file.
+ * Any other pattern is matched against the qualified name of the source's definition,
+ * e.g. com.foo.Bar.  In both cases '*' matches within one package or directory and
+ * '**' matches across them, so com.foo.* covers the classes in com.foo and com.foo.**
+ * covers its subpackages as well.
+ *
+ * With no include patterns every source is included; excludes win over includes.
+ */
+public class CoverageFilter
+{
+    public CoverageFilter(String[] includes, String[] excludes)
+    {
+        this.includes = compile(includes);
+        this.excludes = compile(excludes);
+    }
+
+    // final, so that worker threads parsing in parallel may share a filter
+    private final List includes; // List<Pattern>
+    private final List excludes; // List<Pattern>
+
+    public boolean accept(Source source)
+    {
+        String relativePath = source.getRelativePath();
+        String qualifiedName = (relativePath == null || relativePath.length() == 0) ?
+                               source.getShortName() :
+                               relativePath.replace('/', '.') + "." + source.getShortName();
+        return accept(qualifiedName, source.getName());
+    }
+
+    public boolean accept(String qualifiedName, String path)
+    {
+        if (path != null)
+        {
+            path = path.replace('\\', '/');
+        }
+        return (includes.isEmpty() || matches(includes, qualifiedName, path)) &&
+               !matches(excludes, qualifiedName, path);
+    }
+
+    private static boolean matches(List patterns, String qualifiedName, String path)
+    {
+        for (Iterator i = patterns.iterator(); i.hasNext();)
+        {
+            FilterPattern p = (FilterPattern) i.next();
+            String s = p.isPath ? path : qualifiedName;
+            if (s != null && (p.isPath ? p.pattern.matcher(s).find() : p.pattern.matcher(s).matches()))
+            {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static List compile(String[] patterns)
+    {
+        List result = new ArrayList();
+        for (int i = 0, length = patterns == null ? 0 : patterns.length; i < length; i++)
+        {
+            String pattern = patterns[i].trim();
+            if (pattern.length() > 0)
+            {
+                boolean isPath = pattern.indexOf('/') != -1 || pattern.indexOf('\\') != -1;
+                if (isPath)
+                {
+                    pattern = pattern.replace('\\', '/');
+                }
+                result.add(new FilterPattern(toRegex(pattern, isPath ? '/' : '.', isPath), isPath));
+            }
+        }
+        return result;
+    }
+
+    private static Pattern toRegex(String glob, char separator, boolean isPath)
+    {
+        StringBuffer regex = new StringBuffer();
+        if (isPath)
+        {
+            // path patterns may match any trailing part of the path, starting at a directory boundary
+            regex.append(glob.charAt(0) == '/' ? "^" : "(^|/)");
+        }
+        for (int i = 0, length = glob.length(); i < length; i++)
+        {
+            char c = glob.charAt(i);
+            if (c == '*')
+            {
+                if (i + 1 < length && glob.charAt(i + 1) == '*')
+                {
+                    regex.append(".*");
+                    i++;
+                }
+                else
+                {
+                    regex.append("[^").append(separator == '.' ? "\\." : "/").append("]*");
+                }
+            }
+            else if (c == '?')
+            {
+                regex.append("[^").append(separator == '.' ? "\\." : "/").append("]");
+            }
+            else if (Character.isLetterOrDigit(c) || c == '_' || c == '$')
+            {
+                regex.append(c);
+            }
+            else
+            {
+                regex.append('\\').append(c);
+            }
+        }
+        if (isPath)
+        {
+            regex.append('$');
+        }
+        return Pattern.compile(regex.toString());
+    }
+
+    private static class FilterPattern
+    {
+        FilterPattern(Pattern pattern, boolean isPath)
+        {
+            this.pattern = pattern;
+            this.isPath = isPath;
+        }
+
+        Pattern pattern;
+        boolean isPath;
+    }
+}
@@ -230,6 +230,8 @@ public class API
 		SwcCache cache = new SwcCache();
 		// lazy read should only be set by mxmlc/compc/asdoc
 		cache.setLazyRead(true);
+		cache.setCatalogCacheDirectory(configuration.getSwcCatalogCache());
+		cache.setThreads(compilerConfig.getThreads());
 		// for asdoc the theme and include-libraries values have been purposely not passed in below.
 		swcContext.load( compilerConfig.getLibraryPath(),
 		                 compilerConfig.getExternalLibraryPath(),
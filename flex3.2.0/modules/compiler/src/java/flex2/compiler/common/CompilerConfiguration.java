@@ -14,7 +14,9 @@ package flex2.compiler.common;
 import flash.util.FileUtils;
 import flash.util.StringUtils;
 import flex.messaging.config.ServicesDependencies;
+import flex2.compiler.Source;
 import flex2.compiler.io.VirtualFile;
+import flex2.compiler.as3.CoverageFilter;
 import flex2.compiler.as3.SignatureExtension;
 import flex2.compiler.config.AdvancedConfigurationInfo;
 import flex2.compiler.config.ConfigurationValue;
@@ -575,6 +577,176 @@ public class CompilerConfiguration implements flex2.compiler.as3.Configuration,
         };
     }
 
+    //
+    // 'compiler.coverage-block-probes' option
+    //
+
+    private boolean coverageBlockProbes;
+
+    public boolean coverageBlockProbes()
+    {
+        return coverage && coverageBlockProbes;
+    }
+
+    public void cfgCoverageBlockProbes( ConfigurationValue cv, boolean coverageBlockProbes )
+    {
+        this.coverageBlockProbes = coverageBlockProbes;
+    }
+
+    public static ConfigurationInfo getCoverageBlockProbesInfo()
+    {
+        return new AdvancedConfigurationInfo()
+        {
+            public String[] getPrerequisites()
+            {
+                return new String[] { "coverage" };
+            }
+        };
+    }
+
+    //
+    // 'compiler.coverage-exclude' option
+    //
+
+    private String[] coverageExcludes;
+    private CoverageFilter coverageFilter;
+
+    public String[] getCoverageExcludes()
+    {
+        return coverageExcludes;
+    }
+
+    public void cfgCoverageExclude( ConfigurationValue cv, String[] patterns )
+    {
+        coverageExcludes = appendPatterns(coverageExcludes, patterns);
+        coverageFilter = null;
+    }
+
+    public static ConfigurationInfo getCoverageExcludeInfo()
+    {
+        return new ConfigurationInfo(-1, new String[] { "pattern" })
+        {
+            public boolean isAdvanced()
+            {
+                return true;
+            }
+
+            public boolean allowMultiple()
+            {
+                return true;
+            }
+        };
+    }
+
+    public boolean coverageIncluded(Source source)
+    {
+        if (coverageFilter == null)
+        {
+            coverageFilter = new CoverageFilter(coverageIncludes, coverageExcludes);
+        }
+        return coverageFilter.accept(source);
+    }
+
+    private static String[] appendPatterns(String[] patterns, String[] more)
+    {
+        if (patterns == null || more == null)
+        {
+            return more != null ? more : patterns;
+        }
+        String[] result = new String[patterns.length + more.length];
+        System.arraycopy(patterns, 0, result, 0, patterns.length);
+        System.arraycopy(more, 0, result, patterns.length, more.length);
+        return result;
+    }
+
+    //
+    // 'compiler.coverage-first-hit' option
+    //
+
+    private boolean coverageFirstHit;
+
+    public boolean coverageFirstHit()
+    {
+        return coverage && coverageFirstHit;
+    }
+
+    public void cfgCoverageFirstHit( ConfigurationValue cv, boolean coverageFirstHit )
+    {
+        this.coverageFirstHit = coverageFirstHit;
+    }
+
+    public static ConfigurationInfo getCoverageFirstHitInfo()
+    {
+        return new AdvancedConfigurationInfo()
+        {
+            public String[] getPrerequisites()
+            {
+                return new String[] { "coverage" };
+            }
+        };
+    }
+
+    //
+    // 'compiler.coverage-include' option
+    //
+
+    private String[] coverageIncludes;
+
+    public String[] getCoverageIncludes()
+    {
+        return coverageIncludes;
+    }
+
+    public void cfgCoverageInclude( ConfigurationValue cv, String[] patterns )
+    {
+        coverageIncludes = appendPatterns(coverageIncludes, patterns);
+        coverageFilter = null;
+    }
+
+    public static ConfigurationInfo getCoverageIncludeInfo()
+    {
+        return new ConfigurationInfo(-1, new String[] { "pattern" })
+        {
+            public boolean isAdvanced()
+            {
+                return true;
+            }
+
+            public boolean allowMultiple()
+            {
+                return true;
+            }
+        };
+    }
+
+    //
+    // 'compiler.coverage-indexed' option
+    //
+
+    private boolean coverageIndexed;
+
+    public boolean coverageIndexed()
+    {
+        // first-hit guards are keyed by the integer ids
+        return coverage && (coverageIndexed || coverageFirstHit);
+    }
+
+    public void cfgCoverageIndexed( ConfigurationValue cv, boolean coverageIndexed )
+    {
+        this.coverageIndexed = coverageIndexed;
+    }
+
+    public static ConfigurationInfo getCoverageIndexedInfo()
+    {
+        return new AdvancedConfigurationInfo()
+        {
+            public String[] getPrerequisites()
+            {
+                return new String[] { "coverage" };
+            }
+        };
+    }
+
     //
     // 'compiler.debug' option
     //
@@ -1868,6 +2040,35 @@ public class CompilerConfiguration implements flex2.compiler.as3.Configuration,
         themeCssFiles.addAll( files );
     }
 
+    //
+    // 'compiler.threads' option
+    //
+
+    private int threads = 1;
+
+    /**
+     * The number of threads that parse and generate code for sources at the same time, that load the SWCs of
+     * a library path directory, and that compressed SWFs are deflated on.  1 does them one by one.
+     */
+    public int getThreads()
+    {
+        return threads;
+    }
+
+    public void cfgThreads( ConfigurationValue cv, int threads ) throws ConfigurationException
+    {
+        if (threads < 1)
+        {
+            throw new ConfigurationException.BadValue( Integer.toString(threads), cv.getVar(), cv.getSource(), cv.getLine() );
+        }
+        this.threads = threads;
+    }
+
+    public static ConfigurationInfo getThreadsInfo()
+    {
+        return new AdvancedConfigurationInfo();
+    }
+
     //
     // 'compiler.translation-format' option (hidden)
     //
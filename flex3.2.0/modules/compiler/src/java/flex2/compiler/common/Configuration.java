@@ -17,6 +17,7 @@ import flex2.compiler.config.ConfigurationValue;
 import flex2.compiler.config.ConfigurationInfo;
 import flex2.compiler.io.VirtualFile;
 import flex2.compiler.util.QName;
+import flex2.linker.CoverageMetadataWriter;
 
 import java.util.ArrayList;
 import java.util.Arrays;
@@ -32,6 +33,7 @@ import java.util.Iterator;
 import java.util.SortedSet;
 import java.util.TreeSet;
 import java.io.File;
+import java.util.zip.Deflater;
 
 import flash.util.FileUtils;
 
@@ -427,6 +429,32 @@ public class Configuration implements flex2.linker.Configuration
         };
     }
 
+    //
+    // 'coverage-metadata-format' option
+    //
+
+    private String coverageMetadataFormat = CoverageMetadataWriter.FORMAT_TEXT;
+
+    public String getCoverageMetadataFormat()
+    {
+        return coverageMetadataFormat;
+    }
+
+    public void cfgCoverageMetadataFormat( ConfigurationValue cv, String format )
+        throws flex2.compiler.config.ConfigurationException
+    {
+        if (!CoverageMetadataWriter.FORMAT_TEXT.equals(format) && !CoverageMetadataWriter.FORMAT_BINARY.equals(format))
+        {
+            throw new ConfigurationException.BadCoverageMetadataFormat( format, cv.getVar(), cv.getSource(), cv.getLine() );
+        }
+        this.coverageMetadataFormat = format;
+    }
+
+    public static ConfigurationInfo getCoverageMetadataFormatInfo()
+    {
+        return new AdvancedConfigurationInfo();
+    }
+
     //
     // 'debug-password' option
     //
@@ -1634,6 +1662,36 @@ public class Configuration implements flex2.linker.Configuration
 		throw new InternalError("compute-digest");
 	}
 	
+	//
+	// 'swc-catalog-cache' option
+	//
+
+	private String swcCatalogCache;
+
+	/**
+	 * @return the directory where the catalogs of SWCs that have been read are kept, or null
+	 */
+	public String getSwcCatalogCache()
+	{
+		return swcCatalogCache;
+	}
+
+	public void cfgSwcCatalogCache(ConfigurationValue cv, String directory)
+	{
+		swcCatalogCache = getOutputPath(cv, directory);
+	}
+
+	public static ConfigurationInfo getSwcCatalogCacheInfo()
+	{
+		return new ConfigurationInfo(new String[] {"directory"})
+		{
+			public boolean isAdvanced()
+			{
+				return true;
+			}
+		};
+	}
+
 	//
 	// 'swc-checksum' options
 	// 
@@ -1677,6 +1735,66 @@ public class Configuration implements flex2.linker.Configuration
 		};
 	}
 
+	//
+	// 'swf-compression' option
+	//
+
+	public static final String COMPRESSION_STORE = "store";
+	public static final String COMPRESSION_FAST = "fast";
+	public static final String COMPRESSION_BEST = "best";
+
+	// null means fast for debug movies and best otherwise
+	private String swfCompression;
+
+	/**
+	 * @return the Deflater level compressed movies are written with
+	 */
+	public int getSwfCompressionLevel()
+	{
+		String compression = swfCompression;
+		if (compression == null)
+		{
+			compression = generateDebugTags() ? COMPRESSION_FAST : COMPRESSION_BEST;
+		}
+
+		if (COMPRESSION_STORE.equals(compression))
+		{
+			return Deflater.NO_COMPRESSION;
+		}
+		else if (COMPRESSION_FAST.equals(compression))
+		{
+			return Deflater.BEST_SPEED;
+		}
+		else
+		{
+			return Deflater.BEST_COMPRESSION;
+		}
+	}
+
+	/**
+	 * @return the number of threads compressed movies are deflated on, the same as compiler.threads
+	 */
+	public int getSwfCompressionThreads()
+	{
+		return compiler.getThreads();
+	}
+
+	public void cfgSwfCompression(ConfigurationValue cv, String compression)
+		throws flex2.compiler.config.ConfigurationException
+	{
+		if (!COMPRESSION_STORE.equals(compression) && !COMPRESSION_FAST.equals(compression) &&
+			!COMPRESSION_BEST.equals(compression))
+		{
+			throw new ConfigurationException.BadSwfCompression(compression, cv.getVar(), cv.getSource(), cv.getLine());
+		}
+		swfCompression = compression;
+	}
+
+	public static ConfigurationInfo getSwfCompressionInfo()
+	{
+		return new AdvancedConfigurationInfo();
+	}
+
 	// cssArchiveFiles and l10nArchiveFiles
 	
 	private Map cssArchiveFiles, l10nArchiveFiles;
@@ -73,6 +73,26 @@ public class ConfigurationException extends flex2.compiler.config.ConfigurationE
         public String value;
     }
 
+    public static class BadCoverageMetadataFormat extends ConfigurationException
+    {
+        public BadCoverageMetadataFormat( String format, String var, String source, int line )
+        {
+            super( var, source, line );
+            this.format = format;
+        }
+        public String format;
+    }
+
+    public static class BadSwfCompression extends ConfigurationException
+    {
+        public BadSwfCompression( String compression, String var, String source, int line )
+        {
+            super( var, source, line );
+            this.compression = compression;
+        }
+        public String compression;
+    }
+
     public static class BadMetadataCombo extends ConfigurationException
     {
         public BadMetadataCombo( String var, String source, int line )
@@ -53,6 +53,10 @@ public class Compiler implements flex2.compiler.Compiler
         asc = new flex2.compiler.as3.Compiler(new flex2.compiler.as3.Configuration()
         {
             public boolean coverage() { return false; }
+            public boolean coverageIndexed() { return false; }
+            public boolean coverageBlockProbes() { return false; }
+            public boolean coverageFirstHit() { return false; }
+            public boolean coverageIncluded(Source source) { return false; }
             public boolean debug() { return false; }
             public boolean profile() { return false; }
             public boolean strict() { return true; }
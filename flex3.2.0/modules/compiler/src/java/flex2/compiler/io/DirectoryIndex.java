@@ -0,0 +1,138 @@
+////////////////////////////////////////////////////////////////////////////////
+//
+//  ADOBE SYSTEMS INCORPORATED
+//  Copyright 2005-2007 Adobe Systems Incorporated
+//  All Rights Reserved.
+//
+//  NOTICE: Adobe permits you to use, modify, and distribute this file
+//  in accordance with the terms of the license agreement accompanying it.
+//
+////////////////////////////////////////////////////////////////////////////////
+
+package flex2.compiler.io;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Remembers the listings of the directories under a set of roots, so asking whether a file exists
+ * is a few hash lookups instead of a file system call.  Each directory is listed the first time a
+ * lookup gets to it.  Names are matched exactly, so a lookup is case sensitive even on a case
+ * insensitive file system.
+ * <p>
+ * After refresh(), each directory is checked again the next time a lookup gets to it: the listing
+ * is kept if the directory's modification time hasn't changed, and read again if it has.  A directory
+ * modified around the time it was listed is always read again, since a change within the file system's
+ * timestamp granularity wouldn't show.
+ * <p>
+ * This class is not thread safe.
+ */
+public class DirectoryIndex
+{
+	/**
+	 * The coarsest timestamp granularity of the file systems we run on (FAT).
+	 */
+	private static final long GRANULARITY = 2000;
+
+	private final Map directories = new HashMap(); // Map<String, Directory>
+	private int generation;
+
+	/**
+	 * @param relativePath a path relative to root, separated by File.separatorChar or '/'
+	 * @return true if relativePath names a directory under root
+	 */
+	public boolean isDirectory(File root, String relativePath)
+	{
+		return names(root.getPath(), normalize(relativePath)) != null;
+	}
+
+	/**
+	 * @param relativePath a path relative to root, separated by File.separatorChar or '/'
+	 * @return true if relativePath names a file or a directory under root
+	 */
+	public boolean exists(File root, String relativePath)
+	{
+		String path = normalize(relativePath);
+		int slash = path.lastIndexOf(File.separatorChar);
+		Set names = names(root.getPath(), slash == -1 ? "" : path.substring(0, slash));
+		return names != null && names.contains(path.substring(slash + 1));
+	}
+
+	/**
+	 * The directories may have changed; check them again as lookups get to them.
+	 */
+	public void refresh()
+	{
+		generation++;
+	}
+
+	/**
+	 * Forgets all the directories.
+	 */
+	public void clear()
+	{
+		directories.clear();
+	}
+
+	private static String normalize(String relativePath)
+	{
+		return relativePath.replace('/', File.separatorChar);
+	}
+
+	/**
+	 * @return the names in the directory, or null if it isn't one
+	 */
+	private Set names(String root, String relativePath)
+	{
+		String path = relativePath.length() == 0 ? root : root + File.separator + relativePath;
+		Directory d = (Directory) directories.get(path);
+		if (d != null && d.generation == generation)
+		{
+			return d.names;
+		}
+
+		if (d == null)
+		{
+			d = new Directory();
+			directories.put(path, d);
+		}
+		d.generation = generation;
+
+		if (relativePath.length() != 0)
+		{
+			int slash = relativePath.lastIndexOf(File.separatorChar);
+			Set parent = names(root, slash == -1 ? "" : relativePath.substring(0, slash));
+			if (parent == null || !parent.contains(relativePath.substring(slash + 1)))
+			{
+				// list it if it shows up
+				d.names = null;
+				d.lastModified = -1;
+				return null;
+			}
+		}
+
+		File f = new File(path);
+		long lastModified = f.lastModified();
+		if (lastModified != d.lastModified || lastModified >= d.listedAt - GRANULARITY)
+		{
+			d.lastModified = lastModified;
+			d.listedAt = System.currentTimeMillis();
+			String[] list = f.list();
+			d.names = (list == null) ? null : new HashSet(Arrays.asList(list));
+		}
+
+		return d.names;
+	}
+
+	private static class Directory
+	{
+		Set names; // Set<String>
+		long lastModified = -1;
+		long listedAt;
+		int generation;
+	}
+}
@@ -0,0 +1,507 @@
+////////////////////////////////////////////////////////////////////////////////
+//
+//  ADOBE SYSTEMS INCORPORATED
+//  Copyright 2005-2007 Adobe Systems Incorporated
+//  All Rights Reserved.
+//
+//  NOTICE: Adobe permits you to use, modify, and distribute this file
+//  in accordance with the terms of the license agreement accompanying it.
+//
+////////////////////////////////////////////////////////////////////////////////
+
+package flex2.compiler.io;
+
+import java.io.File;
+import java.lang.reflect.Array;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Keeps the set of local files that changed since the last compilation validated its units.  While a
+ * tracker is set with ThreadLocalToolkit.setFileChangeTracker(), LocalFile.getLastModified() is answered
+ * from it, and API.validateCompilationUnits() only checks the sources that own a file in drainChanged(),
+ * so an incremental build costs in proportion to the changes rather than to the files in it.
+ * <p>
+ * Changes come from a java.nio.file.WatchService on the directories of the tracked files where the JVM
+ * has one (1.7 and later; it is reflected, like java.lang.management in Benchmark, to keep running on
+ * 1.4).  Elsewhere a background thread checks the modification times of the tracked files every interval.
+ * Either way a change is seen after some latency, so a change made just before a build may only be seen
+ * by the next one.  Callers that know a file changed, e.g. because they just saved it, can say so with
+ * changed().
+ * <p>
+ * The background thread starts when the tracker is first used and stop() ends it until the tracker is
+ * used again.
+ *
+ * @see LocalFile#getLastModified()
+ */
+public class FileChangeTracker
+{
+	/**
+	 * @param interval the milliseconds between checks of the files, where they aren't watched
+	 */
+	public FileChangeTracker(long interval)
+	{
+		this.interval = interval;
+	}
+
+	private final long interval;
+	// the tracked files, by path, and their modification times when last checked
+	private final Map times = new HashMap(); // Map<String, Long>
+	// the tracked files that changed since drainChanged()
+	private Set changed = new HashSet(); // Set<String>
+	// the watched directories, by path, and their WatchKeys
+	private final Map directories = new HashMap(); // Map<String, Object>
+	private Watcher watcher;
+	private Thread thread;
+
+	/**
+	 * @return the modification time of the file; the one last checked unless it has changed since
+	 */
+	public long getLastModified(File f)
+	{
+		String path = f.getPath();
+		synchronized (this)
+		{
+			start();
+			Long t = (Long) times.get(path);
+			if (t != null && !changed.contains(path))
+			{
+				return t.longValue();
+			}
+		}
+
+		// watch before looking, so that a change right after is seen
+		watch(f.getParentFile());
+		long t = f.lastModified();
+		synchronized (this)
+		{
+			times.put(path, new Long(t));
+		}
+		return t;
+	}
+
+	/**
+	 * Tells the tracker which files the build has now, and gets the ones that changed.  The others
+	 * are forgotten, and those that weren't tracked yet count as changed.
+	 *
+	 * @param paths the paths of the local files in the build
+	 * @return the paths that changed since the last call; they are checked again when asked about
+	 */
+	public synchronized Set drainChanged(Set paths) // Set<String>
+	{
+		start();
+
+		times.keySet().retainAll(paths);
+		changed.retainAll(paths);
+		for (Iterator i = paths.iterator(); i.hasNext();)
+		{
+			String path = (String) i.next();
+			if (!times.containsKey(path))
+			{
+				changed.add(path);
+			}
+		}
+
+		Set result = changed;
+		changed = new HashSet();
+		times.keySet().removeAll(result);
+
+		unwatchUnused();
+		return result;
+	}
+
+	/**
+	 * The file changed.
+	 */
+	public synchronized void changed(File f)
+	{
+		String path = f.getPath();
+		if (times.containsKey(path))
+		{
+			changed.add(path);
+		}
+	}
+
+	/**
+	 * Forgets all the files.
+	 */
+	public synchronized void clear()
+	{
+		times.clear();
+		changed.clear();
+		unwatchUnused();
+	}
+
+	/**
+	 * Ends the background thread and forgets all the files.
+	 */
+	public synchronized void stop()
+	{
+		clear();
+		if (watcher != null)
+		{
+			watcher.close();
+			watcher = null;
+		}
+		if (thread != null)
+		{
+			thread.interrupt();
+			thread = null;
+		}
+	}
+
+	private void start()
+	{
+		if (thread != null)
+		{
+			return;
+		}
+
+		watcher = Watcher.newWatcher();
+		thread = new Thread("file-change-tracker")
+		{
+			public void run()
+			{
+				if (watcher != null)
+				{
+					watch(this, watcher);
+				}
+				else
+				{
+					poll(this);
+				}
+			}
+		};
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	private synchronized boolean isRunning(Thread t)
+	{
+		return thread == t;
+	}
+
+	/**
+	 * Checks the times of the tracked files every interval.
+	 */
+	private void poll(Thread t)
+	{
+		while (isRunning(t))
+		{
+			Map.Entry[] entries;
+			synchronized (this)
+			{
+				entries = (Map.Entry[]) times.entrySet().toArray(new Map.Entry[times.size()]);
+			}
+
+			for (int i = 0; i < entries.length && isRunning(t); i++)
+			{
+				String path = (String) entries[i].getKey();
+				long time = new File(path).lastModified();
+				if (time != ((Long) entries[i].getValue()).longValue())
+				{
+					synchronized (this)
+					{
+						// unless it's been dropped meanwhile
+						if (times.containsKey(path))
+						{
+							changed.add(path);
+						}
+					}
+				}
+			}
+
+			try
+			{
+				Thread.sleep(interval);
+			}
+			catch (InterruptedException ex)
+			{
+				// stop() checks in isRunning()
+			}
+		}
+	}
+
+	/**
+	 * Marks the tracked files that the watch service reports.
+	 */
+	private void watch(Thread t, Watcher w)
+	{
+		while (isRunning(t))
+		{
+			Object key = w.take();
+			if (key == null)
+			{
+				// closed
+				break;
+			}
+
+			String directory = w.getDirectory(key);
+			List events = w.pollEvents(key); // List<String>, or null if some events were lost
+			boolean valid = w.reset(key);
+
+			synchronized (this)
+			{
+				if (events == null || !valid)
+				{
+					for (Iterator i = times.keySet().iterator(); i.hasNext();)
+					{
+						String path = (String) i.next();
+						if (directory.equals(new File(path).getParent()))
+						{
+							changed.add(path);
+						}
+					}
+				}
+				else
+				{
+					for (int i = 0, size = events.size(); i < size; i++)
+					{
+						String path = new File(directory, (String) events.get(i)).getPath();
+						if (times.containsKey(path))
+						{
+							changed.add(path);
+						}
+					}
+				}
+
+				if (!valid)
+				{
+					directories.remove(directory);
+				}
+			}
+		}
+	}
+
+	private void watch(File directory)
+	{
+		if (directory == null)
+		{
+			return;
+		}
+
+		String path = directory.getPath();
+		Watcher w;
+		synchronized (this)
+		{
+			w = watcher;
+			if (w == null || directories.containsKey(path))
+			{
+				return;
+			}
+		}
+
+		Object key = w.register(directory);
+		synchronized (this)
+		{
+			if (key != null && w == watcher && !directories.containsKey(path))
+			{
+				directories.put(path, key);
+			}
+			else if (key != null)
+			{
+				w.cancel(key);
+			}
+		}
+	}
+
+	/**
+	 * Stops watching the directories that have no tracked files left.
+	 */
+	private void unwatchUnused()
+	{
+		if (directories.isEmpty())
+		{
+			return;
+		}
+
+		Set used = new HashSet(); // Set<String>
+		for (Iterator i = times.keySet().iterator(); i.hasNext();)
+		{
+			used.add(new File((String) i.next()).getParent());
+		}
+
+		for (Iterator i = directories.entrySet().iterator(); i.hasNext();)
+		{
+			Map.Entry e = (Map.Entry) i.next();
+			if (!used.contains(e.getKey()))
+			{
+				if (watcher != null)
+				{
+					watcher.cancel(e.getValue());
+				}
+				i.remove();
+			}
+		}
+	}
+
+	/**
+	 * A java.nio.file.WatchService, reflected.
+	 */
+	private static class Watcher
+	{
+		/**
+		 * @return a Watcher, or null if the JVM doesn't have a watch service
+		 */
+		static Watcher newWatcher()
+		{
+			try
+			{
+				ClassLoader loader = FileChangeTracker.class.getClassLoader();
+				Class fsCls = Class.forName("java.nio.file.FileSystem", true, loader);
+				Class fssCls = Class.forName("java.nio.file.FileSystems", true, loader);
+				Class wsCls = Class.forName("java.nio.file.WatchService", true, loader);
+				Class keyCls = Class.forName("java.nio.file.WatchKey", true, loader);
+				Class eventCls = Class.forName("java.nio.file.WatchEvent", true, loader);
+				Class kindCls = Class.forName("java.nio.file.WatchEvent$Kind", true, loader);
+				Class kindsCls = Class.forName("java.nio.file.StandardWatchEventKinds", true, loader);
+				Class pathCls = Class.forName("java.nio.file.Path", true, loader);
+
+				Watcher w = new Watcher();
+				Object fs = fssCls.getMethod("getDefault", new Class[0]).invoke(null, new Object[0]);
+				w.service = fsCls.getMethod("newWatchService", new Class[0]).invoke(fs, new Object[0]);
+				w.take = wsCls.getMethod("take", new Class[0]);
+				w.close = wsCls.getMethod("close", new Class[0]);
+				w.pollEvents = keyCls.getMethod("pollEvents", new Class[0]);
+				w.reset = keyCls.getMethod("reset", new Class[0]);
+				w.cancel = keyCls.getMethod("cancel", new Class[0]);
+				w.watchable = keyCls.getMethod("watchable", new Class[0]);
+				w.kind = eventCls.getMethod("kind", new Class[0]);
+				w.context = eventCls.getMethod("context", new Class[0]);
+				w.toPath = File.class.getMethod("toPath", new Class[0]);
+				w.toFile = pathCls.getMethod("toFile", new Class[0]);
+				w.register = pathCls.getMethod("register", new Class[] { wsCls, Array.newInstance(kindCls, 0).getClass() });
+
+				w.overflow = kindsCls.getField("OVERFLOW").get(null);
+				w.kinds = Array.newInstance(kindCls, 3);
+				Array.set(w.kinds, 0, kindsCls.getField("ENTRY_CREATE").get(null));
+				Array.set(w.kinds, 1, kindsCls.getField("ENTRY_DELETE").get(null));
+				Array.set(w.kinds, 2, kindsCls.getField("ENTRY_MODIFY").get(null));
+				return w;
+			}
+			catch (Exception ex)
+			{
+				// not 1.7
+				return null;
+			}
+		}
+
+		private Object service, overflow, kinds;
+		private Method take, close, pollEvents, reset, cancel, watchable, kind, context, toPath, toFile, register;
+
+		/**
+		 * @return the WatchKey of the directory, or null if it can't be watched
+		 */
+		Object register(File directory)
+		{
+			try
+			{
+				Object path = toPath.invoke(directory, new Object[0]);
+				return register.invoke(path, new Object[] { service, kinds });
+			}
+			catch (Exception ex)
+			{
+				// its files aren't watched; a missing directory, say, makes them all missing anyway
+				return null;
+			}
+		}
+
+		/**
+		 * @return the next WatchKey with events, or null once the service is closed
+		 */
+		Object take()
+		{
+			try
+			{
+				return take.invoke(service, new Object[0]);
+			}
+			catch (InvocationTargetException ex)
+			{
+				// ClosedWatchServiceException, or interrupted by stop()
+				return null;
+			}
+			catch (Exception ex)
+			{
+				return null;
+			}
+		}
+
+		String getDirectory(Object key)
+		{
+			try
+			{
+				return ((File) toFile.invoke(watchable.invoke(key, new Object[0]), new Object[0])).getPath();
+			}
+			catch (Exception ex)
+			{
+				return "";
+			}
+		}
+
+		/**
+		 * @return the names of the files in the events, or null if some events were lost
+		 */
+		List pollEvents(Object key) // List<String>
+		{
+			try
+			{
+				List events = (List) pollEvents.invoke(key, new Object[0]);
+				List names = new java.util.ArrayList(events.size());
+				for (int i = 0, size = events.size(); i < size; i++)
+				{
+					Object event = events.get(i);
+					if (kind.invoke(event, new Object[0]) == overflow)
+					{
+						return null;
+					}
+					names.add(String.valueOf(context.invoke(event, new Object[0])));
+				}
+				return names;
+			}
+			catch (Exception ex)
+			{
+				return null;
+			}
+		}
+
+		boolean reset(Object key)
+		{
+			try
+			{
+				return ((Boolean) reset.invoke(key, new Object[0])).booleanValue();
+			}
+			catch (Exception ex)
+			{
+				return false;
+			}
+		}
+
+		void cancel(Object key)
+		{
+			try
+			{
+				cancel.invoke(key, new Object[0]);
+			}
+			catch (Exception ex)
+			{
+			}
+		}
+
+		void close()
+		{
+			try
+			{
+				close.invoke(service, new Object[0]);
+			}
+			catch (Exception ex)
+			{
+			}
+		}
+	}
+}
@@ -14,6 +14,7 @@ package flex2.compiler.io;
 import flash.util.FileUtils;
 import flash.util.Trace;
 import flex2.compiler.util.MimeMappings;
+import flex2.compiler.util.ThreadLocalToolkit;
 
 import java.io.File;
 import java.io.IOException;
@@ -115,10 +116,17 @@ public class LocalFile implements VirtualFile
 	}
 
 	/**
-	 * Return last time the underlying source is modified.
+	 * Return last time the underlying source is modified, as the file change tracker last saw it if there is one.
 	 */
 	public long getLastModified()
 	{
+		FileChangeTracker tracker = ThreadLocalToolkit.getFileChangeTracker();
+		if (tracker != null)
+		{
+			// the tracker knows files by canonical path
+			getName();
+			return tracker.getLastModified(f);
+		}
 		return f.lastModified();
 	}
 
@@ -0,0 +1,179 @@
+////////////////////////////////////////////////////////////////////////////////
+//
+//  ADOBE SYSTEMS INCORPORATED
+//  Copyright 2006-2007 Adobe Systems Incorporated
+//  All Rights Reserved.
+//
+//  NOTICE: Adobe permits you to use, modify, and distribute this file
+//  in accordance with the terms of the license agreement accompanying it.
+//
+////////////////////////////////////////////////////////////////////////////////
+
+package flex2.compiler.io;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import flex2.compiler.swc.zip.MappedZipFile;
+import flex2.compiler.swc.zip.ZipEntry;
+import flex2.compiler.util.MimeMappings;
+
+/**
+ * VirtualFile implementation used by SwcMappedArchive.  The entry is inflated the first time its bytes
+ * are asked for.  Other entries hold on to their bytes like VirtualZipFile does, but SWFs, which are
+ * most of a SWC, are kept in a cache shared by all archives that holds at most SWF_CACHE_MAX_SIZE
+ * bytes, and are inflated again when they have been dropped from it.
+ */
+public class VirtualMappedZipFile implements VirtualFile
+{
+	public static long SWF_CACHE_MAX_SIZE = 64 * 1024 * 1024;
+
+	// VirtualMappedZipFile -> byte[], least recently used first
+	private static final Map swfCache = new LinkedHashMap(16, 0.75f, true);
+	private static long swfCacheSize;
+
+	private String mimeType;
+	private String name;
+	private String parent;
+	private byte[] bytes;
+	private MappedZipFile zipFile;
+	private ZipEntry entry;
+
+	public VirtualMappedZipFile(MappedZipFile zipFile, ZipEntry entry, String mimeType, String name, String parent)
+	{
+		this.zipFile = zipFile;
+		this.entry = entry;
+		this.mimeType = mimeType;
+		this.name = name;
+		this.parent = parent;
+	}
+
+	public InputStream getInputStream() throws IOException
+	{
+		return new ByteArrayInputStream(toByteArray());
+	}
+
+	public byte[] toByteArray() throws IOException
+	{
+		if (!MimeMappings.FLASH.equals(mimeType))
+		{
+			synchronized (this)
+			{
+				if (bytes == null)
+				{
+					bytes = zipFile.getBytes(entry);
+				}
+				return bytes;
+			}
+		}
+
+		byte[] swf;
+		synchronized (swfCache)
+		{
+			swf = (byte[]) swfCache.get(this);
+		}
+
+		if (swf == null)
+		{
+			swf = zipFile.getBytes(entry);
+			cache(this, swf);
+		}
+		return swf;
+	}
+
+	private static void cache(VirtualMappedZipFile file, byte[] swf)
+	{
+		if (swf.length > SWF_CACHE_MAX_SIZE)
+		{
+			return;
+		}
+
+		synchronized (swfCache)
+		{
+			byte[] old = (byte[]) swfCache.put(file, swf);
+			if (old != null)
+			{
+				swfCacheSize -= old.length;
+			}
+			swfCacheSize += swf.length;
+
+			for (Iterator i = swfCache.values().iterator(); swfCacheSize > SWF_CACHE_MAX_SIZE && i.hasNext();)
+			{
+				swfCacheSize -= ((byte[]) i.next()).length;
+				i.remove();
+			}
+		}
+	}
+
+	public long getLastModified()
+	{
+		return entry.getTime();
+	}
+
+	public String getMimeType()
+	{
+		return mimeType;
+	}
+
+	public String getName()
+	{
+		return name;
+	}
+
+	public String getNameForReporting()
+	{
+		return getName();
+	}
+
+	public String getParent()
+	{
+		return parent;
+	}
+
+    public boolean isDirectory()
+    {
+        return false;
+    }
+
+    public String getURL()
+	{
+        return "jar:file://" + getName().replaceAll("\\$", "!/");
+	}
+
+	public long size()
+	{
+		return entry.getSize();
+	}
+
+	public VirtualFile resolve(String relative)
+	{
+		return null;
+	}
+
+	public boolean equals(Object obj)
+	{
+		return obj == this;
+	}
+
+    public int hashCode()
+    {
+        return getName().hashCode();
+    }
+
+	public boolean isTextBased()
+	{
+		return false;
+	}
+
+	public void close()
+	{
+		synchronized (this)
+		{
+			bytes = null;
+		}
+	}
+}
@@ -26,7 +26,7 @@ import java.io.File;
  * in which CompilationUnits that don't produce bytecode are "reset". Here, we use the reset to transition from interface
  * to implementation compilation.
  */
-public class Compiler implements flex2.compiler.Compiler
+public class Compiler implements flex2.compiler.Compiler, flex2.compiler.Preparser
 {
 	//	ATTR_STATE is used to indicate progress through double-pass compilation process.
 	private static final String ATTR_STATE = "MxmlState";
@@ -83,6 +83,20 @@ public class Compiler implements flex2.compiler.Compiler
 			return implc.preprocess(source);
 	}
 
+	public void preparse(Source source, SymbolTable symbolTable)
+	{
+		//	only the first pass starts with parsing the document
+		if (source.getCompilationUnit() == null)
+		{
+			intfc.preparse(source);
+		}
+	}
+
+	public void clearPreparsed()
+	{
+		intfc.clearPreparsed();
+	}
+
 	public CompilationUnit parse1(Source source, SymbolTable symbolTable)
 	{
 		CompilationUnit unit = source.getCompilationUnit();
@@ -114,6 +114,10 @@ class InterfaceCompiler implements flex2.compiler.Compiler
 		asc = new flex2.compiler.as3.Compiler(new flex2.compiler.as3.Configuration()
 		{
             public boolean coverage() { return false; }
+            public boolean coverageIndexed() { return false; }
+            public boolean coverageBlockProbes() { return false; }
+            public boolean coverageFirstHit() { return false; }
+            public boolean coverageIncluded(Source source) { return false; }
             public boolean debug() { return false; }
             public boolean profile() { return false; }
 			public boolean strict() { return ascConfiguration.strict(); }
@@ -167,6 +171,8 @@ class InterfaceCompiler implements flex2.compiler.Compiler
 	private NameMappings nameMappings;
 	private String[] mimeTypes;
 	private flex2.compiler.as3.Compiler asc;
+	// MXML documents parsed on worker threads, until parse1()
+	private Map preparsed = Collections.synchronizedMap(new HashMap()); // Map<Source, ApplicationNode>
 
 	flex2.compiler.as3.Compiler getASCompiler()
 	{
@@ -196,6 +202,22 @@ class InterfaceCompiler implements flex2.compiler.Compiler
 		return source;
 	}
 
+	/**
+	 * Do the basic MXML parse on a worker thread, leaving the rest of parse1() for later.
+	 */
+	public void preparse(Source source)
+	{
+		if (source.getSourceFragment(AttrInlineComponentSyntaxTree) == null)
+		{
+			preparsed.put(source, parseMXML(source));
+		}
+	}
+
+	public void clearPreparsed()
+	{
+		preparsed.clear();
+	}
+
 	/**
 	 * Do basic MXML parse, generate AS containing public signature contributors, and parse that using our ASC instance.
 	 * Result will be "outer" compilation unit, with the unit returned by ASC stashed in a context attribute.
@@ -212,7 +234,8 @@ class InterfaceCompiler implements flex2.compiler.Compiler
 		Object preparsedSyntaxTree = source.getSourceFragment(AttrInlineComponentSyntaxTree);
 		if (preparsedSyntaxTree == null)
 		{
-			if ((app = parseMXML(source)) == null)
+			app = preparsed.containsKey(source) ? (ApplicationNode) preparsed.remove(source) : parseMXML(source);
+			if (app == null)
 			{
 				return null;
 			}
@@ -22,6 +22,7 @@ import flex2.compiler.io.VirtualFile;
 import flex2.compiler.util.NameFormatter;
 import flex2.compiler.util.NameMappings;
 import flex2.compiler.util.ThreadLocalToolkit;
+import flex2.linker.CoverageTotals;
 import flex2.linker.LinkerException;
 import flex2.tools.CompcConfiguration;
 import flash.util.Trace;
@@ -213,7 +214,8 @@ public class API
             }
             if (configuration.generateCoverageMetadata() && configuration.getCoverageMetadataFileName() != null)
             {
-                FileUtil.writeFile(configuration.getCoverageMetadataFileName(), m.getCoverageMetadata());
+                m.writeCoverageMetadata(configuration.getCoverageMetadataFileName(), configuration.getCoverageMetadataFormat());
+                m.writeCoverageTotals(CoverageTotals.getFileName(configuration.getCoverageMetadataFileName()));
             }
             if (configuration.generateRBList() && configuration.getRBListFileName() != null)
             {
@@ -12,6 +12,7 @@
 package flex2.compiler.swc;
 
 import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
@@ -33,6 +34,7 @@ import flex2.compiler.CompilationUnit;
 import flex2.compiler.common.MxmlConfiguration;
 import flex2.compiler.io.InMemoryFile;
 import flex2.compiler.io.VirtualFile;
+import flex2.compiler.swc.catalog.CatalogCache;
 import flex2.compiler.swc.catalog.CatalogReader;
 import flex2.compiler.swc.catalog.CatalogWriter;
 import flex2.compiler.util.CompilerMessage;
@@ -84,8 +86,17 @@ public class Swc
 
     // not public on purpose- use SwcCache.getSwcGroup() instead
     Swc( SwcArchive archive, boolean load ) throws Exception
+    {
+        this( archive, load, null );
+    }
+
+    /**
+     * @param catalogCache where the catalog may have been read before, or null
+     */
+    Swc( SwcArchive archive, boolean load, CatalogCache catalogCache ) throws Exception
     {
         this.archive = archive;
+        this.catalogCache = catalogCache;
         if (load)
         {
             read();
@@ -423,9 +434,35 @@ public class Swc
 		    {
 			    throw new SwcException.CatalogNotFound();
 		    }
-		    stream = catalogFile.getInputStream();
-		    CatalogReader reader = new CatalogReader(new BufferedInputStream(stream), this, archive);
-		    reader.read();
+		    CatalogReader reader = null;
+		    byte[] catalog = null;
+		    if (catalogCache != null)
+		    {
+			    catalog = catalogFile.toByteArray();
+			    reader = catalogCache.getReader(catalog, this, archive);
+			    if (reader != null)
+			    {
+				    try
+				    {
+					    reader.read();
+				    }
+				    catch (IOException ex)
+				    {
+					    reader = null;
+				    }
+			    }
+		    }
+
+		    if (reader == null)
+		    {
+			    stream = (catalog != null) ? new ByteArrayInputStream(catalog) : catalogFile.getInputStream();
+			    reader = new CatalogReader(new BufferedInputStream(stream), this, archive);
+			    reader.read();
+			    if (catalogCache != null)
+			    {
+				    catalogCache.put(catalog, reader);
+			    }
+		    }
 
 		    versions = reader.getVersions();
 		    features = reader.getFeatures();
@@ -588,6 +625,7 @@ public class Swc
 
     // changed from private to protected to support Flash Authoring - jkamerer 2007.07.30
     protected final SwcArchive archive;
+    private final CatalogCache catalogCache;
     private long lastModified = -1;
 
     /** Each object in the Map is of type SwcLibrary.
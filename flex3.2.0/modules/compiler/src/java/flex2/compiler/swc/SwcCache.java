@@ -15,6 +15,7 @@ import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Iterator;
 import java.util.Map;
@@ -23,7 +24,10 @@ import java.util.LinkedHashMap;
 import flash.util.Trace;
 import flash.util.FileUtils;
 import flash.util.LRUCache;
+import flex2.compiler.Logger;
 import flex2.compiler.io.VirtualFile;
+import flex2.compiler.swc.catalog.CatalogCache;
+import flex2.compiler.util.BufferedLogger;
 import flex2.compiler.util.ThreadLocalToolkit;
 
 /**
@@ -37,9 +41,10 @@ import flex2.compiler.util.ThreadLocalToolkit;
  * not, then we look for SWCs in the directory.  If we have a cached SWC, we check the timestampe and return
  * the cache SWC if its the same.
  *
- * For now, we are just synchronizing on the whole cache on each get or export.  We could add more logic to do
- * read/write synchronization on specific SwcGroups.  From tests though it looks like the two layers of caching will
- * provide enough for performance.
+ * Getting SwcGroups isn't synchronized as a whole, so several compilations can use the same SwcCache at once.
+ * A SWC that is being loaded is remembered until it is done, and a compilation that asks for it meanwhile waits
+ * for that load instead of doing its own.  The SWCs of a group can also be loaded on several threads, see
+ * setThreads().  Exports are still synchronized on the whole cache.
  *
  * @author Brian Deitte
  */
@@ -62,6 +67,15 @@ public class SwcCache
 	// changed from private to protected to support Flash Authoring - jkamerer 2007.07.30
 	protected boolean lazyRead = false;
 
+	// catalogs read by earlier compilations, if set
+	private CatalogCache catalogCache;
+
+	// the number of threads that load the SWCs of a group
+	private int threads = 1;
+
+	// SWCs that are being loaded, keyed by location; guarded by the lock on swcs
+	private final Map loads = new HashMap(); // Map<String, Load>
+
     /**
      * Loads the current path SWCs and returns a SwcGroup. There will be one SwcGroup per compile,
      * and this is the piece that the compiler will mostly deal with for SWCs.
@@ -75,37 +89,38 @@ public class SwcCache
         return getSwcGroup( urls );
     }
 
-    public synchronized SwcGroup getSwcGroup(String[] paths)
+    public SwcGroup getSwcGroup(String[] paths)
     {
         SwcGroup group;
         String path;
-        Map swcs = new LinkedHashMap();
+        // a new map for the group, not the cache; getSwcs(path) takes the cache's lock itself
+        Map groupSwcs = new LinkedHashMap();
         for (int i = 0; i < paths.length; i++)
         {
             path = paths[i];
-            swcs.putAll(getSwcs(path));
+            groupSwcs.putAll(getSwcs(path));
         }
-        group = new SwcGroup(swcs);
+        group = new SwcGroup(groupSwcs);
 
         return group;
     }
 
     // todo - this could be made much more efficient by avoiding re-merging swcs
-    public synchronized SwcGroup getSwcGroup(List groups)
+    public SwcGroup getSwcGroup(List groups)
     {
-        Map swcs = new LinkedHashMap();
+        Map groupSwcs = new LinkedHashMap();
         for (Iterator it = groups.iterator(); it.hasNext();)
         {
             SwcGroup g = (SwcGroup) it.next();
             if (g != null)
             {
-                swcs.putAll( g.getSwcs() );
+                groupSwcs.putAll( g.getSwcs() );
             }
         }
         SwcGroup group = null;
-        if (swcs.size() > 0)
+        if (groupSwcs.size() > 0)
         {
-            group = new SwcGroup( swcs );
+            group = new SwcGroup( groupSwcs );
         }
         return group;
     }
@@ -129,7 +144,10 @@ public class SwcCache
             }
 
             // add to Swc cache
-            swcs.put(swc.getLocation(), swc);
+            synchronized (swcs)
+            {
+                swcs.put(swc.getLocation(), swc);
+            }
         }
         catch (Exception e)
         {
@@ -154,7 +172,27 @@ public class SwcCache
     // changed from private to protected to support Flash Authoring - jkamerer 2007.07.30
     protected Map getSwcs(String path)
     {
+        List files = new ArrayList();
+        addSwcFiles(path, files);
+
+        Swc[] loaded = getSwcs(files);
+
         Map map = new LinkedHashMap();
+        for (int i = 0; i < loaded.length; i++)
+        {
+            if (loaded[i] != null)
+            {
+                map.put( loaded[i].getLocation(), loaded[i] );
+            }
+        }
+        return map;
+    }
+
+    /**
+     * Adds the SWC at the path, or the SWCs in the directory at the path, to the list of Files.
+     */
+    private void addSwcFiles(String path, List files)
+    {
 		File f = new File(path);
         if (!f.exists())
         {
@@ -164,18 +202,14 @@ public class SwcCache
 
         if (!f.isDirectory() || catalog.exists())
         {
-            Swc swc = getSwc( f );
-            if (swc != null)
-            {
-                map.put( swc.getLocation(), swc );
-            }
+            files.add( f );
         }
         else
         {
-            File[] files = FileUtils.listFiles( f );
-            for (int i = 0; i < files.length; i++)
+            File[] list = FileUtils.listFiles( f );
+            for (int i = 0; i < list.length; i++)
             {
-                File file = files[i];
+                File file = list[i];
 
                 // we don't want to snarf an entire directory tree, just a single level.
                 if ((!file.isDirectory()) && file.canRead())
@@ -187,55 +221,112 @@ public class SwcCache
 
                     if (lowerCase.endsWith( SWC_EXTENSION ))
                     {
-                        Swc swc = getSwc( file );
-                        if (swc != null)
-                        {
-	                        map.put( swc.getLocation(), swc );
-                        }
+                        files.add( file );
                     }
                 }
             }
         }
-        return map;
+    }
+
+    /**
+     * Gets the SWCs for the Files, on up to the given number of threads.  The messages logged while
+     * loading are passed on in the order of the files, and when a SWC can't be loaded, the exception
+     * for the first such file is thrown, as if they had been loaded one by one.
+     *
+     * @return the Swc for each file, or null where it had errors
+     */
+    private Swc[] getSwcs(List files)
+    {
+        Swc[] loaded = new Swc[files.size()];
+        if (threads <= 1 || loaded.length <= 1)
+        {
+            for (int i = 0; i < loaded.length; i++)
+            {
+                loaded[i] = getSwc( (File) files.get(i) );
+            }
+            return loaded;
+        }
+
+        Loader loader = new Loader(files, loaded);
+        loader.run(threads);
+        return loaded;
     }
 
     // changed from private to protected to support Flash Authoring - jkamerer 2007.07.30
     protected Swc getSwc(File file)
     {
         Swc swc;
+        Load load, shared;
         try
         {
             String location = FileUtils.canonicalPath(file);
-            swc = (Swc)swcs.get(location);
-
             long lastModified = file.lastModified();
-            if (swc == null || (lastModified != swc.getLastModified()))
+
+            synchronized (swcs)
             {
-                if (Trace.swc)
+                swc = (Swc)swcs.get(location);
+                if (swc != null && lastModified == swc.getLastModified())
                 {
-                    Trace.trace("Getting new version of " + location + " (" + (swc == null ? "null" : swc.getLocation()) +
-                            ", " + (swc == null ? -1 : swc.getLastModified()) + ", " + lastModified + ")");
+                    if (Trace.swc)
+                    {
+                        Trace.trace("Loading cached version of " + location);
+                    }
+                    return swc;
                 }
 
-                SwcArchive archive = file.isDirectory()?
-                        (SwcArchive) new SwcDirectoryArchive( location ) :
-	                    lazyRead ? new SwcLazyReadArchive( location ) : new SwcDynamicArchive( location );
-
-                swc = new Swc( archive, true );
-                swc.setLastModified(lastModified);
+                load = (Load) loads.get(location);
+                if (load == null || load.lastModified != lastModified)
+                {
+                    if (Trace.swc)
+                    {
+                        Trace.trace("Getting new version of " + location + " (" + (swc == null ? "null" : swc.getLocation()) +
+                                ", " + (swc == null ? -1 : swc.getLastModified()) + ", " + lastModified + ")");
+                    }
 
-                if (ThreadLocalToolkit.errorCount() > 0)
+                    load = new Load(lastModified);
+                    loads.put(location, load);
+                    shared = null;
+                }
+                else
                 {
-                    swc = null;
+                    shared = load;
+                    load = null;
                 }
-                else if (useCache)
+            }
+
+            if (shared != null)
+            {
+                // another thread is loading it
+                swc = shared.waitFor();
+                if (swc != null)
                 {
-                    swcs.put(location, swc);
+                    return swc;
                 }
+                // it failed there, so load it here to report why
+            }
+
+            swc = null;
+            try
+            {
+                swc = loadSwc(file, location, lastModified);
             }
-            else if (Trace.swc)
+            finally
             {
-                Trace.trace("Loading cached version of " + location);
+                if (load != null)
+                {
+                    synchronized (swcs)
+                    {
+                        if (loads.get(location) == load)
+                        {
+                            loads.remove(location);
+                        }
+                        if (swc != null && useCache)
+                        {
+                            swcs.put(location, swc);
+                        }
+                    }
+                    load.done(swc);
+                }
             }
         }
         catch(Exception e)
@@ -251,10 +342,48 @@ public class SwcCache
         return swc;
     }
 
+    /**
+     * @return the SWC, or null if it had errors
+     */
+    private Swc loadSwc(File file, String location, long lastModified) throws Exception
+    {
+        SwcArchive archive = file.isDirectory()?
+                (SwcArchive) new SwcDirectoryArchive( location ) :
+                lazyRead ? new SwcMappedArchive( location ) : new SwcDynamicArchive( location );
+
+        Swc swc = new Swc( archive, true, file.isDirectory() ? null : catalogCache );
+        swc.setLastModified(lastModified);
+
+        if (ThreadLocalToolkit.errorCount() > 0)
+        {
+            swc = null;
+        }
+        return swc;
+    }
+
 	public void setLazyRead(boolean lazyRead)
 	{
 		this.lazyRead = lazyRead;
 	}
+
+	/**
+	 * Use the given directory to keep the catalogs of the SWCs that are read, and to look for them.
+	 * Catalogs of SWC directories aren't kept.
+	 *
+	 * @param directory may be null, for no catalog cache
+	 */
+	public void setCatalogCacheDirectory(String directory)
+	{
+		catalogCache = (directory != null) ? new CatalogCache(new File(directory)) : null;
+	}
+
+	/**
+	 * Load the SWCs of a group on up to the given number of threads.  1, the default, loads them one by one.
+	 */
+	public void setThreads(int threads)
+	{
+		this.threads = threads;
+	}
     
 
     /**
@@ -264,7 +393,13 @@ public class SwcCache
      */
     public void cleanExtraData()
     {
-       for (Iterator iter = swcs.getSwcs().iterator(); iter.hasNext();)
+       List cached;
+       synchronized (swcs)
+       {
+           cached = swcs.getSwcs();
+       }
+
+       for (Iterator iter = cached.iterator(); iter.hasNext();)
        {
            Swc swc = (Swc)iter.next();
            for (Iterator libit = swc.getLibraryIterator(); libit.hasNext();)
@@ -284,6 +419,155 @@ public class SwcCache
        }
     }
     
+    /**
+     * A SWC that is being loaded.  Other compilations that want it wait for it to be done.
+     */
+    private static class Load
+    {
+        Load(long lastModified)
+        {
+            this.lastModified = lastModified;
+        }
+
+        final long lastModified;
+        private boolean done;
+        private Swc swc;
+
+        synchronized void done(Swc swc)
+        {
+            this.swc = swc;
+            done = true;
+            notifyAll();
+        }
+
+        /**
+         * @return the SWC, or null if it couldn't be loaded
+         */
+        synchronized Swc waitFor()
+        {
+            while (!done)
+            {
+                try
+                {
+                    wait();
+                }
+                catch (InterruptedException ex)
+                {
+                }
+            }
+            return swc;
+        }
+    }
+
+    /**
+     * Loads the SWCs of a group on worker threads.  Each file's messages are buffered and passed on
+     * in the order of the files afterwards.
+     */
+    private class Loader
+    {
+        Loader(List files, Swc[] loaded)
+        {
+            this.files = files;
+            this.loaded = loaded;
+            this.buffers = new BufferedLogger[files.size()];
+        }
+
+        private final List files; // List<File>
+        private final Swc[] loaded;
+        private final BufferedLogger[] buffers;
+
+        // the index of the next file to load, and the first file that failed and why
+        private int next;
+        private int failed = -1;
+        private RuntimeException failure;
+
+        void run(int threads)
+        {
+            final ThreadLocalToolkit.Settings settings = ThreadLocalToolkit.getSettings();
+            Thread[] workers = new Thread[Math.min(threads, files.size())];
+            for (int i = 0; i < workers.length; i++)
+            {
+                workers[i] = new Thread("swc-" + i)
+                {
+                    public void run()
+                    {
+                        settings.apply();
+                        for (int k = claim(); k != -1; k = claim())
+                        {
+                            ThreadLocalToolkit.setLogger(buffers[k]);
+                            try
+                            {
+                                loaded[k] = getSwc( (File) files.get(k) );
+                            }
+                            catch (RuntimeException ex)
+                            {
+                                fail(k, ex);
+                            }
+                            finally
+                            {
+                                ThreadLocalToolkit.setLogger(null);
+                            }
+                        }
+                    }
+                };
+                workers[i].start();
+            }
+
+            for (int i = 0; i < workers.length; i++)
+            {
+                while (workers[i].isAlive())
+                {
+                    try
+                    {
+                        workers[i].join();
+                    }
+                    catch (InterruptedException ex)
+                    {
+                    }
+                }
+            }
+
+            // pass on the messages of the files that would have been loaded one by one
+            Logger logger = ThreadLocalToolkit.getLogger();
+            int last = (failure != null) ? failed : buffers.length - 1;
+            for (int i = 0; i <= last; i++)
+            {
+                if (buffers[i] != null && logger != null)
+                {
+                    buffers[i].replay(logger);
+                }
+            }
+
+            if (failure != null)
+            {
+                throw failure;
+            }
+        }
+
+        /**
+         * @return the index of the next file to load, or -1 when there is none left or an earlier one failed
+         */
+        private synchronized int claim()
+        {
+            if (next >= buffers.length || (failure != null && failed < next))
+            {
+                return -1;
+            }
+
+            buffers[next] = new BufferedLogger();
+            return next++;
+        }
+
+        private synchronized void fail(int index, RuntimeException ex)
+        {
+            if (failure == null || index < failed)
+            {
+                failed = index;
+                failure = ex;
+            }
+        }
+    }
+
     static class SwcLRUCache extends LRUCache
     {
         SwcLRUCache()
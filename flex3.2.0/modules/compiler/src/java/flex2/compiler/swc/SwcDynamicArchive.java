@@ -29,6 +29,7 @@ import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.File;
 import java.io.InputStream;
+import java.util.zip.CRC32;
 
 import flash.util.FileUtils;
 
@@ -93,10 +94,16 @@ public class SwcDynamicArchive implements SwcArchive
         }
     }
 
+    /**
+     * Writes the archive to a temporary file and then renames it to the archive's path.  If there already
+     * is an archive there, entries that haven't changed are copied from it as they are, so only the changed
+     * ones are compressed again.
+     */
     public void save() throws Exception
     {
         String tmpPath = path + ".tmp";
         ZipOutputStream zos = null;
+        ZipFile previous = openPrevious();
 	    try
 	    {
             zos = new ZipOutputStream( new BufferedOutputStream( new FileOutputStream( FileUtil.openFile(tmpPath, true) )));
@@ -108,6 +115,18 @@ public class SwcDynamicArchive implements SwcArchive
 
                 ZipEntry entry = new ZipEntry( (String)mapEntry.getKey() );
                 entry.setTime(f.getLastModified());
+
+                ZipEntry previousEntry = (previous != null) ? previous.getEntry( entry.getName() ) : null;
+                if (previousEntry != null && isUnchanged( previous, previousEntry, f ))
+                {
+                    entry.setMethod( previousEntry.getMethod() );
+                    entry.setCrc( previousEntry.getCrc() );
+                    entry.setSize( previousEntry.getSize() );
+                    entry.setComprSize( previousEntry.getCompressedSize() );
+                    zos.putRawEntry( entry, new BufferedInputStream(previous.getRawInputStream( previousEntry )) );
+                    continue;
+                }
+
                 zos.putNextEntry( entry );
 
                 BufferedInputStream in = new BufferedInputStream(f.getInputStream());
@@ -118,6 +137,12 @@ public class SwcDynamicArchive implements SwcArchive
             zos.close();
             zos = null;
 
+            if (previous != null)
+            {
+                previous.close();
+                previous = null;
+            }
+
             File tmpFile = new File(tmpPath);
             File file = new File(path);
             if (!FileUtils.renameFile( tmpFile, file ))
@@ -136,6 +161,91 @@ public class SwcDynamicArchive implements SwcArchive
             {
                 // ignore
             }
+
+            try
+            {
+                if (previous != null)
+                    previous.close();
+            }
+            catch(IOException ioe)
+            {
+                // ignore
+            }
+        }
+    }
+
+    /**
+     * @return the archive that is being replaced, or null if there isn't a readable one
+     */
+    private ZipFile openPrevious()
+    {
+        File file = new File(path);
+        if (!file.isFile())
+        {
+            return null;
+        }
+
+        try
+        {
+            return new ZipFile(file);
+        }
+        catch (Exception e)
+        {
+            // not a zip, it will just be overwritten
+            return null;
+        }
+    }
+
+    /**
+     * Whether the file has the same contents as the entry in the previous archive.  The sizes and CRCs are
+     * compared first, and if they match the entry is inflated and compared, which is still much cheaper than
+     * deflating the file again.
+     */
+    private static boolean isUnchanged(ZipFile previous, ZipEntry previousEntry, VirtualFile f) throws IOException
+    {
+        if (previousEntry.getMethod() != ZipEntry.STORED && previousEntry.getMethod() != ZipEntry.DEFLATED)
+        {
+            return false;
+        }
+
+        byte[] bytes = f.toByteArray();
+        if (bytes == null || bytes.length != previousEntry.getSize())
+        {
+            return false;
+        }
+
+        CRC32 crc = new CRC32();
+        crc.update(bytes);
+        if (crc.getValue() != previousEntry.getCrc())
+        {
+            return false;
+        }
+
+        InputStream in = previous.getInputStream( previousEntry );
+        try
+        {
+            byte[] buffer = new byte[8192];
+            int offset = 0;
+            for (int n = in.read(buffer); n != -1; n = in.read(buffer))
+            {
+                if (offset + n > bytes.length)
+                {
+                    return false;
+                }
+                for (int i = 0; i < n; i++)
+                {
+                    if (buffer[i] != bytes[offset + i])
+                    {
+                        return false;
+                    }
+                }
+                offset += n;
+            }
+            return offset == bytes.length;
+        }
+        finally
+        {
+            in.close();
         }
     }
 
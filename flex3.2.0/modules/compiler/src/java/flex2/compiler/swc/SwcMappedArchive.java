@@ -0,0 +1,74 @@
+////////////////////////////////////////////////////////////////////////////////
+//
+//  ADOBE SYSTEMS INCORPORATED
+//  Copyright 2006-2007 Adobe Systems Incorporated
+//  All Rights Reserved.
+//
+//  NOTICE: Adobe permits you to use, modify, and distribute this file
+//  in accordance with the terms of the license agreement accompanying it.
+//
+////////////////////////////////////////////////////////////////////////////////
+
+package flex2.compiler.swc;
+
+import flex2.compiler.io.VirtualFile;
+import flex2.compiler.io.VirtualMappedZipFile;
+import flex2.compiler.swc.zip.MappedZipFile;
+import flex2.compiler.swc.zip.ZipEntry;
+import flex2.compiler.util.MimeMappings;
+
+import java.io.File;
+import java.util.Enumeration;
+
+/**
+ * This SwcArchive works like SwcLazyReadArchive, but only reads the SWC's central directory on load.
+ * Entries are read and inflated when they are first asked for, and the SWF bytes are only held in a
+ * size-bounded cache.  close() releases the file, and reading another entry opens it again.
+ *
+ * @see VirtualMappedZipFile
+ */
+public class SwcMappedArchive extends SwcDynamicArchive
+{
+	private MappedZipFile zipFile;
+
+    public SwcMappedArchive( String path )
+    {
+	    super(path);
+    }
+
+    public void load()
+    {
+        try
+        {
+	        zipFile = new MappedZipFile(new File(path));
+	        Enumeration e = zipFile.getEntries();
+            while (e.hasMoreElements())
+            {
+	            ZipEntry ze = (ZipEntry) e.nextElement();
+	            VirtualFile f = new VirtualMappedZipFile( zipFile, ze, MimeMappings.getMimeType(ze.getName()),
+			            path + "$" + ze.getName(), path );
+                files.put( ze.getName(), f );
+            }
+        }
+        catch (SwcException.UnknownZipFormat e)
+        {
+        	throw new SwcException.NotASwcFile(path);
+        }
+        catch (SwcException e)
+        {
+	        throw e;
+        }
+        catch (Exception e)
+        {
+            throw new SwcException.FilesNotRead( e.getMessage() );
+        }
+    }
+
+	public void close()
+	{
+		if (zipFile != null)
+		{
+			zipFile.close();
+		}
+	}
+}
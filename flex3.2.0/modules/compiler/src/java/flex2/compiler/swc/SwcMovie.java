@@ -15,7 +15,6 @@ import flex2.linker.SimpleMovie;
 import flex2.linker.LinkerException;
 import flex2.linker.CULinkable;
 import flex2.linker.DependencyWalker;
-import flex2.linker.CoverageMetadataWriter;
 import flex2.linker.Configuration;
 import flex2.linker.FlexMovie;
 import flex2.compiler.CompilationUnit;
@@ -101,7 +100,7 @@ public class SwcMovie extends SimpleMovie
             }
             if (generateCoverageMetadata)
             {
-                coverageReport = CoverageMetadataWriter.dump( units );
+                coverageUnits = new ArrayList( units );
             }
             if (generateRBList)
             {
@@ -0,0 +1,193 @@
+////////////////////////////////////////////////////////////////////////////////
+//
+//  ADOBE SYSTEMS INCORPORATED
+//  Copyright 2006-2007 Adobe Systems Incorporated
+//  All Rights Reserved.
+//
+//  NOTICE: Adobe permits you to use, modify, and distribute this file
+//  in accordance with the terms of the license agreement accompanying it.
+//
+////////////////////////////////////////////////////////////////////////////////
+
+package flex2.compiler.swc.catalog;
+
+import flex2.compiler.swc.Component;
+import flex2.compiler.swc.Digest;
+import flex2.compiler.swc.Swc;
+import flex2.compiler.swc.SwcArchive;
+import flex2.compiler.swc.SwcDependencySet;
+import flex2.compiler.swc.SwcFile;
+import flex2.compiler.swc.SwcLibrary;
+
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * A CatalogReader that reads an entry written by CatalogCache instead of parsing catalog.xml.
+ *
+ * @see CatalogCache
+ */
+class CachedCatalogReader extends CatalogReader
+{
+    /**
+     * @param buffer the entry, positioned after the magic number and version
+     */
+    CachedCatalogReader(ByteBuffer buffer, Swc swc, SwcArchive archive)
+    {
+        super(null, swc, archive);
+        this.buffer = buffer;
+        this.archive = archive;
+    }
+
+    private final ByteBuffer buffer;
+    private final SwcArchive archive;
+    private String[] strings;
+
+    public void read() throws IOException
+    {
+        try
+        {
+            readStrings();
+
+            versions.setLibVersion(readString());
+            versions.setFlexVersion(readString());
+            versions.setFlexBuild(readString());
+
+            int flags = buffer.get();
+            features.setDebug((flags & 1) != 0);
+            features.setExternalDeps((flags & 2) != 0);
+            features.setScriptDeps((flags & 4) != 0);
+            features.setComponents((flags & 8) != 0);
+            features.setFiles((flags & 16) != 0);
+
+            for (int i = readInt(); i > 0; i--)
+            {
+                Component comp = new Component();
+                comp.setClassName(readString());
+                comp.setName(readString());
+                comp.setUri(readString());
+                comp.setIcon(readString());
+                comp.setDocs(readString());
+                comp.setPreview(readString());
+                comp.setLocation(swc.getLocation());
+                components.put(comp.getClassName(), comp);
+            }
+
+            for (int i = readInt(); i > 0; i--)
+            {
+                SwcLibrary lib = readLibrary();
+                libraries.put(lib.getPath(), lib);
+            }
+
+            for (int i = readInt(); i > 0; i--)
+            {
+                String path = readString();
+                long mod = buffer.getLong();
+                files.put(path, new SwcFile(path, mod, swc, archive));
+            }
+        }
+        catch (BufferUnderflowException ex)
+        {
+            throw new IOException("truncated catalog cache entry");
+        }
+        catch (RuntimeException ex)
+        {
+            // bad counts or string indexes
+            throw new IOException("bad catalog cache entry: " + ex);
+        }
+    }
+
+    private SwcLibrary readLibrary()
+    {
+        SwcLibrary lib = new SwcLibrary(swc, readString());
+
+        Set metadata = new HashSet();
+        for (int i = readInt(); i > 0; i--)
+        {
+            metadata.add(readString());
+        }
+        lib.addMetadata(metadata);
+
+        Map digests = new HashMap();
+        for (int i = readInt(); i > 0; i--)
+        {
+            Digest digest = new Digest();
+            digest.setType(readString());
+            digest.setValue(readString());
+            digest.setSigned(buffer.get() != 0);
+            digests.put(createDigestHashValue(digest.getType(), digest.isSigned()), digest);
+        }
+        lib.setDigests(digests);
+
+        for (int i = readInt(); i > 0; i--)
+        {
+            String name = readString();
+            long modtime = buffer.getLong();
+            Long signatureChecksum = (buffer.get() != 0) ? new Long(buffer.getLong()) : null;
+
+            Set defs = new TreeSet();
+            for (int j = readInt(); j > 0; j--)
+            {
+                defs.add(readString());
+            }
+
+            SwcDependencySet depSet = new SwcDependencySet();
+            for (int j = readInt(); j > 0; j--)
+            {
+                String type = readString();
+                for (int k = readInt(); k > 0; k--)
+                {
+                    depSet.addDependency(type, readString());
+                }
+            }
+
+            lib.addScript(name, defs, depSet, modtime, signatureChecksum);
+        }
+        return lib;
+    }
+
+    private void readStrings() throws UnsupportedEncodingException
+    {
+        strings = new String[buffer.getInt() + 1];
+        byte[] bytes = new byte[256];
+        for (int i = 1; i < strings.length; i++)
+        {
+            int length = buffer.getInt();
+            if (length > bytes.length)
+            {
+                bytes = new byte[length];
+            }
+            buffer.get(bytes, 0, length);
+            strings[i] = new String(bytes, 0, length, "UTF-8");
+        }
+    }
+
+    private String readString()
+    {
+        return strings[readInt()];
+    }
+
+    /**
+     * @see CatalogCache.Writer#writeInt
+     */
+    private int readInt()
+    {
+        int n = 0;
+        for (int shift = 0;; shift += 7)
+        {
+            int b = buffer.get();
+            n |= (b & 0x7f) << shift;
+            if ((b & 0x80) == 0)
+            {
+                return n;
+            }
+        }
+    }
+}
@@ -0,0 +1,340 @@
+////////////////////////////////////////////////////////////////////////////////
+//
+//  ADOBE SYSTEMS INCORPORATED
+//  Copyright 2006-2007 Adobe Systems Incorporated
+//  All Rights Reserved.
+//
+//  NOTICE: Adobe permits you to use, modify, and distribute this file
+//  in accordance with the terms of the license agreement accompanying it.
+//
+////////////////////////////////////////////////////////////////////////////////
+
+package flex2.compiler.swc.catalog;
+
+import flex2.compiler.swc.Component;
+import flex2.compiler.swc.Digest;
+import flex2.compiler.swc.Features;
+import flex2.compiler.swc.Swc;
+import flex2.compiler.swc.SwcArchive;
+import flex2.compiler.swc.SwcDependencySet;
+import flex2.compiler.swc.SwcFile;
+import flex2.compiler.swc.SwcLibrary;
+import flex2.compiler.swc.SwcScript;
+import flex2.compiler.swc.Versions;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import flash.util.Trace;
+
+/**
+ * A directory of catalogs that have already been read, so that a SWC seen by an earlier compilation,
+ * in this process or another one, doesn't need its catalog.xml parsed again.  Each entry is named
+ * after the SHA-256 digest of the catalog.xml it was read from and holds what CatalogReader made of
+ * it: the versions, features, components, libraries with their scripts, definitions, dependencies,
+ * metadata and digests, and the files.  Entries are in a compact binary form with a string table,
+ * and are read into memory in one go, so the file isn't held on to.
+ * <p>
+ * A missing or unreadable entry is not an error; the catalog is parsed and the entry written again.
+ *
+ * @see CachedCatalogReader
+ */
+public class CatalogCache
+{
+    static final int MAGIC = 0x53574343; // "SWCC"
+    // change when CatalogReader or the entry format changes
+    static final int VERSION = 1;
+
+    private static final String EXTENSION = ".cat";
+
+    public CatalogCache(File directory)
+    {
+        this.directory = directory;
+    }
+
+    private final File directory;
+
+    /**
+     * @return a reader for the cached catalog, or null if the catalog isn't in the cache.  read() must
+     *         still be called on it.
+     */
+    public CatalogReader getReader(byte[] catalog, Swc swc, SwcArchive archive)
+    {
+        File file = getFile(catalog);
+        if (!file.isFile())
+        {
+            return null;
+        }
+
+        try
+        {
+            FileInputStream in = new FileInputStream(file);
+            try
+            {
+                FileChannel channel = in.getChannel();
+                ByteBuffer buffer = ByteBuffer.allocate((int) channel.size());
+                while (buffer.hasRemaining())
+                {
+                    if (channel.read(buffer) == -1)
+                    {
+                        throw new EOFException(file.getPath());
+                    }
+                }
+                buffer.flip();
+                if (buffer.remaining() < 8 || buffer.getInt() != MAGIC || buffer.getInt() != VERSION)
+                {
+                    return null;
+                }
+                return new CachedCatalogReader(buffer, swc, archive);
+            }
+            finally
+            {
+                in.close();
+            }
+        }
+        catch (IOException ex)
+        {
+            if (Trace.swc)
+            {
+                Trace.trace("Could not read cached catalog " + file + ": " + ex.getMessage());
+            }
+            return null;
+        }
+    }
+
+    /**
+     * Cache what the reader read from the catalog.  Failures are ignored; the catalog is just parsed
+     * again next time.
+     */
+    public void put(byte[] catalog, CatalogReader reader)
+    {
+        File file = getFile(catalog);
+        File tmpFile = null;
+        try
+        {
+            byte[] bytes = new Writer().write(reader);
+
+            directory.mkdirs();
+            tmpFile = File.createTempFile("catalog", ".tmp", directory);
+            FileOutputStream out = new FileOutputStream(tmpFile);
+            try
+            {
+                out.write(bytes);
+            }
+            finally
+            {
+                out.close();
+            }
+
+            // another compilation may have cached the same catalog meanwhile, which is fine
+            if (!tmpFile.renameTo(file))
+            {
+                tmpFile.delete();
+            }
+        }
+        catch (IOException ex)
+        {
+            if (tmpFile != null)
+            {
+                tmpFile.delete();
+            }
+            if (Trace.swc)
+            {
+                Trace.trace("Could not cache catalog " + file + ": " + ex.getMessage());
+            }
+        }
+    }
+
+    private File getFile(byte[] catalog)
+    {
+        return new File(directory, new Digest().computeDigest(catalog) + EXTENSION);
+    }
+
+    /**
+     * Writes a cache entry.  The strings come first, and everything else refers to them by index.
+     */
+    private static class Writer
+    {
+        private final Map indexes = new HashMap(); // Map<String, Integer>
+        private final List strings = new ArrayList();
+        private final ByteArrayOutputStream body = new ByteArrayOutputStream();
+        private final DataOutputStream out = new DataOutputStream(body);
+
+        byte[] write(CatalogReader reader) throws IOException
+        {
+            Versions versions = reader.getVersions();
+            writeString(versions.getLibVersion());
+            writeString(versions.getFlexVersion());
+            writeString(versions.getFlexBuild());
+
+            Features features = reader.getFeatures();
+            out.writeByte((features.isDebug() ? 1 : 0) |
+                          (features.hasExternalDeps() ? 2 : 0) |
+                          (features.isScriptDeps() ? 4 : 0) |
+                          (features.isComponents() ? 8 : 0) |
+                          (features.isFiles() ? 16 : 0));
+
+            Collection components = reader.getComponents().values();
+            writeInt(components.size());
+            for (Iterator i = components.iterator(); i.hasNext();)
+            {
+                Component component = (Component) i.next();
+                writeString(component.getClassName());
+                writeString(component.getName());
+                writeString(component.getUri());
+                writeString(component.getIcon());
+                writeString(component.getDocs());
+                writeString(component.getPreview());
+            }
+
+            Collection libraries = reader.getLibraries().values();
+            writeInt(libraries.size());
+            for (Iterator i = libraries.iterator(); i.hasNext();)
+            {
+                writeLibrary((SwcLibrary) i.next());
+            }
+
+            Collection files = reader.getFiles().entrySet();
+            writeInt(files.size());
+            for (Iterator i = files.iterator(); i.hasNext();)
+            {
+                Map.Entry e = (Map.Entry) i.next();
+                writeString((String) e.getKey());
+                out.writeLong(((SwcFile) e.getValue()).getLastModified());
+            }
+
+            // the header and string table, then the body
+            ByteArrayOutputStream entry = new ByteArrayOutputStream(body.size() * 2);
+            DataOutputStream header = new DataOutputStream(entry);
+            header.writeInt(MAGIC);
+            header.writeInt(VERSION);
+            header.writeInt(strings.size());
+            for (int i = 0, size = strings.size(); i < size; i++)
+            {
+                byte[] bytes = ((String) strings.get(i)).getBytes("UTF-8");
+                header.writeInt(bytes.length);
+                header.write(bytes);
+            }
+            header.flush();
+            body.writeTo(entry);
+            return entry.toByteArray();
+        }
+
+        private void writeLibrary(SwcLibrary library) throws IOException
+        {
+            writeString(library.getPath());
+            writeStrings(library.getMetadata());
+
+            Collection digests = library.getDigests().values();
+            writeInt(digests.size());
+            for (Iterator i = digests.iterator(); i.hasNext();)
+            {
+                Digest digest = (Digest) i.next();
+                writeString(digest.getType());
+                writeString(digest.getValue());
+                out.writeBoolean(digest.isSigned());
+            }
+
+            List scripts = new ArrayList();
+            for (Iterator i = library.getScriptIterator(); i.hasNext();)
+            {
+                scripts.add(i.next());
+            }
+            writeInt(scripts.size());
+            for (int i = 0, size = scripts.size(); i < size; i++)
+            {
+                SwcScript script = (SwcScript) scripts.get(i);
+                writeString(script.getName());
+                out.writeLong(script.getLastModified());
+                Long signatureChecksum = script.getSignatureChecksum();
+                out.writeBoolean(signatureChecksum != null);
+                if (signatureChecksum != null)
+                {
+                    out.writeLong(signatureChecksum.longValue());
+                }
+
+                List defs = new ArrayList();
+                for (Iterator d = script.getDefinitionIterator(); d.hasNext();)
+                {
+                    defs.add(d.next());
+                }
+                writeStrings(defs);
+
+                SwcDependencySet depSet = script.getDependencySet();
+                List types = new ArrayList();
+                for (Iterator t = depSet.getTypeIterator(); t.hasNext();)
+                {
+                    types.add(t.next());
+                }
+                writeInt(types.size());
+                for (int t = 0; t < types.size(); t++)
+                {
+                    String type = (String) types.get(t);
+                    writeString(type);
+                    List deps = new ArrayList();
+                    for (Iterator d = depSet.getDependencyIterator(type); d.hasNext();)
+                    {
+                        deps.add(d.next());
+                    }
+                    writeStrings(deps);
+                }
+            }
+        }
+
+        private void writeStrings(Collection c) throws IOException
+        {
+            writeInt(c.size());
+            for (Iterator i = c.iterator(); i.hasNext();)
+            {
+                writeString((String) i.next());
+            }
+        }
+
+        /**
+         * Writes the string's index in the string table, or 0 for null.
+         */
+        private void writeString(String s) throws IOException
+        {
+            if (s == null)
+            {
+                writeInt(0);
+                return;
+            }
+
+            Integer index = (Integer) indexes.get(s);
+            if (index == null)
+            {
+                strings.add(s);
+                index = new Integer(strings.size());
+                indexes.put(s, index);
+            }
+            writeInt(index.intValue());
+        }
+
+        /**
+         * Writes a non-negative int in 7 bit groups, low ones first.
+         */
+        private void writeInt(int n) throws IOException
+        {
+            while ((n & ~0x7f) != 0)
+            {
+                out.writeByte((n & 0x7f) | 0x80);
+                n >>>= 7;
+            }
+            out.writeByte(n);
+        }
+    }
+}
@@ -0,0 +1,297 @@
+////////////////////////////////////////////////////////////////////////////////
+//
+//  ADOBE SYSTEMS INCORPORATED
+//  Copyright 2006-2007 Adobe Systems Incorporated
+//  All Rights Reserved.
+//
+//  NOTICE: Adobe permits you to use, modify, and distribute this file
+//  in accordance with the terms of the license agreement accompanying it.
+//
+////////////////////////////////////////////////////////////////////////////////
+
+package flex2.compiler.swc.zip;
+
+import flex2.compiler.swc.SwcException;
+
+import java.io.ByteArrayInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+import java.util.zip.ZipException;
+
+/**
+ * A read-only ZipFile that reads entries with positional reads on the archive's channel.  Only the
+ * central directory is read when it is opened; an entry's local header is looked at and its data
+ * inflated when its bytes are asked for.
+ * <p>
+ * close() releases the file, so it can be replaced or deleted, and the next read opens it again,
+ * like ZipFileHolder does.  Reading entries is thread safe.
+ *
+ * @see ZipFile
+ */
+public class MappedZipFile
+{
+    // offsets into the end of central directory record, a central directory record and a local header
+    private static final int EOCD_SIZE = 22;
+    private static final int EOCD_CFD_SIZE = 12;
+    private static final int EOCD_CFD_OFFSET = 16;
+    private static final int CFH_SIZE = 46;
+    private static final int LFH_SIZE = 30;
+    // the end of central directory record is followed by a comment of at most this many bytes
+    private static final int MAX_COMMENT_SIZE = 0xffff;
+
+    public MappedZipFile(File f) throws IOException
+    {
+        this.file = f;
+        try
+        {
+            populateFromCentralDirectory();
+        }
+        finally
+        {
+            // opened again for the first entry read
+            close();
+        }
+    }
+
+    private final File file;
+    private RandomAccessFile raf;
+    private FileChannel channel;
+
+    // String name -> ZipEntry, in archive order
+    private final Map entries = new LinkedHashMap();
+    // ZipEntry -> Integer offset of the local file header
+    private final Map headerOffsets = new HashMap();
+
+    /**
+     * @return all entries as ZipEntry instances.
+     */
+    public Enumeration getEntries()
+    {
+        return Collections.enumeration(entries.values());
+    }
+
+    /**
+     * @return the named entry, or null if there is none
+     */
+    public ZipEntry getEntry(String name)
+    {
+        return (ZipEntry) entries.get(name);
+    }
+
+    public InputStream getInputStream(ZipEntry ze) throws IOException
+    {
+        return new ByteArrayInputStream(getBytes(ze));
+    }
+
+    /**
+     * Closes the file.  It is opened again if more bytes are asked for.
+     */
+    public synchronized void close()
+    {
+        if (raf != null)
+        {
+            try
+            {
+                raf.close();
+            }
+            catch (IOException ex)
+            {
+                // not a problem if we can't close
+            }
+            raf = null;
+            channel = null;
+        }
+    }
+
+    /**
+     * Inflates the entry's data, or copies it if it's stored.
+     */
+    public byte[] getBytes(ZipEntry ze) throws IOException
+    {
+        Integer header = (Integer) headerOffsets.get(ze);
+        if (header == null)
+        {
+            throw new ZipException(ze.getName() + " is not in this archive");
+        }
+
+        int offset = header.intValue();
+        ByteBuffer lfh = read(offset, LFH_SIZE);
+        int start = offset + LFH_SIZE + getShort(lfh, 26) + getShort(lfh, 28);
+        int compressedSize = (int) ze.getCompressedSize();
+        int size = (int) ze.getSize();
+        long length = getChannel().size();
+        if (start + compressedSize > length)
+        {
+            throw new SwcException.BadZipSize(ze.getName(), compressedSize + "", (length - start) + "");
+        }
+
+        switch (ze.getMethod())
+        {
+            case ZipEntry.STORED:
+            {
+                return read(start, compressedSize).array();
+            }
+            case ZipEntry.DEFLATED:
+            {
+                // nowrap needs an extra dummy byte, see Inflater's javadocs
+                byte[] compressed = new byte[compressedSize + 1];
+                read(start, ByteBuffer.wrap(compressed, 0, compressedSize));
+
+                byte[] bytes = new byte[size];
+                Inflater inflater = new Inflater(true);
+                try
+                {
+                    inflater.setInput(compressed);
+                    int n = 0;
+                    while (n < size && !inflater.finished())
+                    {
+                        int count = inflater.inflate(bytes, n, size - n);
+                        if (count == 0 && (inflater.needsInput() || inflater.needsDictionary()))
+                        {
+                            break;
+                        }
+                        n += count;
+                    }
+                    if (n != size)
+                    {
+                        throw new SwcException.BadZipSize(ze.getName(), size + "", n + "");
+                    }
+                }
+                catch (DataFormatException ex)
+                {
+                    throw new ZipException(ze.getName() + ": " + ex.getMessage());
+                }
+                finally
+                {
+                    inflater.end();
+                }
+                return bytes;
+            }
+            default:
+                throw new SwcException.UnsupportedZipCompression(ze.getMethod() + "");
+        }
+    }
+
+    private synchronized FileChannel getChannel() throws IOException
+    {
+        if (channel == null)
+        {
+            raf = new RandomAccessFile(file, "r");
+            channel = raf.getChannel();
+        }
+        return channel;
+    }
+
+    /**
+     * @return the bytes at the position, in a little endian buffer
+     */
+    private ByteBuffer read(long position, int length) throws IOException
+    {
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        read(position, buffer);
+        buffer.flip();
+        buffer.order(ByteOrder.LITTLE_ENDIAN);
+        return buffer;
+    }
+
+    private void read(long position, ByteBuffer buffer) throws IOException
+    {
+        // positional reads leave the channel's position alone, so threads can share it
+        FileChannel channel = getChannel();
+        while (buffer.hasRemaining())
+        {
+            int n = channel.read(buffer, position);
+            if (n == -1)
+            {
+                throw new EOFException(file.getPath());
+            }
+            position += n;
+        }
+    }
+
+    private void populateFromCentralDirectory() throws IOException
+    {
+        long length = getChannel().size();
+        int tailLength = (int) Math.min(length, EOCD_SIZE + MAX_COMMENT_SIZE);
+        ByteBuffer tail = read(length - tailLength, tailLength);
+        int eocd = findEndOfCentralDirectory(tail);
+        int directorySize = tail.getInt(eocd + EOCD_CFD_SIZE);
+        long directoryOffset = tail.getInt(eocd + EOCD_CFD_OFFSET) & 0xffffffffL;
+        if (directorySize < 0 || directoryOffset + directorySize > length)
+        {
+            throw new SwcException.UnknownZipFormat("0");
+        }
+
+        ByteBuffer directory = read(directoryOffset, directorySize);
+        int offset = 0;
+        while (offset + CFH_SIZE <= directory.limit() &&
+               (directory.getInt(offset) & 0xffffffffL) == ZipOutputStream.CFH_SIG.getValue())
+        {
+            ZipEntry ze = new ZipEntry();
+            ze.setPlatform((getShort(directory, offset + 4) >> 8) & 0x0F);
+            ze.setMethod(getShort(directory, offset + 10));
+            ze.setTime(ZipFile.fromDosTime(new ZipLong(directory.getInt(offset + 12) & 0xffffffffL)).getTime());
+            ze.setCrc(directory.getInt(offset + 16) & 0xffffffffL);
+            ze.setCompressedSize(directory.getInt(offset + 20) & 0xffffffffL);
+            ze.setSize(directory.getInt(offset + 24) & 0xffffffffL);
+
+            int fileNameLen = getShort(directory, offset + 28);
+            int extraLen = getShort(directory, offset + 30);
+            int commentLen = getShort(directory, offset + 32);
+
+            ze.setInternalAttributes(getShort(directory, offset + 36));
+            ze.setExternalAttributes(directory.getInt(offset + 38) & 0xffffffffL);
+
+            if (offset + CFH_SIZE + fileNameLen > directory.limit())
+            {
+                break;
+            }
+            byte[] fileName = new byte[fileNameLen];
+            ByteBuffer name = directory.duplicate();
+            name.position(offset + CFH_SIZE);
+            name.get(fileName);
+            ze.setName(new String(fileName));
+
+            entries.put(ze.getName(), ze);
+            headerOffsets.put(ze, new Integer(directory.getInt(offset + 42)));
+
+            offset += CFH_SIZE + fileNameLen + extraLen + commentLen;
+        }
+    }
+
+    /**
+     * Searches backwards from the end for the &quot;End of central dir record&quot;.
+     *
+     * @return its offset in the tail of the file
+     */
+    private static int findEndOfCentralDirectory(ByteBuffer tail) throws IOException
+    {
+        int signature = (int) ZipOutputStream.EOCD_SIG.getValue();
+        for (int off = tail.limit() - EOCD_SIZE; off >= 0; off--)
+        {
+            if (tail.getInt(off) == signature)
+            {
+                return off;
+            }
+        }
+        throw new SwcException.UnknownZipFormat("0");
+    }
+
+    private static int getShort(ByteBuffer buffer, int index)
+    {
+        return buffer.getShort(index) & 0xffff;
+    }
+}
@@ -452,6 +452,20 @@ public class ZipFile {
         }
     }
 
+    /**
+     * Returns an InputStream for reading the data of the given entry
+     * as it is stored in the archive, without inflating it.
+     * @param ze the entry to get the stream for.
+     * @return a stream to read the entry's compressed data from.
+     */
+    public InputStream getRawInputStream(ZipEntry ze) {
+        Long start = (Long) dataOffsets.get(ze);
+        if (start == null) {
+            return null;
+        }
+        return new BoundedInputStream(start.longValue(), ze.getCompressedSize());
+    }
+
     /**
      * InputStream that delegates requests to the underlying
      * RandomAccessFile, making sure that only bytes from a certain
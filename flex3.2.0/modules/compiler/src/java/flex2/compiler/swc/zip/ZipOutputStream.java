@@ -23,6 +23,7 @@ import java.io.File;
 import java.io.FileOutputStream;
 import java.io.FilterOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.OutputStream;
 import java.io.RandomAccessFile;
 import java.io.UnsupportedEncodingException;
@@ -411,6 +412,54 @@ public class ZipOutputStream extends FilterOutputStream {
         writeLocalFileHeader(entry);
     }
 
+    /**
+     * Writes an entry whose data is already in its stored form, such
+     * as one copied from another archive with {@link
+     * ZipFile#getRawInputStream}, so it isn't deflated again.
+     *
+     * <p>The entry's method, CRC, size and compressed size must be
+     * set, and the stream must have exactly compressed size
+     * bytes.</p>
+     */
+    public void putRawEntry(ZipEntry ze, InputStream raw) throws IOException {
+        closeEntry();
+
+        if (ze.getTime() == -1) { // not specified
+            ze.setTime(System.currentTimeMillis());
+        }
+
+        entries.addElement(ze);
+        writeLocalFileHeader(ze);
+
+        long remaining = ze.getCompressedSize();
+        while (remaining > 0) {
+            int n = raw.read(buf, 0, (int) Math.min(buf.length, remaining));
+            if (n == -1) {
+                throw new SwcException.BadZipSize(ze.getName(), ze.getCompressedSize() + "",
+                        (ze.getCompressedSize() - remaining) + "");
+            }
+            writeOut(buf, 0, n);
+            written += n;
+            remaining -= n;
+        }
+
+        if (raf != null) {
+            long save = raf.getFilePointer();
+
+            raf.seek(localDataStart);
+            writeOut((new ZipLong(ze.getCrc())).getBytes());
+            writeOut((new ZipLong(ze.getCompressedSize())).getBytes());
+            writeOut((new ZipLong(ze.getSize())).getBytes());
+            raf.seek(save);
+        } else if (ze.getMethod() == DEFLATED) {
+            writeOut(DD_SIG.getBytes());
+            writeOut((new ZipLong(ze.getCrc())).getBytes());
+            writeOut((new ZipLong(ze.getCompressedSize())).getBytes());
+            writeOut((new ZipLong(ze.getSize())).getBytes());
+            written += 16;
+        }
+    }
+
     /**
      * Set the file comment.
      *
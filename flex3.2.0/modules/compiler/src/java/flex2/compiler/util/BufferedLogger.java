@@ -0,0 +1,322 @@
+////////////////////////////////////////////////////////////////////////////////
+//
+//  ADOBE SYSTEMS INCORPORATED
+//  Copyright 2005-2007 Adobe Systems Incorporated
+//  All Rights Reserved.
+//
+//  NOTICE: Adobe permits you to use, modify, and distribute this file
+//  in accordance with the terms of the license agreement accompanying it.
+//
+////////////////////////////////////////////////////////////////////////////////
+
+package flex2.compiler.util;
+
+import flash.localization.LocalizationManager;
+import flex2.compiler.ILocalizableMessage;
+import flex2.compiler.Logger;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * BufferedLogger holds on to the messages logged to it until they are replayed to another logger.
+ * Worker threads log through one, so that the messages of the sources they work on come out in
+ * the same order as when the sources are done one by one.
+ */
+public class BufferedLogger implements Logger
+{
+	private static final int INFO = 0, DEBUG = 1, WARNING = 2, ERROR = 3, MESSAGE = 4,
+							 NEEDS_COMPILATION = 5, INCLUDED_FILE_UPDATED = 6, INCLUDED_FILE_AFFECTED = 7;
+
+	// which of the overloaded log methods was called
+	private static final int TEXT = 0, PATH = 1, PATH_CODE = 2, LINE = 3, LINE_CODE = 4, COL = 5,
+							 COL_SOURCE = 6, COL_SOURCE_CODE = 7;
+
+	public BufferedLogger()
+	{
+		entries = new ArrayList();
+	}
+
+	private List entries; // List<Entry>
+	private int errorCount, warningCount;
+
+	private static class Entry
+	{
+		Entry(int kind, int form, String path, int line, int col, String text, String source, int errorCode)
+		{
+			this.kind = kind;
+			this.form = form;
+			this.path = path;
+			this.line = line;
+			this.col = col;
+			this.text = text;
+			this.source = source;
+			this.errorCode = errorCode;
+		}
+
+		int kind, form;
+		String path;
+		int line, col;
+		String text;
+		String source;
+		int errorCode;
+		ILocalizableMessage message;
+	}
+
+	/**
+	 * Pass the messages logged so far on to the given logger, in the order they were logged, and forget them.
+	 */
+	public void replay(Logger logger)
+	{
+		for (int i = 0, size = entries.size(); i < size; i++)
+		{
+			Entry e = (Entry) entries.get(i);
+			switch (e.kind)
+			{
+			case INFO:
+				switch (e.form)
+				{
+				case TEXT: logger.logInfo(e.text); break;
+				case PATH: logger.logInfo(e.path, e.text); break;
+				case LINE: logger.logInfo(e.path, e.line, e.text); break;
+				default: logger.logInfo(e.path, e.line, e.col, e.text); break;
+				}
+				break;
+			case DEBUG:
+				switch (e.form)
+				{
+				case TEXT: logger.logDebug(e.text); break;
+				case PATH: logger.logDebug(e.path, e.text); break;
+				case LINE: logger.logDebug(e.path, e.line, e.text); break;
+				default: logger.logDebug(e.path, e.line, e.col, e.text); break;
+				}
+				break;
+			case WARNING:
+				switch (e.form)
+				{
+				case TEXT: logger.logWarning(e.text); break;
+				case PATH: logger.logWarning(e.path, e.text); break;
+				case PATH_CODE: logger.logWarning(e.path, e.text, e.errorCode); break;
+				case LINE: logger.logWarning(e.path, e.line, e.text); break;
+				case LINE_CODE: logger.logWarning(e.path, e.line, e.text, e.errorCode); break;
+				case COL: logger.logWarning(e.path, e.line, e.col, e.text); break;
+				case COL_SOURCE: logger.logWarning(e.path, e.line, e.col, e.text, e.source); break;
+				default: logger.logWarning(e.path, e.line, e.col, e.text, e.source, e.errorCode); break;
+				}
+				break;
+			case ERROR:
+				switch (e.form)
+				{
+				case TEXT: logger.logError(e.text); break;
+				case PATH: logger.logError(e.path, e.text); break;
+				case PATH_CODE: logger.logError(e.path, e.text, e.errorCode); break;
+				case LINE: logger.logError(e.path, e.line, e.text); break;
+				case LINE_CODE: logger.logError(e.path, e.line, e.text, e.errorCode); break;
+				case COL: logger.logError(e.path, e.line, e.col, e.text); break;
+				case COL_SOURCE: logger.logError(e.path, e.line, e.col, e.text, e.source); break;
+				default: logger.logError(e.path, e.line, e.col, e.text, e.source, e.errorCode); break;
+				}
+				break;
+			case MESSAGE:
+				if (e.source == null)
+					logger.log(e.message);
+				else
+					logger.log(e.message, e.source);
+				break;
+			case NEEDS_COMPILATION:
+				logger.needsCompilation(e.path, e.text);
+				break;
+			case INCLUDED_FILE_UPDATED:
+				logger.includedFileUpdated(e.path);
+				break;
+			case INCLUDED_FILE_AFFECTED:
+				logger.includedFileAffected(e.path);
+				break;
+			}
+		}
+
+		entries.clear();
+	}
+
+	private Entry add(int kind, int form, String path, int line, int col, String text, String source, int errorCode)
+	{
+		Entry e = new Entry(kind, form, path, line, col, text, source, errorCode);
+		entries.add(e);
+		if (kind == ERROR)
+		{
+			errorCount++;
+		}
+		else if (kind == WARNING)
+		{
+			warningCount++;
+		}
+		return e;
+	}
+
+	public int errorCount()
+	{
+		return errorCount;
+	}
+
+	public int warningCount()
+	{
+		return warningCount;
+	}
+
+	public void logInfo(String info)
+	{
+		add(INFO, TEXT, null, -1, -1, info, null, -1);
+	}
+
+	public void logDebug(String debug)
+	{
+		add(DEBUG, TEXT, null, -1, -1, debug, null, -1);
+	}
+
+	public void logWarning(String warning)
+	{
+		add(WARNING, TEXT, null, -1, -1, warning, null, -1);
+	}
+
+	public void logError(String error)
+	{
+		add(ERROR, TEXT, null, -1, -1, error, null, -1);
+	}
+
+	public void logInfo(String path, String info)
+	{
+		add(INFO, PATH, path, -1, -1, info, null, -1);
+	}
+
+	public void logDebug(String path, String debug)
+	{
+		add(DEBUG, PATH, path, -1, -1, debug, null, -1);
+	}
+
+	public void logWarning(String path, String warning)
+	{
+		add(WARNING, PATH, path, -1, -1, warning, null, -1);
+	}
+
+	public void logWarning(String path, String warning, int errorCode)
+	{
+		add(WARNING, PATH_CODE, path, -1, -1, warning, null, errorCode);
+	}
+
+	public void logError(String path, String error)
+	{
+		add(ERROR, PATH, path, -1, -1, error, null, -1);
+	}
+
+	public void logError(String path, String error, int errorCode)
+	{
+		add(ERROR, PATH_CODE, path, -1, -1, error, null, errorCode);
+	}
+
+	public void logInfo(String path, int line, String info)
+	{
+		add(INFO, LINE, path, line, -1, info, null, -1);
+	}
+
+	public void logDebug(String path, int line, String debug)
+	{
+		add(DEBUG, LINE, path, line, -1, debug, null, -1);
+	}
+
+	public void logWarning(String path, int line, String warning)
+	{
+		add(WARNING, LINE, path, line, -1, warning, null, -1);
+	}
+
+	public void logWarning(String path, int line, String warning, int errorCode)
+	{
+		add(WARNING, LINE_CODE, path, line, -1, warning, null, errorCode);
+	}
+
+	public void logError(String path, int line, String error)
+	{
+		add(ERROR, LINE, path, line, -1, error, null, -1);
+	}
+
+	public void logError(String path, int line, String error, int errorCode)
+	{
+		add(ERROR, LINE_CODE, path, line, -1, error, null, errorCode);
+	}
+
+	public void logInfo(String path, int line, int col, String info)
+	{
+		add(INFO, COL, path, line, col, info, null, -1);
+	}
+
+	public void logDebug(String path, int line, int col, String debug)
+	{
+		add(DEBUG, COL, path, line, col, debug, null, -1);
+	}
+
+	public void logWarning(String path, int line, int col, String warning)
+	{
+		add(WARNING, COL, path, line, col, warning, null, -1);
+	}
+
+	public void logError(String path, int line, int col, String error)
+	{
+		add(ERROR, COL, path, line, col, error, null, -1);
+	}
+
+	public void logWarning(String path, int line, int col, String warning, String source)
+	{
+		add(WARNING, COL_SOURCE, path, line, col, warning, source, -1);
+	}
+
+	public void logWarning(String path, int line, int col, String warning, String source, int errorCode)
+	{
+		add(WARNING, COL_SOURCE_CODE, path, line, col, warning, source, errorCode);
+	}
+
+	public void logError(String path, int line, int col, String error, String source)
+	{
+		add(ERROR, COL_SOURCE, path, line, col, error, source, -1);
+	}
+
+	public void logError(String path, int line, int col, String error, String source, int errorCode)
+	{
+		add(ERROR, COL_SOURCE_CODE, path, line, col, error, source, errorCode);
+	}
+
+	public void log(ILocalizableMessage m)
+	{
+		log(m, null);
+	}
+
+	public void log(ILocalizableMessage m, String source)
+	{
+		add(MESSAGE, TEXT, null, -1, -1, null, source, -1).message = m;
+		if (m.getLevel() == ILocalizableMessage.ERROR)
+		{
+			errorCount++;
+		}
+		else if (m.getLevel() == ILocalizableMessage.WARNING)
+		{
+			warningCount++;
+		}
+	}
+
+	public void needsCompilation(String path, String reason)
+	{
+		add(NEEDS_COMPILATION, PATH, path, -1, -1, reason, null, -1);
+	}
+
+	public void includedFileUpdated(String path)
+	{
+		add(INCLUDED_FILE_UPDATED, PATH, path, -1, -1, null, null, -1);
+	}
+
+	public void includedFileAffected(String path)
+	{
+		add(INCLUDED_FILE_AFFECTED, PATH, path, -1, -1, null, null, -1);
+	}
+
+	public void setLocalizationManager(LocalizationManager mgr)
+	{
+	}
+}
@@ -55,6 +55,18 @@ public class LocalLogger implements Logger
 		source = s;
 	}
 	
+	// C: used by API to buffer the messages of sources parsed on worker threads...
+	public Logger getOriginal()
+	{
+		return original;
+	}
+
+	public void setOriginal(Logger original)
+	{
+		assert !(original instanceof LocalLogger);
+		this.original = original;
+	}
+
 	// Disconnect this logger from the original logger...
 	public void disconnect()
 	{
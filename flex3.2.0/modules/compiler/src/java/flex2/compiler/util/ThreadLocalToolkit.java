@@ -16,9 +16,11 @@ import flex2.compiler.ILocalizableMessage;
 import flex2.compiler.Logger;
 import flex2.compiler.Source;
 import flex2.compiler.common.PathResolver;
+import flex2.compiler.io.FileChangeTracker;
 import flex2.compiler.io.VirtualFile;
 import flex2.tools.oem.ProgressMeter;
 
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
 
@@ -35,6 +37,7 @@ public final class ThreadLocalToolkit
     private static ThreadLocal mimeMappings = new ThreadLocal();
     private static ThreadLocal progressMeter = new ThreadLocal();
     private static ThreadLocal compilerControl = new ThreadLocal();
+    private static ThreadLocal fileChangeTracker = new ThreadLocal();
 
     public static void setLogger(Logger logger)
     {
@@ -448,15 +451,20 @@ public final class ThreadLocalToolkit
     }
 
     public static void addResolvedPath(String path, VirtualFile virtualFile)
+    {
+        getResolvedPaths().put(path, virtualFile);
+    }
+
+    // synchronized, because worker threads share it with the thread that started them
+    private static Map getResolvedPaths()
     {
         Map resolvedMap = (Map) resolved.get();
         if (resolvedMap == null)
         {
-            resolvedMap = new HashMap();
+            resolvedMap = Collections.synchronizedMap(new HashMap());
             resolved.set(resolvedMap);
         }
-
-        resolvedMap.put(path, virtualFile);
+        return resolvedMap;
     }
 
     public static VirtualFile getResolvedPath(String path)
@@ -522,4 +530,61 @@ public final class ThreadLocalToolkit
     {
     	return (CompilerControl) compilerControl.get();
     }
+
+    // File Change Tracker...
+
+    public static void setFileChangeTracker(FileChangeTracker tracker)
+    {
+        fileChangeTracker.set(tracker);
+    }
+
+    public static FileChangeTracker getFileChangeTracker()
+    {
+        return (FileChangeTracker) fileChangeTracker.get();
+    }
+
+    // Worker threads...
+
+    /**
+     * @return the calling thread's path resolver, resolved paths, localization manager, mime mappings,
+     *         compiler control and file change tracker, for worker threads that do part of its compilation.  The logger,
+     *         benchmark and progress meter are not passed on.
+     */
+    public static Settings getSettings()
+    {
+        return new Settings();
+    }
+
+    public static final class Settings
+    {
+        private Settings()
+        {
+            resolver = getPathResolver();
+            resolved = getResolvedPaths();
+            localization = getLocalizationManager();
+            mimeMappings = getMimeMappings();
+            compilerControl = getCompilerControl();
+            tracker = getFileChangeTracker();
+        }
+
+        private PathResolver resolver;
+        private Map resolved;
+        private LocalizationManager localization;
+        private MimeMappings mimeMappings;
+        private CompilerControl compilerControl;
+        private FileChangeTracker tracker;
+
+        /**
+         * Make these the calling thread's settings.
+         */
+        public void apply()
+        {
+            ThreadLocalToolkit.resolver.set(resolver);
+            ThreadLocalToolkit.resolved.set(resolved);
+            ThreadLocalToolkit.localization.set(localization);
+            ThreadLocalToolkit.mimeMappings.set(mimeMappings);
+            ThreadLocalToolkit.compilerControl.set(compilerControl);
+            ThreadLocalToolkit.fileChangeTracker.set(tracker);
+        }
+    }
 }
@@ -80,7 +80,17 @@ public final class API
             String fileName = configuration.getCoverageMetadataFileName();
             try
             {
-                FileUtil.writeFile(fileName, movie.getCoverageMetadata());
+                movie.writeCoverageMetadata(fileName, configuration.getCoverageMetadataFormat());
+            }
+            catch (Exception ex)
+            {
+                ThreadLocalToolkit.log( new LinkerException.UnableToWriteLinkReport( fileName ) );
+            }
+
+            fileName = CoverageTotals.getFileName(fileName);
+            try
+            {
+                movie.writeCoverageTotals(fileName);
             }
             catch (Exception ex)
             {
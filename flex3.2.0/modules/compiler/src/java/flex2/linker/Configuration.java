@@ -135,6 +135,21 @@ public interface Configuration
     String getCoverageMetadataFileName();
     boolean generateCoverageMetadata();
 
+    /**
+     * @return "text" or "binary"
+     */
+    String getCoverageMetadataFormat();
+
+    /**
+     * @return the Deflater level compressed movies are written with
+     */
+    int getSwfCompressionLevel();
+
+    /**
+     * @return the number of threads compressed movies are deflated on
+     */
+    int getSwfCompressionThreads();
+
     /**
      * @return set of resource bundles for resource bundle list
      */
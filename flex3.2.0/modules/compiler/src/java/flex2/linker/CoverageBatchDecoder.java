@@ -0,0 +1,263 @@
+////////////////////////////////////////////////////////////////////////////////
+//
+//  ADOBE SYSTEMS INCORPORATED
+//  Copyright 2005-2007 Adobe Systems Incorporated
+//  All Rights Reserved.
+//
+//  NOTICE: Adobe permits you to use, modify, and distribute this file
+//  in accordance with the terms of the license agreement accompanying it.
+//
+////////////////////////////////////////////////////////////////////////////////
+
+package flex2.linker;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * Accumulates the execution counts sent by the runtime's BatchedCoverageAgent onto the records
+ * of the binary coverage metadata read by CoverageMetadataReader.
+ *
+ * A batch starts with a header of BATCH_VERSION, flags and a sequence number (one byte, one
+ * byte, a big-endian U32).  The rest are records made of unsigned LEB128 varints, zlib-compressed
+ * when FLAG_COMPRESSED is set:
+ * <pre>
+ *   id << 1, count                                  for an integer coverage key id
+ *   length << 1 | 1, length bytes of UTF-8, count   for a coverage key string
+ * </pre>
+ */
+public class CoverageBatchDecoder
+{
+    public static final int BATCH_VERSION = 1;
+    public static final int FLAG_COMPRESSED = 1;
+    public static final int HEADER_SIZE = 6;
+
+    public CoverageBatchDecoder(CoverageMetadataReader metadata)
+    {
+        this.metadata = metadata;
+        counts = new long[metadata.getRecordCount()];
+
+        // map each id onto the record that owns its probe; records elided into it share the id
+        int maxId = -1;
+        for (int record = 0, size = metadata.getRecordCount(); record < size; record++)
+        {
+            maxId = Math.max(maxId, metadata.getId(record));
+        }
+        idRecords = new int[maxId + 1];
+        Arrays.fill(idRecords, -1);
+        for (int record = 0, size = metadata.getRecordCount(); record < size; record++)
+        {
+            int id = metadata.getId(record);
+            if (id != -1 && idRecords[id] == -1 && metadata.getCoveringRecord(record) == -1)
+            {
+                idRecords[id] = record;
+            }
+        }
+    }
+
+    private CoverageMetadataReader metadata;
+    private long[] counts;
+    private int[] idRecords;
+    private Map keyRecords; // Map<String, Integer>, built the first time a string key is decoded
+    private long unmatchedCount;
+    private int batchCount;
+    private int missingBatchCount;
+    private long nextSequence = 0;
+
+    private Inflater inflater;
+    private byte[] scratch = new byte[8192];
+
+    /**
+     * Decode one batch, adding its counts to the records it names.
+     *
+     * @return the sequence number of the batch
+     */
+    public long decode(byte[] batch, int offset, int length) throws IOException
+    {
+        if (length < HEADER_SIZE || (batch[offset] & 0xff) != BATCH_VERSION)
+        {
+            throw new IOException("not a coverage batch");
+        }
+        int flags = batch[offset + 1] & 0xff;
+        long sequence = ((batch[offset + 2] & 0xffL) << 24) | ((batch[offset + 3] & 0xff) << 16) |
+                        ((batch[offset + 4] & 0xff) << 8) | (batch[offset + 5] & 0xff);
+
+        byte[] records = batch;
+        int[] position = new int[] { offset + HEADER_SIZE }; // advanced by readVarint()
+        int end = offset + length;
+        if ((flags & FLAG_COMPRESSED) != 0)
+        {
+            end = inflate(batch, position[0], end - position[0]);
+            records = scratch;
+            position[0] = 0;
+        }
+
+        while (position[0] < end)
+        {
+            long header = readVarint(records, position, end);
+
+            int record;
+            if ((header & 1) == 0)
+            {
+                long id = header >>> 1;
+                record = id < idRecords.length ? idRecords[(int) id] : -1;
+            }
+            else
+            {
+                int keyLength = (int) (header >>> 1);
+                if (keyLength < 0 || position[0] + keyLength > end)
+                {
+                    throw new IOException("truncated coverage batch");
+                }
+                record = getKeyRecord(new String(records, position[0], keyLength, "UTF8"));
+                position[0] += keyLength;
+            }
+
+            long count = readVarint(records, position, end);
+
+            if (record == -1)
+            {
+                unmatchedCount += count;
+            }
+            else
+            {
+                counts[record] += count;
+            }
+        }
+
+        // batches arrive in order, so a jump in the sequence means some were lost
+        if (sequence > nextSequence)
+        {
+            missingBatchCount += (int) (sequence - nextSequence);
+        }
+        nextSequence = Math.max(nextSequence, sequence + 1);
+        batchCount++;
+        return sequence;
+    }
+
+    /**
+     * @return the execution count of a record, which for an elided probe is that of its covering record
+     */
+    public long getCount(int record)
+    {
+        int covering = metadata.getCoveringRecord(record);
+        return counts[covering == -1 ? record : covering];
+    }
+
+    /**
+     * @return the counts accumulated so far, indexed by record.  Elided records are left at zero;
+     *         their counts are those of their covering records.
+     */
+    public long[] getCounts()
+    {
+        return counts;
+    }
+
+    /**
+     * @return the total count reported for ids or keys that are not in the metadata
+     */
+    public long getUnmatchedCount()
+    {
+        return unmatchedCount;
+    }
+
+    public int getBatchCount()
+    {
+        return batchCount;
+    }
+
+    /**
+     * @return the number of batches skipped in the sequence so far
+     */
+    public int getMissingBatchCount()
+    {
+        return missingBatchCount;
+    }
+
+    private int getKeyRecord(String key)
+    {
+        if (keyRecords == null)
+        {
+            keyRecords = new HashMap();
+            for (int record = 0, size = metadata.getRecordCount(); record < size; record++)
+            {
+                if (metadata.getCoveringRecord(record) == -1)
+                {
+                    String k = metadata.getKey(record);
+                    if (!keyRecords.containsKey(k))
+                    {
+                        keyRecords.put(k, new Integer(record));
+                    }
+                }
+            }
+        }
+        Integer record = (Integer) keyRecords.get(key);
+        return record == null ? -1 : record.intValue();
+    }
+
+    /**
+     * Read the varint at position[0], and advance position[0] past it.
+     */
+    private static long readVarint(byte[] b, int[] position, int end) throws IOException
+    {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7)
+        {
+            if (position[0] >= end)
+            {
+                throw new IOException("truncated coverage batch");
+            }
+            int c = b[position[0]++];
+            value |= (long) (c & 0x7f) << shift;
+            if ((c & 0x80) == 0)
+            {
+                return value;
+            }
+        }
+        throw new IOException("malformed coverage batch");
+    }
+
+    /**
+     * Inflate the records into scratch.
+     *
+     * @return the length of the records
+     */
+    private int inflate(byte[] b, int offset, int length) throws IOException
+    {
+        if (inflater == null)
+        {
+            inflater = new Inflater();
+        }
+        inflater.reset();
+        inflater.setInput(b, offset, length);
+
+        int recordsLength = 0;
+        try
+        {
+            while (!inflater.finished())
+            {
+                if (recordsLength == scratch.length)
+                {
+                    byte[] larger = new byte[scratch.length * 2];
+                    System.arraycopy(scratch, 0, larger, 0, recordsLength);
+                    scratch = larger;
+                }
+                int n = inflater.inflate(scratch, recordsLength, scratch.length - recordsLength);
+                if (n == 0 && (inflater.needsInput() || inflater.needsDictionary()))
+                {
+                    throw new IOException("truncated coverage batch");
+                }
+                recordsLength += n;
+            }
+        }
+        catch (DataFormatException ex)
+        {
+            throw new IOException("malformed coverage batch: " + ex.getMessage());
+        }
+        return recordsLength;
+    }
+}
@@ -0,0 +1,273 @@
+////////////////////////////////////////////////////////////////////////////////
+//
+//  ADOBE SYSTEMS INCORPORATED
+//  Copyright 2005-2007 Adobe Systems Incorporated
+//  All Rights Reserved.
+//
+//  NOTICE: Adobe permits you to use, modify, and distribute this file
+//  in accordance with the terms of the license agreement accompanying it.
+//
+////////////////////////////////////////////////////////////////////////////////
+
+package flex2.linker;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.UnsupportedEncodingException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Random access to a binary (.cvm v2) coverage metadata file written by CoverageMetadataWriter.
+ * The file is memory-mapped, so records are read in place and strings are only decoded when
+ * they are asked for.
+ */
+public class CoverageMetadataReader
+{
+    /**
+     * @return true if the file starts with the binary coverage metadata magic number
+     */
+    public static boolean isBinary(File file) throws IOException
+    {
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try
+        {
+            return raf.length() >= 4 && raf.readInt() == CoverageMetadataWriter.MAGIC;
+        }
+        finally
+        {
+            raf.close();
+        }
+    }
+
+    public CoverageMetadataReader(File file) throws IOException
+    {
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try
+        {
+            // the mapping stays valid after the channel is closed
+            buffer = raf.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, raf.length());
+        }
+        finally
+        {
+            raf.close();
+        }
+        init(file.getPath());
+    }
+
+    public CoverageMetadataReader(ByteBuffer buffer) throws IOException
+    {
+        this.buffer = buffer;
+        init("buffer");
+    }
+
+    private ByteBuffer buffer;
+    private int recordCount;
+    private int[] stringOffsets;
+    private String[] strings;
+
+    private void init(String name) throws IOException
+    {
+        if (buffer.limit() < CoverageMetadataWriter.HEADER_SIZE ||
+            buffer.getInt(0) != CoverageMetadataWriter.MAGIC)
+        {
+            throw new IOException(name + " is not a binary coverage metadata file");
+        }
+        int version = buffer.getInt(4);
+        if (version != CoverageMetadataWriter.VERSION)
+        {
+            throw new IOException(name + ": unsupported coverage metadata version " + version);
+        }
+
+        recordCount = buffer.getInt(8);
+        int stringCount = buffer.getInt(12);
+        long stringTableOffset = buffer.getLong(16);
+        if (stringTableOffset != CoverageMetadataWriter.HEADER_SIZE + (long) recordCount * CoverageMetadataWriter.RECORD_SIZE ||
+            stringTableOffset > buffer.limit())
+        {
+            throw new IOException(name + ": truncated coverage metadata file");
+        }
+
+        stringOffsets = new int[stringCount];
+        strings = new String[stringCount];
+        int offset = (int) stringTableOffset;
+        for (int i = 0; i < stringCount; i++)
+        {
+            if (offset + 4 > buffer.limit())
+            {
+                throw new IOException(name + ": truncated coverage metadata file");
+            }
+            stringOffsets[i] = offset;
+            offset += 4 + buffer.getInt(offset);
+        }
+        if (offset > buffer.limit())
+        {
+            throw new IOException(name + ": truncated coverage metadata file");
+        }
+    }
+
+    public int getRecordCount()
+    {
+        return recordCount;
+    }
+
+    /**
+     * @return the integer id passed to coverageHit(), or -1 if the key was not indexed
+     */
+    public int getId(int record)
+    {
+        return buffer.getInt(offset(record));
+    }
+
+    /**
+     * @return one of the CoverageMetadataWriter.KIND_ constants
+     */
+    public byte getKind(int record)
+    {
+        return buffer.get(offset(record) + 4);
+    }
+
+    /**
+     * @return the source line, or the MXML line for branches in MXML documents
+     */
+    public int getLine(int record)
+    {
+        return buffer.getInt(offset(record) + 8);
+    }
+
+    /**
+     * @return the line in the generated ActionScript for branches in MXML documents, -1 otherwise
+     */
+    public int getAuxLine(int record)
+    {
+        return buffer.getInt(offset(record) + 12);
+    }
+
+    /**
+     * @return the column of a branch, -1 for lines
+     */
+    public int getColumn(int record)
+    {
+        return buffer.getInt(offset(record) + 16);
+    }
+
+    public String getFileName(int record)
+    {
+        return getString(getFileIndex(record));
+    }
+
+    /**
+     * @return the string table index of the file name, or -1
+     */
+    public int getFileIndex(int record)
+    {
+        return buffer.getInt(offset(record) + 20);
+    }
+
+    public String getClassName(int record)
+    {
+        return getString(getClassIndex(record));
+    }
+
+    /**
+     * @return the string table index of the class name, or -1
+     */
+    public int getClassIndex(int record)
+    {
+        return buffer.getInt(offset(record) + 24);
+    }
+
+    public String getFunctionName(int record)
+    {
+        return getString(buffer.getInt(offset(record) + 28));
+    }
+
+    /**
+     * @return the index of the record whose probe also counts for this one, or -1 if it has its own probe
+     */
+    public int getCoveringRecord(int record)
+    {
+        return buffer.getInt(offset(record) + 32);
+    }
+
+    /**
+     * @return the key of a record in the form the coverage() function reports it
+     */
+    public String getKey(int record)
+    {
+        byte kind = getKind(record);
+        String className = getClassName(record);
+        String function = getFunctionName(record);
+
+        StringBuffer key = new StringBuffer();
+        if (className != null)
+        {
+            key.append(className).append('/');
+        }
+        key.append(function).append('@');
+        if (kind == CoverageMetadataWriter.KIND_LINE)
+        {
+            key.append(getLine(record));
+        }
+        else
+        {
+            key.append(kind == CoverageMetadataWriter.KIND_BRANCH_TAKEN ? '+' : '-');
+            key.append(getLine(record));
+            int auxLine = getAuxLine(record);
+            if (auxLine != -1)
+            {
+                key.append('#').append(auxLine);
+            }
+            key.append('.').append(getColumn(record));
+        }
+        return key.toString();
+    }
+
+    public int getStringCount()
+    {
+        return strings.length;
+    }
+
+    /**
+     * @return the string at the given index of the string table, or null for -1
+     */
+    public String getString(int index)
+    {
+        if (index < 0)
+        {
+            return null;
+        }
+
+        String s = strings[index];
+        if (s == null)
+        {
+            int offset = stringOffsets[index];
+            byte[] bytes = new byte[buffer.getInt(offset)];
+            for (int i = 0; i < bytes.length; i++)
+            {
+                bytes[i] = buffer.get(offset + 4 + i);
+            }
+            try
+            {
+                s = new String(bytes, "UTF8");
+            }
+            catch (UnsupportedEncodingException ex)
+            {
+                // UTF8 is always supported
+                s = new String(bytes);
+            }
+            strings[index] = s;
+        }
+        return s;
+    }
+
+    private int offset(int record)
+    {
+        if (record < 0 || record >= recordCount)
+        {
+            throw new IndexOutOfBoundsException("record " + record);
+        }
+        return CoverageMetadataWriter.HEADER_SIZE + record * CoverageMetadataWriter.RECORD_SIZE;
+    }
+}
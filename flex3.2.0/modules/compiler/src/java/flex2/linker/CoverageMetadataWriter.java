@@ -11,34 +11,286 @@
 
 package flex2.linker;
 
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.util.*;
 
 import flex2.compiler.CompilationUnit;
+import flex2.compiler.CoverageKeys;
+import flex2.compiler.io.FileUtil;
 
 /**
  * @author Joe Berkovitz
  *
  * Spit out a list of all the coverage keys collected during all the byte code emitted.
+ * Keys instrumented with integer ids (see -compiler.coverage-indexed) are preceded by their
+ * id and a tab, so that report tools can map a vector of hit counts back onto keys.
+ * Keys whose probe was elided under -compiler.coverage-block-probes are preceded, in the same
+ * way, by the runtime key whose hits stand in for theirs (or by that key's id, when indexed).
  *
+ * The same keys can also be written in the binary format read by CoverageMetadataReader.
+ * An instance of this class streams that format to a FileChannel one unit at a time:
+ * <pre>
+ *   header   magic, version, record count, string count, string table offset (HEADER_SIZE bytes)
+ *   records  RECORD_SIZE bytes each: id, kind, line, aux line, column, file, class and
+ *            function string indexes, index of the covering record
+ *   strings  byte length and UTF-8 bytes of every distinct file, class and function name
+ * </pre>
+ * The string table goes last so that records never need to be held in memory; the header is
+ * written when the writer is closed.
  */
 public class CoverageMetadataWriter
 {
+    public static final String FORMAT_TEXT = "text";
+    public static final String FORMAT_BINARY = "binary";
+
+    public static final int MAGIC = 0x43564D1A; // "CVM" ^Z
+    public static final int VERSION = 2;
+
+    public static final int HEADER_SIZE = 32;
+    public static final int RECORD_SIZE = 40;
+
+    public static final byte KIND_LINE = CoverageKeys.LINE;
+    public static final byte KIND_BRANCH_TAKEN = CoverageKeys.BRANCH_TAKEN;
+    public static final byte KIND_BRANCH_NOT_TAKEN = CoverageKeys.BRANCH_NOT_TAKEN;
 
     public static String dump(List units)
     {
-        StringBuffer buf = new StringBuffer( 2048 );
+        StringWriter out = new StringWriter( 2048 );
+        try
+        {
+            write(units, out);
+        }
+        catch (IOException ex)
+        {
+            // StringWriter doesn't throw
+        }
+        return out.toString();
+    }
+
+    public static void write(List units, Writer out) throws IOException
+    {
         for (Iterator it = units.iterator(); it.hasNext(); )
         {
             CompilationUnit unit = (CompilationUnit) it.next();
-            if (unit.coverageKeys != null)
+            CoverageKeys keys = unit.coverageKeys;
+            for (int i = 0, size = keys == null ? 0 : keys.size(); i < size; i++)
             {
-                for (Iterator it2 = unit.coverageKeys.iterator(); it2.hasNext(); )
+                int covering = keys.getCovering(i);
+                int id = keys.getId(covering == -1 ? i : covering);
+                if (id != -1)
                 {
-                    buf.append(it2.next().toString());
-                    buf.append('\n');
+                    out.write(Integer.toString(id));
+                    out.write('\t');
                 }
+                else if (covering != -1)
+                {
+                    out.write(keys.getKey(covering));
+                    out.write('\t');
+                }
+                out.write(keys.getKey(i));
+                String fileName = keys.getFileName(i);
+                if (fileName != null)
+                {
+                    out.write(';');
+                    out.write(fileName);
+                }
+                out.write('\n');
+            }
+        }
+    }
+
+    /**
+     * Write the coverage keys of the given units to a file, in either FORMAT_TEXT or FORMAT_BINARY.
+     */
+    public static void writeFile(List units, String fileName, String format) throws IOException
+    {
+        File file = FileUtil.openFile(fileName);
+        if (file == null)
+        {
+            throw new FileNotFoundException(fileName);
+        }
+
+        if (FORMAT_BINARY.equals(format))
+        {
+            RandomAccessFile raf = new RandomAccessFile(file, "rw");
+            try
+            {
+                raf.setLength(0);
+                CoverageMetadataWriter writer = new CoverageMetadataWriter(raf.getChannel());
+                for (Iterator it = units.iterator(); it.hasNext(); )
+                {
+                    CompilationUnit unit = (CompilationUnit) it.next();
+                    if (unit.coverageKeys != null)
+                    {
+                        writer.write(unit.coverageKeys);
+                    }
+                }
+                writer.close();
+            }
+            finally
+            {
+                raf.close();
+            }
+        }
+        else
+        {
+            Writer out = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file), "UTF8"));
+            try
+            {
+                write(units, out);
+            }
+            finally
+            {
+                out.close();
+            }
+        }
+    }
+
+    private FileChannel channel;
+    private ByteBuffer buffer;
+    private long position;
+    private int recordCount;
+
+    private Map stringIndexes; // Map<String, Integer>
+    private List strings; // List<String>
+
+    // the function of the last record written, and the indexes of its class and function names
+    private String lastFunction;
+    private int lastClassName, lastFunctionName;
+
+    public CoverageMetadataWriter(FileChannel channel) throws IOException
+    {
+        this.channel = channel;
+        buffer = ByteBuffer.allocate(RECORD_SIZE * 2048);
+        position = HEADER_SIZE;
+        stringIndexes = new HashMap();
+        strings = new ArrayList();
+    }
+
+    /**
+     * Append the records for one unit's coverage keys, as collected in CompilationUnit.coverageKeys.
+     */
+    public void write(CoverageKeys keys) throws IOException
+    {
+        // a file name is only attached to the first key of each function, so the keys that
+        // follow inherit it.  Covering keys always belong to the same unit.
+        int file = -1;
+        int base = recordCount;
+
+        for (int i = 0, size = keys.size(); i < size; i++)
+        {
+            String fileName = keys.getFileName(i);
+            if (fileName != null)
+            {
+                file = intern(fileName);
             }
+
+            String function = keys.getFunction(i);
+            if (!function.equals(lastFunction))
+            {
+                lastFunction = function;
+                int slash = function.lastIndexOf('/');
+                lastClassName = slash == -1 ? -1 : intern(function.substring(0, slash));
+                lastFunctionName = intern(function.substring(slash + 1));
+            }
+
+            int covering = keys.getCovering(i);
+            writeRecord(keys.getId(covering == -1 ? i : covering), keys.getKind(i), keys.getLine(i),
+                        keys.getAuxLine(i), keys.getColumn(i), file, lastClassName, lastFunctionName,
+                        covering == -1 ? -1 : base + covering);
+        }
+    }
+
+    /**
+     * Write the string table and the header.  The channel itself is left open.
+     */
+    public void close() throws IOException
+    {
+        for (int i = 0, size = strings.size(); i < size; i++)
+        {
+            byte[] bytes = ((String) strings.get(i)).getBytes("UTF-8");
+            if (buffer.remaining() < 4 + bytes.length)
+            {
+                flush();
+            }
+            if (buffer.remaining() < 4 + bytes.length)
+            {
+                ByteBuffer large = ByteBuffer.allocate(4 + bytes.length);
+                large.putInt(bytes.length);
+                large.put(bytes);
+                large.flip();
+                writeFully(large, position);
+                position += large.limit();
+            }
+            else
+            {
+                buffer.putInt(bytes.length);
+                buffer.put(bytes);
+            }
+        }
+        flush();
+
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        header.putInt(MAGIC);
+        header.putInt(VERSION);
+        header.putInt(recordCount);
+        header.putInt(strings.size());
+        header.putLong(HEADER_SIZE + (long) recordCount * RECORD_SIZE);
+        header.position(HEADER_SIZE);
+        header.flip();
+        writeFully(header, 0);
+    }
+
+    private void writeRecord(int id, byte kind, int line, int auxLine, int column,
+                             int file, int className, int function, int covering) throws IOException
+    {
+        if (buffer.remaining() < RECORD_SIZE)
+        {
+            flush();
+        }
+        buffer.putInt(id);
+        buffer.put(kind);
+        buffer.put((byte) 0);
+        buffer.putShort((short) 0);
+        buffer.putInt(line);
+        buffer.putInt(auxLine);
+        buffer.putInt(column);
+        buffer.putInt(file);
+        buffer.putInt(className);
+        buffer.putInt(function);
+        buffer.putInt(covering);
+        buffer.putInt(0);
+        recordCount++;
+    }
+
+    private int intern(String s)
+    {
+        Integer index = (Integer) stringIndexes.get(s);
+        if (index == null)
+        {
+            index = new Integer(strings.size());
+            stringIndexes.put(s, index);
+            strings.add(s);
+        }
+        return index.intValue();
+    }
+
+    private void flush() throws IOException
+    {
+        buffer.flip();
+        int length = buffer.limit();
+        writeFully(buffer, position);
+        position += length;
+        buffer.clear();
+    }
+
+    private void writeFully(ByteBuffer b, long pos) throws IOException
+    {
+        while (b.hasRemaining())
+        {
+            pos += channel.write(b, pos);
         }
-        return buf.toString();
     }
 }
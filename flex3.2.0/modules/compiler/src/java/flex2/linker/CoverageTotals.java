@@ -0,0 +1,164 @@
+////////////////////////////////////////////////////////////////////////////////
+//
+//  ADOBE SYSTEMS INCORPORATED
+//  Copyright 2005-2007 Adobe Systems Incorporated
+//  All Rights Reserved.
+//
+//  NOTICE: Adobe permits you to use, modify, and distribute this file
+//  in accordance with the terms of the license agreement accompanying it.
+//
+////////////////////////////////////////////////////////////////////////////////
+
+package flex2.linker;
+
+import java.io.*;
+import java.util.*;
+
+import flex2.compiler.CompilationUnit;
+import flex2.compiler.CoverageKeys;
+import flex2.compiler.io.FileUtil;
+
+/**
+ * The number of line and branch coverage keys per source file, class and method, so that
+ * report tools can compute percentages without going through every key of the metadata.
+ * Written next to the coverage metadata as tab-separated lines:
+ * <pre>
+ *   kind    name                lines   branches
+ *   total                       ...
+ *   file    C:\src\com\foo\Bar.as  ...
+ *   class   com.foo:Bar         ...
+ *   method  com.foo:Bar/baz     ...
+ * </pre>
+ * Keys whose probes were elided are counted like any other.
+ */
+public class CoverageTotals
+{
+    public static final String FILE_EXTENSION = ".cvt";
+
+    /**
+     * @return the name of the totals file that goes with the given coverage metadata file
+     */
+    public static String getFileName(String metadataFileName)
+    {
+        return (metadataFileName.endsWith(".cvm") ?
+                metadataFileName.substring(0, metadataFileName.length() - 4) :
+                metadataFileName) + FILE_EXTENSION;
+    }
+
+    private int[] total = new int[2];
+    private Map files = new LinkedHashMap(); // Map<String, int[]>
+    private Map classes = new LinkedHashMap(); // Map<String, int[]>
+    private Map methods = new LinkedHashMap(); // Map<String, int[]>
+
+    /**
+     * Count the keys of one unit, as collected in CompilationUnit.coverageKeys.
+     */
+    public void add(CoverageKeys keys)
+    {
+        // as in CoverageMetadataWriter, a key without a file name inherits the one before it
+        int[] file = null;
+        String lastMethod = null;
+        int[] method = null, className = null;
+        for (int i = 0, size = keys.size(); i < size; i++)
+        {
+            String fileName = keys.getFileName(i);
+            if (fileName != null)
+            {
+                file = totals(files, fileName);
+            }
+
+            String function = keys.getFunction(i);
+            if (!function.equals(lastMethod))
+            {
+                lastMethod = function;
+                method = totals(methods, function);
+                int slash = function.lastIndexOf('/');
+                className = slash == -1 ? null : totals(classes, function.substring(0, slash));
+            }
+
+            int kind = keys.getKind(i) == CoverageKeys.LINE ? 0 : 1;
+            total[kind]++;
+            if (file != null)
+            {
+                file[kind]++;
+            }
+            if (className != null)
+            {
+                className[kind]++;
+            }
+            method[kind]++;
+        }
+    }
+
+    private static int[] totals(Map map, String name)
+    {
+        int[] totals = (int[]) map.get(name);
+        if (totals == null)
+        {
+            totals = new int[2];
+            map.put(name, totals);
+        }
+        return totals;
+    }
+
+    public void write(Writer out) throws IOException
+    {
+        out.write("kind\tname\tlines\tbranches\n");
+        write(out, "total", "", total);
+        write(out, "file", files);
+        write(out, "class", classes);
+        write(out, "method", methods);
+    }
+
+    private static void write(Writer out, String kind, Map map) throws IOException
+    {
+        for (Iterator it = map.entrySet().iterator(); it.hasNext(); )
+        {
+            Map.Entry entry = (Map.Entry) it.next();
+            write(out, kind, (String) entry.getKey(), (int[]) entry.getValue());
+        }
+    }
+
+    private static void write(Writer out, String kind, String name, int[] totals) throws IOException
+    {
+        out.write(kind);
+        out.write('\t');
+        out.write(name);
+        out.write('\t');
+        out.write(Integer.toString(totals[0]));
+        out.write('\t');
+        out.write(Integer.toString(totals[1]));
+        out.write('\n');
+    }
+
+    /**
+     * Count the keys of the given units and write the totals to a file.
+     */
+    public static void writeFile(List units, String fileName) throws IOException
+    {
+        CoverageTotals totals = new CoverageTotals();
+        for (Iterator it = units.iterator(); it.hasNext(); )
+        {
+            CompilationUnit unit = (CompilationUnit) it.next();
+            if (unit.coverageKeys != null)
+            {
+                totals.add(unit.coverageKeys);
+            }
+        }
+
+        File file = FileUtil.openFile(fileName);
+        if (file == null)
+        {
+            throw new FileNotFoundException(fileName);
+        }
+        Writer out = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file), "UTF8"));
+        try
+        {
+            totals.write(out);
+        }
+        finally
+        {
+            out.close();
+        }
+    }
+}
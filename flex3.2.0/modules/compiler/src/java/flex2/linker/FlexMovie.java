@@ -244,7 +244,7 @@ public class FlexMovie extends SimpleMovie
             }
             if (generateCoverageMetadata)
             {
-                coverageReport = CoverageMetadataWriter.dump( units );
+                coverageUnits = new ArrayList( units );
             }
             if (generateRBList)
             {
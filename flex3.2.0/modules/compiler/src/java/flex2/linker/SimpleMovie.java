@@ -25,6 +25,7 @@ import flex2.compiler.util.*;
 import flex2.tools.VersionInfo;
 import flex2.tools.PreLink;
 
+import java.io.IOException;
 import java.util.*;
 
 /**
@@ -88,6 +89,8 @@ public class SimpleMovie extends Movie
 
         framerate = configuration.getFrameRate();
         version = configuration.getTargetPlayerMajorVersion();
+        compressionLevel = configuration.getSwfCompressionLevel();
+        compressionThreads = configuration.getSwfCompressionThreads();
 		bgcolor = new SetBackgroundColor(configuration.backgroundColor());
 		if (configuration.generateDebugTags())
 		{
@@ -151,7 +154,7 @@ public class SimpleMovie extends Movie
     
     protected boolean generateLinkReport, generateCoverageMetadata, generateRBList;
     protected String linkReport;
-    protected String coverageReport;
+    protected List coverageUnits; // List<CompilationUnit>
 	protected String rbList;
 
     protected static String formatSymbolClassName( String className )
@@ -339,7 +342,31 @@ public class SimpleMovie extends Movie
     
     public String getCoverageMetadata()
     {
-        return coverageReport;
+        return coverageUnits == null ? null : CoverageMetadataWriter.dump( coverageUnits );
+    }
+
+    /**
+     * Stream the coverage metadata straight to a file rather than building it up as a String.
+     * @param format CoverageMetadataWriter.FORMAT_TEXT or FORMAT_BINARY
+     */
+    public void writeCoverageMetadata(String fileName, String format) throws IOException
+    {
+        if (coverageUnits != null)
+        {
+            CoverageMetadataWriter.writeFile( coverageUnits, fileName, format );
+        }
+    }
+
+    /**
+     * Write the per file, class and method key totals that go with the coverage metadata.
+     * @see CoverageTotals
+     */
+    public void writeCoverageTotals(String fileName) throws IOException
+    {
+        if (coverageUnits != null)
+        {
+            CoverageTotals.writeFile( coverageUnits, fileName );
+        }
     }
     
     public String getRBList()
@@ -143,6 +143,8 @@ public final class Compiler extends Tool
             SwcCache cache = new SwcCache();
 	        // lazy read should only be set by mxmlc/compc
 	        cache.setLazyRead(true);
+	        cache.setCatalogCacheDirectory(configuration.getSwcCatalogCache());
+	        cache.setThreads(compilerConfig.getThreads());
 	        
             swcContext.load( compilerConfig.getLibraryPath(),
                              Configuration.getAllExcludedLibraries(compilerConfig, configuration),
@@ -280,7 +282,9 @@ public final class Compiler extends Tool
                         configuration.getLicensesConfiguration().getLicenseMap(), 
                         sources);
 
-                OutputStream swfOut = new BufferedOutputStream(new FileOutputStream(outputFile));
+                // API.encode() writes the SWF length in place when given the FileOutputStream itself
+                FileOutputStream fileOut = new FileOutputStream(outputFile);
+                OutputStream swfOut = new BufferedOutputStream(fileOut);
 
                 // link
                 if (createProjector)
@@ -315,7 +319,7 @@ public final class Compiler extends Tool
                     }
                     else
                     {
-                        flex2.compiler.API.encode(movie, swfOut);
+                        flex2.compiler.API.encode(movie, fileOut);
                     }
                 }
                 
@@ -0,0 +1,495 @@
+////////////////////////////////////////////////////////////////////////////////
+//
+//  ADOBE SYSTEMS INCORPORATED
+//  Copyright 2005-2007 Adobe Systems Incorporated
+//  All Rights Reserved.
+//
+//  NOTICE: Adobe permits you to use, modify, and distribute this file
+//  in accordance with the terms of the license agreement accompanying it.
+//
+////////////////////////////////////////////////////////////////////////////////
+
+package flex2.tools;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedWriter;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.RandomAccessFile;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+
+import flex2.linker.CoverageBatchDecoder;
+import flex2.linker.CoverageMetadataReader;
+import flex2.linker.CoverageMetadataWriter;
+
+/**
+ * Collects the coverage data sent by the runtime's SocketCoverageAgent, and merges the hits
+ * of many runs, e.g. test shards, into line and branch summaries per file and per class.
+ *
+ * <pre>
+ *   CoverageCollector -metadata app.cvm -listen port -output dir [-runs n]
+ *   CoverageCollector -metadata app.cvm -report summary.txt [-threads n] run0.cvh run1.cvh ...
+ * </pre>
+ *
+ * The metadata must be in the binary format (-compiler.coverage-metadata-format=binary).  Each
+ * run received is written to the output directory as a hits file: HITS_MAGIC, the record count,
+ * and a U32 count for every record of the metadata.  Counts are kept in primitive arrays indexed
+ * by record throughout, and merging spreads the hits files over several threads.
+ */
+public class CoverageCollector
+{
+	public static final int HITS_MAGIC = 0x43564831; // "CVH1"
+	public static final int DEFAULT_PORT = 9912;
+
+	// how long accept() waits before checking whether enough runs have been received
+	private static final int ACCEPT_TIMEOUT = 1000;
+
+	private static final String POLICY_FILE =
+		"<?xml version=\"1.0\"?><cross-domain-policy><allow-access-from domain=\"*\" to-ports=\"*\"/></cross-domain-policy>";
+
+	public static void main(String[] args) throws Exception
+	{
+		String metadata = null, output = null, report = null;
+		int port = -1, runs = 0, threads = Runtime.getRuntime().availableProcessors();
+		List hitsFiles = new ArrayList(); // List<File>
+
+		try
+		{
+			for (int i = 0; i < args.length; i++)
+			{
+				String arg = args[i];
+				if ("-metadata".equals(arg))
+				{
+					metadata = args[++i];
+				}
+				else if ("-listen".equals(arg))
+				{
+					port = Integer.parseInt(args[++i]);
+				}
+				else if ("-output".equals(arg))
+				{
+					output = args[++i];
+				}
+				else if ("-runs".equals(arg))
+				{
+					runs = Integer.parseInt(args[++i]);
+				}
+				else if ("-report".equals(arg))
+				{
+					report = args[++i];
+				}
+				else if ("-threads".equals(arg))
+				{
+					threads = Integer.parseInt(args[++i]);
+				}
+				else if (arg.startsWith("-"))
+				{
+					throw new IllegalArgumentException(arg);
+				}
+				else
+				{
+					hitsFiles.add(new File(arg));
+				}
+			}
+		}
+		catch (RuntimeException ex)
+		{
+			metadata = null;
+		}
+
+		if (metadata == null || (port == -1 && report == null) || (port != -1 && output == null))
+		{
+			System.err.println("usage: CoverageCollector -metadata app.cvm -listen port -output dir [-runs n]");
+			System.err.println("       CoverageCollector -metadata app.cvm -report summary.txt [-threads n] hits...");
+			System.exit(1);
+		}
+
+		CoverageCollector collector = new CoverageCollector(new CoverageMetadataReader(new File(metadata)));
+		if (port != -1)
+		{
+			File outputDirectory = new File(output);
+			outputDirectory.mkdirs();
+			collector.listen(port, outputDirectory, runs);
+		}
+		if (report != null)
+		{
+			long[] counts = collector.merge(hitsFiles, threads);
+			Writer out = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(report), "UTF8"));
+			try
+			{
+				collector.writeSummary(counts, out);
+			}
+			finally
+			{
+				out.close();
+			}
+		}
+	}
+
+	public CoverageCollector(CoverageMetadataReader metadata)
+	{
+		this.metadata = metadata;
+	}
+
+	private CoverageMetadataReader metadata;
+
+	private int nextRun, completedRuns;
+
+	/**
+	 * Accept connections on the loopback interface and write each run received to
+	 * outputDirectory/run<i>n</i>.cvh, until maxRuns runs are complete (forever if zero).
+	 * Runs are received concurrently.
+	 */
+	public void listen(int port, File outputDirectory, int maxRuns) throws IOException
+	{
+		ServerSocket server = new ServerSocket(port, 50, InetAddress.getByName("127.0.0.1"));
+		try
+		{
+			server.setSoTimeout(ACCEPT_TIMEOUT);
+			while (maxRuns <= 0 || getCompletedRuns() < maxRuns)
+			{
+				try
+				{
+					new Receiver(server.accept(), outputDirectory).start();
+				}
+				catch (SocketTimeoutException ex)
+				{
+				}
+			}
+		}
+		finally
+		{
+			server.close();
+		}
+	}
+
+	private synchronized int getCompletedRuns()
+	{
+		return completedRuns;
+	}
+
+	private class Receiver extends Thread
+	{
+		Receiver(Socket socket, File outputDirectory)
+		{
+			this.socket = socket;
+			this.outputDirectory = outputDirectory;
+			setDaemon(true);
+		}
+
+		private Socket socket;
+		private File outputDirectory;
+
+		public void run()
+		{
+			try
+			{
+				CoverageBatchDecoder decoder = receive(socket.getInputStream(), socket.getOutputStream());
+				if (decoder != null)
+				{
+					int run;
+					synchronized (CoverageCollector.this)
+					{
+						run = nextRun++;
+					}
+
+					writeHits(new File(outputDirectory, "run" + run + ".cvh"), decoder.getCounts());
+					System.out.println("run " + run + ": " + decoder.getBatchCount() + " batches, " +
+									   decoder.getMissingBatchCount() + " missing, " +
+									   decoder.getUnmatchedCount() + " unmatched hits");
+
+					synchronized (CoverageCollector.this)
+					{
+						completedRuns++;
+					}
+				}
+			}
+			catch (IOException ex)
+			{
+				System.err.println(ex.getMessage());
+			}
+			finally
+			{
+				try
+				{
+					socket.close();
+				}
+				catch (IOException ex)
+				{
+				}
+			}
+		}
+	}
+
+	/**
+	 * Decode the batches of one run, each preceded by its length as a U32, until a length of zero
+	 * or the end of the stream.  A Flash Player policy file request is answered instead.
+	 *
+	 * @return the decoded run, or null if this was a policy file request
+	 */
+	public CoverageBatchDecoder receive(InputStream stream, OutputStream reply) throws IOException
+	{
+		DataInputStream in = new DataInputStream(new BufferedInputStream(stream));
+
+		// no batch is long enough for its length to start with '<'
+		in.mark(1);
+		if (in.read() == '<')
+		{
+			while (in.read() > 0)
+			{
+			}
+			reply.write(POLICY_FILE.getBytes("UTF8"));
+			reply.write(0);
+			reply.flush();
+			return null;
+		}
+		in.reset();
+
+		CoverageBatchDecoder decoder = new CoverageBatchDecoder(metadata);
+		byte[] buffer = new byte[65536];
+		while (true)
+		{
+			int length;
+			try
+			{
+				length = in.readInt();
+			}
+			catch (EOFException ex)
+			{
+				break;
+			}
+			if (length == 0)
+			{
+				break;
+			}
+			if (length < 0)
+			{
+				throw new IOException("bad coverage batch length " + length);
+			}
+			if (length > buffer.length)
+			{
+				buffer = new byte[length];
+			}
+			in.readFully(buffer, 0, length);
+			decoder.decode(buffer, 0, length);
+		}
+		return decoder;
+	}
+
+	/**
+	 * Write a hits file.  Counts beyond the range of a U32 are capped.
+	 */
+	public void writeHits(File file, long[] counts) throws IOException
+	{
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+		try
+		{
+			out.writeInt(HITS_MAGIC);
+			out.writeInt(counts.length);
+			for (int i = 0; i < counts.length; i++)
+			{
+				out.writeInt((int) Math.min(counts[i], 0xffffffffL));
+			}
+		}
+		finally
+		{
+			out.close();
+		}
+	}
+
+	/**
+	 * Add up the counts of the given hits files, spreading the files over the given number of threads.
+	 */
+	public long[] merge(List hitsFiles, int threadCount) throws IOException
+	{
+		final List files = new ArrayList(hitsFiles);
+		final int recordCount = metadata.getRecordCount();
+		final long[][] partials = new long[Math.max(1, Math.min(threadCount, files.size()))][];
+		final IOException[] error = new IOException[1];
+
+		Thread[] threads = new Thread[partials.length];
+		for (int t = 0; t < threads.length; t++)
+		{
+			final int index = t;
+			threads[t] = new Thread()
+			{
+				public void run()
+				{
+					long[] counts = new long[recordCount];
+					partials[index] = counts;
+					try
+					{
+						while (true)
+						{
+							File file;
+							synchronized (files)
+							{
+								if (files.isEmpty() || error[0] != null)
+								{
+									break;
+								}
+								file = (File) files.remove(files.size() - 1);
+							}
+							addHits(file, counts);
+						}
+					}
+					catch (IOException ex)
+					{
+						synchronized (files)
+						{
+							if (error[0] == null)
+							{
+								error[0] = ex;
+							}
+						}
+					}
+				}
+			};
+			threads[t].start();
+		}
+
+		for (int t = 0; t < threads.length; t++)
+		{
+			try
+			{
+				threads[t].join();
+			}
+			catch (InterruptedException ex)
+			{
+				throw new IOException("interrupted");
+			}
+		}
+		if (error[0] != null)
+		{
+			throw error[0];
+		}
+
+		long[] counts = partials[0];
+		for (int t = 1; t < partials.length; t++)
+		{
+			for (int i = 0; i < recordCount; i++)
+			{
+				counts[i] += partials[t][i];
+			}
+		}
+		return counts;
+	}
+
+	private void addHits(File file, long[] counts) throws IOException
+	{
+		RandomAccessFile raf = new RandomAccessFile(file, "r");
+		try
+		{
+			FileChannel channel = raf.getChannel();
+			IntBuffer hits = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()).asIntBuffer();
+			if (hits.limit() < 2 || hits.get(0) != HITS_MAGIC)
+			{
+				throw new IOException(file + " is not a coverage hits file");
+			}
+			if (hits.get(1) != counts.length || hits.limit() < 2 + counts.length)
+			{
+				throw new IOException(file + " does not match the coverage metadata");
+			}
+			for (int i = 0; i < counts.length; i++)
+			{
+				counts[i] += hits.get(2 + i) & 0xffffffffL;
+			}
+		}
+		finally
+		{
+			raf.close();
+		}
+	}
+
+	/**
+	 * Write tab-separated line and branch totals: first for everything, then for each file and each
+	 * class in the order they appear in the metadata.  Elided records count with their covering records.
+	 */
+	public void writeSummary(long[] counts, Writer out) throws IOException
+	{
+		// lines, covered lines, branches and covered branches, indexed by string table index * 4
+		int stringCount = metadata.getStringCount();
+		int[] fileTotals = new int[stringCount * 4];
+		int[] classTotals = new int[stringCount * 4];
+		int[] totals = new int[4];
+		int[] files = new int[stringCount], classes = new int[stringCount];
+		int fileCount = 0, classCount = 0;
+		boolean[] seen = new boolean[stringCount * 2];
+
+		for (int record = 0, size = metadata.getRecordCount(); record < size; record++)
+		{
+			byte kind = metadata.getKind(record);
+			int covering = metadata.getCoveringRecord(record);
+			int slot = kind == CoverageMetadataWriter.KIND_LINE ? 0 : 2;
+			int covered = counts[covering == -1 ? record : covering] > 0 ? 1 : 0;
+
+			totals[slot]++;
+			totals[slot + 1] += covered;
+
+			int file = metadata.getFileIndex(record);
+			if (file != -1)
+			{
+				if (!seen[file * 2])
+				{
+					seen[file * 2] = true;
+					files[fileCount++] = file;
+				}
+				fileTotals[file * 4 + slot]++;
+				fileTotals[file * 4 + slot + 1] += covered;
+			}
+
+			int className = metadata.getClassIndex(record);
+			if (className != -1)
+			{
+				if (!seen[className * 2 + 1])
+				{
+					seen[className * 2 + 1] = true;
+					classes[classCount++] = className;
+				}
+				classTotals[className * 4 + slot]++;
+				classTotals[className * 4 + slot + 1] += covered;
+			}
+		}
+
+		out.write("kind\tname\tlines\tcovered lines\tbranches\tcovered branches\n");
+		writeTotals(out, "total", "", totals, 0);
+		for (int i = 0; i < fileCount; i++)
+		{
+			writeTotals(out, "file", metadata.getString(files[i]), fileTotals, files[i] * 4);
+		}
+		for (int i = 0; i < classCount; i++)
+		{
+			writeTotals(out, "class", metadata.getString(classes[i]), classTotals, classes[i] * 4);
+		}
+		out.flush();
+	}
+
+	private static void writeTotals(Writer out, String kind, String name, int[] totals, int offset) throws IOException
+	{
+		out.write(kind);
+		out.write('\t');
+		out.write(name);
+		for (int i = 0; i < 4; i++)
+		{
+			out.write('\t');
+			out.write(Integer.toString(totals[offset + i]));
+		}
+		out.write('\n');
+	}
+}
@@ -20,6 +20,7 @@ import flex2.compiler.common.DefaultsConfigurator;
 import flex2.compiler.config.ConfigurationBuffer;
 import flex2.compiler.config.ConfigurationException;
 import flex2.compiler.i18n.I18nUtils;
+import flex2.compiler.io.FileChangeTracker;
 import flex2.compiler.io.FileUtil;
 import flex2.compiler.io.VirtualFile;
 import flex2.compiler.swc.API;
@@ -94,6 +95,9 @@ public class SimpleShell extends Tool
 	private static boolean exit;
 	private static Map targets;
 	private static Map processes;
+	private static final TargetCache targetCache = new TargetCache();
+	// milliseconds between checks of the files of a target, where their directories can't be watched
+	private static final long FILE_CHANGE_TRACKING_INTERVAL = 1000;
 
 	private static void process(String s)
 	{
@@ -120,19 +124,19 @@ public class SimpleShell extends Tool
 					}
 					else
 					{
-						mxmlc(target.args, id);
+						mxmlc(target.args, id, targets);
 					}
 				}
 				catch (NumberFormatException ex)
 				{
 					ThreadLocalToolkit.logInfo(l10n.getLocalizedTextString(new AssignTargetID(counter)));
-					mxmlc(args, counter++);
+					mxmlc(args, counter++, targets);
 				}
 			}
 			else
 			{
 				ThreadLocalToolkit.logInfo(l10n.getLocalizedTextString(new AssignTargetID(counter)));
-				mxmlc(args, counter++);
+				mxmlc(args, counter++, targets);
 			}
 		}
 		else if (s.startsWith("compc"))
@@ -156,19 +160,19 @@ public class SimpleShell extends Tool
 					}
 					else
 					{
-						compc(target.args, id);
+						compc(target.args, id, targets);
 					}
 				}
 				catch (NumberFormatException ex)
 				{
 					ThreadLocalToolkit.logInfo(l10n.getLocalizedTextString(new AssignTargetID(counter)));
-					compc(args, counter++);
+					compc(args, counter++, targets);
 				}
 			}
 			else
 			{
 				ThreadLocalToolkit.logInfo(l10n.getLocalizedTextString(new AssignTargetID(counter)));
-				compc(args, counter++);
+				compc(args, counter++, targets);
 			}
 		}
 		else if (s.startsWith("compile"))
@@ -176,11 +180,7 @@ public class SimpleShell extends Tool
 			String id = s.substring("compile".length()).trim();
 			if (targets.containsKey(id))
 			{
-				compile(id);
-				if (ThreadLocalToolkit.errorCount() == 0)
-				{
-					link(id, true);
-				}
+				build((Target) targets.get(id));
 			}
 			else
 			{
@@ -242,6 +242,7 @@ public class SimpleShell extends Tool
 				else
 				{
 					new File(f).setLastModified(System.currentTimeMillis());
+					fileChanged(f);
 				}
 			}
 		}
@@ -260,6 +261,7 @@ public class SimpleShell extends Tool
                 try
 				{
                     FileUtil.writeBinaryFile(new File(copyTo), FileUtil.openStream(copyFrom));
+                    fileChanged(copyTo);
                 }
 				catch (IOException e)
 				{
@@ -280,6 +282,8 @@ public class SimpleShell extends Tool
                 String moveFrom = stok.nextToken();
                 String moveTo = stok.nextToken();
                 new File(moveFrom).renameTo(new File(moveTo));
+                fileChanged(moveFrom);
+                fileChanged(moveTo);
             }
         }
         else if (s.startsWith("rm"))
@@ -294,6 +298,7 @@ public class SimpleShell extends Tool
 			{
                 String rmFile=stok.nextToken();
                 new File(rmFile).delete();
+                fileChanged(rmFile);
             }
         }
         else if (s.equals("quit"))
@@ -312,6 +317,23 @@ public class SimpleShell extends Tool
 		}
     }
 
+	/**
+	 * Tells the targets' file change trackers about a change made by a command, so that a build right
+	 * after it sees the change.
+	 */
+	private static void fileChanged(String path)
+	{
+		File f = FileUtil.openFile(FileUtil.getCanonicalPath(new File(path)));
+		for (Iterator i = targets.values().iterator(); i.hasNext();)
+		{
+			Target s = (Target) i.next();
+			if (s.tracker != null)
+			{
+				s.tracker.changed(f);
+			}
+		}
+	}
+
 	private static void clear(String target)
 	{
 		Process p = (Process) processes.remove(target);
@@ -321,7 +343,26 @@ public class SimpleShell extends Tool
 			p.destroy();
 		}
 
-		targets.remove(target);
+		clear(targets, target);
+	}
+
+	/**
+	 * Removes the target with the given id.
+	 *
+	 * @return false if there is none
+	 */
+	static boolean clear(Map targets, String id)
+	{
+		Target s = (Target) targets.remove(id);
+		if (s != null)
+		{
+			targetCache.remove(s);
+			if (s.tracker != null)
+			{
+				s.tracker.stop();
+			}
+		}
+		return s != null;
 	}
 
 	private static void info(String target)
@@ -337,9 +378,37 @@ public class SimpleShell extends Tool
 		ThreadLocalToolkit.logInfo((s instanceof SwcTarget ? "compc: " : "mxmlc: ") + b);
 	}
 
-	private static void compile(String id)
+	/**
+	 * Incrementally compiles and links the target.
+	 */
+	static void build(Target s)
+	{
+		// loading the units of a target that was written out resolves their paths
+		flex2.compiler.API.usePathResolver();
+		try
+		{
+			targetCache.begin(s);
+			try
+			{
+				compile(s);
+				if (ThreadLocalToolkit.errorCount() == 0)
+				{
+					link(s, true);
+				}
+			}
+			finally
+			{
+				targetCache.end(s);
+			}
+		}
+		finally
+		{
+			flex2.compiler.API.removePathResolver();
+		}
+	}
+
+	private static void compile(Target s)
 	{
-		Target s = (Target) targets.get(id);
 		if (s instanceof SwcTarget)
 		{
 			compile_compc((SwcTarget) s);
@@ -358,6 +427,7 @@ public class SimpleShell extends Tool
 		{
             // setup the path resolver
 			flex2.compiler.API.usePathResolver();
+			useFileChangeTracker(s);
 
 			// process configuration
 			ConfigurationBuffer cfgbuf = new ConfigurationBuffer(CompcConfiguration.class, CompcConfiguration.getAliases());
@@ -434,7 +504,7 @@ public class SimpleShell extends Tool
 			// validate CompilationUnits in FileSpec and SourcePath
 			if (flex2.compiler.API.validateCompilationUnits(s.fileSpec, s.sourceList, s.sourcePath, s.bundlePath, s.resources,
 															swcContext, s.perCompileData,
-															recompile, configuration) > 0)
+															recompile, configuration) > 0 || s.units == null)
 			{
 				Map licenseMap = configuration.getLicensesConfiguration().getLicenseMap();
 
@@ -496,6 +566,7 @@ public class SimpleShell extends Tool
 			}
 
 			flex2.compiler.API.removePathResolver();
+			ThreadLocalToolkit.setFileChangeTracker(null);
 		}
 	}
 	
@@ -507,6 +578,7 @@ public class SimpleShell extends Tool
 		{
             // setup the path resolver
 			flex2.compiler.API.usePathResolver();
+			useFileChangeTracker(s);
 
 			// process configuration
 			ConfigurationBuffer cfgbuf = new ConfigurationBuffer(CommandLineConfiguration.class, Configuration.getAliases());
@@ -576,7 +648,7 @@ public class SimpleShell extends Tool
 			// validate CompilationUnits in FileSpec and SourcePath
 			if (flex2.compiler.API.validateCompilationUnits(s.fileSpec, s.sourceList, s.sourcePath, s.bundlePath, s.resources,
 															swcContext, s.perCompileData,
-															recompile, configuration) > 0)
+															recompile, configuration) > 0 || s.units == null)
 			{
 				Map licenseMap = configuration.getLicensesConfiguration().getLicenseMap();
 				
@@ -643,12 +715,25 @@ public class SimpleShell extends Tool
 			}
 
 			flex2.compiler.API.removePathResolver();
+			ThreadLocalToolkit.setFileChangeTracker(null);
 		}
 	}
 
-	private static void link(String target, boolean optimize)
+	/**
+	 * Watches the files of the target between builds, so that an incremental build only checks the
+	 * ones that changed.
+	 */
+	private static void useFileChangeTracker(Target s)
+	{
+		if (s.tracker == null)
+		{
+			s.tracker = new FileChangeTracker(FILE_CHANGE_TRACKING_INTERVAL);
+		}
+		ThreadLocalToolkit.setFileChangeTracker(s.tracker);
+	}
+
+	private static void link(Target s, boolean optimize)
 	{
-		Target s = (Target) targets.get(target);
 		if (s instanceof SwcTarget)
 		{
 			link_compc((SwcTarget) s);
@@ -739,7 +824,8 @@ public class SimpleShell extends Tool
 
 	                // output SWF
 	    			File file = FileUtil.openFile(s.outputName, true);
-	    			swfOut = new BufferedOutputStream(new FileOutputStream(file));
+	    			FileOutputStream fileOut = new FileOutputStream(file);
+	    			swfOut = new BufferedOutputStream(fileOut);
 	    			
 	                if (projector != null)
 	                {
@@ -747,7 +833,7 @@ public class SimpleShell extends Tool
 	                }
 	                else
 	                {
-	                    flex2.compiler.API.encode(s.movie, swfOut);
+	                    flex2.compiler.API.encode(s.movie, fileOut);
 	                }
 
 	    			swfOut.flush();
@@ -779,7 +865,7 @@ public class SimpleShell extends Tool
 		}
 	}
 
-	private static void mxmlc(String[] args, int id)
+	static void mxmlc(String[] args, int id, Map targets)
 	{
 		LocalizationManager l10n = ThreadLocalToolkit.getLocalizationManager();
 
@@ -812,7 +898,7 @@ public class SimpleShell extends Tool
 			}
 
 			String target = configuration.getTargetFile();
-			targets.put("" + id, s);
+			register(targets, s);
 			s.args = args;
 
 			// make sure targetFile abstract pathname is an absolute path...
@@ -952,7 +1038,8 @@ public class SimpleShell extends Tool
 
                 // output SWF
     			File file = FileUtil.openFile(s.outputName, true);
-    			swfOut = new BufferedOutputStream(new FileOutputStream(file));
+    			FileOutputStream fileOut = new FileOutputStream(file);
+    			swfOut = new BufferedOutputStream(fileOut);
     			
                 if (projector != null)
                 {
@@ -960,7 +1047,7 @@ public class SimpleShell extends Tool
                 }
                 else
                 {
-                    flex2.compiler.API.encode(s.movie, swfOut);
+                    flex2.compiler.API.encode(s.movie, fileOut);
                 }
 
     			swfOut.flush();
@@ -1006,10 +1093,32 @@ public class SimpleShell extends Tool
 			flex2.compiler.API.removePathResolver();
 
 			if (swfOut != null) try { swfOut.close(); } catch (IOException ioe) {}
+
+			if (targets.get("" + id) == s)
+			{
+				targetCache.end(s);
+			}
 		}
 	}
 
-	private static void compc(String[] args, int id)
+	/**
+	 * Adds a new target, replacing the one with the same id, and marks it as being built.
+	 */
+	private static void register(Map targets, Target s)
+	{
+		targetCache.begin(s);
+		Target old = (Target) targets.put("" + s.id, s);
+		if (old != null)
+		{
+			targetCache.remove(old);
+			if (old.tracker != null)
+			{
+				old.tracker.stop();
+			}
+		}
+	}
+
+	static void compc(String[] args, int id, Map targets)
 	{
 		LocalizationManager l10n = ThreadLocalToolkit.getLocalizationManager();
 
@@ -1040,7 +1149,7 @@ public class SimpleShell extends Tool
 				flex2.compiler.API.disableBenchmark();
 			}
 
-			targets.put("" + id, s);
+			register(targets, s);
 			s.args = args;
 
 			String[] sourceMimeTypes = flex2.tools.API.getSourcePathMimeTypes();
@@ -1182,6 +1291,11 @@ public class SimpleShell extends Tool
 			}
 
 	        flex2.compiler.API.removePathResolver();
+
+			if (targets.get("" + id) == s)
+			{
+				targetCache.end(s);
+			}
         }
 	}
 
@@ -0,0 +1,576 @@
+////////////////////////////////////////////////////////////////////////////////
+//
+//  ADOBE SYSTEMS INCORPORATED
+//  Copyright 2005-2007 Adobe Systems Incorporated
+//  All Rights Reserved.
+//
+//  NOTICE: Adobe permits you to use, modify, and distribute this file
+//  in accordance with the terms of the license agreement accompanying it.
+//
+////////////////////////////////////////////////////////////////////////////////
+
+package flex2.tools;
+
+import flash.localization.LocalizationManager;
+import flash.localization.ResourceBundleLocalizer;
+import flex2.compiler.ILocalizableMessage;
+import flex2.compiler.util.AbstractLogger;
+import flex2.compiler.util.CompilerMessage;
+import flex2.compiler.util.ThreadLocalToolkit;
+
+import java.io.*;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.*;
+
+/**
+ * fcsh as a long running server.  It takes the mxmlc, compc, compile and clear commands of fcsh over
+ * a socket on the loopback interface, one command per line, and keeps the targets warm between them.
+ * Each connection is served on its own thread, so commands for different targets run concurrently;
+ * commands for the same target wait for each other.
+ * <p>
+ * Targets belong to a workspace.  A connection starts in the default workspace and "workspace name"
+ * switches it, so that clients building different projects don't see each other's target ids.  Relative
+ * paths are resolved against the server's working directory, so clients should pass absolute paths.
+ * <p>
+ * The response to a command is a list of tab separated lines, ended by an empty line:
+ * <pre>
+ * target    id
+ * message   level path line column text
+ * time      milliseconds
+ * status    ok | error
+ * </pre>
+ * "target" is there for mxmlc and compc if the target was created, "message" once per compiler message.
+ * An absent path is empty and an absent line or column is -1.  Tabs, line breaks and backslashes in
+ * the fields are escaped as \t, \n, \r and \\.
+ *
+ * @see SimpleShell
+ */
+public class SimpleShellServer
+{
+	public static final int DEFAULT_PORT = 7077;
+
+	public static void main(String[] args) throws IOException
+	{
+		int port = (args.length > 0) ? Integer.parseInt(args[0]) : DEFAULT_PORT;
+
+		flex2.compiler.API.useAS3();
+
+		LocalizationManager localizationManager = new LocalizationManager();
+		localizationManager.addLocalizer( new ResourceBundleLocalizer() );
+		ThreadLocalToolkit.setLocalizationManager( localizationManager );
+
+		ServerSocket serverSocket = new ServerSocket(port, 50, InetAddress.getByName("127.0.0.1"));
+
+		System.out.println(localizationManager.getLocalizedTextString(new SimpleShell.ShellMessage("fcsh", VersionInfo.buildMessage())));
+		System.out.println(localizationManager.getLocalizedTextString(new Listening(serverSocket.getLocalPort())));
+
+		new SimpleShellServer(localizationManager).serve(serverSocket);
+	}
+
+	public SimpleShellServer(LocalizationManager localizationManager)
+	{
+		this.localizationManager = localizationManager;
+	}
+
+	private final LocalizationManager localizationManager;
+	private final Map workspaces = new HashMap(); // Map<String, Workspace>
+	private int connections;
+
+	/**
+	 * Accepts connections until the server socket is closed.
+	 */
+	public void serve(ServerSocket serverSocket) throws IOException
+	{
+		while (true)
+		{
+			final Socket socket;
+			try
+			{
+				socket = serverSocket.accept();
+			}
+			catch (IOException ex)
+			{
+				if (serverSocket.isClosed())
+				{
+					return;
+				}
+				throw ex;
+			}
+
+			Thread t = new Thread("fcsh-connection-" + (++connections))
+			{
+				public void run()
+				{
+					ThreadLocalToolkit.setLocalizationManager(localizationManager);
+					try
+					{
+						serve(socket);
+					}
+					catch (IOException ex)
+					{
+						// the client went away
+					}
+					finally
+					{
+						try { socket.close(); } catch (IOException ex) {}
+					}
+				}
+			};
+			t.setDaemon(true);
+			t.start();
+		}
+	}
+
+	private void serve(Socket socket) throws IOException
+	{
+		BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), "UTF-8"));
+		Writer out = new BufferedWriter(new OutputStreamWriter(socket.getOutputStream(), "UTF-8"));
+		Workspace workspace = getWorkspace("");
+
+		String s;
+		while ((s = in.readLine()) != null)
+		{
+			s = s.trim();
+			if (s.length() == 0)
+			{
+				continue;
+			}
+
+			if (s.startsWith("workspace"))
+			{
+				workspace = getWorkspace(s.substring("workspace".length()).trim());
+				out.write("status\tok\n\n");
+			}
+			else
+			{
+				process(workspace, s).write(out);
+			}
+			out.flush();
+		}
+	}
+
+	private synchronized Workspace getWorkspace(String name)
+	{
+		Workspace w = (Workspace) workspaces.get(name);
+		if (w == null)
+		{
+			w = new Workspace();
+			workspaces.put(name, w);
+		}
+		return w;
+	}
+
+	/**
+	 * Runs one command on the calling thread.
+	 */
+	Response process(Workspace workspace, String s)
+	{
+		long start = System.currentTimeMillis();
+		Response response = new Response();
+		ThreadLocalToolkit.setLogger(response);
+
+		try
+		{
+			if (s.startsWith("mxmlc") || s.startsWith("compc"))
+			{
+				String command = s.startsWith("mxmlc") ? "mxmlc" : "compc";
+				StringTokenizer t = new StringTokenizer(s.substring(command.length()).trim(), " ");
+				String[] args = new String[t.countTokens()];
+				for (int i = 0; t.hasMoreTokens(); i++)
+				{
+					args[i] = t.nextToken();
+				}
+
+				// "mxmlc id" builds the target again from scratch, like fcsh
+				String id = null;
+				if (args.length == 1)
+				{
+					try
+					{
+						id = Integer.toString(Integer.parseInt(args[0]));
+						Target target = (Target) workspace.targets.get(id);
+						if (target == null)
+						{
+							ThreadLocalToolkit.logError(localizationManager.getLocalizedTextString(new SimpleShell.TargetNotFound(id)));
+							return response;
+						}
+						args = target.args;
+					}
+					catch (NumberFormatException ex)
+					{
+						id = null;
+					}
+				}
+				if (id == null)
+				{
+					id = Integer.toString(workspace.nextId());
+				}
+
+				synchronized (workspace.lock(id))
+				{
+					if (command.equals("mxmlc"))
+					{
+						SimpleShell.mxmlc(args, Integer.parseInt(id), workspace.targets);
+					}
+					else
+					{
+						SimpleShell.compc(args, Integer.parseInt(id), workspace.targets);
+					}
+				}
+
+				if (workspace.targets.containsKey(id))
+				{
+					response.target = id;
+				}
+			}
+			else if (s.startsWith("compile"))
+			{
+				String id = s.substring("compile".length()).trim();
+				synchronized (workspace.lock(id))
+				{
+					Target target = (Target) workspace.targets.get(id);
+					if (target == null)
+					{
+						ThreadLocalToolkit.logError(localizationManager.getLocalizedTextString(new SimpleShell.TargetNotFound(id)));
+					}
+					else
+					{
+						SimpleShell.build(target);
+					}
+				}
+			}
+			else if (s.startsWith("clear"))
+			{
+				String id = s.substring("clear".length()).trim();
+				if (id.length() == 0)
+				{
+					String[] ids;
+					synchronized (workspace.targets)
+					{
+						ids = (String[]) workspace.targets.keySet().toArray(new String[0]);
+					}
+					for (int i = 0; i < ids.length; i++)
+					{
+						workspace.clear(ids[i]);
+					}
+				}
+				else if (!workspace.clear(id))
+				{
+					ThreadLocalToolkit.logError(localizationManager.getLocalizedTextString(new SimpleShell.TargetNotFound(id)));
+				}
+			}
+			else
+			{
+				ThreadLocalToolkit.logError(localizationManager.getLocalizedTextString(new CommandList()));
+			}
+		}
+		catch (Throwable t)
+		{
+			ThreadLocalToolkit.logError(t.toString());
+		}
+		finally
+		{
+			ThreadLocalToolkit.setLogger(null);
+			response.time = System.currentTimeMillis() - start;
+		}
+
+		return response;
+	}
+
+	/**
+	 * The targets of the clients working on one project.
+	 */
+	static class Workspace
+	{
+		final Map targets = Collections.synchronizedMap(new HashMap()); // Map<String, Target>
+		private final Map locks = new HashMap(); // Map<String, Object>
+		private int counter = 1;
+
+		synchronized int nextId()
+		{
+			return counter++;
+		}
+
+		/**
+		 * @return the object to hold while building the target
+		 */
+		synchronized Object lock(String id)
+		{
+			Object lock = locks.get(id);
+			if (lock == null)
+			{
+				lock = new Object();
+				locks.put(id, lock);
+			}
+			return lock;
+		}
+
+		boolean clear(String id)
+		{
+			// wait for a build of the target to finish
+			synchronized (lock(id))
+			{
+				return SimpleShell.clear(targets, id);
+			}
+		}
+	}
+
+	/**
+	 * Collects the messages of a command, and writes them out with its outcome.
+	 */
+	static class Response extends AbstractLogger
+	{
+		// the levels in the response; INFO, WARNING and ERROR are the localized ones
+		private static final String INFO_LEVEL = "info", DEBUG_LEVEL = "debug", WARNING_LEVEL = "warning", ERROR_LEVEL = "error";
+
+		Response()
+		{
+			init(ThreadLocalToolkit.getLocalizationManager());
+		}
+
+		String target;
+		long time;
+		private final List messages = new ArrayList(); // List<String[]>
+		private int errorCount, warningCount;
+
+		void write(Writer out) throws IOException
+		{
+			if (target != null)
+			{
+				out.write("target\t" + target + "\n");
+			}
+			for (int i = 0, size = messages.size(); i < size; i++)
+			{
+				String[] m = (String[]) messages.get(i);
+				out.write("message");
+				for (int j = 0; j < m.length; j++)
+				{
+					out.write('\t');
+					out.write(escape(m[j]));
+				}
+				out.write('\n');
+			}
+			out.write("time\t" + time + "\n");
+			out.write("status\t" + (errorCount == 0 ? "ok" : "error") + "\n\n");
+		}
+
+		private static String escape(String s)
+		{
+			StringBuffer b = new StringBuffer(s.length());
+			for (int i = 0, length = s.length(); i < length; i++)
+			{
+				char c = s.charAt(i);
+				switch (c)
+				{
+				case '\\': b.append("\\\\"); break;
+				case '\t': b.append("\\t"); break;
+				case '\n': b.append("\\n"); break;
+				case '\r': b.append("\\r"); break;
+				default: b.append(c); break;
+				}
+			}
+			return b.toString();
+		}
+
+		private void add(String level, String path, int line, int col, String text)
+		{
+			if (level == ERROR_LEVEL)
+			{
+				errorCount++;
+			}
+			else if (level == WARNING_LEVEL)
+			{
+				warningCount++;
+			}
+
+			messages.add(new String[] { level, path == null ? "" : path, Integer.toString(line), Integer.toString(col),
+										String.valueOf(text) });
+		}
+
+		public int errorCount()
+		{
+			return errorCount;
+		}
+
+		public int warningCount()
+		{
+			return warningCount;
+		}
+
+		public void logInfo(String info)
+		{
+			add(INFO_LEVEL, null, -1, -1, info);
+		}
+
+		public void logDebug(String debug)
+		{
+			add(DEBUG_LEVEL, null, -1, -1, debug);
+		}
+
+		public void logWarning(String warning)
+		{
+			add(WARNING_LEVEL, null, -1, -1, warning);
+		}
+
+		public void logError(String error)
+		{
+			add(ERROR_LEVEL, null, -1, -1, error);
+		}
+
+		public void logInfo(String path, String info)
+		{
+			add(INFO_LEVEL, path, -1, -1, info);
+		}
+
+		public void logDebug(String path, String debug)
+		{
+			add(DEBUG_LEVEL, path, -1, -1, debug);
+		}
+
+		public void logWarning(String path, String warning)
+		{
+			add(WARNING_LEVEL, path, -1, -1, warning);
+		}
+
+		public void logWarning(String path, String warning, int errorCode)
+		{
+			add(WARNING_LEVEL, path, -1, -1, warning);
+		}
+
+		public void logError(String path, String error)
+		{
+			add(ERROR_LEVEL, path, -1, -1, error);
+		}
+
+		public void logError(String path, String error, int errorCode)
+		{
+			add(ERROR_LEVEL, path, -1, -1, error);
+		}
+
+		public void logInfo(String path, int line, String info)
+		{
+			add(INFO_LEVEL, path, line, -1, info);
+		}
+
+		public void logDebug(String path, int line, String debug)
+		{
+			add(DEBUG_LEVEL, path, line, -1, debug);
+		}
+
+		public void logWarning(String path, int line, String warning)
+		{
+			add(WARNING_LEVEL, path, line, -1, warning);
+		}
+
+		public void logWarning(String path, int line, String warning, int errorCode)
+		{
+			add(WARNING_LEVEL, path, line, -1, warning);
+		}
+
+		public void logError(String path, int line, String error)
+		{
+			add(ERROR_LEVEL, path, line, -1, error);
+		}
+
+		public void logError(String path, int line, String error, int errorCode)
+		{
+			add(ERROR_LEVEL, path, line, -1, error);
+		}
+
+		public void logInfo(String path, int line, int col, String info)
+		{
+			add(INFO_LEVEL, path, line, col, info);
+		}
+
+		public void logDebug(String path, int line, int col, String debug)
+		{
+			add(DEBUG_LEVEL, path, line, col, debug);
+		}
+
+		public void logWarning(String path, int line, int col, String warning)
+		{
+			add(WARNING_LEVEL, path, line, col, warning);
+		}
+
+		public void logError(String path, int line, int col, String error)
+		{
+			add(ERROR_LEVEL, path, line, col, error);
+		}
+
+		public void logWarning(String path, int line, int col, String warning, String source)
+		{
+			add(WARNING_LEVEL, path, line, col, warning);
+		}
+
+		public void logWarning(String path, int line, int col, String warning, String source, int errorCode)
+		{
+			add(WARNING_LEVEL, path, line, col, warning);
+		}
+
+		public void logError(String path, int line, int col, String error, String source)
+		{
+			add(ERROR_LEVEL, path, line, col, error);
+		}
+
+		public void logError(String path, int line, int col, String error, String source, int errorCode)
+		{
+			add(ERROR_LEVEL, path, line, col, error);
+		}
+
+		public void log(ILocalizableMessage m)
+		{
+			log(m, null);
+		}
+
+		public void log(ILocalizableMessage m, String source)
+		{
+			LocalizationManager l10n = getLocalizationManager();
+			String text = l10n.getLocalizedTextString(m);
+			if (text == null)
+			{
+				text = m.getClass().getName();
+			}
+			text += formatExceptionDetail(m, l10n);
+
+			String level = (m.getLevel() == ILocalizableMessage.ERROR) ? ERROR_LEVEL :
+						   (m.getLevel() == ILocalizableMessage.WARNING) ? WARNING_LEVEL : INFO_LEVEL;
+			add(level, m.getPath(), m.getLine(), m.getColumn(), text);
+		}
+
+		public void needsCompilation(String path, String reason)
+		{
+			add(INFO_LEVEL, path, -1, -1, RECOMPILE + ": " + REASON + ": " + reason);
+		}
+
+		public void includedFileUpdated(String path)
+		{
+			add(INFO_LEVEL, path, -1, -1, INCLUDEUPDATED);
+		}
+
+		public void includedFileAffected(String path)
+		{
+			add(INFO_LEVEL, path, -1, -1, INCLUDEAFFECTED);
+		}
+	}
+
+	public static class Listening extends CompilerMessage.CompilerInfo
+	{
+		public Listening(int port)
+		{
+			super();
+			this.port = port;
+		}
+
+		public final int port;
+	}
+
+	public static class CommandList extends CompilerMessage.CompilerInfo
+	{
+		public CommandList()
+		{
+			super();
+		}
+	}
+}
@@ -18,6 +18,7 @@ import flex2.compiler.SourceList;
 import flex2.compiler.SourcePath;
 import flex2.compiler.ResourceBundlePath;
 import flex2.compiler.common.Configuration;
+import flex2.compiler.io.FileChangeTracker;
 import flex2.compiler.swc.SwcCache;
 import flex2.linker.ConsoleApplication;
 
@@ -48,4 +49,5 @@ public class Target
 	public SwcCache swcCache;
 	public Movie movie;
 	public ConsoleApplication app;
+	public FileChangeTracker tracker;
 }
@@ -0,0 +1,383 @@
+////////////////////////////////////////////////////////////////////////////////
+//
+//  ADOBE SYSTEMS INCORPORATED
+//  Copyright 2005-2007 Adobe Systems Incorporated
+//  All Rights Reserved.
+//
+//  NOTICE: Adobe permits you to use, modify, and distribute this file
+//  in accordance with the terms of the license agreement accompanying it.
+//
+////////////////////////////////////////////////////////////////////////////////
+
+package flex2.tools;
+
+import flex2.compiler.ResourceContainer;
+import flex2.compiler.SymbolTable;
+import flex2.compiler.swc.SwcCache;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.lang.reflect.Method;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Keeps the heap used by fcsh's targets inside a budget.  After a build, if the heap left by the last
+ * garbage collection is over the budget, the compilation units of the least recently built target are
+ * written to a temporary file and dropped.  The next build of that target loads them back and goes on
+ * incrementally.
+ * <p>
+ * The heap is measured again only once a collection has run since a target was written out, so that
+ * what the target freed shows.  Where the JVM doesn't report collections (before 1.5), the heap in use
+ * is measured instead, and at most one target is written out after each build.
+ * <p>
+ * The budget is three quarters of the maximum heap, or the number of megabytes in the
+ * flex2.tools.fcsh.heapBudget system property.  A target being built is never written out.
+ */
+class TargetCache
+{
+	TargetCache()
+	{
+		this(getDefaultBudget());
+	}
+
+	TargetCache(long budget)
+	{
+		this.budget = budget;
+	}
+
+	private final long budget;
+	// the number of collections when a target was last written out, or -1
+	private long spilledAt = -1;
+	// access ordered, so the least recently built target comes first
+	private final Map entries = new LinkedHashMap(16, 0.75f, true); // Map<Target, Entry>
+
+	private static class Entry
+	{
+		int busy;
+		File file;
+	}
+
+	private static long getDefaultBudget()
+	{
+		String mb = System.getProperty("flex2.tools.fcsh.heapBudget");
+		if (mb != null)
+		{
+			try
+			{
+				return Long.parseLong(mb) * 1024 * 1024;
+			}
+			catch (NumberFormatException ex)
+			{
+			}
+		}
+		return Runtime.getRuntime().maxMemory() / 4 * 3;
+	}
+
+	/**
+	 * Marks the target as being built, waiting for it to be written out if it is, and loads its compilation
+	 * units back if they were.  Call it on a thread set up for compiling, e.g. with a path resolver.
+	 */
+	void begin(Target s)
+	{
+		File file;
+		synchronized (this)
+		{
+			Entry e = getEntry(s);
+			while (e.busy < 0)
+			{
+				try
+				{
+					wait();
+				}
+				catch (InterruptedException ex)
+				{
+				}
+			}
+			e.busy++;
+			file = e.file;
+			e.file = null;
+		}
+
+		if (file != null)
+		{
+			restore(s, file);
+		}
+	}
+
+	/**
+	 * The build of the target is over.  Writes out other targets if the heap is over the budget.
+	 */
+	void end(Target s)
+	{
+		long collections = getCollectionCount();
+		synchronized (this)
+		{
+			Entry e = (Entry) entries.get(s);
+			if (e != null)
+			{
+				e.busy--;
+			}
+
+			if (collections != -1 && collections == spilledAt)
+			{
+				// what the last one freed hasn't been collected yet
+				return;
+			}
+		}
+
+		if (getHeapUsed() <= budget)
+		{
+			return;
+		}
+
+		Target victim = claimVictim(s);
+		if (victim == null)
+		{
+			return;
+		}
+
+		File file = null;
+		try
+		{
+			file = spill(victim);
+		}
+		finally
+		{
+			release(victim, file);
+		}
+
+		if (file != null)
+		{
+			synchronized (this)
+			{
+				spilledAt = collections;
+			}
+		}
+	}
+
+	/**
+	 * @return the bytes in the heap pools after their last collection, or the bytes in use if the JVM
+	 *         doesn't tell
+	 */
+	private static long getHeapUsed()
+	{
+		long used = 0;
+		boolean measured = false;
+
+		try
+		{
+			// java.lang.management is reflected, as in Benchmark, to keep running on 1.4
+			ClassLoader loader = TargetCache.class.getClassLoader();
+			Class mfCls = Class.forName("java.lang.management.ManagementFactory", true, loader);
+			Class mpCls = Class.forName("java.lang.management.MemoryPoolMXBean", true, loader);
+			Class memCls = Class.forName("java.lang.management.MemoryUsage", true, loader);
+			Class typeCls = Class.forName("java.lang.management.MemoryType", true, loader);
+
+			Method getMemPoolMeth = mfCls.getMethod("getMemoryPoolMXBeans", new Class[0]);
+			Method getCollectionUsageMeth = mpCls.getMethod("getCollectionUsage", new Class[0]);
+			Method getTypeMeth = mpCls.getMethod("getType", new Class[0]);
+			Method getUsedMeth = memCls.getMethod("getUsed", new Class[0]);
+			Object heap = typeCls.getField("HEAP").get(null);
+
+			List list = (List) getMemPoolMeth.invoke(null, new Object[0]);
+			for (Iterator i = list.iterator(); i.hasNext();)
+			{
+				Object pool = i.next();
+				if (getTypeMeth.invoke(pool, new Object[0]) == heap)
+				{
+					// null for pools that aren't collected, e.g. the eden space on some collectors
+					Object usage = getCollectionUsageMeth.invoke(pool, new Object[0]);
+					if (usage != null)
+					{
+						used += ((Long) getUsedMeth.invoke(usage, new Object[0])).longValue();
+						measured = true;
+					}
+				}
+			}
+		}
+		catch (Exception ex)
+		{
+			// not 1.5
+		}
+
+		if (!measured)
+		{
+			Runtime rt = Runtime.getRuntime();
+			used = rt.totalMemory() - rt.freeMemory();
+		}
+		return used;
+	}
+
+	/**
+	 * @return the number of collections so far, or -1 if the JVM doesn't tell
+	 */
+	private static long getCollectionCount()
+	{
+		try
+		{
+			ClassLoader loader = TargetCache.class.getClassLoader();
+			Class mfCls = Class.forName("java.lang.management.ManagementFactory", true, loader);
+			Class gcCls = Class.forName("java.lang.management.GarbageCollectorMXBean", true, loader);
+
+			Method getCollectorsMeth = mfCls.getMethod("getGarbageCollectorMXBeans", new Class[0]);
+			Method getCountMeth = gcCls.getMethod("getCollectionCount", new Class[0]);
+
+			long count = 0;
+			List list = (List) getCollectorsMeth.invoke(null, new Object[0]);
+			for (Iterator i = list.iterator(); i.hasNext();)
+			{
+				long n = ((Long) getCountMeth.invoke(i.next(), new Object[0])).longValue();
+				if (n > 0)
+				{
+					count += n;
+				}
+			}
+			return count;
+		}
+		catch (Exception ex)
+		{
+			// not 1.5
+			return -1;
+		}
+	}
+
+	private synchronized void release(Target victim, File file)
+	{
+		Entry e = (Entry) entries.get(victim);
+		if (e != null)
+		{
+			e.busy = 0;
+			e.file = file;
+		}
+		else if (file != null)
+		{
+			// removed meanwhile
+			file.delete();
+		}
+		notifyAll();
+	}
+
+	/**
+	 * Forgets the target, e.g. when it is cleared.
+	 */
+	synchronized void remove(Target s)
+	{
+		Entry e = (Entry) entries.remove(s);
+		if (e != null && e.file != null)
+		{
+			e.file.delete();
+		}
+	}
+
+	private Entry getEntry(Target s)
+	{
+		Entry e = (Entry) entries.get(s);
+		if (e == null)
+		{
+			e = new Entry();
+			entries.put(s, e);
+		}
+		return e;
+	}
+
+	/**
+	 * @return the least recently built target that is in memory and not being built, marked as being
+	 *         written out; null if there is none
+	 */
+	private synchronized Target claimVictim(Target current)
+	{
+		for (Iterator i = entries.entrySet().iterator(); i.hasNext();)
+		{
+			Map.Entry me = (Map.Entry) i.next();
+			Target s = (Target) me.getKey();
+			Entry e = (Entry) me.getValue();
+			if (s != current && e.busy == 0 && e.file == null && s.units != null)
+			{
+				e.busy = -1;
+				return s;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * @return the file the compilation units are in, or null if the target couldn't be written out
+	 */
+	static File spill(Target s)
+	{
+		File file = null;
+		RandomAccessFile f = null;
+		boolean written = false;
+		try
+		{
+			file = File.createTempFile("fcsh-" + s.id + "-", ".cache");
+			f = new RandomAccessFile(file, "rw");
+			flex2.compiler.API.persistCompilationUnits(s.configuration, s.fileSpec, s.sourceList, s.sourcePath,
+													   s.resources, s.bundlePath, s.checksum,
+													   "fcsh target " + s.id, f);
+			written = true;
+		}
+		catch (IOException ex)
+		{
+			// keep it in memory
+		}
+		finally
+		{
+			if (f != null)
+			{
+				try { f.close(); } catch (IOException ex) {}
+			}
+			if (!written && file != null)
+			{
+				file.delete();
+			}
+		}
+
+		if (!written)
+		{
+			return null;
+		}
+
+		flex2.compiler.API.unloadCompilationUnits(s.fileSpec, s.sourceList, s.sourcePath, s.bundlePath);
+		s.resources = new ResourceContainer();
+		s.units = null;
+		s.movie = null;
+		s.app = null;
+		s.perCompileData = null;
+		s.swcCache = new SwcCache();
+
+		return file;
+	}
+
+	static void restore(Target s, File file)
+	{
+		s.perCompileData = SymbolTable.newSymbolTable(s.configuration).perCompileData;
+
+		RandomAccessFile f = null;
+		try
+		{
+			f = new RandomAccessFile(file, "r");
+			flex2.compiler.API.loadCompilationUnits(s.configuration, s.fileSpec, s.sourceList, s.sourcePath,
+													s.resources, s.bundlePath, s.checksum, f, file.getPath());
+		}
+		catch (IOException ex)
+		{
+			// start over; the build compiles everything
+			flex2.compiler.API.unloadCompilationUnits(s.fileSpec, s.sourceList, s.sourcePath, s.bundlePath);
+			s.resources = new ResourceContainer();
+		}
+		finally
+		{
+			if (f != null)
+			{
+				try { f.close(); } catch (IOException ex) {}
+			}
+		}
+
+		file.delete();
+	}
+}
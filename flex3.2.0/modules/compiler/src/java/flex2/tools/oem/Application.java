@@ -39,6 +39,7 @@ import flex2.compiler.CompilerException;
 import flex2.compiler.CompilerSwcContext;
 import flex2.compiler.FileSpec;
 import flex2.compiler.LicenseException;
+import flex2.compiler.PendingCacheWrite;
 import flex2.compiler.ResourceBundlePath;
 import flex2.compiler.ResourceContainer;
 import flex2.compiler.SourceList;
@@ -49,6 +50,7 @@ import flex2.compiler.common.CompilerConfiguration;
 import flex2.compiler.common.FontsConfiguration;
 import flex2.compiler.config.ConfigurationException;
 import flex2.compiler.i18n.I18nUtils;
+import flex2.compiler.io.FileChangeTracker;
 import flex2.compiler.io.FileUtil;
 import flex2.compiler.io.LocalFile;
 import flex2.compiler.io.VirtualFile;
@@ -306,6 +308,8 @@ public class Application implements Builder
     // clean() would null out the following variables.
     private ApplicationData data;
     private String cacheName, configurationReport;
+    private PendingCacheWrite pendingSave;
+    private FileChangeTracker changeTracker;
     private List messages;
 
 
@@ -489,6 +493,10 @@ public class Application implements Builder
     public void clean()
     {
         clean(true, true, true, true, true);
+        if (changeTracker != null)
+        {
+            changeTracker.stop();
+        }
     }
     
     /**
@@ -496,6 +504,7 @@ public class Application implements Builder
      */
     public void load(InputStream in) throws IOException
     {
+        joinPendingSave();
         cacheName = OEMUtil.load(in, cacheName);
         clean(true, false, false);
     }
@@ -505,9 +514,97 @@ public class Application implements Builder
      */
     public long save(OutputStream out) throws IOException
     {
+        joinPendingSave();
         return OEMUtil.save(out, cacheName, data);
     }
     
+    /**
+     * Saves the current compilation data like the <code>save()</code> method, but only the encoding is done before
+     * this method returns. The data is written out on a background thread, so <code>build()</code> can be called
+     * right away. Call the <code>waitForSave()</code> method before closing the <code>OutputStream</code>.
+     * 
+     * @param out The <code>OutputStream</code>.
+     * @return The number of bytes that will be written out.
+     * @throws IOException Thrown when an I/O error occurs while encoding the compilation data, or occurred while
+     *                     writing the data of the previous <code>saveInBackground()</code> call. In the latter case,
+     *                     nothing is saved.
+     */
+    public long saveInBackground(OutputStream out) throws IOException
+    {
+        // report a failure of the previous background save instead of losing it
+        waitForSave();
+        pendingSave = OEMUtil.saveInBackground(out, cacheName, data);
+        return pendingSave == null ? 0 : pendingSave.getLength();
+    }
+    
+    /**
+     * Waits for the data of the last <code>saveInBackground()</code> call to be written out.
+     * 
+     * @throws IOException Thrown when an I/O error occurred while writing the data.
+     */
+    public void waitForSave() throws IOException
+    {
+        if (pendingSave != null)
+        {
+            PendingCacheWrite write = pendingSave;
+            pendingSave = null;
+            write.join();
+        }
+    }
+    
+    /**
+     * Watches the files that the compiler reads, so that an incremental build only checks the ones that
+     * changed. Their directories are watched where the JVM can, and otherwise the files are checked on a
+     * background thread every <code>interval</code> milliseconds. A change made just before a build may only
+     * be seen by the next build, unless it is reported with the <code>fileChanged()</code> method.
+     * <code>clean()</code> stops the watching until the next build.
+     * 
+     * @param interval The number of milliseconds between checks of the files; 0, the default, turns watching off.
+     */
+    public void setFileChangeTracking(long interval)
+    {
+        if (changeTracker != null)
+        {
+            changeTracker.stop();
+            changeTracker = null;
+        }
+        if (interval > 0)
+        {
+            changeTracker = new FileChangeTracker(interval);
+        }
+    }
+    
+    /**
+     * Reports a change to a file, for example one that was just saved, when file change tracking is on.
+     * 
+     * @param file The file that changed.
+     */
+    public void fileChanged(File file)
+    {
+        if (changeTracker != null)
+        {
+            changeTracker.changed(FileUtil.openFile(FileUtil.getCanonicalPath(file)));
+        }
+    }
+    
+    /**
+     * Waits for a background save to finish writing the cache file. A failure is left for
+     * <code>waitForSave()</code> or the next <code>saveInBackground()</code> to report.
+     */
+    private void joinPendingSave()
+    {
+        if (pendingSave != null)
+        {
+            try
+            {
+                pendingSave.join();
+            }
+            catch (IOException ex)
+            {
+            }
+        }
+    }
+    
     /**
      * @inheritDoc
      */
@@ -617,6 +714,7 @@ public class Application implements Builder
             return true;
         }
         
+        joinPendingSave();
         RandomAccessFile cacheFile = null;
 
         try
@@ -723,6 +821,7 @@ public class Application implements Builder
         // initialize some ThreadLocal variables...
         cc.run();
         OEMUtil.init(OEMUtil.getLogger(logger, messages), mimeMappings, meter, resolver, cc);
+        ThreadLocalToolkit.setFileChangeTracker(changeTracker);
 
 //        if (ThreadLocalToolkit.getBenchmark() != null)
 //        {
@@ -895,6 +994,7 @@ public class Application implements Builder
         // initialize some ThreadLocal variables...
         cc.run();
         OEMUtil.init(OEMUtil.getLogger(logger, messages), mimeMappings, meter, resolver, cc);
+        ThreadLocalToolkit.setFileChangeTracker(changeTracker);
 
 //        if (ThreadLocalToolkit.getBenchmark() != null)
 //        {
@@ -938,6 +1038,7 @@ public class Application implements Builder
         {
             data.swcCache = new SwcCache();            
         }
+        data.swcCache.setThreads(compilerConfig.getThreads());
         
         CompilerSwcContext swcContext = new CompilerSwcContext(true, true,
 															   c.configuration.getCompatibilityVersionString());
@@ -1179,6 +1280,7 @@ public class Application implements Builder
         try
         {
             OEMUtil.init(OEMUtil.getLogger(logger, messages), mimeMappings, meter, resolver, cc);
+            ThreadLocalToolkit.setFileChangeTracker(changeTracker);
 
             ApplicationCompilerConfiguration appConfig = (ApplicationCompilerConfiguration) data.configuration;
             VirtualFile projector = appConfig.getProjector();
@@ -1341,6 +1443,7 @@ public class Application implements Builder
 
         if (cleanCache)
         {
+            joinPendingSave();
             if (cacheName != null)
             {
                 File dead = FileUtil.openFile(cacheName);
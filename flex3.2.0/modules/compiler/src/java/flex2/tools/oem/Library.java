@@ -42,6 +42,7 @@ import flex2.compiler.CompilerException;
 import flex2.compiler.CompilerSwcContext;
 import flex2.compiler.FileSpec;
 import flex2.compiler.LicenseException;
+import flex2.compiler.PendingCacheWrite;
 import flex2.compiler.ResourceBundlePath;
 import flex2.compiler.ResourceContainer;
 import flex2.compiler.SourceList;
@@ -51,6 +52,7 @@ import flex2.compiler.Transcoder;
 import flex2.compiler.common.CompilerConfiguration;
 import flex2.compiler.config.ConfigurationException;
 import flex2.compiler.i18n.I18nUtils;
+import flex2.compiler.io.FileChangeTracker;
 import flex2.compiler.io.FileUtil;
 import flex2.compiler.io.LocalFile;
 import flex2.compiler.io.VirtualFile;
@@ -255,6 +257,8 @@ public class Library implements Builder
     // clean() would null out the following variables
     LibraryData data;
     private String cacheName, configurationReport;
+    private PendingCacheWrite pendingSave;
+    private FileChangeTracker changeTracker;
     private List messages;
 
     /**
@@ -708,6 +712,7 @@ public class Library implements Builder
         // initialize some ThreadLocal variables...
         cc.run();
         OEMUtil.init(OEMUtil.getLogger(logger, messages), mimeMappings, meter, resolver, cc);
+        ThreadLocalToolkit.setFileChangeTracker(changeTracker);
 
         // if there are no SWC inputs, output an error and return -1
         VirtualFile[] includeLibs = (c.configuration == null) ? null : c.configuration.getCompilerConfiguration().getIncludeLibraries();
@@ -756,6 +761,7 @@ public class Library implements Builder
 
         // load SWCs
         data.swcCache = new SwcCache();
+        data.swcCache.setThreads(compilerConfig.getThreads());
         CompilerSwcContext swcContext = new CompilerSwcContext(true, true,
 															   compilerConfig.getCompatibilityVersionString());
         try
@@ -873,6 +879,10 @@ public class Library implements Builder
     public void clean()
     {
         clean(true, true, true, true, true);
+        if (changeTracker != null)
+        {
+            changeTracker.stop();
+        }
     }
 
     /**
@@ -880,6 +890,7 @@ public class Library implements Builder
      */
     public void load(InputStream in) throws IOException
     {
+        joinPendingSave();
         cacheName = OEMUtil.load(in, cacheName);
         clean(true, false, false);
     }
@@ -889,9 +900,97 @@ public class Library implements Builder
      */
     public long save(OutputStream out) throws IOException
     {
+        joinPendingSave();
         return OEMUtil.save(out, cacheName, data);
     }
     
+    /**
+     * Saves the current compilation data like the <code>save()</code> method, but only the encoding is done before
+     * this method returns. The data is written out on a background thread, so <code>build()</code> can be called
+     * right away. Call the <code>waitForSave()</code> method before closing the <code>OutputStream</code>.
+     * 
+     * @param out The <code>OutputStream</code>.
+     * @return The number of bytes that will be written out.
+     * @throws IOException Thrown when an I/O error occurs while encoding the compilation data, or occurred while
+     *                     writing the data of the previous <code>saveInBackground()</code> call. In the latter case,
+     *                     nothing is saved.
+     */
+    public long saveInBackground(OutputStream out) throws IOException
+    {
+        // report a failure of the previous background save instead of losing it
+        waitForSave();
+        pendingSave = OEMUtil.saveInBackground(out, cacheName, data);
+        return pendingSave == null ? 0 : pendingSave.getLength();
+    }
+    
+    /**
+     * Waits for the data of the last <code>saveInBackground()</code> call to be written out.
+     * 
+     * @throws IOException Thrown when an I/O error occurred while writing the data.
+     */
+    public void waitForSave() throws IOException
+    {
+        if (pendingSave != null)
+        {
+            PendingCacheWrite write = pendingSave;
+            pendingSave = null;
+            write.join();
+        }
+    }
+    
+    /**
+     * Watches the files that the compiler reads, so that an incremental build only checks the ones that
+     * changed. Their directories are watched where the JVM can, and otherwise the files are checked on a
+     * background thread every <code>interval</code> milliseconds. A change made just before a build may only
+     * be seen by the next build, unless it is reported with the <code>fileChanged()</code> method.
+     * <code>clean()</code> stops the watching until the next build.
+     * 
+     * @param interval The number of milliseconds between checks of the files; 0, the default, turns watching off.
+     */
+    public void setFileChangeTracking(long interval)
+    {
+        if (changeTracker != null)
+        {
+            changeTracker.stop();
+            changeTracker = null;
+        }
+        if (interval > 0)
+        {
+            changeTracker = new FileChangeTracker(interval);
+        }
+    }
+    
+    /**
+     * Reports a change to a file, for example one that was just saved, when file change tracking is on.
+     * 
+     * @param file The file that changed.
+     */
+    public void fileChanged(File file)
+    {
+        if (changeTracker != null)
+        {
+            changeTracker.changed(FileUtil.openFile(FileUtil.getCanonicalPath(file)));
+        }
+    }
+    
+    /**
+     * Waits for a background save to finish writing the cache file. A failure is left for
+     * <code>waitForSave()</code> or the next <code>saveInBackground()</code> to report.
+     */
+    private void joinPendingSave()
+    {
+        if (pendingSave != null)
+        {
+            try
+            {
+                pendingSave.join();
+            }
+            catch (IOException ex)
+            {
+            }
+        }
+    }
+    
     /**
      * @inheritDoc
      */
@@ -1137,6 +1236,7 @@ public class Library implements Builder
             return true;
         }
         
+        joinPendingSave();
         RandomAccessFile cacheFile = null;
 
         try
@@ -1238,6 +1338,7 @@ public class Library implements Builder
         // initialize some ThreadLocal variables...
         cc.run();
         OEMUtil.init(OEMUtil.getLogger(logger, messages), mimeMappings, meter, resolver, cc);
+        ThreadLocalToolkit.setFileChangeTracker(changeTracker);
 
         // if there are no SWC inputs, output an error and return -1
         VirtualFile[] includeLibs = (c.configuration == null) ? null : c.configuration.getCompilerConfiguration().getIncludeLibraries();
@@ -1502,6 +1603,7 @@ public class Library implements Builder
         try
         {
             OEMUtil.init(OEMUtil.getLogger(logger, messages), mimeMappings, meter, resolver, cc);
+            ThreadLocalToolkit.setFileChangeTracker(changeTracker);
             
             SimpleMovie temp = data.movie;
             data.movie = flex2.compiler.swc.API.link((flex2.linker.Configuration) config, data.units);
@@ -1633,6 +1735,7 @@ public class Library implements Builder
         
         if (cleanCache)
         {               
+            joinPendingSave();
             if (cacheName != null)
             {
                 File dead = FileUtil.openFile(cacheName);
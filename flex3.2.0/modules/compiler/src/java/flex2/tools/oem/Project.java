@@ -13,8 +13,11 @@ package flex2.tools.oem;
 
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 import flex2.compiler.DependencyGraph;
@@ -57,6 +60,9 @@ import flex2.compiler.util.Visitor;
  * p.build(true);
  * </pre>
  * 
+ * By default, the <code>Builder</code> instances are built one at a time. The <code>setThreads()</code> method lets
+ * <code>build(boolean)</code> build <code>Builder</code> instances that don't depend on each other at the same time.
+ * 
  * If you want the <code>Project</code> to provide the build order and you want to run the
  * build separately, use the <code>getBuildOrder()</code> method; for example:
  * 
@@ -93,6 +99,7 @@ public class Project
     }
     
     private DependencyGraph dependencies;
+    private int threads = 1;
     
     /**
      * Adds an <code>Application</code> or a <code>Library</code> to the <code>Project</code>.
@@ -192,6 +199,19 @@ public class Project
         return builders;
     }
     
+    /**
+     * Sets the number of <code>Builder</code> instances that the <code>build(boolean)</code> method may build at
+     * the same time, each on a thread of its own. A <code>Builder</code> is built as soon as the <code>Builder</code>
+     * instances it depends on are built. <code>Application</code> instances that share a <code>LibraryCache</code>
+     * are still built one at a time. The default is 1, which builds in the order returned by <code>getBuildOrder()</code>.
+     * 
+     * @param threads The number of <code>Builder</code> instances to build at the same time.
+     */
+    public void setThreads(int threads)
+    {
+        this.threads = Math.max(threads, 1);
+    }
+    
     /**
      * Builds the <code>Project</code>. If the input argument is <code>false</code>, the <code>build(boolean)</code> 
      * method rebuilds the <code>Project</code>. If the input argument is <code>true</code>, this method builds incrementally.
@@ -207,6 +227,12 @@ public class Project
      */
     public void build(boolean incremental) throws IOException
     {
+        if (threads > 1)
+        {
+            new ParallelBuild(incremental).run(threads);
+            return;
+        }
+        
         for (Iterator i = getBuildOrder(); i.hasNext(); )
         {           
             Builder builder = (Builder) i.next();
@@ -217,6 +243,186 @@ public class Project
         }
     }
     
+    /**
+     * Builds the <code>Builder</code> instances on worker threads, each one as soon as the ones it depends on
+     * are built. If a build throws, no more builds are started and the first exception is rethrown once the
+     * running ones finish.
+     */
+    private class ParallelBuild
+    {
+        ParallelBuild(boolean incremental)
+        {
+            this.incremental = incremental;
+            
+            final List vertices = new ArrayList(dependencies.size()); // List<Vertex>
+            Algorithms.topologicalSort(dependencies, new Visitor()
+            {   
+                public void visit(Object v)
+                {
+                    vertices.add(v);
+                }
+            });
+            
+            Map indexes = new HashMap(); // Map<Vertex, Integer>
+            for (int i = 0, size = vertices.size(); i < size; i++)
+            {
+                indexes.put(vertices.get(i), new Integer(i));
+            }
+            
+            builders = new Builder[vertices.size()];
+            waiting = new int[builders.length];
+            dependents = new List[builders.length];
+            for (int i = 0; i < builders.length; i++)
+            {
+                Vertex v = (Vertex) vertices.get(i);
+                builders[i] = (Builder) dependencies.get((String) v.getWeight());
+                
+                // vertices in cycles weren't sorted, so everything here only depends on sorted vertices
+                waiting[i] = v.getPredecessors() == null ? 0 : v.getPredecessors().size();
+                dependents[i] = new ArrayList();
+                if (v.getSuccessors() != null)
+                {
+                    for (Iterator j = v.getSuccessors().iterator(); j.hasNext(); )
+                    {
+                        Integer index = (Integer) indexes.get(j.next());
+                        if (index != null)
+                        {
+                            dependents[i].add(index);
+                        }
+                    }
+                }
+            }
+        }
+        
+        private final boolean incremental;
+        private final Builder[] builders;
+        private final int[] waiting; // the number of builders that each one still waits for
+        private final List[] dependents; // List<Integer>[]
+        private final Set busyCaches = new HashSet(); // Set<LibraryCache>
+        private int started, finished;
+        private Throwable failure;
+        
+        void run(int threads) throws IOException
+        {
+            Thread[] workers = new Thread[Math.min(threads, builders.length)];
+            for (int i = 0; i < workers.length; i++)
+            {
+                workers[i] = new Thread("project-build-" + i)
+                {
+                    public void run()
+                    {
+                        for (int k = claim(); k != -1; k = claim())
+                        {
+                            try
+                            {
+                                if (builders[k] != null)
+                                {
+                                    builders[k].build(incremental);
+                                }
+                                finish(k, null);
+                            }
+                            catch (Throwable t)
+                            {
+                                finish(k, t);
+                            }
+                        }
+                    }
+                };
+                workers[i].start();
+            }
+            
+            for (int i = 0; i < workers.length; i++)
+            {
+                while (workers[i].isAlive())
+                {
+                    try
+                    {
+                        workers[i].join();
+                    }
+                    catch (InterruptedException ex)
+                    {
+                        stop();
+                    }
+                }
+            }
+            
+            if (failure instanceof IOException)
+            {
+                throw (IOException) failure;
+            }
+            else if (failure instanceof RuntimeException)
+            {
+                throw (RuntimeException) failure;
+            }
+            else if (failure instanceof Error)
+            {
+                throw (Error) failure;
+            }
+        }
+        
+        /**
+         * @return the index of the next builder to build, or -1 when there are no more
+         */
+        private synchronized int claim()
+        {
+            while (failure == null && started < builders.length)
+            {
+                for (int i = 0; i < builders.length; i++)
+                {
+                    if (waiting[i] == 0)
+                    {
+                        LibraryCache cache = getLibraryCache(builders[i]);
+                        if (cache == null || busyCaches.add(cache))
+                        {
+                            waiting[i] = -1;
+                            started++;
+                            return i;
+                        }
+                    }
+                }
+                
+                if (started == finished)
+                {
+                    // nothing is running that could make another builder ready
+                    break;
+                }
+                
+                try
+                {
+                    wait();
+                }
+                catch (InterruptedException ex)
+                {
+                    // keep waiting; Project.stop() is how builds are stopped
+                }
+            }
+            return -1;
+        }
+        
+        private synchronized void finish(int index, Throwable t)
+        {
+            finished++;
+            busyCaches.remove(getLibraryCache(builders[index]));
+            if (t != null && failure == null)
+            {
+                failure = t;
+            }
+            for (int i = 0, size = dependents[index].size(); i < size; i++)
+            {
+                waiting[((Integer) dependents[index].get(i)).intValue()]--;
+            }
+            notifyAll();
+        }
+    }
+    
+    /**
+     * @return the <code>LibraryCache</code> of an <code>Application</code>, which holds data of the build that uses it
+     */
+    private static LibraryCache getLibraryCache(Builder builder)
+    {
+        return (builder instanceof Application) ? ((Application) builder).getSwcCache() : null;
+    }
+    
     /**
      * Deletes the <code>Application</code> and <code>Library</code> files in the <code>Project</code>.
      * <p>
@@ -132,6 +132,21 @@ public class LinkerConfiguration extends ToolsConfiguration implements flex2.lin
     {
         return null;
     }
+
+    public String getCoverageMetadataFormat()
+    {
+        return original.getCoverageMetadataFormat();
+    }
+
+	public int getSwfCompressionLevel()
+	{
+		return original.getSwfCompressionLevel();
+	}
+
+	public int getSwfCompressionThreads()
+	{
+		return original.getSwfCompressionThreads();
+	}
     
 	public Set getExterns()
 	{
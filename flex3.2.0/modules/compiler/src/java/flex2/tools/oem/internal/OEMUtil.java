@@ -11,14 +11,11 @@
 
 package flex2.tools.oem.internal;
 
-import java.io.BufferedInputStream;
 import java.io.ByteArrayInputStream;
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
-import java.io.RandomAccessFile;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.Iterator;
@@ -33,6 +30,7 @@ import flash.util.Trace;
 import flex2.compiler.API;
 import flex2.compiler.CompilationUnit;
 import flex2.compiler.CompilerSwcContext;
+import flex2.compiler.PendingCacheWrite;
 import flex2.compiler.Source;
 import flex2.compiler.common.CompilerConfiguration;
 import flex2.compiler.common.DefaultsConfigurator;
@@ -105,6 +103,7 @@ public class OEMUtil
 		ThreadLocalToolkit.setMimeMappings(null);
 		ThreadLocalToolkit.setProgressMeter(null);
 		ThreadLocalToolkit.setCompilerControl(null);
+		ThreadLocalToolkit.setFileChangeTracker(null);
 	}
 
 	/**
@@ -139,6 +138,27 @@ public class OEMUtil
 	 * @throws IOException
 	 */
 	public static final long save(OutputStream out, String cacheName, ApplicationData data) throws IOException
+	{
+		PendingCacheWrite write = saveInBackground(out, cacheName, data);
+		if (write != null)
+		{
+			write.join();
+			return write.getLength();
+		}
+		else
+		{
+			return 0;
+		}
+	}
+
+	/**
+	 * Like save(), but the data is only encoded on this thread and written out on a background thread.
+	 * 
+	 * @return the pending write, or null if there is nothing to save
+	 * @throws IOException
+	 */
+	public static final PendingCacheWrite saveInBackground(OutputStream out, String cacheName, ApplicationData data)
+		throws IOException
 	{
 		if (cacheName == null)
 		{
@@ -149,46 +169,17 @@ public class OEMUtil
 		// only save when there is something for us to save (i.e. data != null)
 		if (cacheName != null && data != null)
 		{
-			// delete the existing cache file
-			File dead = FileUtil.openFile(cacheName);
-			if (dead != null && dead.exists())
-			{
-				dead.delete();
-			}
-
-			RandomAccessFile cacheFile = null;
-			try
-			{
-				cacheFile = new RandomAccessFile(cacheName, "rw");
-				API.persistCompilationUnits(data.configuration, data.fileSpec, data.sourceList,
-                                            data.sourcePath, data.resources, data.bundlePath,
-                                            data.sources, data.units, data.checksum,
-                                            data.cmdChecksum, data.linkChecksum, data.swcChecksum,
-                                            data.swcDefSignatureChecksums, data.swcFileChecksums,
-                                            "", cacheFile);
-			}
-			finally
-			{
-				if (cacheFile != null) { try { cacheFile.close(); } catch (IOException ex) {} }
-			}
-			
-			// write the data to the specified output stream
-			InputStream in = null;
-			try
-			{
-				in = new BufferedInputStream(new FileInputStream(cacheName));
-				FileUtil.streamOutput(in, out);
-			}
-			finally
-			{		
-				if (in != null) { try { in.close(); } catch (IOException ex) {} }
-			}
-			
-			return new File(cacheName).length();
+			// the cache file is replaced once it's written in full, and then the data goes to the output stream
+			return API.persistCompilationUnitsInBackground(data.configuration, data.fileSpec, data.sourceList,
+														   data.sourcePath, data.resources, data.bundlePath,
+														   data.sources, data.units, data.checksum,
+														   data.cmdChecksum, data.linkChecksum, data.swcChecksum,
+														   data.swcDefSignatureChecksums, data.swcFileChecksums,
+														   null, "", FileUtil.openFile(cacheName), out);
 		}
 		else
 		{
-			return 0;
+			return null;
 		}
 	}
 
@@ -0,0 +1,95 @@
+////////////////////////////////////////////////////////////////////////////////
+//
+//  ADOBE SYSTEMS INCORPORATED
+//  Copyright 2006-2007 Adobe Systems Incorporated
+//  All Rights Reserved.
+//
+//  NOTICE: Adobe permits you to use, modify, and distribute this file
+//  in accordance with the terms of the license agreement accompanying it.
+//
+////////////////////////////////////////////////////////////////////////////////
+
+package flex2.compiler;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+/**
+ * Tests that PendingCacheWrite replaces the cache file and writes the output stream.
+ */
+public class PendingCacheWriteTest extends TestCase
+{
+    public static Test suite()
+    {
+        return new TestSuite(PendingCacheWriteTest.class);
+    }
+
+    public void testReplaceFile() throws Exception
+    {
+        File file = File.createTempFile("cache", ".cache");
+        file.deleteOnExit();
+        FileOutputStream fos = new FileOutputStream(file);
+        fos.write(new byte[1000]);
+        fos.close();
+
+        byte[] bytes = "new cache".getBytes("UTF-8");
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        PendingCacheWrite write = new PendingCacheWrite(bytes, file, out);
+        write.start();
+        write.join();
+
+        assertTrue(write.isDone());
+        assertEquals(bytes.length, write.getLength());
+        assertTrue(Arrays.equals(bytes, read(file)));
+        assertTrue(Arrays.equals(bytes, out.toByteArray()));
+
+        // no temporary files are left behind
+        File[] files = file.getAbsoluteFile().getParentFile().listFiles();
+        for (int i = 0; i < files.length; i++)
+        {
+            assertTrue(!(files[i].getName().startsWith(file.getName()) && files[i].getName().endsWith(".tmp")));
+        }
+    }
+
+    public void testFailure() throws Exception
+    {
+        File file = new File(new File(System.getProperty("java.io.tmpdir"), "no-such-directory"), "x.cache");
+        PendingCacheWrite write = new PendingCacheWrite(new byte[10], file, null);
+        write.start();
+        try
+        {
+            write.join();
+            fail();
+        }
+        catch (IOException ex)
+        {
+        }
+        assertTrue(!file.exists());
+    }
+
+    private static byte[] read(File file) throws IOException
+    {
+        byte[] bytes = new byte[(int) file.length()];
+        FileInputStream in = new FileInputStream(file);
+        try
+        {
+            for (int n = 0; n < bytes.length;)
+            {
+                n += in.read(bytes, n, bytes.length - n);
+            }
+        }
+        finally
+        {
+            in.close();
+        }
+        return bytes;
+    }
+}
@@ -0,0 +1,76 @@
+////////////////////////////////////////////////////////////////////////////////
+//
+//  ADOBE SYSTEMS INCORPORATED
+//  Copyright 2006-2007 Adobe Systems Incorporated
+//  All Rights Reserved.
+//
+//  NOTICE: Adobe permits you to use, modify, and distribute this file
+//  in accordance with the terms of the license agreement accompanying it.
+//
+////////////////////////////////////////////////////////////////////////////////
+
+package flex2.compiler.io;
+
+import java.io.File;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+/**
+ * Tests that DirectoryIndex answers from its listings and sees changes after refresh().
+ */
+public class DirectoryIndexTest extends TestCase
+{
+    public static Test suite()
+    {
+        return new TestSuite(DirectoryIndexTest.class);
+    }
+
+    public void testLookups() throws Exception
+    {
+        File root = File.createTempFile("index", "");
+        root.delete();
+        File pkg = new File(root, "mx" + File.separator + "controls");
+        pkg.mkdirs();
+        File button = new File(pkg, "Button.as");
+        button.createNewFile();
+
+        try
+        {
+            DirectoryIndex index = new DirectoryIndex();
+            assertTrue(index.isDirectory(root, "mx/controls"));
+            assertTrue(!index.isDirectory(root, "MX/controls"));
+            assertTrue(!index.isDirectory(root, "mx/containers"));
+            assertTrue(index.exists(root, "mx/controls/Button.as"));
+            assertTrue(!index.exists(root, "mx/controls/button.as"));
+            assertTrue(!index.exists(root, "mx/controls/Label.as"));
+            assertTrue(!index.exists(root, "mx/containers/Box.as"));
+
+            // not seen until refresh()
+            File label = new File(pkg, "Label.as");
+            label.createNewFile();
+            File containers = new File(root, "mx" + File.separator + "containers");
+            containers.mkdir();
+            assertTrue(!index.exists(root, "mx/controls/Label.as"));
+
+            index.refresh();
+            assertTrue(index.exists(root, "mx/controls/Label.as"));
+            assertTrue(index.isDirectory(root, "mx/containers"));
+
+            button.delete();
+            index.refresh();
+            assertTrue(!index.exists(root, "mx/controls/Button.as"));
+
+            label.delete();
+            containers.delete();
+        }
+        finally
+        {
+            button.delete();
+            pkg.delete();
+            pkg.getParentFile().delete();
+            root.delete();
+        }
+    }
+}
@@ -0,0 +1,81 @@
+////////////////////////////////////////////////////////////////////////////////
+//
+//  ADOBE SYSTEMS INCORPORATED
+//  Copyright 2006-2007 Adobe Systems Incorporated
+//  All Rights Reserved.
+//
+//  NOTICE: Adobe permits you to use, modify, and distribute this file
+//  in accordance with the terms of the license agreement accompanying it.
+//
+////////////////////////////////////////////////////////////////////////////////
+
+package flex2.compiler.io;
+
+import java.io.File;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+/**
+ * Tests that FileChangeTracker answers from its times and keeps the set of files that changed.
+ */
+public class FileChangeTrackerTest extends TestCase
+{
+    public static Test suite()
+    {
+        return new TestSuite(FileChangeTrackerTest.class);
+    }
+
+    public void testChanges() throws Exception
+    {
+        File file = File.createTempFile("tracked", ".as").getCanonicalFile();
+        file.deleteOnExit();
+        file.setLastModified(1180000000000L);
+        Set paths = Collections.singleton(file.getPath());
+
+        FileChangeTracker tracker = new FileChangeTracker(10);
+        try
+        {
+            // not tracked yet, so changed
+            assertEquals(paths, tracker.drainChanged(paths));
+            assertEquals(1180000000000L, tracker.getLastModified(file));
+            assertEquals(Collections.EMPTY_SET, tracker.drainChanged(paths));
+
+            tracker.changed(file);
+            assertEquals(paths, tracker.drainChanged(paths));
+            assertEquals(1180000000000L, tracker.getLastModified(file));
+
+            file.setLastModified(1200000000000L);
+            assertEquals(paths, awaitChanged(tracker, paths));
+            assertEquals(1200000000000L, tracker.getLastModified(file));
+
+            file.delete();
+            assertEquals(paths, awaitChanged(tracker, paths));
+            assertEquals(0, tracker.getLastModified(file));
+
+            // files no longer in the build are forgotten
+            assertEquals(Collections.EMPTY_SET, tracker.drainChanged(Collections.EMPTY_SET));
+            tracker.changed(file);
+            assertEquals(paths, tracker.drainChanged(paths));
+        }
+        finally
+        {
+            tracker.stop();
+        }
+    }
+
+    private Set awaitChanged(FileChangeTracker tracker, Set paths) throws InterruptedException
+    {
+        Set changed = new HashSet();
+        for (int i = 0; i < 500 && changed.isEmpty(); i++)
+        {
+            Thread.sleep(10);
+            changed.addAll(tracker.drainChanged(paths));
+        }
+        return changed;
+    }
+}
@@ -0,0 +1,141 @@
+////////////////////////////////////////////////////////////////////////////////
+//
+//  ADOBE SYSTEMS INCORPORATED
+//  Copyright 2006-2007 Adobe Systems Incorporated
+//  All Rights Reserved.
+//
+//  NOTICE: Adobe permits you to use, modify, and distribute this file
+//  in accordance with the terms of the license agreement accompanying it.
+//
+////////////////////////////////////////////////////////////////////////////////
+
+package flex2.compiler.swc;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.zip.Deflater;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipOutputStream;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+/**
+ * Tests that SwcDynamicArchive copies the entries that haven't changed from the archive it replaces.
+ */
+public class SwcDynamicArchiveTest extends TestCase
+{
+    public static Test suite()
+    {
+        return new TestSuite(SwcDynamicArchiveTest.class);
+    }
+
+    public void testSaveOverPrevious() throws Exception
+    {
+        byte[] swf = createBytes(200000, 1);
+        byte[] icon = createBytes(50000, 2);
+        byte[] catalog = "<swc/>".getBytes("UTF-8");
+        long lastModified = 1180000000000L;
+
+        // the previous archive is deflated faster than SwcDynamicArchive would, so copies can be told apart
+        File file = File.createTempFile("dynamic", ".swc");
+        file.deleteOnExit();
+        ZipOutputStream zos = new ZipOutputStream(new FileOutputStream(file));
+        zos.setLevel(Deflater.BEST_SPEED);
+        putEntry(zos, "library.swf", swf);
+        putEntry(zos, "icon.png", icon);
+        putEntry(zos, "catalog.xml", catalog);
+        zos.close();
+        long iconSize = getCompressedSize(file, "icon.png");
+
+        byte[] changedSwf = (byte[]) swf.clone();
+        changedSwf[1000]++;
+        byte[] newCatalog = "<swc></swc>".getBytes("UTF-8");
+
+        SwcDynamicArchive archive = new SwcDynamicArchive(file.getPath());
+        archive.putFile("library.swf", changedSwf, lastModified);
+        archive.putFile("icon.png", icon, lastModified);
+        archive.putFile("catalog.xml", newCatalog, lastModified);
+        archive.putFile("new.txt", catalog, lastModified);
+        archive.save();
+
+        ZipFile zipFile = new ZipFile(file);
+        try
+        {
+            assertEquals(4, zipFile.size());
+            assertTrue(Arrays.equals(changedSwf, read(zipFile, "library.swf")));
+            assertTrue(Arrays.equals(icon, read(zipFile, "icon.png")));
+            assertTrue(Arrays.equals(newCatalog, read(zipFile, "catalog.xml")));
+            assertTrue(Arrays.equals(catalog, read(zipFile, "new.txt")));
+        }
+        finally
+        {
+            zipFile.close();
+        }
+
+        assertEquals(iconSize, getCompressedSize(file, "icon.png"));
+
+        // and the copied entries can be read and copied again
+        SwcDynamicArchive reread = new SwcDynamicArchive(file.getPath());
+        reread.load();
+        assertTrue(Arrays.equals(icon, reread.getFile("icon.png").toByteArray()));
+        reread.save();
+        assertEquals(iconSize, getCompressedSize(file, "icon.png"));
+
+        SwcMappedArchive mapped = new SwcMappedArchive(file.getPath());
+        mapped.load();
+        assertTrue(Arrays.equals(changedSwf, mapped.getFile("library.swf").toByteArray()));
+        assertTrue(Arrays.equals(icon, mapped.getFile("icon.png").toByteArray()));
+    }
+
+    private static byte[] createBytes(int size, long seed)
+    {
+        byte[] bytes = new byte[size];
+        Random random = new Random(seed);
+        for (int i = 0; i < size; i += 3)
+        {
+            bytes[i] = (byte) random.nextInt(16);
+        }
+        return bytes;
+    }
+
+    private static void putEntry(ZipOutputStream zos, String name, byte[] bytes) throws IOException
+    {
+        zos.putNextEntry(new ZipEntry(name));
+        zos.write(bytes);
+        zos.closeEntry();
+    }
+
+    private static long getCompressedSize(File file, String name) throws IOException
+    {
+        ZipFile zipFile = new ZipFile(file);
+        try
+        {
+            return zipFile.getEntry(name).getCompressedSize();
+        }
+        finally
+        {
+            zipFile.close();
+        }
+    }
+
+    private static byte[] read(ZipFile zipFile, String name) throws IOException
+    {
+        InputStream in = zipFile.getInputStream(zipFile.getEntry(name));
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[4096];
+        for (int n = in.read(buffer); n != -1; n = in.read(buffer))
+        {
+            out.write(buffer, 0, n);
+        }
+        in.close();
+        return out.toByteArray();
+    }
+}
@@ -0,0 +1,116 @@
+////////////////////////////////////////////////////////////////////////////////
+//
+//  ADOBE SYSTEMS INCORPORATED
+//  Copyright 2006-2007 Adobe Systems Incorporated
+//  All Rights Reserved.
+//
+//  NOTICE: Adobe permits you to use, modify, and distribute this file
+//  in accordance with the terms of the license agreement accompanying it.
+//
+////////////////////////////////////////////////////////////////////////////////
+
+package flex2.compiler.swc;
+
+import flex2.compiler.io.VirtualFile;
+import flex2.compiler.io.VirtualMappedZipFile;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.Random;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+/**
+ * Tests that SwcMappedArchive reads what SwcDynamicArchive wrote.
+ */
+public class SwcMappedArchiveTest extends TestCase
+{
+    public static Test suite()
+    {
+        return new TestSuite(SwcMappedArchiveTest.class);
+    }
+
+    public void testRead() throws Exception
+    {
+        byte[] swf = new byte[200000];
+        Random random = new Random(42);
+        for (int i = 0; i < swf.length; i += 5)
+        {
+            swf[i] = (byte) random.nextInt(32);
+        }
+        byte[] catalog = "<swc/>".getBytes("UTF-8");
+        long lastModified = 1180000000000L;
+
+        File file = File.createTempFile("mapped", ".swc");
+        file.deleteOnExit();
+        SwcDynamicArchive written = new SwcDynamicArchive(file.getPath());
+        written.putFile("library.swf", swf, lastModified);
+        written.putFile("catalog.xml", catalog, lastModified);
+        written.putFile("empty.txt", new byte[0], lastModified);
+        written.save();
+
+        SwcMappedArchive archive = new SwcMappedArchive(file.getPath());
+        archive.load();
+        assertEquals(3, archive.getFiles().size());
+
+        VirtualFile library = archive.getFile("library.swf");
+        assertEquals(swf.length, library.size());
+        assertEquals(file.getPath() + "$library.swf", library.getName());
+        assertTrue(Arrays.equals(swf, library.toByteArray()));
+        assertTrue(Arrays.equals(catalog, archive.getFile("catalog.xml").toByteArray()));
+        assertEquals(0, archive.getFile("empty.txt").toByteArray().length);
+
+        assertTrue(library.toByteArray() == library.toByteArray());
+
+        // SWFs bigger than the cache are inflated each time
+        long max = VirtualMappedZipFile.SWF_CACHE_MAX_SIZE;
+        try
+        {
+            VirtualMappedZipFile.SWF_CACHE_MAX_SIZE = swf.length - 1;
+            archive = new SwcMappedArchive(file.getPath());
+            archive.load();
+            library = archive.getFile("library.swf");
+            assertTrue(Arrays.equals(swf, library.toByteArray()));
+            assertTrue(library.toByteArray() != library.toByteArray());
+        }
+        finally
+        {
+            VirtualMappedZipFile.SWF_CACHE_MAX_SIZE = max;
+        }
+    }
+
+    public void testClose() throws Exception
+    {
+        byte[] bytes = "<swc/>".getBytes("UTF-8");
+        File file = File.createTempFile("mapped", ".swc");
+        file.deleteOnExit();
+        SwcDynamicArchive written = new SwcDynamicArchive(file.getPath());
+        written.putFile("catalog.xml", bytes, 1180000000000L);
+        written.save();
+
+        // closing lets go of the file, and reading an entry opens it again
+        SwcMappedArchive archive = new SwcMappedArchive(file.getPath());
+        archive.load();
+        archive.close();
+        assertTrue(Arrays.equals(bytes, archive.getFile("catalog.xml").toByteArray()));
+        archive.close();
+        assertTrue(file.delete());
+    }
+
+    public void testNotAZip() throws Exception
+    {
+        File file = File.createTempFile("mapped", ".swc");
+        file.deleteOnExit();
+
+        try
+        {
+            new SwcMappedArchive(file.getPath()).load();
+            fail();
+        }
+        catch (SwcException.NotASwcFile ex)
+        {
+        }
+    }
+}
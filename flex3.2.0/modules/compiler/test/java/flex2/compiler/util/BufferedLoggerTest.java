@@ -0,0 +1,50 @@
+////////////////////////////////////////////////////////////////////////////////
+//
+//  ADOBE SYSTEMS INCORPORATED
+//  Copyright 2005-2007 Adobe Systems Incorporated
+//  All Rights Reserved.
+//
+//  NOTICE: Adobe permits you to use, modify, and distribute this file
+//  in accordance with the terms of the license agreement accompanying it.
+//
+////////////////////////////////////////////////////////////////////////////////
+
+package flex2.compiler.util;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+/**
+ * Tests buffering and replaying of log messages.
+ */
+public class BufferedLoggerTest extends TestCase
+{
+    public static Test suite()
+    {
+        return new TestSuite(BufferedLoggerTest.class);
+    }
+
+    public void testReplay()
+    {
+        BufferedLogger buffer = new BufferedLogger();
+        buffer.logError("A.as", 3, 5, "first", "x = ;");
+        buffer.logWarning("A.as", 4, "second", 1008);
+        buffer.logInfo("third");
+        buffer.needsCompilation("A.as", "changed");
+        assertEquals(1, buffer.errorCount());
+        assertEquals(1, buffer.warningCount());
+
+        BufferedLogger target = new BufferedLogger();
+        buffer.replay(target);
+        assertEquals(1, target.errorCount());
+        assertEquals(1, target.warningCount());
+
+        // replayed messages are forgotten
+        BufferedLogger again = new BufferedLogger();
+        buffer.replay(again);
+        target.replay(again);
+        assertEquals(1, again.errorCount());
+        assertEquals(1, again.warningCount());
+    }
+}
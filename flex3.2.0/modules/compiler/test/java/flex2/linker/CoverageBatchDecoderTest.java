@@ -0,0 +1,169 @@
+////////////////////////////////////////////////////////////////////////////////
+//
+//  ADOBE SYSTEMS INCORPORATED
+//  Copyright 2005-2007 Adobe Systems Incorporated
+//  All Rights Reserved.
+//
+//  NOTICE: Adobe permits you to use, modify, and distribute this file
+//  in accordance with the terms of the license agreement accompanying it.
+//
+////////////////////////////////////////////////////////////////////////////////
+
+package flex2.linker;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.zip.Deflater;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+import flex2.compiler.CoverageKeys;
+
+/**
+ * Tests decoding of the batches sent by the runtime's BatchedCoverageAgent.
+ */
+public class CoverageBatchDecoderTest extends TestCase
+{
+    public static Test suite()
+    {
+        return new TestSuite(CoverageBatchDecoderTest.class);
+    }
+
+    private CoverageMetadataReader metadata;
+
+    protected void setUp() throws Exception
+    {
+        CoverageKeys keys = new CoverageKeys();
+        int key = keys.add("a:B/c", CoverageKeys.LINE, 5, -1, -1);
+        keys.setDebugFileName(key, "B.as");
+        keys.setId(key, 0);
+        keys.setCovering(keys.add("a:B/c", CoverageKeys.LINE, 6, -1, -1), 0);
+        keys.setId(keys.add("a:B/c", CoverageKeys.BRANCH_TAKEN, 7, -1, 4), 1);
+        keys.add("a:B/d", CoverageKeys.LINE, 9, -1, -1);
+        metadata = write(keys);
+    }
+
+    public void testIds() throws Exception
+    {
+        CoverageBatchDecoder decoder = new CoverageBatchDecoder(metadata);
+        ByteArrayOutputStream records = new ByteArrayOutputStream();
+        writeId(records, 0, 3);
+        writeId(records, 1, 200);
+        writeId(records, 42, 1);
+        writeId(records, 0, 2);
+
+        assertEquals(0, decoder.decode(batch(0, records.toByteArray(), false), 0, CoverageBatchDecoder.HEADER_SIZE + records.size()));
+        assertEquals(5, decoder.getCount(0));
+        // elided into record 0
+        assertEquals(5, decoder.getCount(1));
+        assertEquals(200, decoder.getCount(2));
+        assertEquals(0, decoder.getCount(3));
+        assertEquals(1, decoder.getUnmatchedCount());
+    }
+
+    public void testCompressedKeys() throws Exception
+    {
+        CoverageBatchDecoder decoder = new CoverageBatchDecoder(metadata);
+        ByteArrayOutputStream records = new ByteArrayOutputStream();
+        for (int i = 0; i < 1000; i++)
+        {
+            writeKey(records, "a:B/d@9", 1);
+        }
+
+        byte[] b = batch(3, records.toByteArray(), true);
+        assertEquals(3, decoder.decode(b, 0, b.length));
+        assertEquals(1000, decoder.getCount(3));
+        assertEquals(1, decoder.getBatchCount());
+        assertEquals(3, decoder.getMissingBatchCount());
+    }
+
+    public void testTruncated() throws Exception
+    {
+        CoverageBatchDecoder decoder = new CoverageBatchDecoder(metadata);
+        ByteArrayOutputStream records = new ByteArrayOutputStream();
+        writeKey(records, "a:B/d@9", 1);
+        byte[] b = batch(0, records.toByteArray(), false);
+        try
+        {
+            decoder.decode(b, 0, b.length - 3);
+            fail();
+        }
+        catch (IOException ex)
+        {
+        }
+    }
+
+    private static void writeId(ByteArrayOutputStream out, int id, int count)
+    {
+        writeVarint(out, id << 1);
+        writeVarint(out, count);
+    }
+
+    private static void writeKey(ByteArrayOutputStream out, String key, int count) throws IOException
+    {
+        byte[] bytes = key.getBytes("UTF8");
+        writeVarint(out, (bytes.length << 1) | 1);
+        out.write(bytes);
+        writeVarint(out, count);
+    }
+
+    private static void writeVarint(ByteArrayOutputStream out, int value)
+    {
+        while ((value & ~0x7f) != 0)
+        {
+            out.write((value & 0x7f) | 0x80);
+            value >>>= 7;
+        }
+        out.write(value);
+    }
+
+    private static byte[] batch(int sequence, byte[] records, boolean compress)
+    {
+        if (compress)
+        {
+            Deflater deflater = new Deflater();
+            deflater.setInput(records);
+            deflater.finish();
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[1024];
+            while (!deflater.finished())
+            {
+                out.write(buffer, 0, deflater.deflate(buffer));
+            }
+            records = out.toByteArray();
+        }
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.write(CoverageBatchDecoder.BATCH_VERSION);
+        out.write(compress ? CoverageBatchDecoder.FLAG_COMPRESSED : 0);
+        out.write(sequence >>> 24);
+        out.write(sequence >>> 16);
+        out.write(sequence >>> 8);
+        out.write(sequence);
+        out.write(records, 0, records.length);
+        return out.toByteArray();
+    }
+
+    private static CoverageMetadataReader write(CoverageKeys keys) throws Exception
+    {
+        File file = File.createTempFile("coverage", ".cvm");
+        file.deleteOnExit();
+
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        try
+        {
+            CoverageMetadataWriter writer = new CoverageMetadataWriter(raf.getChannel());
+            writer.write(keys);
+            writer.close();
+        }
+        finally
+        {
+            raf.close();
+        }
+        return new CoverageMetadataReader(file);
+    }
+}
@@ -0,0 +1,140 @@
+////////////////////////////////////////////////////////////////////////////////
+//
+//  ADOBE SYSTEMS INCORPORATED
+//  Copyright 2005-2007 Adobe Systems Incorporated
+//  All Rights Reserved.
+//
+//  NOTICE: Adobe permits you to use, modify, and distribute this file
+//  in accordance with the terms of the license agreement accompanying it.
+//
+////////////////////////////////////////////////////////////////////////////////
+
+package flex2.linker;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.io.StringWriter;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+import flex2.compiler.CoverageKeys;
+
+/**
+ * Round trip tests for the binary coverage metadata format.
+ */
+public class CoverageMetadataTest extends TestCase
+{
+    public static Test suite()
+    {
+        return new TestSuite(CoverageMetadataTest.class);
+    }
+
+    public void testIndexedKeys() throws Exception
+    {
+        CoverageKeys keys = new CoverageKeys();
+        int key = keys.add("com.foo:Bar/baz", CoverageKeys.LINE, 12, -1, -1);
+        keys.setDebugFileName(key, "C:\\src\\com\\foo\\Bar.as");
+        keys.setId(key, 0);
+        keys.setId(keys.add("com.foo:Bar/baz", CoverageKeys.BRANCH_TAKEN, 12, -1, 8), 1);
+        keys.setCovering(keys.add("com.foo:Bar/baz", CoverageKeys.LINE, 13, -1, -1), 1);
+        keys.setId(keys.add("com.foo:Bar/baz", CoverageKeys.BRANCH_NOT_TAKEN, 20, 12, 8), 2);
+        keys.setId(keys.add("global$init", CoverageKeys.LINE, 1, -1, -1), 3);
+
+        CoverageMetadataReader reader = roundTrip(keys);
+        assertEquals(5, reader.getRecordCount());
+
+        assertEquals(0, reader.getId(0));
+        assertEquals(CoverageMetadataWriter.KIND_LINE, reader.getKind(0));
+        assertEquals(12, reader.getLine(0));
+        assertEquals("C:\\src\\com\\foo\\Bar.as", reader.getFileName(0));
+        assertEquals("com.foo:Bar", reader.getClassName(0));
+        assertEquals("baz", reader.getFunctionName(0));
+        assertEquals("com.foo:Bar/baz@12", reader.getKey(0));
+
+        assertEquals(CoverageMetadataWriter.KIND_BRANCH_TAKEN, reader.getKind(1));
+        assertEquals(8, reader.getColumn(1));
+        assertEquals(-1, reader.getCoveringRecord(1));
+
+        // the elided line shares the id of the branch probe and inherits the file
+        assertEquals(1, reader.getId(2));
+        assertEquals(1, reader.getCoveringRecord(2));
+        assertEquals("C:\\src\\com\\foo\\Bar.as", reader.getFileName(2));
+
+        assertEquals(CoverageMetadataWriter.KIND_BRANCH_NOT_TAKEN, reader.getKind(3));
+        assertEquals(20, reader.getLine(3));
+        assertEquals(12, reader.getAuxLine(3));
+        assertEquals("com.foo:Bar/baz@-20#12.8", reader.getKey(3));
+
+        assertNull(reader.getClassName(4));
+        assertEquals("global$init@1", reader.getKey(4));
+
+        // file, class, and the function names baz and global$init
+        assertEquals(4, reader.getStringCount());
+    }
+
+    public void testStringKeys() throws Exception
+    {
+        CoverageKeys keys = new CoverageKeys();
+        int key = keys.add("a:B/c", CoverageKeys.LINE, 5, -1, -1);
+        keys.setDebugFileName(key, "/src;a;B.as");
+        keys.setCovering(keys.add("a:B/c", CoverageKeys.LINE, 6, -1, -1), 0);
+        // the same key again
+        assertEquals(key, keys.add("a:B/c", CoverageKeys.LINE, 5, -1, -1));
+        assertEquals("a:B/c@5", keys.getKey(key));
+
+        CoverageMetadataReader reader = roundTrip(keys);
+        assertEquals(2, reader.getRecordCount());
+        assertEquals(-1, reader.getId(0));
+        assertEquals(File.separator + "src" + File.separator + "a" + File.separator + "B.as", reader.getFileName(0));
+        assertEquals(0, reader.getCoveringRecord(1));
+        assertEquals("a:B/c@6", reader.getKey(1));
+    }
+
+    public void testTotals() throws Exception
+    {
+        CoverageKeys keys = new CoverageKeys();
+        keys.setDebugFileName(keys.add("com.foo:Bar/baz", CoverageKeys.LINE, 12, -1, -1), "Bar.as");
+        keys.add("com.foo:Bar/baz", CoverageKeys.BRANCH_TAKEN, 12, -1, 8);
+        keys.add("com.foo:Bar/baz", CoverageKeys.BRANCH_NOT_TAKEN, 12, -1, 8);
+        keys.add("com.foo:Bar/qux", CoverageKeys.LINE, 20, -1, -1);
+        keys.setDebugFileName(keys.add("global$init", CoverageKeys.LINE, 1, -1, -1), "init.as");
+
+        CoverageTotals totals = new CoverageTotals();
+        totals.add(keys);
+        StringWriter out = new StringWriter();
+        totals.write(out);
+        assertEquals("kind\tname\tlines\tbranches\n" +
+                     "total\t\t3\t2\n" +
+                     "file\tBar.as\t2\t2\n" +
+                     "file\tinit.as\t1\t0\n" +
+                     "class\tcom.foo:Bar\t2\t2\n" +
+                     "method\tcom.foo:Bar/baz\t1\t2\n" +
+                     "method\tcom.foo:Bar/qux\t1\t0\n" +
+                     "method\tglobal$init\t1\t0\n",
+                     out.toString());
+        assertEquals("app.cvt", CoverageTotals.getFileName("app.cvm"));
+    }
+
+    private static CoverageMetadataReader roundTrip(CoverageKeys keys) throws Exception
+    {
+        File file = File.createTempFile("coverage", ".cvm");
+        file.deleteOnExit();
+
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        try
+        {
+            CoverageMetadataWriter writer = new CoverageMetadataWriter(raf.getChannel());
+            writer.write(keys);
+            writer.close();
+        }
+        finally
+        {
+            raf.close();
+        }
+
+        assertTrue(CoverageMetadataReader.isBinary(file));
+        return new CoverageMetadataReader(file);
+    }
+}
@@ -0,0 +1,119 @@
+////////////////////////////////////////////////////////////////////////////////
+//
+//  ADOBE SYSTEMS INCORPORATED
+//  Copyright 2005-2007 Adobe Systems Incorporated
+//  All Rights Reserved.
+//
+//  NOTICE: Adobe permits you to use, modify, and distribute this file
+//  in accordance with the terms of the license agreement accompanying it.
+//
+////////////////////////////////////////////////////////////////////////////////
+
+package flex2.tools;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+import flex2.compiler.CoverageKeys;
+import flex2.linker.CoverageBatchDecoder;
+import flex2.linker.CoverageMetadataReader;
+import flex2.linker.CoverageMetadataWriter;
+
+/**
+ * Tests receiving and merging coverage runs.
+ */
+public class CoverageCollectorTest extends TestCase
+{
+    public static Test suite()
+    {
+        return new TestSuite(CoverageCollectorTest.class);
+    }
+
+    private CoverageCollector collector;
+
+    protected void setUp() throws Exception
+    {
+        CoverageKeys keys = new CoverageKeys();
+        int key = keys.add("a:B/c", CoverageKeys.LINE, 5, -1, -1);
+        keys.setDebugFileName(key, "a/B.as");
+        keys.setId(key, 0);
+        keys.setCovering(keys.add("a:B/c", CoverageKeys.LINE, 6, -1, -1), 0);
+        keys.setId(keys.add("a:B/c", CoverageKeys.BRANCH_TAKEN, 7, -1, 4), 1);
+        keys.setId(keys.add("a:B/c", CoverageKeys.BRANCH_NOT_TAKEN, 7, -1, 4), 2);
+        key = keys.add("d", CoverageKeys.LINE, 3, -1, -1);
+        keys.setDebugFileName(key, "d.as");
+        keys.setId(key, 3);
+
+        File file = File.createTempFile("coverage", ".cvm");
+        file.deleteOnExit();
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        try
+        {
+            CoverageMetadataWriter writer = new CoverageMetadataWriter(raf.getChannel());
+            writer.write(keys);
+            writer.close();
+        }
+        finally
+        {
+            raf.close();
+        }
+        collector = new CoverageCollector(new CoverageMetadataReader(file));
+    }
+
+    public void testReceive() throws Exception
+    {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        byte[] batch = new byte[] { CoverageBatchDecoder.BATCH_VERSION, 0, 0, 0, 0, 0, 2 << 1, 9 };
+        out.writeInt(batch.length);
+        out.write(batch);
+        out.writeInt(0);
+
+        CoverageBatchDecoder decoder = collector.receive(new ByteArrayInputStream(bytes.toByteArray()), null);
+        assertEquals(1, decoder.getBatchCount());
+        assertEquals(9, decoder.getCount(3));
+    }
+
+    public void testPolicyFileRequest() throws Exception
+    {
+        ByteArrayOutputStream reply = new ByteArrayOutputStream();
+        assertNull(collector.receive(new ByteArrayInputStream("<policy-file-request/>\0".getBytes("UTF8")), reply));
+        assertTrue(new String(reply.toByteArray(), "UTF8").startsWith("<?xml"));
+    }
+
+    public void testMergeAndSummary() throws Exception
+    {
+        List files = new ArrayList();
+        for (int i = 0; i < 5; i++)
+        {
+            File file = File.createTempFile("run", ".cvh");
+            file.deleteOnExit();
+            // record 0 and, through it, record 1 hit in every run; the taken branch only in the last
+            collector.writeHits(file, new long[] { 1, 0, i == 4 ? 1 : 0, 0, 0 });
+            files.add(file);
+        }
+
+        long[] counts = collector.merge(files, 3);
+        assertEquals(5, counts[0]);
+        assertEquals(1, counts[2]);
+
+        StringWriter out = new StringWriter();
+        collector.writeSummary(counts, out);
+        String[] lines = out.toString().split("\n");
+        assertEquals(5, lines.length);
+        assertEquals("total\t\t3\t2\t2\t1", lines[1]);
+        assertEquals("file\ta/B.as\t2\t2\t2\t1", lines[2]);
+        assertEquals("file\td.as\t1\t0\t0\t0", lines[3]);
+        assertEquals("class\ta:B\t2\t2\t2\t1", lines[4]);
+    }
+}
@@ -0,0 +1,76 @@
+////////////////////////////////////////////////////////////////////////////////
+//
+//  ADOBE SYSTEMS INCORPORATED
+//  Copyright 2006-2007 Adobe Systems Incorporated
+//  All Rights Reserved.
+//
+//  NOTICE: Adobe permits you to use, modify, and distribute this file
+//  in accordance with the terms of the license agreement accompanying it.
+//
+////////////////////////////////////////////////////////////////////////////////
+
+package flex2.tools;
+
+import java.io.StringWriter;
+
+import flash.localization.LocalizationManager;
+import flash.localization.ResourceBundleLocalizer;
+import flex2.compiler.util.ThreadLocalToolkit;
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+/**
+ * Tests the responses of SimpleShellServer to commands that don't compile.
+ */
+public class SimpleShellServerTest extends TestCase
+{
+    public static Test suite()
+    {
+        return new TestSuite(SimpleShellServerTest.class);
+    }
+
+    private SimpleShellServer server;
+
+    protected void setUp()
+    {
+        LocalizationManager l10n = new LocalizationManager();
+        l10n.addLocalizer(new ResourceBundleLocalizer());
+        ThreadLocalToolkit.setLocalizationManager(l10n);
+        server = new SimpleShellServer(l10n);
+    }
+
+    public void testTargetNotFound() throws Exception
+    {
+        String response = process(new SimpleShellServer.Workspace(), "compile 3");
+        assertTrue(response.startsWith("message\terror\t\t-1\t-1\tfcsh: Target 3 not found\ntime\t"));
+        assertTrue(response.endsWith("\nstatus\terror\n\n"));
+    }
+
+    public void testClearAll() throws Exception
+    {
+        SimpleShellServer.Workspace workspace = new SimpleShellServer.Workspace();
+        workspace.targets.put("1", new Target());
+        workspace.targets.put("2", new Target());
+
+        String response = process(workspace, "clear");
+        assertTrue(response.startsWith("time\t"));
+        assertTrue(response.endsWith("\nstatus\tok\n\n"));
+        assertTrue(workspace.targets.isEmpty());
+    }
+
+    public void testUnknownCommand() throws Exception
+    {
+        String response = process(new SimpleShellServer.Workspace(), "help");
+        // the command list has line breaks, escaped
+        assertTrue(response.startsWith("message\terror\t\t-1\t-1\tList of fcsh server commands:\\n"));
+        assertEquals(3, response.split("\n").length);
+    }
+
+    private String process(SimpleShellServer.Workspace workspace, String command) throws Exception
+    {
+        StringWriter out = new StringWriter();
+        server.process(workspace, command).write(out);
+        return out.toString();
+    }
+}
@@ -0,0 +1,134 @@
+////////////////////////////////////////////////////////////////////////////////
+//
+//  ADOBE SYSTEMS INCORPORATED
+//  Copyright 2005-2007 Adobe Systems Incorporated
+//  All Rights Reserved.
+//
+//  NOTICE: Adobe permits you to use, modify, and distribute this file
+//  in accordance with the terms of the license agreement accompanying it.
+//
+////////////////////////////////////////////////////////////////////////////////
+
+package flex2.tools;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+import flash.localization.LocalizationManager;
+import flash.localization.ResourceBundleLocalizer;
+import flex2.compiler.CompilationUnit;
+import flex2.compiler.util.ThreadLocalToolkit;
+
+/**
+ * Tests writing out the compilation units of an fcsh target and loading them back.
+ */
+public class TargetCacheTest extends TestCase
+{
+    public static Test suite()
+    {
+        return new TestSuite(TargetCacheTest.class);
+    }
+
+    private File dir;
+
+    protected void setUp() throws Exception
+    {
+        flex2.compiler.API.useAS3();
+        LocalizationManager l10n = new LocalizationManager();
+        l10n.addLocalizer(new ResourceBundleLocalizer());
+        ThreadLocalToolkit.setLocalizationManager(l10n);
+        flex2.compiler.API.useConsoleLogger();
+
+        dir = File.createTempFile("targetcache", "").getCanonicalFile();
+        dir.delete();
+        dir.mkdir();
+        write("A.as", "package { public class A { public function f():int { return 1; } } }");
+        write("B.as", "package { public class B extends A { override public function f():int { return 2; } } }");
+    }
+
+    protected void tearDown() throws Exception
+    {
+        File[] files = dir.listFiles();
+        for (int i = 0; files != null && i < files.length; i++)
+        {
+            files[i].delete();
+        }
+        dir.delete();
+    }
+
+    public void testSpillAndRestore() throws Exception
+    {
+        Map targets = new HashMap();
+        SimpleShell.compc(new String[] { "-source-path", dir.getPath(),
+                                         "-output", new File(dir, "ab.swc").getPath(),
+                                         "-include-classes", "A", "B" }, 1, targets);
+        assertEquals(0, ThreadLocalToolkit.errorCount());
+
+        Target s = (Target) targets.get("1");
+        Map before = describe(s);
+        assertTrue(before.containsKey("A") && before.containsKey("B"));
+
+        File file = TargetCache.spill(s);
+        assertNotNull(file);
+        assertNull(s.units);
+
+        TargetCache.restore(s, file);
+        assertTrue(!file.exists());
+
+        // an incremental build picks up the units that were loaded back
+        SimpleShell.build(s);
+        assertEquals(0, ThreadLocalToolkit.errorCount());
+
+        Map after = describe(s);
+        assertEquals(before.keySet(), after.keySet());
+        for (Iterator i = before.keySet().iterator(); i.hasNext();)
+        {
+            String name = (String) i.next();
+            Object[] b = (Object[]) before.get(name), a = (Object[]) after.get(name);
+            assertEquals(b[0], a[0]);
+            assertTrue(name, Arrays.equals((byte[]) b[1], (byte[]) a[1]));
+        }
+    }
+
+    /**
+     * @return the top level definitions and the bytecode of each unit defined in the directory,
+     *         keyed by source name
+     */
+    private Map describe(Target s)
+    {
+        Map units = new HashMap(); // Map<String, Object[]>
+        for (Iterator i = s.units.iterator(); i.hasNext();)
+        {
+            CompilationUnit u = (CompilationUnit) i.next();
+            if (u != null && u.getSource().getName().startsWith(dir.getPath()))
+            {
+                String name = u.getSource().getShortName();
+                units.put(name, new Object[] { u.topLevelDefinitions.toString(), u.getByteCodes() });
+            }
+        }
+        return units;
+    }
+
+    private void write(String name, String text) throws IOException
+    {
+        Writer w = new FileWriter(new File(dir, name));
+        try
+        {
+            w.write(text);
+        }
+        finally
+        {
+            w.close();
+        }
+    }
+}
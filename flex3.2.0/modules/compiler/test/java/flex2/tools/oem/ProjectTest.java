@@ -0,0 +1,277 @@
+////////////////////////////////////////////////////////////////////////////////
+//
+//  ADOBE SYSTEMS INCORPORATED
+//  Copyright 2005-2007 Adobe Systems Incorporated
+//  All Rights Reserved.
+//
+//  NOTICE: Adobe permits you to use, modify, and distribute this file
+//  in accordance with the terms of the license agreement accompanying it.
+//
+////////////////////////////////////////////////////////////////////////////////
+
+package flex2.tools.oem;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+/**
+ * Tests building the Builders of a Project on several threads.
+ */
+public class ProjectTest extends TestCase
+{
+    public static Test suite()
+    {
+        return new TestSuite(ProjectTest.class);
+    }
+
+    private Recorder recorder;
+
+    protected void setUp() throws Exception
+    {
+        recorder = new Recorder();
+    }
+
+    public void testDependentsWaitForPredecessors() throws Exception
+    {
+        StubBuilder a = new StubBuilder(recorder, "a", 50, null);
+        StubBuilder b = new StubBuilder(recorder, "b", 100, null);
+        StubBuilder c = new StubBuilder(recorder, "c", 20, null);
+        StubBuilder d = new StubBuilder(recorder, "d", 0, null);
+
+        Project p = new Project();
+        p.addBuilder(d);
+        p.addBuilder(c);
+        p.addBuilder(b);
+        p.addBuilder(a);
+        p.dependsOn(c, a);
+        p.dependsOn(c, b);
+        p.dependsOn(d, c);
+        p.setThreads(4);
+        p.build(true);
+
+        assertEquals(8, recorder.events.size());
+        assertTrue(recorder.indexOf("start c") > recorder.indexOf("end a"));
+        assertTrue(recorder.indexOf("start c") > recorder.indexOf("end b"));
+        assertTrue(recorder.indexOf("start d") > recorder.indexOf("end c"));
+    }
+
+    public void testApplicationsSharingALibraryCacheDoNotOverlap() throws Exception
+    {
+        LibraryCache shared = new LibraryCache(), other = new LibraryCache();
+
+        Project p = new Project();
+        for (int i = 0; i < 4; i++)
+        {
+            p.addBuilder(new StubApplication(recorder, "shared" + i, shared));
+        }
+        p.addBuilder(new StubApplication(recorder, "other", other));
+        p.addBuilder(new StubBuilder(recorder, "library", 50, null));
+        p.setThreads(6);
+        p.build(true);
+
+        assertEquals(12, recorder.events.size());
+        assertEquals(1, recorder.maxOverlap(shared));
+        assertEquals(1, recorder.maxOverlap(other));
+    }
+
+    public void testFirstFailureIsRethrownAndStopsNewBuilds() throws Exception
+    {
+        // a fails once the builds that can start alongside it have started
+        StubBuilder a = new StubBuilder(recorder, "a", 0, new IOException("a"))
+        {
+            public long build(boolean incremental) throws IOException
+            {
+                recorder.awaitStart("f");
+                recorder.awaitStart("g");
+                return super.build(incremental);
+            }
+        };
+        StubBuilder g = new StubBuilder(recorder, "g", 100, new IOException("g"));
+        StubBuilder f = new StubBuilder(recorder, "f", 200, null);
+
+        Project p = new Project();
+        p.addBuilder(a);
+        p.addBuilder(g);
+        p.addBuilder(f);
+        for (int i = 0; i < 3; i++)
+        {
+            StubBuilder e = new StubBuilder(recorder, "e" + i, 0, null);
+            p.addBuilder(e);
+            p.dependsOn(e, f);
+        }
+        p.setThreads(3);
+
+        try
+        {
+            p.build(true);
+            fail("expected the first failure");
+        }
+        catch (IOException ex)
+        {
+            assertEquals("a", ex.getMessage());
+        }
+
+        // the running builds finish, but nothing new starts once one has failed
+        assertTrue(recorder.indexOf("end f") != -1);
+        assertTrue(recorder.indexOf("end g") != -1);
+        for (int i = 0; i < 3; i++)
+        {
+            assertEquals(-1, recorder.indexOf("start e" + i));
+        }
+    }
+
+    /**
+     * Records the order in which builds start and end, and how many builds using each LibraryCache
+     * were running at the same time.
+     */
+    private static class Recorder
+    {
+        final List events = new ArrayList(); // List<String>
+        private final Map running = new HashMap(); // Map<LibraryCache, int[]>, current and maximum
+
+        synchronized void start(String name, LibraryCache cache)
+        {
+            events.add("start " + name);
+            notifyAll();
+            if (cache != null)
+            {
+                int[] count = (int[]) running.get(cache);
+                if (count == null)
+                {
+                    count = new int[2];
+                    running.put(cache, count);
+                }
+                count[0]++;
+                count[1] = Math.max(count[0], count[1]);
+            }
+        }
+
+        synchronized void end(String name, LibraryCache cache)
+        {
+            events.add("end " + name);
+            if (cache != null)
+            {
+                ((int[]) running.get(cache))[0]--;
+            }
+        }
+
+        synchronized void awaitStart(String name)
+        {
+            while (events.indexOf("start " + name) == -1)
+            {
+                try
+                {
+                    wait();
+                }
+                catch (InterruptedException ex)
+                {
+                }
+            }
+        }
+
+        synchronized int indexOf(String event)
+        {
+            return events.indexOf(event);
+        }
+
+        synchronized int maxOverlap(LibraryCache cache)
+        {
+            int[] count = (int[]) running.get(cache);
+            return count == null ? 0 : count[1];
+        }
+
+        long build(String name, LibraryCache cache, long millis, IOException failure) throws IOException
+        {
+            start(name, cache);
+            try
+            {
+                if (millis > 0)
+                {
+                    try
+                    {
+                        Thread.sleep(millis);
+                    }
+                    catch (InterruptedException ex)
+                    {
+                    }
+                }
+                if (failure != null)
+                {
+                    throw failure;
+                }
+            }
+            finally
+            {
+                end(name, cache);
+            }
+            return 1;
+        }
+    }
+
+    private static class StubApplication extends Application
+    {
+        StubApplication(Recorder recorder, String name, LibraryCache cache)
+        {
+            this.recorder = recorder;
+            this.name = name;
+            setSwcCache(cache);
+        }
+
+        private final Recorder recorder;
+        private final String name;
+
+        public long build(boolean incremental) throws IOException
+        {
+            return recorder.build(name, getSwcCache(), 30, null);
+        }
+    }
+
+    private static class StubBuilder implements Builder
+    {
+        StubBuilder(Recorder recorder, String name, long millis, IOException failure)
+        {
+            this.recorder = recorder;
+            this.name = name;
+            this.millis = millis;
+            this.failure = failure;
+        }
+
+        private final Recorder recorder;
+        private final String name;
+        private final long millis;
+        private final IOException failure;
+
+        public long build(boolean incremental) throws IOException
+        {
+            return recorder.build(name, null, millis, failure);
+        }
+
+        public long build(OutputStream out, boolean incremental) throws IOException
+        {
+            return build(incremental);
+        }
+
+        public void setConfiguration(Configuration configuration) {}
+        public Configuration getDefaultConfiguration() { return null; }
+        public Configuration getConfiguration() { return null; }
+        public void setLogger(Logger logger) {}
+        public Logger getLogger() { return null; }
+        public void setSupportedFileExtensions(String mimeType, String[] extensions) {}
+        public void setProgressMeter(ProgressMeter meter) {}
+        public void setPathResolver(PathResolver resolver) {}
+        public void stop() {}
+        public void clean() {}
+        public void load(InputStream in) throws IOException {}
+        public long save(OutputStream out) throws IOException { return 0; }
+        public Report getReport() { return null; }
+    }
+}
@@ -13,6 +13,8 @@ package flash.swf;
 
 import flash.swf.types.Rect;
 
+import java.util.zip.Deflater;
+
 /**
  * @author Clement Wong
  */
@@ -36,4 +38,6 @@ public class Header
 	public Rect size;
 	public int rate;
 	public int framecount;
+	public int compressionLevel = Deflater.BEST_COMPRESSION;
+	public int compressionThreads = 1;
 }
@@ -24,6 +24,7 @@ import flash.swf.types.Rect;
 
 import java.util.List;
 import java.util.Map;
+import java.util.zip.Deflater;
 
 /**
  * Represents a whole flash movie.  singleton tags are represented as such,
@@ -148,4 +149,14 @@ public class Movie
      * 8.5 scene data, only one per timeline at the moment
      */
     public DefineSceneAndFrameLabelData sceneAndFrameLabelData;
+
+    /**
+     * the Deflater level the movie is compressed with, if it is compressed
+     */
+    public int compressionLevel = Deflater.BEST_COMPRESSION;
+
+    /**
+     * how many threads the movie may be compressed on
+     */
+    public int compressionThreads = 1;
 }
\ No newline at end of file
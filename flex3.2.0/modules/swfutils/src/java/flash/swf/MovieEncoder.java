@@ -45,6 +45,9 @@ public class MovieEncoder
 		h.compressed = Header.useCompression(m.version);
 		h.size = m.size;
 		h.rate = m.framerate;
+		h.framecount = m.frames.size(); // one ShowFrame per frame below
+		h.compressionLevel = m.compressionLevel;
+		h.compressionThreads = m.compressionThreads;
 
 		handler.header(h);
 
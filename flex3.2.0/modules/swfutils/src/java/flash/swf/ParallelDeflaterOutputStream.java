@@ -0,0 +1,315 @@
+////////////////////////////////////////////////////////////////////////////////
+//
+//  ADOBE SYSTEMS INCORPORATED
+//  Copyright 2003-2007 Adobe Systems Incorporated
+//  All Rights Reserved.
+//
+//  NOTICE: Adobe permits you to use, modify, and distribute this file
+//  in accordance with the terms of the license agreement accompanying it.
+//
+////////////////////////////////////////////////////////////////////////////////
+
+package flash.swf;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.zip.Adler32;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+
+/**
+ * A DeflaterOutputStream that writes one zlib stream, like DeflaterOutputStream does, but deflates
+ * blocks of its input on several threads at once.  Each block is deflated on its own, primed with
+ * the 32K of input before it as the dictionary, and all but the last end with a sync flush, so
+ * that the deflated blocks can simply be put one after the other.
+ * <p>
+ * The sync flush needs Deflater.deflate(byte[], int, int, int), which JREs before 1.7 don't have.
+ * There, and with one thread, this is a plain DeflaterOutputStream.  The deflated bytes differ
+ * from those of a plain DeflaterOutputStream when blocks are deflated on their own, but inflate
+ * to the same input.
+ */
+public class ParallelDeflaterOutputStream extends DeflaterOutputStream
+{
+    private static final int BLOCK_SIZE = 128 * 1024;
+    private static final int DICTIONARY_SIZE = 32 * 1024;
+
+    // Deflater.deflate(byte[], int, int, int) and Deflater.SYNC_FLUSH, if this JRE has them
+    private static final Method deflateWithFlush;
+    private static final Integer SYNC_FLUSH;
+
+    static
+    {
+        Method method = null;
+        Integer syncFlush = null;
+        try
+        {
+            method = Deflater.class.getMethod("deflate", new Class[] { byte[].class, int.class, int.class, int.class });
+            syncFlush = new Integer(Deflater.class.getField("SYNC_FLUSH").getInt(null));
+        }
+        catch (Exception ex)
+        {
+            method = null;
+        }
+        deflateWithFlush = method;
+        SYNC_FLUSH = syncFlush;
+    }
+
+    /**
+     * @return whether this JRE can deflate on several threads
+     */
+    public static boolean isParallelAvailable()
+    {
+        return deflateWithFlush != null;
+    }
+
+    public ParallelDeflaterOutputStream(OutputStream out, int level, int threads)
+    {
+        super(out, new Deflater(level));
+        this.level = level;
+        this.threads = isParallelAvailable() ? Math.max(threads, 1) : 1;
+
+        if (this.threads > 1)
+        {
+            blocks = new byte[this.threads][BLOCK_SIZE];
+            lengths = new int[this.threads];
+            adler = new Adler32();
+        }
+    }
+
+    private final int level;
+    private final int threads;
+
+    // with several threads, the input waiting to be deflated: blocks[0..current), which are full,
+    // and blocks[current], which has lengths[current] bytes
+    private byte[][] blocks;
+    private int[] lengths;
+    private int current;
+
+    // the last DICTIONARY_SIZE bytes of the input deflated so far, if any
+    private byte[] dictionary;
+    private Adler32 adler;
+    private boolean started, done;
+
+    public void write(byte[] b, int off, int len) throws IOException
+    {
+        if (done)
+        {
+            throw new IOException("write beyond end of stream");
+        }
+
+        if (threads == 1)
+        {
+            super.write(b, off, len);
+            return;
+        }
+
+        while (len > 0)
+        {
+            int n = Math.min(len, BLOCK_SIZE - lengths[current]);
+            System.arraycopy(b, off, blocks[current], lengths[current], n);
+            lengths[current] += n;
+            off += n;
+            len -= n;
+
+            if (lengths[current] == BLOCK_SIZE)
+            {
+                if (current == threads - 1)
+                {
+                    deflateBlocks(threads, false);
+                }
+                else
+                {
+                    current++;
+                }
+            }
+        }
+    }
+
+    /**
+     * Finish the stream and release the Deflater.  Doesn't close the underlying stream.
+     */
+    public void finish() throws IOException
+    {
+        if (done)
+        {
+            return;
+        }
+
+        if (threads == 1)
+        {
+            super.finish();
+        }
+        else
+        {
+            deflateBlocks(current + 1, true);
+            int checksum = (int) adler.getValue();
+            out.write(checksum >>> 24);
+            out.write(checksum >>> 16);
+            out.write(checksum >>> 8);
+            out.write(checksum);
+        }
+        def.end();
+        done = true;
+    }
+
+    /**
+     * Deflate blocks[0..count) and write them out.  The last one of them ends the stream if last is set.
+     */
+    private void deflateBlocks(int count, final boolean last) throws IOException
+    {
+        if (!started)
+        {
+            writeHeader();
+            started = true;
+        }
+
+        final ByteArrayOutputStream[] deflated = new ByteArrayOutputStream[count];
+        final Throwable[] failures = new Throwable[count];
+        Thread[] workers = new Thread[count];
+        for (int i = 0; i < count; i++)
+        {
+            final int k = i;
+            final byte[] dict = (i == 0) ? dictionary : blocks[i - 1];
+            final int dictOffset = (i == 0) ? 0 : BLOCK_SIZE - DICTIONARY_SIZE;
+            final int dictLength = (i == 0) ? (dictionary != null ? dictionary.length : 0) : DICTIONARY_SIZE;
+            deflated[i] = new ByteArrayOutputStream(lengths[i] / 2 + 64);
+
+            workers[i] = new Thread("deflate-" + i)
+            {
+                public void run()
+                {
+                    try
+                    {
+                        deflate(blocks[k], lengths[k], dict, dictOffset, dictLength, last && k == failures.length - 1,
+                                deflated[k]);
+                    }
+                    catch (Throwable t)
+                    {
+                        failures[k] = t;
+                    }
+                }
+            };
+        }
+
+        // the first block on this thread, the others on workers
+        for (int i = 1; i < count; i++)
+        {
+            workers[i].start();
+        }
+        workers[0].run();
+        for (int i = 1; i < count; i++)
+        {
+            while (workers[i].isAlive())
+            {
+                try
+                {
+                    workers[i].join();
+                }
+                catch (InterruptedException ex)
+                {
+                }
+            }
+        }
+
+        for (int i = 0; i < count; i++)
+        {
+            if (failures[i] != null)
+            {
+                IOException ex = new IOException("deflate failed: " + failures[i]);
+                ex.initCause(failures[i]);
+                throw ex;
+            }
+            deflated[i].writeTo(out);
+            adler.update(blocks[i], 0, lengths[i]);
+        }
+
+        // all blocks but the last one written are full
+        if (!last)
+        {
+            if (dictionary == null)
+            {
+                dictionary = new byte[DICTIONARY_SIZE];
+            }
+            System.arraycopy(blocks[count - 1], BLOCK_SIZE - DICTIONARY_SIZE, dictionary, 0, DICTIONARY_SIZE);
+        }
+
+        for (int i = 0; i < count; i++)
+        {
+            lengths[i] = 0;
+        }
+        current = 0;
+    }
+
+    private void deflate(byte[] input, int length, byte[] dict, int dictOffset, int dictLength, boolean last,
+                         ByteArrayOutputStream output) throws IllegalAccessException, InvocationTargetException
+    {
+        Deflater deflater = new Deflater(level, true);
+        try
+        {
+            if (dictLength > 0)
+            {
+                deflater.setDictionary(dict, dictOffset, dictLength);
+            }
+            deflater.setInput(input, 0, length);
+
+            byte[] buffer = new byte[Math.max(length / 2, 1024)];
+            if (last)
+            {
+                deflater.finish();
+                while (!deflater.finished())
+                {
+                    output.write(buffer, 0, deflater.deflate(buffer));
+                }
+            }
+            else
+            {
+                // a full buffer means there may be more to come
+                int n;
+                do
+                {
+                    n = ((Integer) deflateWithFlush.invoke(deflater, new Object[] { buffer, new Integer(0),
+                                                           new Integer(buffer.length), SYNC_FLUSH })).intValue();
+                    output.write(buffer, 0, n);
+                }
+                while (n == buffer.length);
+            }
+        }
+        finally
+        {
+            deflater.end();
+        }
+    }
+
+    /**
+     * Write the zlib header that Deflater would write for the level.
+     */
+    private void writeHeader() throws IOException
+    {
+        int cmf = 0x78; // deflate, 32K window
+        int flevel;
+        if (level == Deflater.DEFAULT_COMPRESSION || level == 6)
+        {
+            flevel = 2;
+        }
+        else if (level < 2)
+        {
+            flevel = 0;
+        }
+        else if (level < 6)
+        {
+            flevel = 1;
+        }
+        else
+        {
+            flevel = 3;
+        }
+
+        int flg = flevel << 6;
+        flg += 31 - ((cmf << 8) + flg) % 31;
+        out.write(cmf);
+        out.write(flg);
+    }
+}
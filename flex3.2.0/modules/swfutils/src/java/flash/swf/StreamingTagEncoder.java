@@ -0,0 +1,219 @@
+////////////////////////////////////////////////////////////////////////////////
+//
+//  ADOBE SYSTEMS INCORPORATED
+//  Copyright 2003-2007 Adobe Systems Incorporated
+//  All Rights Reserved.
+//
+//  NOTICE: Adobe permits you to use, modify, and distribute this file
+//  in accordance with the terms of the license agreement accompanying it.
+//
+////////////////////////////////////////////////////////////////////////////////
+
+package flash.swf;
+
+import flash.swf.tags.DebugID;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.zip.DeflaterOutputStream;
+
+/**
+ * A TagEncoder that passes the movie on to an OutputStream, deflating it if the header says so, while
+ * it is being encoded, instead of holding all of it and copying it out at the end.  The bytes written
+ * are the same as TagEncoder's.
+ * <p>
+ * The SWF header's length is only known at the end.  If the stream is a FileOutputStream, it is
+ * written in place once the rest is out; otherwise the (compressed) body is held until close().
+ * The frame count is taken from the header, so it must be right up front, as MovieEncoder sets it.
+ * A movie with a DebugID is held in full like TagEncoder does, because its id is a digest of all of
+ * the movie.
+ */
+public class StreamingTagEncoder extends TagEncoder
+{
+    // pass the movie's bytes on once this many have been encoded
+    private static final int FLUSH_SIZE = 64 * 1024;
+
+    // the SWF signature, version and length come before the compressed part
+    private static final int PREFIX_SIZE = 8;
+
+    public StreamingTagEncoder(OutputStream out)
+    {
+        this.out = out;
+    }
+
+    public StreamingTagEncoder(Dictionary dict, OutputStream out)
+    {
+        super(dict);
+        this.out = out;
+    }
+
+    private final OutputStream out;
+    private boolean compressed;
+    private int compressionLevel, compressionThreads;
+    private int framecount;
+
+    private byte[] prefix;
+    private FileChannel channel;        // null unless the length is written in place
+    private long start;                 // position of the SWF header in channel
+    private ByteArrayOutputStream held; // the body, if the length can't be written in place
+    private DeflaterOutputStream deflater;
+    private OutputStream body;          // where the bytes after the prefix go
+    private long length;                // bytes passed on so far, before compression
+    private IOException failure;
+
+    public void header(Header header)
+    {
+        super.header(header);
+        compressed = header.compressed;
+        compressionLevel = header.compressionLevel;
+        compressionThreads = header.compressionThreads;
+        framecount = header.framecount;
+    }
+
+    public int getPos()
+    {
+        return (int) length + super.getPos();
+    }
+
+    public void debugID(DebugID tag)
+    {
+        if (body != null && failure == null)
+        {
+            failure = new IOException("DebugID must come before " + length + " bytes of the movie have been encoded");
+        }
+        super.debugID(tag);
+    }
+
+    protected void startTag()
+    {
+        if (writer.getPos() >= FLUSH_SIZE && !isDebug())
+        {
+            flush();
+        }
+    }
+
+    public void finish()
+    {
+        if (isDebug())
+        {
+            super.finish();
+            return;
+        }
+
+        // write end marker
+        writer.writeUI16(0);
+        flush();
+
+        if (getFrameCount() != framecount && failure == null)
+        {
+            failure = new IOException("header frame count " + framecount + " doesn't match the " + getFrameCount() +
+                                      " frames encoded");
+        }
+    }
+
+    /**
+     * Write what's left of the movie, once finish() has been called.  Doesn't close the stream.
+     */
+    public void close() throws IOException
+    {
+        if (failure != null)
+        {
+            throw failure;
+        }
+
+        if (isDebug())
+        {
+            writeTo(out);
+            return;
+        }
+
+        if (deflater != null)
+        {
+            deflater.finish();
+        }
+        body.flush();
+
+        prefix[4] = (byte) length;
+        prefix[5] = (byte) (length >> 8);
+        prefix[6] = (byte) (length >> 16);
+        prefix[7] = (byte) (length >> 24);
+
+        if (channel != null)
+        {
+            ByteBuffer b = ByteBuffer.wrap(prefix, 4, 4);
+            long position = start + 4;
+            while (b.hasRemaining())
+            {
+                position += channel.write(b, position);
+            }
+        }
+        else
+        {
+            out.write(prefix);
+            held.writeTo(out);
+        }
+    }
+
+    private void flush()
+    {
+        if (failure != null)
+        {
+            return;
+        }
+
+        byte[] bytes = writer.getByteArray();
+        int size = writer.getPos();
+        try
+        {
+            int offset = 0;
+            if (body == null)
+            {
+                open(bytes);
+                offset = PREFIX_SIZE;
+            }
+            body.write(bytes, offset, size - offset);
+            length += size;
+            writer.reset();
+        }
+        catch (IOException ex)
+        {
+            failure = ex;
+        }
+    }
+
+    private void open(byte[] bytes) throws IOException
+    {
+        prefix = new byte[PREFIX_SIZE];
+        System.arraycopy(bytes, 0, prefix, 0, PREFIX_SIZE);
+
+        OutputStream target;
+        if (out instanceof FileOutputStream)
+        {
+            // the length gets written in place once the rest is out
+            channel = ((FileOutputStream) out).getChannel();
+            start = channel.position();
+            out.write(prefix);
+            target = new BufferedOutputStream(out, FLUSH_SIZE);
+        }
+        else
+        {
+            held = new ByteArrayOutputStream(FLUSH_SIZE);
+            target = held;
+        }
+
+        if (compressed)
+        {
+            deflater = new ParallelDeflaterOutputStream(target, compressionLevel, compressionThreads);
+            body = deflater;
+        }
+        else
+        {
+            body = target;
+        }
+    }
+}
@@ -22,6 +22,8 @@ public class SwfEncoder extends RandomAccessBuffer
     private int bitPos = 8; //Must start as a full byte with value of 8
     private byte currentByte = 0x00;
     private int compressPos = -1;
+    private int compressionLevel = Deflater.BEST_COMPRESSION;
+    private int compressionThreads = 1;
 
     final int swfVersion;
 
@@ -94,6 +96,17 @@ public class SwfEncoder extends RandomAccessBuffer
         compressPos = getPos();
     }
 
+    /**
+     * set how the marked section is compressed.
+     * @param level a Deflater compression level
+     * @param threads how many threads writeTo() may deflate on
+     */
+    public void setCompression(int level, int threads)
+    {
+        compressionLevel = level;
+        compressionThreads = threads;
+    }
+
     /**
      * compress the marked section of our buffer, in place.
      * @throws IOException
@@ -105,7 +118,7 @@ public class SwfEncoder extends RandomAccessBuffer
             // compress in place from compressPos to pos
             pos = compressPos;
 
-			DeflaterOutputStream deflater = new DeflaterOutputStream(this, new Deflater(Deflater.BEST_COMPRESSION));
+			DeflaterOutputStream deflater = new DeflaterOutputStream(this, new Deflater(compressionLevel));
 
 			deflater.write(buf, compressPos, count-compressPos);
             deflater.finish();
@@ -130,7 +143,7 @@ public class SwfEncoder extends RandomAccessBuffer
             count = pos;
             out.write(buf, 0, compressPos);
 
-			DeflaterOutputStream deflater = new DeflaterOutputStream(out, new Deflater(Deflater.BEST_COMPRESSION));
+			DeflaterOutputStream deflater = new ParallelDeflaterOutputStream(out, compressionLevel, compressionThreads);
 
             deflater.write(buf, compressPos, count-compressPos);
             deflater.finish();
@@ -72,6 +72,7 @@ public class TagEncoder extends TagHandler
 
     protected Dictionary dict;
     private int uuidOffset;
+    private int spriteDepth;
 
     public TagEncoder()
     {
@@ -139,7 +140,12 @@ public class TagEncoder extends TagHandler
 
 	protected SwfEncoder createEncoder(int swfVersion)
 	{
-		return new SwfEncoder(swfVersion);
+		SwfEncoder encoder = new SwfEncoder(swfVersion);
+		if (header != null)
+		{
+			encoder.setCompression(header.compressionLevel, 1);
+		}
+		return encoder;
 	}
 
     public boolean isDebug()
@@ -154,6 +160,7 @@ public class TagEncoder extends TagHandler
         this.header = header;
         this.writer = createEncoder(swfVersion);
         this.tagw = createEncoder(swfVersion);
+        writer.setCompression(header.compressionLevel, header.compressionThreads);
         width = header.size.getWidth();
         height = header.size.getHeight();
         frames = 0;
@@ -213,6 +220,23 @@ public class TagEncoder extends TagHandler
         writer.writeTo(out);
     }
 
+    /**
+     * Called before the header of a tag is written to the movie, i.e. not to a sprite, when all the
+     * bytes in writer except for the length and frame count in the SWF header are final.  Does
+     * nothing here.  Subclasses that write the movie out as it is encoded pass writer's bytes on.
+     */
+    protected void startTag()
+    {
+    }
+
+    /**
+     * @return the number of ShowFrame tags encoded so far, at the level of the movie or sprite being encoded
+     */
+    protected int getFrameCount()
+    {
+        return frames;
+    }
+
 
     public void writeDebugTo(OutputStream out) throws IOException
     {
@@ -300,6 +324,11 @@ public class TagEncoder extends TagHandler
 
     private void encodeTagHeader(int code, int length, boolean longHeader)
     {
+        if (spriteDepth == 0)
+        {
+            startTag();
+        }
+
         if (longHeader || length >= 63)
         {
             writer.writeUI16((code << 6) | 63);
@@ -1603,6 +1632,7 @@ public class TagEncoder extends TagHandler
         SwfEncoder oldWriter = writer;
         writer = tagw;
         tagw = createEncoder(getSwfVersion());
+        spriteDepth++;
 
         // write sprite tags
         List tags = tag.tagList.tags;
@@ -1621,6 +1651,7 @@ public class TagEncoder extends TagHandler
         writer.writeUI16at(2, frames);
 
         // restore writers
+        spriteDepth--;
         tagw = writer;
         writer = oldWriter;
         frames = oldFrames;
@@ -0,0 +1,104 @@
+////////////////////////////////////////////////////////////////////////////////
+//
+//  ADOBE SYSTEMS INCORPORATED
+//  Copyright 2005-2006 Adobe Systems Incorporated
+//  All Rights Reserved.
+//
+//  NOTICE: Adobe permits you to use, modify, and distribute this file
+//  in accordance with the terms of the license agreement accompanying it.
+//
+////////////////////////////////////////////////////////////////////////////////
+
+package flash.swf;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+/**
+ * Tests that ParallelDeflaterOutputStream writes zlib streams that inflate to what was written.
+ */
+public class ParallelDeflaterOutputStreamTest extends TestCase
+{
+    public static Test suite()
+    {
+        return new TestSuite(ParallelDeflaterOutputStreamTest.class);
+    }
+
+    public void testOneThreadIsDeflaterOutputStream() throws IOException
+    {
+        byte[] input = createInput(300000);
+
+        ByteArrayOutputStream expected = new ByteArrayOutputStream();
+        DeflaterOutputStream plain = new DeflaterOutputStream(expected, new Deflater(Deflater.BEST_COMPRESSION));
+        plain.write(input);
+        plain.finish();
+
+        assertTrue(Arrays.equals(expected.toByteArray(), deflate(input, Deflater.BEST_COMPRESSION, 1)));
+    }
+
+    public void testThreads() throws IOException
+    {
+        // empty, less than a block, whole batches of blocks and a partial batch
+        int[] sizes = new int[] { 0, 1000, 4 * 128 * 1024, 1000000 };
+        int[] levels = new int[] { Deflater.NO_COMPRESSION, Deflater.BEST_SPEED, Deflater.BEST_COMPRESSION };
+        for (int i = 0; i < sizes.length; i++)
+        {
+            byte[] input = createInput(sizes[i]);
+            for (int j = 0; j < levels.length; j++)
+            {
+                byte[] deflated = deflate(input, levels[j], 4);
+                assertTrue("size " + sizes[i] + ", level " + levels[j], Arrays.equals(input, inflate(deflated)));
+            }
+        }
+    }
+
+    private static byte[] createInput(int size)
+    {
+        byte[] input = new byte[size];
+        Random random = new Random(42);
+        for (int i = 0; i < size; i += 3)
+        {
+            input[i] = (byte) random.nextInt(16);
+        }
+        return input;
+    }
+
+    private static byte[] deflate(byte[] input, int level, int threads) throws IOException
+    {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ParallelDeflaterOutputStream deflater = new ParallelDeflaterOutputStream(out, level, threads);
+
+        // in uneven pieces, so that they straddle blocks
+        int offset = 0;
+        while (offset < input.length)
+        {
+            int n = Math.min(input.length - offset, 70001);
+            deflater.write(input, offset, n);
+            offset += n;
+        }
+        deflater.finish();
+        return out.toByteArray();
+    }
+
+    private static byte[] inflate(byte[] deflated) throws IOException
+    {
+        InflaterInputStream in = new InflaterInputStream(new ByteArrayInputStream(deflated));
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[4096];
+        for (int n = in.read(buffer); n != -1; n = in.read(buffer))
+        {
+            out.write(buffer, 0, n);
+        }
+        return out.toByteArray();
+    }
+}
@@ -0,0 +1,128 @@
+////////////////////////////////////////////////////////////////////////////////
+//
+//  ADOBE SYSTEMS INCORPORATED
+//  Copyright 2005-2006 Adobe Systems Incorporated
+//  All Rights Reserved.
+//
+//  NOTICE: Adobe permits you to use, modify, and distribute this file
+//  in accordance with the terms of the license agreement accompanying it.
+//
+////////////////////////////////////////////////////////////////////////////////
+
+package flash.swf;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Random;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+import flash.swf.tags.DoABC;
+import flash.swf.types.Rect;
+
+/**
+ * Tests that StreamingTagEncoder writes the same bytes as TagEncoder.
+ */
+public class StreamingTagEncoderTest extends TestCase
+{
+    public static Test suite()
+    {
+        return new TestSuite(StreamingTagEncoderTest.class);
+    }
+
+    public void testCompressedToStream() throws IOException
+    {
+        Movie movie = createMovie(9);
+        assertTrue(Arrays.equals(encode(movie), encodeStreaming(movie)));
+    }
+
+    public void testUncompressedToStream() throws IOException
+    {
+        Movie movie = createMovie(5);
+        assertTrue(Arrays.equals(encode(movie), encodeStreaming(movie)));
+    }
+
+    public void testCompressedToFile() throws IOException
+    {
+        Movie movie = createMovie(9);
+        File file = File.createTempFile("movie", ".swf");
+        file.deleteOnExit();
+
+        FileOutputStream out = new FileOutputStream(file);
+        try
+        {
+            StreamingTagEncoder encoder = new StreamingTagEncoder(out);
+            new MovieEncoder(encoder).export(movie);
+            encoder.close();
+        }
+        finally
+        {
+            out.close();
+        }
+
+        byte[] bytes = new byte[(int) file.length()];
+        FileInputStream in = new FileInputStream(file);
+        try
+        {
+            int n = 0;
+            while (n < bytes.length)
+            {
+                n += in.read(bytes, n, bytes.length - n);
+            }
+        }
+        finally
+        {
+            in.close();
+        }
+        assertTrue(Arrays.equals(encode(movie), bytes));
+    }
+
+    private static Movie createMovie(int version)
+    {
+        Movie movie = new Movie();
+        movie.version = version;
+        movie.size = new Rect(100, 100);
+        movie.frames = new ArrayList();
+
+        // enough bytes for the encoder to pass some on before the end
+        Random random = new Random(42);
+        for (int i = 0; i < 3; i++)
+        {
+            DoABC abc = new DoABC("abc" + i, 1);
+            abc.abc = new byte[50000];
+            for (int j = 0; j < abc.abc.length; j += 7)
+            {
+                abc.abc[j] = (byte) random.nextInt(8);
+            }
+
+            Frame frame = new Frame();
+            frame.doABCs.add(abc);
+            movie.frames.add(frame);
+        }
+        return movie;
+    }
+
+    private static byte[] encode(Movie movie) throws IOException
+    {
+        TagEncoder encoder = new TagEncoder();
+        new MovieEncoder(encoder).export(movie);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        encoder.writeTo(out);
+        return out.toByteArray();
+    }
+
+    private static byte[] encodeStreaming(Movie movie) throws IOException
+    {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        StreamingTagEncoder encoder = new StreamingTagEncoder(out);
+        new MovieEncoder(encoder).export(movie);
+        encoder.close();
+        return out.toByteArray();
+    }
+}